@@ -0,0 +1,189 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package ai;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import model.Block;
+import model.Board;
+import model.BoardSnapshot;
+import model.PieceShape;
+import model.PieceState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the placement search, with and without the paths.
+ *
+ * <p>The positions come either from a seeded game played by the bot, whose
+ * stacks stay low and flat, or from pieces dropped at random, whose stacks
+ * are tall and full of holes and overhangs. Each invocation searches the
+ * next position of the set. The class lives in the ai package because
+ * fields are not public.</p>
+ *
+ * <p>Run with {@code java -jar target/benchmarks.jar PlacementSearchBenchmark}.</p>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlacementSearchBenchmark {
+
+    /** The number of positions searched in turn, a power of two. */
+    private static final int POSITIONS = 256;
+
+    /** The number of board rows a random stack can cover, at most. */
+    private static final int RANDOM_PIECES = 25;
+
+    /**
+     * A set of positions and a search to run on them.
+     */
+    @State(Scope.Thread)
+    public static class Positions {
+
+        /** Where the positions come from: "bot" or "random". */
+        @Param({"bot", "random"})
+        public String kind;
+
+        /** The board width. */
+        @Param({"10"})
+        public int width;
+
+        /** The board height. */
+        @Param({"20"})
+        public int height;
+
+        /** The fields of the positions. */
+        final Field[] myFields = new Field[POSITIONS];
+
+        /** The pieces of the positions, where they spawned. */
+        final PieceState[] myPieces = new PieceState[POSITIONS];
+
+        /** The search under test. */
+        final PlacementSearch mySearch = new PlacementSearch();
+
+        /** The position searched next. */
+        int myNext;
+
+        /**
+         * Builds the positions for a trial.
+         */
+        @Setup
+        public void setUp() {
+            if ("random".equals(kind)) {
+                randomPositions(this);
+            } else {
+                botPositions(this);
+            }
+        }
+
+        /**
+         * @return the index of the position to search, advancing to the next
+         */
+        int next() {
+            final int result = myNext;
+            myNext = (myNext + 1) & (POSITIONS - 1);
+            return result;
+        }
+    }
+
+    /**
+     * Finds the placements of a piece without their paths, as the bot does
+     * for every placement of the piece before.
+     *
+     * @param theState the positions
+     * @return the number of placements
+     */
+    @Benchmark
+    public int find(final Positions theState) {
+        final int position = theState.next();
+        return theState.mySearch.find(theState.myFields[position],
+                                      theState.myPieces[position]);
+    }
+
+    /**
+     * Finds the placements of a piece and the moves reaching each.
+     *
+     * @param theState the positions
+     * @return the number of placements
+     */
+    @Benchmark
+    public int findAll(final Positions theState) {
+        final int position = theState.next();
+        return theState.mySearch.findAll(theState.myFields[position],
+                                         theState.myPieces[position]).size();
+    }
+
+    /**
+     * Records the positions of a game the bot plays.
+     *
+     * @param thePositions receives the positions
+     */
+    private static void botPositions(final Positions thePositions) {
+        final Board board = new Board(thePositions.width, thePositions.height,
+                                      thePositions.kind.hashCode());
+        final PlacementBot bot = new PlacementBot();
+        for (int i = 0; i < POSITIONS; i++) {
+            final BoardSnapshot snapshot = board.snapshot();
+            thePositions.myFields[i] = Field.of(snapshot);
+            thePositions.myPieces[i] = snapshot.getCurrentPiece();
+            bot.playPiece(board);
+        }
+    }
+
+    /**
+     * Builds positions by dropping pieces at random and spawning one more.
+     *
+     * @param thePositions receives the positions
+     */
+    private static void randomPositions(final Positions thePositions) {
+        final Random random = new Random(thePositions.kind.hashCode());
+        final int width = thePositions.width;
+        final int height = thePositions.height;
+        int count = 0;
+        while (count < POSITIONS) {
+            final Field field = new Field(width, height);
+            final int pieces = random.nextInt(RANDOM_PIECES);
+            for (int i = 0; i < pieces; i++) {
+                final PieceShape shape = randomShape(random);
+                final int rotation = random.nextInt(shape.getRotationCount());
+                final int x = random.nextInt(width);
+                if (field.fits(shape, rotation, x, height)) {
+                    field.place(shape, rotation, x,
+                                field.landingY(shape, rotation, x, height));
+                }
+            }
+            final PieceState piece = PieceState.valueOf(randomShape(random).getType(), 0,
+                                                        width / 2 - 2, height);
+            if (!field.isToppedOut()
+                            && field.fits(piece.getShape(), 0, piece.getX(), height)) {
+                thePositions.myFields[count] = field;
+                thePositions.myPieces[count] = piece;
+                count++;
+            }
+        }
+    }
+
+    /**
+     * @param theRandom the random number generator
+     * @return the shape of a random piece type
+     */
+    private static PieceShape randomShape(final Random theRandom) {
+        return PieceShape.of(Block.values()[1 + theRandom.nextInt(Block.values().length - 1)]);
+    }
+}
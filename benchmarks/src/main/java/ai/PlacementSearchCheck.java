@@ -0,0 +1,426 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package ai;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import model.Block;
+import model.Board;
+import model.BoardAction;
+import model.BoardSnapshot;
+import model.PieceShape;
+import model.PieceState;
+
+/**
+ * Checks the placement search against a plain breadth-first search, one
+ * position at a time over every (rotation, x, y) the piece fits at. The
+ * bit-parallel search, the merging of rotations that cover the same cells
+ * and the paths are all compared with it, and every placement is frozen
+ * into a copy of the field and compared with the rows of a naive line
+ * clear. A search taking the straight drops from a small SurfaceCache,
+ * which evicts often, must give the same placements in the same order,
+ * whether the surface is kept or not.
+ *
+ * <p>The positions are random fields from 5 to 60 columns wide, with
+ * pieces dropped anywhere and frozen where they are so that they leave
+ * overhangs, and the positions of games the bot plays. Run after changing
+ * the search or Field with
+ * {@code java -cp target/benchmarks.jar ai.PlacementSearchCheck [positions]};
+ * it stops at the first mismatch with an AssertionError.</p>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class PlacementSearchCheck {
+
+    /** The number of random positions checked by default. */
+    private static final int DEFAULT_POSITIONS = 20000;
+
+    /** The seed of the random positions. */
+    private static final long SEED = 7;
+
+    /** The narrowest field checked, that of the narrowest board. */
+    private static final int MIN_WIDTH = 5;
+
+    /** The lowest field checked. */
+    private static final int MIN_HEIGHT = 4;
+
+    /** The range of the heights of the random fields. */
+    private static final int HEIGHTS = 24;
+
+    /** The range of the widths of most random fields; one in WIDE_ODDS is up to MAX_WIDTH. */
+    private static final int WIDTHS = 10;
+
+    /** The odds against a random field being up to Field.MAX_WIDTH wide. */
+    private static final int WIDE_ODDS = 10;
+
+    /** The share of the cells a random field has pieces dropped for, at most, as a divisor. */
+    private static final int FILL_DIVISOR = 3;
+
+    /** The widths of the boards the bot plays on. */
+    private static final int[] BOT_WIDTHS = {5, 10, 17, 60};
+
+    /** The height of the boards the bot plays on. */
+    private static final int BOT_HEIGHT = 20;
+
+    /** The most pieces the bot plays per board. */
+    private static final int BOT_PIECES = 500;
+
+    /** The number of surfaces of the surface cache under test. */
+    private static final int CACHE_SURFACES = 1 << 8;
+
+    /** The search under test. */
+    private final PlacementSearch mySearch = new PlacementSearch();
+
+    /** The surface cache under test. */
+    private final SurfaceCache myCache = new SurfaceCache(CACHE_SURFACES);
+
+    /** The search under test taking the straight drops from the cache. */
+    private final PlacementSearch myCachedSearch = new PlacementSearch(myCache);
+
+    /** The number of positions checked. */
+    private int myPositions;
+
+    /** The number of placements checked. */
+    private long myPlacements;
+
+    /**
+     * Checks the search on random and bot positions.
+     *
+     * @param theArgs the number of random positions, optionally
+     */
+    public static void main(final String[] theArgs) {
+        int positions = DEFAULT_POSITIONS;
+        if (theArgs.length > 0) {
+            positions = Integer.parseInt(theArgs[0]);
+        }
+        final PlacementSearchCheck check = new PlacementSearchCheck();
+        check.checkRandom(positions);
+        for (final int width : BOT_WIDTHS) {
+            check.checkBot(width);
+        }
+        System.out.println("OK: " + check.myPositions + " positions, " + check.myPlacements
+                           + " placements, " + check.myCache);
+    }
+
+    /**
+     * Checks random fields with a random piece where pieces start.
+     *
+     * @param thePositions the number of fields to try
+     */
+    private void checkRandom(final int thePositions) {
+        final Random random = new Random(SEED);
+        for (int i = 0; i < thePositions; i++) {
+            int widths = WIDTHS;
+            if (random.nextInt(WIDE_ODDS) == 0) {
+                widths = Field.MAX_WIDTH - MIN_WIDTH + 1;
+            }
+            final int width = MIN_WIDTH + random.nextInt(widths);
+            final int height = MIN_HEIGHT + random.nextInt(HEIGHTS);
+            final Field field = new Field(width, height);
+            final int pieces = random.nextInt(width * height / FILL_DIVISOR + 1);
+            for (int j = 0; j < pieces; j++) {
+                final PieceShape shape = randomShape(random);
+                final int rotation = random.nextInt(shape.getRotationCount());
+                final int x = random.nextInt(width + PieceShape.BOX_SIZE - 1)
+                              - PieceShape.BOX_SIZE + 1;
+                final int y = random.nextInt(height);
+                if (field.fits(shape, rotation, x, y)) {
+                    field.place(shape, rotation, x, y);
+                }
+            }
+            final PieceShape shape = randomShape(random);
+            final PieceState piece = PieceState.valueOf(
+                            shape.getType(), random.nextInt(shape.getRotationCount()),
+                            width / 2 - 2, height);
+            if (!field.isToppedOut()
+                && field.fits(shape, piece.getRotation(), piece.getX(), piece.getY())) {
+                check(field, piece);
+            }
+        }
+    }
+
+    /**
+     * Checks the positions of a game the bot plays.
+     *
+     * @param theWidth the width of the board
+     */
+    private void checkBot(final int theWidth) {
+        final Board board = new Board(theWidth, BOT_HEIGHT, SEED);
+        final PlacementBot bot = new PlacementBot();
+        for (int i = 0; i < BOT_PIECES && !board.isGameOver(); i++) {
+            final BoardSnapshot snapshot = board.snapshot();
+            check(Field.of(snapshot), snapshot.getCurrentPiece());
+            bot.playPiece(board);
+        }
+    }
+
+    /**
+     * Checks one position.
+     *
+     * @param theField the field
+     * @param thePiece the piece where it starts, fitting there
+     */
+    private void check(final Field theField, final PieceState thePiece) {
+        final Map<String, Integer> expected = search(theField, thePiece);
+        final int count = mySearch.find(theField, thePiece);
+        final int[] found = Arrays.copyOf(mySearch.getPlacements(), count);
+        final Set<String> cells = new HashSet<>();
+        for (final int placement : found) {
+            final String key = cells(thePiece.getShape(), PlacementSearch.rotation(placement),
+                                     PlacementSearch.x(placement),
+                                     PlacementSearch.y(placement));
+            if (!cells.add(key)) {
+                fail(theField, thePiece, "placement found twice: " + key);
+            }
+        }
+        if (!cells.equals(expected.keySet())) {
+            final Set<String> extra = new TreeSet<>(cells);
+            extra.removeAll(expected.keySet());
+            final Set<String> missing = new TreeSet<>(expected.keySet());
+            missing.removeAll(cells);
+            fail(theField, thePiece, "extra " + extra + ", missing " + missing);
+        }
+        // the first search may keep the surface and the second find it
+        for (int i = 0; i < 2; i++) {
+            final int cached = myCachedSearch.find(theField, thePiece);
+            if (!Arrays.equals(found, Arrays.copyOf(myCachedSearch.getPlacements(), cached))) {
+                fail(theField, thePiece, "the cached search differs");
+            }
+        }
+
+        final List<Placement> all = mySearch.findAll(theField, thePiece);
+        if (all.size() != count) {
+            fail(theField, thePiece, "findAll found " + all.size() + " of " + count);
+        }
+        for (final Placement placement : all) {
+            checkPath(theField, thePiece, placement, expected);
+            checkPlace(theField, placement.getPiece());
+        }
+        myPositions++;
+        myPlacements += count;
+    }
+
+    /**
+     * Searches for the placements one position at a time.
+     *
+     * @param theField the field
+     * @param thePiece the piece where it starts
+     * @return the fewest turns and shifts reaching each placement, by the
+     *         cells it covers
+     */
+    private static Map<String, Integer> search(final Field theField,
+                                               final PieceState thePiece) {
+        final PieceShape shape = thePiece.getShape();
+        final int columns = theField.getWidth() + 2 * PieceShape.BOX_SIZE;
+        final int rows = theField.getRowCount() + PieceShape.BOX_SIZE;
+        final int[] moves = new int[PieceShape.BOX_SIZE * columns * rows];
+        Arrays.fill(moves, -1);
+        final ArrayDeque<int[]> queue = new ArrayDeque<>();
+        final int[] start = {thePiece.getRotation(), thePiece.getX(), thePiece.getY()};
+        moves[index(start, columns, rows)] = 0;
+        queue.add(start);
+        final Map<String, Integer> result = new HashMap<>();
+        while (!queue.isEmpty()) {
+            final int[] position = queue.poll();
+            final int taken = moves[index(position, columns, rows)];
+            final int rotation = position[0];
+            final int x = position[1];
+            final int y = position[2];
+            if (!theField.fits(shape, rotation, x, y - 1)) {
+                // every move is one, so the moves down are the rows fallen
+                final int sideways = taken - (thePiece.getY() - y);
+                final String key = cells(shape, rotation, x, y);
+                final Integer best = result.get(key);
+                if (best == null || sideways < best) {
+                    result.put(key, sideways);
+                }
+            }
+            final int[][] next = {{rotation, x - 1, y}, {rotation, x + 1, y},
+                                  {rotation, x, y - 1}, {shape.nextRotation(rotation), x, y}};
+            for (final int[] move : next) {
+                final int index = index(move, columns, rows);
+                if (theField.fits(shape, move[0], move[1], move[2]) && moves[index] < 0) {
+                    moves[index] = taken + 1;
+                    queue.add(move);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks that the path of a placement is legal, ends at the placement
+     * and takes the fewest turns and shifts.
+     *
+     * @param theField the field
+     * @param thePiece the piece where it starts
+     * @param thePlacement the placement
+     * @param theExpected the fewest turns and shifts of each placement
+     */
+    private static void checkPath(final Field theField, final PieceState thePiece,
+                                  final Placement thePlacement,
+                                  final Map<String, Integer> theExpected) {
+        final PieceShape shape = thePiece.getShape();
+        int rotation = thePiece.getRotation();
+        int x = thePiece.getX();
+        int y = thePiece.getY();
+        int sideways = 0;
+        final List<BoardAction> path = thePlacement.getPath();
+        for (int i = 0; i < path.size(); i++) {
+            final BoardAction move = path.get(i);
+            if (move == BoardAction.MOVE_LEFT) {
+                x--;
+                sideways++;
+            } else if (move == BoardAction.MOVE_RIGHT) {
+                x++;
+                sideways++;
+            } else if (move == BoardAction.ROTATE) {
+                rotation = shape.nextRotation(rotation);
+                sideways++;
+            } else if (move == BoardAction.MOVE_DOWN) {
+                y--;
+            } else if (move == BoardAction.DROP && i == path.size() - 1) {
+                y = theField.landingY(shape, rotation, x, y);
+            } else {
+                fail(theField, thePiece, "bad move " + move + " in " + thePlacement);
+            }
+            if (!theField.fits(shape, rotation, x, y)) {
+                fail(theField, thePiece, "illegal path " + thePlacement);
+            }
+        }
+        final PieceState end = thePlacement.getPiece();
+        if (rotation != end.getRotation() || x != end.getX() || y != end.getY()) {
+            fail(theField, thePiece, "the path does not end at " + thePlacement);
+        }
+        final Integer best = theExpected.get(cells(shape, rotation, x, y));
+        if (best == null || sideways != best) {
+            fail(theField, thePiece, "not the fewest moves: " + thePlacement + ", " + best);
+        }
+    }
+
+    /**
+     * Checks that freezing a placement into a copy of the field gives the
+     * rows, column heights and stack height of a naive line clear.
+     *
+     * @param theField the field
+     * @param thePiece the placed piece
+     */
+    private static void checkPlace(final Field theField, final PieceState thePiece) {
+        final PieceShape shape = thePiece.getShape();
+        final int rotation = thePiece.getRotation();
+        final long full = -1L >>> Long.SIZE - theField.getWidth();
+        final long[] rows = new long[theField.getRowCount()];
+        for (int y = 0; y < theField.getStackHeight(); y++) {
+            rows[y] = theField.getRow(y);
+        }
+        for (int cell = 0; cell < PieceShape.CELLS; cell++) {
+            rows[thePiece.getY() + shape.getCellY(rotation, cell)] |=
+                            1L << thePiece.getX() + shape.getCellX(rotation, cell);
+        }
+        int kept = 0;
+        int cleared = 0;
+        for (final long row : rows) {
+            if (row == full) {
+                cleared++;
+            } else {
+                rows[kept] = row;
+                kept++;
+            }
+        }
+        Arrays.fill(rows, kept, rows.length, 0L);
+
+        final Field placed = new Field(theField.getWidth(), theField.getHeight());
+        placed.copyFrom(theField);
+        if (placed.place(shape, rotation, thePiece.getX(), thePiece.getY()) != cleared) {
+            fail(theField, thePiece, "wrong number of rows cleared");
+        }
+        int stack = 0;
+        for (int y = 0; y < rows.length; y++) {
+            if (rows[y] != 0) {
+                stack = y + 1;
+            }
+            if (y < placed.getStackHeight() && placed.getRow(y) != rows[y]) {
+                fail(theField, thePiece, "wrong row " + y + " after placing");
+            }
+        }
+        if (placed.getStackHeight() != stack) {
+            fail(theField, thePiece, "wrong stack height after placing");
+        }
+        for (int x = 0; x < theField.getWidth(); x++) {
+            int height = 0;
+            for (int y = 0; y < stack; y++) {
+                if ((rows[y] >>> x & 1) != 0) {
+                    height = y + 1;
+                }
+            }
+            if (placed.getColumnHeight(x) != height) {
+                fail(theField, thePiece, "wrong height of column " + x + " after placing");
+            }
+        }
+    }
+
+    /**
+     * @param thePosition a rotation, x and y
+     * @param theColumns the x-coordinates indexed, from -BOX_SIZE
+     * @param theRows the y-coordinates indexed, from 0
+     * @return the index of the position in the moves array
+     */
+    private static int index(final int[] thePosition, final int theColumns,
+                             final int theRows) {
+        return (thePosition[0] * theColumns + thePosition[1] + PieceShape.BOX_SIZE) * theRows
+               + thePosition[2];
+    }
+
+    /**
+     * @param theShape the shape of the piece
+     * @param theRotation the rotation index
+     * @param theX the x-coordinate
+     * @param theY the y-coordinate
+     * @return the cells the piece covers, in a canonical order
+     */
+    private static String cells(final PieceShape theShape, final int theRotation,
+                                final int theX, final int theY) {
+        final Set<String> result = new TreeSet<>();
+        for (int cell = 0; cell < PieceShape.CELLS; cell++) {
+            result.add((theY + theShape.getCellY(theRotation, cell)) + ","
+                       + (theX + theShape.getCellX(theRotation, cell)));
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param theRandom the random number generator
+     * @return the shape of a random piece type
+     */
+    private static PieceShape randomShape(final Random theRandom) {
+        return PieceShape.of(Block.values()[1 + theRandom.nextInt(Block.values().length - 1)]);
+    }
+
+    /**
+     * Reports a mismatch.
+     *
+     * @param theField the field of the position
+     * @param thePiece the piece of the position
+     * @param theMessage what does not match
+     */
+    private static void fail(final Field theField, final PieceState thePiece,
+                             final String theMessage) {
+        final StringBuilder rows = new StringBuilder();
+        for (int y = theField.getStackHeight() - 1; y >= 0; y--) {
+            final String row = Long.toBinaryString(theField.getRow(y) | 1L << theField.getWidth());
+            rows.append('\n').append(new StringBuilder(row.substring(1)).reverse());
+        }
+        throw new AssertionError(theMessage + " for " + thePiece + " on "
+                                 + theField.getWidth() + "x" + theField.getHeight() + rows);
+    }
+}
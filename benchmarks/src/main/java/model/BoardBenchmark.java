@@ -0,0 +1,401 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks of the Board operations on the game's hot paths.
+ *
+ * <p>Every board is built from a deterministic piece sequence passed through
+ * the {@code Board(int, int, Deque<Piece>)} constructor and is filled to the
+ * requested density by dropping pieces with a seeded random shift, so runs
+ * with the same parameters always measure the same positions. The class lives
+ * in the model package because the piece constructors are not public.</p>
+ *
+ * <p>Run with {@code java -jar target/benchmarks.jar}; narrow the parameter
+ * space with, for example, {@code -p width=10 -p height=20}.</p>
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    /** The number of pieces in the deterministic piece sequence. */
+    private static final int SEQUENCE_LENGTH = 1024;
+
+    /** The number of quarter turns that bring a piece back to its first rotation. */
+    private static final int FULL_TURN = 4;
+
+    /** The x offset of the cells of a vertical I piece. */
+    private static final int VERTICAL_OFFSET = 2;
+
+    /** The number of ticks over which the gravity of a GravityBoard is measured. */
+    private static final int GRAVITY_TICKS = 120;
+
+    /**
+     * A board filled to the requested density, shared by all invocations of a
+     * trial. Used by benchmarks that leave the board as they found it.
+     */
+    @State(Scope.Thread)
+    public static class FilledBoard {
+
+        /** The board width. */
+        @Param({"10", "64", "200"})
+        public int width;
+
+        /** The board height. */
+        @Param({"20", "200"})
+        public int height;
+
+        /** The fraction of the board height covered by frozen blocks. */
+        @Param({"0.0", "0.5", "0.8"})
+        public double density;
+
+        /** The seed of the piece sequence and of the fill. */
+        @Param({"305"})
+        public long seed;
+
+        /** The board under test. */
+        Board myBoard;
+
+        /** The piece sequence of the board. */
+        Deque<Piece> myPieces;
+
+        /**
+         * Builds the board for a trial.
+         */
+        @Setup(Level.Trial)
+        public void setUpTrial() {
+            myPieces = randomSequence(seed, width, height);
+            myBoard = new Board(width, height, myPieces);
+            fill(myBoard, density, seed);
+        }
+    }
+
+    /**
+     * A board rebuilt before every invocation. Used by benchmarks that
+     * freeze the current piece and so change the board.
+     */
+    @State(Scope.Thread)
+    public static class FreshBoard extends FilledBoard {
+
+        /**
+         * Rebuilds the board before each invocation.
+         */
+        @Setup(Level.Invocation)
+        public void setUpInvocation() {
+            myBoard.newGame(width, height, myPieces);
+            fill(myBoard, density, seed);
+        }
+    }
+
+    /**
+     * A freshly filled board with a given gravity, rebuilt before every
+     * invocation.
+     */
+    @State(Scope.Thread)
+    public static class GravityBoard extends FilledBoard {
+
+        /** The rows the piece falls every 120 ticks: level 1, level 7 and 20G. */
+        @Param({"2", "128", "2400"})
+        public int rows;
+
+        /**
+         * Rebuilds the board before each invocation.
+         */
+        @Setup(Level.Invocation)
+        public void setUpInvocation() {
+            myBoard.newGame(width, height, myPieces);
+            fill(myBoard, density, seed);
+            myBoard.setGravity(rows, GRAVITY_TICKS);
+        }
+    }
+
+    /**
+     * A board whose bottom four rows are full except for the last column,
+     * with a vertical I piece waiting above that column. Dropping it clears
+     * four lines.
+     */
+    @State(Scope.Thread)
+    public static class TetrisReadyBoard {
+
+        /** The board width. */
+        @Param({"10", "64", "200"})
+        public int width;
+
+        /** The board height. */
+        @Param({"20", "200"})
+        public int height;
+
+        /** The board under test. */
+        Board myBoard;
+
+        /** A sequence made of I pieces only. */
+        Deque<Piece> myPieces;
+
+        /**
+         * Builds the board for a trial.
+         */
+        @Setup(Level.Trial)
+        public void setUpTrial() {
+            myPieces = new ArrayDeque<>();
+            myPieces.add(new IPiece(width / 2 - 2, height));
+            myBoard = new Board(width, height, myPieces);
+        }
+
+        /**
+         * Stacks the well before each invocation.
+         */
+        @Setup(Level.Invocation)
+        public void setUpInvocation() {
+            myBoard.newGame(width, height, myPieces);
+            for (int column = 0; column < width - 1; column++) {
+                moveVerticalTo(myBoard, column);
+                myBoard.drop();
+            }
+            moveVerticalTo(myBoard, width - 1);
+        }
+    }
+
+    /**
+     * Moves the current piece one column left and back.
+     *
+     * @param theState the board
+     * @param theHole keeps the board observable to the JIT
+     */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void moveLeftRight(final FilledBoard theState, final Blackhole theHole) {
+        theState.myBoard.moveLeft();
+        theState.myBoard.moveRight();
+        theHole.consume(theState.myBoard.getCurrentPieceState());
+    }
+
+    /**
+     * Moves the current piece one column right and back.
+     *
+     * @param theState the board
+     * @param theHole keeps the board observable to the JIT
+     */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void moveRightLeft(final FilledBoard theState, final Blackhole theHole) {
+        theState.myBoard.moveRight();
+        theState.myBoard.moveLeft();
+        theHole.consume(theState.myBoard.getCurrentPieceState());
+    }
+
+    /**
+     * Rotates the current piece a full turn.
+     *
+     * @param theState the board
+     * @param theHole keeps the board observable to the JIT
+     */
+    @Benchmark
+    @OperationsPerInvocation(FULL_TURN)
+    public void rotate(final FilledBoard theState, final Blackhole theHole) {
+        for (int i = 0; i < FULL_TURN; i++) {
+            theState.myBoard.rotate();
+        }
+        theHole.consume(theState.myBoard.getCurrentPieceState());
+    }
+
+    /**
+     * Renders the board as a string.
+     *
+     * @param theState the board
+     * @return the rendering
+     */
+    @Benchmark
+    public String boardToString(final FilledBoard theState) {
+        return theState.myBoard.toString();
+    }
+
+    /**
+     * Starts a new game on the board.
+     *
+     * @param theState the board
+     * @return the board
+     */
+    @Benchmark
+    public Board newGame(final FilledBoard theState) {
+        theState.myBoard.newGame(theState.width, theState.height, theState.myPieces);
+        return theState.myBoard;
+    }
+
+    /**
+     * Advances a freshly filled board by one step.
+     *
+     * @param theState the board
+     * @return the board
+     */
+    @Benchmark
+    public Board step(final FreshBoard theState) {
+        theState.myBoard.step();
+        return theState.myBoard;
+    }
+
+    /**
+     * Advances a freshly filled board by one tick of gravity. At 20G the
+     * piece falls all the way and freezes within the tick.
+     *
+     * @param theState the board
+     * @return the board
+     */
+    @Benchmark
+    public Board tick(final GravityBoard theState) {
+        theState.myBoard.tick();
+        return theState.myBoard;
+    }
+
+    /**
+     * Drops the current piece of a freshly filled board, freezing it and
+     * clearing any completed lines.
+     *
+     * @param theState the board
+     * @return the board
+     */
+    @Benchmark
+    public Board drop(final FreshBoard theState) {
+        theState.myBoard.drop();
+        return theState.myBoard;
+    }
+
+    /**
+     * Drops a vertical I piece into a well, freezing it and clearing four lines.
+     *
+     * @param theState the board
+     * @return the board
+     */
+    @Benchmark
+    public Board dropClearingLines(final TetrisReadyBoard theState) {
+        theState.myBoard.drop();
+        return theState.myBoard;
+    }
+
+    /**
+     * Reads the evaluation features of a filled board, which the board keeps
+     * up to date instead of scanning its grid.
+     *
+     * @param theState the board
+     * @return the features
+     */
+    @Benchmark
+    public BoardFeatures features(final FilledBoard theState) {
+        return theState.myBoard.getFeatures();
+    }
+
+    /**
+     * Creates a deterministic sequence of random pieces.
+     *
+     * @param theSeed the seed of the sequence
+     * @param theWidth the board width
+     * @param theHeight the board height
+     * @return the sequence
+     */
+    static Deque<Piece> randomSequence(final long theSeed, final int theWidth,
+                                       final int theHeight) {
+        final Random random = new Random(theSeed);
+        final int x = theWidth / 2 - 2;
+        final Deque<Piece> result = new ArrayDeque<>();
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            switch (random.nextInt(Block.values().length - 1)) {
+                case 0:
+                    result.add(new IPiece(x, theHeight));
+                    break;
+                case 1:
+                    result.add(new JPiece(x, theHeight));
+                    break;
+                case 2:
+                    result.add(new LPiece(x, theHeight));
+                    break;
+                case 3:
+                    result.add(new OPiece(x, theHeight));
+                    break;
+                case 4:
+                    result.add(new SPiece(x, theHeight));
+                    break;
+                case 5:
+                    result.add(new TPiece(x, theHeight));
+                    break;
+                default:
+                    result.add(new ZPiece(x, theHeight));
+                    break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops pieces at seeded random columns until the stack covers the
+     * requested fraction of the board height.
+     *
+     * @param theBoard the board to fill
+     * @param theDensity the fraction of the height to cover
+     * @param theSeed the seed of the fill
+     */
+    static void fill(final Board theBoard, final double theDensity, final long theSeed) {
+        final Random random = new Random(theSeed);
+        final int target = (int) (theDensity * theBoard.getHeight());
+        while (theBoard.getFrozenBlocks().size() < target) {
+            final int rotations = random.nextInt(FULL_TURN);
+            for (int i = 0; i < rotations; i++) {
+                theBoard.rotate();
+            }
+            final int shift = random.nextInt(theBoard.getWidth()) - theBoard.getWidth() / 2;
+            for (int i = 0; i < shift; i++) {
+                theBoard.moveRight();
+            }
+            for (int i = 0; i > shift; i--) {
+                theBoard.moveLeft();
+            }
+            theBoard.drop();
+            if (theBoard.isGameOver()) {
+                throw new IllegalStateException("Board overflowed while filling");
+            }
+        }
+    }
+
+    /**
+     * Turns the current I piece from its first rotation to vertical and
+     * moves it over a column.
+     *
+     * @param theBoard the board
+     * @param theColumn the column to move to
+     */
+    static void moveVerticalTo(final Board theBoard, final int theColumn) {
+        theBoard.rotate();
+        final int target = theColumn - VERTICAL_OFFSET;
+        while (theBoard.getCurrentPieceState().getX() > target) {
+            theBoard.moveLeft();
+        }
+        while (theBoard.getCurrentPieceState().getX() < target) {
+            theBoard.moveRight();
+        }
+    }
+}
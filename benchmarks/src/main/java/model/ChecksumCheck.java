@@ -0,0 +1,141 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+import java.util.Random;
+
+/**
+ * Checks that a game is determined by its seed and its inputs: two boards
+ * given the same seed and the same random stream of moves, drops, gravity
+ * changes and ticks have equal checksums after every operation, and a
+ * board given another seed diverges from them. A change that makes the
+ * engine depend on anything else, or that leaves part of the state out of
+ * the checksum, fails the check.
+ *
+ * <p>Run with {@code java -cp target/benchmarks.jar model.ChecksumCheck [games]};
+ * it stops at the first mismatch with an AssertionError.</p>
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public final class ChecksumCheck {
+
+    /** The number of games checked by default. */
+    private static final int DEFAULT_GAMES = 2000;
+
+    /** The seed of the inputs. */
+    private static final long SEED = 16;
+
+    /** The number of operations the inputs choose from. */
+    static final int OPERATIONS = 9;
+
+    /** The most ticks one advance runs. */
+    static final int MAX_ADVANCE = 200;
+
+    /** The most ticks per row of a gravity change. */
+    private static final int MAX_GRAVITY_TICKS = 60;
+
+    /** The widths of the boards, in turn. */
+    private static final int[] WIDTHS = {5, 10, 17, 64, 70};
+
+    /** The heights of the boards, in turn. */
+    private static final int[] HEIGHTS = {5, 20, 12, 40};
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private ChecksumCheck() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Checks a number of games.
+     *
+     * @param theArgs the number of games, optionally
+     */
+    public static void main(final String[] theArgs) {
+        int games = DEFAULT_GAMES;
+        if (theArgs.length > 0) {
+            games = Integer.parseInt(theArgs[0]);
+        }
+        final Random random = new Random(SEED);
+        long operations = 0;
+        int diverged = 0;
+        for (int game = 0; game < games; game++) {
+            final int width = WIDTHS[game % WIDTHS.length];
+            final int height = HEIGHTS[game % HEIGHTS.length];
+            final long seed = random.nextLong();
+            final Board board = new Board(width, height, seed);
+            final Board same = new Board(width, height, seed);
+            final Board other = new Board(width, height, seed + 1);
+            boolean differs = false;
+            while (!board.isGameOver()) {
+                final int operation = random.nextInt(OPERATIONS);
+                final int argument = random.nextInt(MAX_ADVANCE);
+                apply(board, operation, argument);
+                apply(same, operation, argument);
+                if (!other.isGameOver()) {
+                    apply(other, operation, argument);
+                }
+                if (board.checksum() != same.checksum()) {
+                    throw new AssertionError("game " + game + " of seed " + seed
+                                             + " diverged after " + operations
+                                             + " operations:\n" + board + "\n" + same);
+                }
+                differs |= board.checksum() != other.checksum();
+                operations++;
+            }
+            if (differs) {
+                diverged++;
+            }
+        }
+        if (diverged < games) {
+            throw new AssertionError((games - diverged) + " games played the same as "
+                                     + "with another seed");
+        }
+        System.out.println("OK: " + games + " games, " + operations + " operations");
+    }
+
+    /**
+     * Applies an operation to a board.
+     *
+     * @param theBoard the board
+     * @param theOperation the operation, 0 to OPERATIONS - 1
+     * @param theArgument a random number from 0 to MAX_ADVANCE - 1
+     */
+    static void apply(final Board theBoard, final int theOperation,
+                      final int theArgument) {
+        switch (theOperation) {
+            case 0:
+                theBoard.moveLeft();
+                break;
+            case 1:
+                theBoard.moveRight();
+                break;
+            case 2:
+                theBoard.moveDown();
+                break;
+            case 3:
+                theBoard.rotate();
+                break;
+            case 4:
+                theBoard.drop();
+                break;
+            case 5:
+                theBoard.step();
+                break;
+            case 6:
+                theBoard.tick();
+                break;
+            case 7:
+                theBoard.advance(theArgument);
+                break;
+            default:
+                final int ticks = 1 + theArgument % MAX_GRAVITY_TICKS;
+                theBoard.setGravity(theArgument % (Board.MAX_GRAVITY * ticks + 1), ticks);
+                break;
+        }
+    }
+}
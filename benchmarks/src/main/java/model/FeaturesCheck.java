@@ -0,0 +1,164 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+import ai.PlacementBot;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Checks the features a board keeps up to date against a count of its
+ * cells after every operation. The games mix the random operations of
+ * ChecksumCheck, which leave overhangs and holes, with pieces the bot
+ * places, which clear lines, and every few operations the board is saved
+ * and restored into another board whose recounted features must match.
+ *
+ * <p>Run with {@code java -cp target/benchmarks.jar model.FeaturesCheck [games]};
+ * it stops at the first mismatch with an AssertionError.</p>
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public final class FeaturesCheck {
+
+    /** The number of games checked by default. */
+    private static final int DEFAULT_GAMES = 300;
+
+    /** The seed of the inputs. */
+    private static final long SEED = 25;
+
+    /** The most pieces placed in a game. */
+    private static final int MAX_PIECES = 400;
+
+    /** The operations between two checks of a saved and restored board. */
+    private static final int RESTORE_INTERVAL = 16;
+
+    /** The widths of the boards, in turn; the bot plays boards up to 60 wide. */
+    private static final int[] WIDTHS = {5, 10, 17, 60, 7};
+
+    /** The heights of the boards, in turn. */
+    private static final int[] HEIGHTS = {5, 20, 12, 40};
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private FeaturesCheck() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Checks a number of games.
+     *
+     * @param theArgs the number of games, optionally
+     */
+    public static void main(final String[] theArgs) {
+        int games = DEFAULT_GAMES;
+        if (theArgs.length > 0) {
+            games = Integer.parseInt(theArgs[0]);
+        }
+        final Random random = new Random(SEED);
+        final PlacementBot bot = new PlacementBot();
+        long operations = 0;
+        int lines = 0;
+        for (int game = 0; game < games; game++) {
+            final int width = WIDTHS[game % WIDTHS.length];
+            final int height = HEIGHTS[game % HEIGHTS.length];
+            final long seed = random.nextLong();
+            final Board board = new Board(width, height, seed);
+            final Board restored = new Board(width, height, seed);
+            // some games are played by the random operations alone
+            final int botOdds = game % 3;
+            while (!board.isGameOver() && board.getPiecesPlaced() < MAX_PIECES) {
+                if (botOdds > 0 && random.nextInt(botOdds + 1) > 0) {
+                    bot.playPiece(board);
+                } else {
+                    ChecksumCheck.apply(board, random.nextInt(ChecksumCheck.OPERATIONS),
+                                        random.nextInt(ChecksumCheck.MAX_ADVANCE));
+                }
+                check(board, board.getFeatures(), "game " + game + " of seed " + seed);
+                operations++;
+                if (operations % RESTORE_INTERVAL == 0) {
+                    final ByteBuffer buffer = ByteBuffer.allocate(board.getStateSize());
+                    board.saveState(buffer);
+                    buffer.flip();
+                    restored.restoreState(buffer, Integer.MAX_VALUE);
+                    check(board, restored.getFeatures(), "restored game " + game);
+                }
+            }
+            lines += board.getLinesCleared();
+        }
+        System.out.println("OK: " + games + " games, " + operations + " operations, "
+                           + lines + " lines");
+    }
+
+    /**
+     * Compares features with a count of the cells of a board.
+     *
+     * @param theBoard the board
+     * @param theFeatures the features to check
+     * @param theGame the game, for the report
+     */
+    private static void check(final Board theBoard, final BoardFeatures theFeatures,
+                              final String theGame) {
+        final BoardSnapshot snapshot = theBoard.snapshot();
+        final int width = theBoard.getWidth();
+        final int[] heights = new int[width];
+        int cells = 0;
+        int rowTransitions = 0;
+        for (int y = 0; y < snapshot.getStackHeight(); y++) {
+            // the walls count as occupied
+            boolean previous = true;
+            for (int x = 0; x < width; x++) {
+                final boolean occupied = snapshot.getFrozenBlock(x, y) != Block.EMPTY;
+                if (occupied) {
+                    cells++;
+                    heights[x] = y + 1;
+                }
+                if (occupied != previous) {
+                    rowTransitions++;
+                }
+                previous = occupied;
+            }
+            if (!previous) {
+                rowTransitions++;
+            }
+        }
+        int aggregateHeight = 0;
+        int bumpiness = 0;
+        int wells = 0;
+        int columnTransitions = 0;
+        for (int x = 0; x < width; x++) {
+            aggregateHeight += heights[x];
+            // the floor counts as occupied, and the cell above the column is empty
+            boolean previous = true;
+            for (int y = 0; y <= heights[x]; y++) {
+                final boolean occupied = y < heights[x]
+                                         && snapshot.getFrozenBlock(x, y) != Block.EMPTY;
+                if (occupied != previous) {
+                    columnTransitions++;
+                }
+                previous = occupied;
+            }
+            int sides = Integer.MAX_VALUE;
+            if (x > 0) {
+                sides = heights[x - 1];
+            }
+            if (x + 1 < width) {
+                sides = Math.min(sides, heights[x + 1]);
+                bumpiness += Math.abs(heights[x] - heights[x + 1]);
+            }
+            wells += Math.max(0, sides - heights[x]);
+        }
+        final BoardFeatures expected = new BoardFeatures(aggregateHeight,
+                                                         aggregateHeight - cells, bumpiness,
+                                                         wells, rowTransitions,
+                                                         columnTransitions);
+        if (!expected.equals(theFeatures) || !expected.equals(snapshot.getFeatures())) {
+            throw new AssertionError(theGame + " after " + theBoard.getPiecesPlaced()
+                                     + " pieces: " + theFeatures + ", counted " + expected
+                                     + "\n" + theBoard);
+        }
+    }
+}
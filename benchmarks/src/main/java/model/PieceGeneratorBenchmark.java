@@ -0,0 +1,91 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of choosing pieces on several threads at once, comparing
+ * one Random shared by every board with a PieceGenerator per board.
+ *
+ * <p>Run with {@code java -jar target/benchmarks.jar PieceGeneratorBenchmark};
+ * change the number of threads with, for example, {@code -t 1}.</p>
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class PieceGeneratorBenchmark {
+
+    /** One random number generator shared by every thread, as boards used to share. */
+    private static final Random SHARED = new Random();
+
+    /**
+     * The generator of one board, owned by one thread.
+     */
+    @State(Scope.Thread)
+    public static class Generator {
+
+        /** The kind of generator. */
+        @Param({"random", "bag", "history"})
+        public String kind;
+
+        /** The generator under test. */
+        PieceGenerator myGenerator;
+
+        /**
+         * Creates the generator for a trial.
+         */
+        @Setup
+        public void setUp() {
+            if ("bag".equals(kind)) {
+                myGenerator = new BagPieceGenerator(kind.hashCode());
+            } else if ("history".equals(kind)) {
+                myGenerator = new HistoryPieceGenerator(kind.hashCode());
+            } else {
+                myGenerator = new RandomPieceGenerator(kind.hashCode());
+            }
+        }
+    }
+
+    /**
+     * Chooses a piece from the Random shared by every thread.
+     *
+     * @return the piece type
+     */
+    @Benchmark
+    public Block shared() {
+        return Block.PIECES[SHARED.nextInt(Block.PIECES.length)];
+    }
+
+    /**
+     * Chooses a piece from the generator of this thread's board.
+     *
+     * @param theState the generator
+     * @return the piece type
+     */
+    @Benchmark
+    public Block perBoard(final Generator theState) {
+        return theState.myGenerator.next();
+    }
+}
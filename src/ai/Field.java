@@ -0,0 +1,314 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package ai;
+
+import java.util.Arrays;
+import model.Block;
+import model.BoardSnapshot;
+import model.PieceShape;
+import model.Zobrist;
+
+/**
+ * The frozen cells of a board as the placement search sees them: one
+ * occupancy mask per row and the height of every column, and nothing else.
+ * Placing a piece and clearing lines on a field is cheap, so the search can
+ * copy a field for every placement it tries.
+ *
+ * <p>The Zobrist hash of a field is the hash a board with the same frozen
+ * cells has. It is computed when asked for rather than kept up to date,
+ * as the search places pieces on far more fields than it looks up.</p>
+ *
+ * <p>Row 0 is the bottom row. The field stores BOX_SIZE rows above the
+ * board for pieces at their spawn position, and as many again for pieces
+ * placed there, so every piece spawned on the board fits in the field.</p>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+final class Field {
+
+    /**
+     * The widest board a field can hold: one bit per column, with room in
+     * the word for a piece hanging over the left wall.
+     */
+    static final int MAX_WIDTH = Long.SIZE - PieceShape.BOX_SIZE;
+
+    /** The rows stored above the top of the board. */
+    private static final int EXTRA_ROWS = 2 * PieceShape.BOX_SIZE;
+
+    /** The number of columns. */
+    private final int myWidth;
+
+    /** The number of rows of the board. */
+    private final int myHeight;
+
+    /** The mask of a full row. */
+    private final long myFullRow;
+
+    /** The occupancy of each row, bit x for column x. */
+    private final long[] myRows;
+
+    /** The number of rows from the bottom up to the highest cell of each column. */
+    private final int[] myHeights;
+
+    /** The number of rows from the bottom up to the highest occupied row. */
+    private int myStackHeight;
+
+    /**
+     * Creates an empty field.
+     *
+     * @param theWidth the number of columns, 1 to MAX_WIDTH
+     * @param theHeight the number of rows of the board
+     * @throws IllegalArgumentException if the board is too wide
+     */
+    Field(final int theWidth, final int theHeight) {
+        if (theWidth < 1 || theWidth > MAX_WIDTH || theHeight < 1) {
+            throw new IllegalArgumentException("Bad field size: " + theWidth + "x" + theHeight);
+        }
+        myWidth = theWidth;
+        myHeight = theHeight;
+        myFullRow = (1L << theWidth) - 1;
+        myRows = new long[theHeight + EXTRA_ROWS];
+        myHeights = new int[theWidth];
+    }
+
+    /**
+     * Creates the field of a board.
+     *
+     * @param theBoard the snapshot of the board
+     * @return the field of its frozen cells
+     * @throws IllegalArgumentException if the board is too wide
+     */
+    static Field of(final BoardSnapshot theBoard) {
+        final Field result = new Field(theBoard.getWidth(), theBoard.getHeight());
+        final int rows = Math.min(theBoard.getStackHeight(), result.myRows.length);
+        for (int y = 0; y < rows; y++) {
+            long row = 0;
+            for (int x = 0; x < result.myWidth; x++) {
+                if (theBoard.getFrozenBlock(x, y) != Block.EMPTY) {
+                    row |= 1L << x;
+                    result.myHeights[x] = y + 1;
+                }
+            }
+            result.myRows[y] = row;
+        }
+        result.myStackHeight = rows;
+        return result;
+    }
+
+    /**
+     * Makes this field a copy of another field of the same size.
+     *
+     * @param theOther the field to copy
+     */
+    void copyFrom(final Field theOther) {
+        System.arraycopy(theOther.myRows, 0, myRows, 0,
+                         Math.max(myStackHeight, theOther.myStackHeight));
+        System.arraycopy(theOther.myHeights, 0, myHeights, 0, myWidth);
+        myStackHeight = theOther.myStackHeight;
+    }
+
+    /**
+     * @return the number of columns
+     */
+    int getWidth() {
+        return myWidth;
+    }
+
+    /**
+     * @return the number of rows of the board
+     */
+    int getHeight() {
+        return myHeight;
+    }
+
+    /**
+     * @return the Zobrist hash of the cells, as Board.getZobristHash()
+     */
+    long getHash() {
+        long result = 0;
+        for (int y = 0; y < myStackHeight; y++) {
+            result ^= Zobrist.row(Zobrist.cells(myRows[y]), y);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of rows from the bottom up to the highest occupied row
+     */
+    int getStackHeight() {
+        return myStackHeight;
+    }
+
+    /**
+     * @return the number of rows stored, above the board too
+     */
+    int getRowCount() {
+        return myRows.length;
+    }
+
+    /**
+     * Returns the height of a column.
+     *
+     * @param theX the column
+     * @return the number of rows from the bottom up to its highest cell
+     */
+    int getColumnHeight(final int theX) {
+        return myHeights[theX];
+    }
+
+    /**
+     * Returns the occupancy of a row.
+     *
+     * @param theY the row, 0 to getRowCount() - 1; rows at or above
+     *        getStackHeight() are empty
+     * @return the mask of the row, bit x for column x
+     */
+    long getRow(final int theY) {
+        return myRows[theY];
+    }
+
+    /**
+     * @return whether the stack reaches above the top of the board, which
+     *         ends the game
+     */
+    boolean isToppedOut() {
+        return myStackHeight > myHeight;
+    }
+
+    /**
+     * Tests whether a piece fits: inside the walls, on or above the floor,
+     * below the stored rows and not overlapping any cell.
+     *
+     * @param theShape the shape of the piece
+     * @param theRotation the rotation index
+     * @param theX the x-coordinate of the piece
+     * @param theY the y-coordinate of the piece
+     * @return true if the piece fits
+     */
+    boolean fits(final PieceShape theShape, final int theRotation,
+                 final int theX, final int theY) {
+        boolean result = theX + theShape.getMinX(theRotation) >= 0
+                         && theX + theShape.getMaxX(theRotation) < myWidth
+                         && theY + theShape.getMinY(theRotation) >= 0
+                         && theY + theShape.getMaxY(theRotation) < myRows.length;
+        for (int row = theShape.getMinY(theRotation);
+                        result && row <= theShape.getMaxY(theRotation); row++) {
+            result = (myRows[theY + row] & shift(theShape.getRowMask(theRotation, row), theX))
+                     == 0;
+        }
+        return result;
+    }
+
+    /**
+     * Returns where a piece that fits lands when it is dropped straight down.
+     *
+     * @param theShape the shape of the piece
+     * @param theRotation the rotation index
+     * @param theX the x-coordinate of the piece
+     * @param theY the y-coordinate of the piece
+     * @return the y-coordinate the piece lands at
+     */
+    int landingY(final PieceShape theShape, final int theRotation,
+                 final int theX, final int theY) {
+        // above the surface in every column, the piece lands on the surface
+        int result = Integer.MIN_VALUE;
+        for (int column = theShape.getMinX(theRotation);
+                        column <= theShape.getMaxX(theRotation); column++) {
+            final int surface = myHeights[theX + column]
+                                - theShape.getColumnBottom(theRotation, column);
+            result = Math.max(result, surface);
+        }
+        if (result > theY) {
+            result = theY;
+            while (fits(theShape, theRotation, theX, result - 1)) {
+                result--;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Freezes a piece that fits into the field and clears the rows it fills.
+     *
+     * @param theShape the shape of the piece
+     * @param theRotation the rotation index
+     * @param theX the x-coordinate of the piece
+     * @param theY the y-coordinate of the piece
+     * @return the number of rows cleared
+     */
+    int place(final PieceShape theShape, final int theRotation,
+              final int theX, final int theY) {
+        int full = 0;
+        for (int row = theShape.getMinY(theRotation);
+                        row <= theShape.getMaxY(theRotation); row++) {
+            final int y = theY + row;
+            myRows[y] |= shift(theShape.getRowMask(theRotation, row), theX);
+            if (myRows[y] == myFullRow) {
+                full++;
+            }
+        }
+        myStackHeight = Math.max(myStackHeight, theY + theShape.getMaxY(theRotation) + 1);
+        if (full == 0) {
+            for (int column = theShape.getMinX(theRotation);
+                            column <= theShape.getMaxX(theRotation); column++) {
+                final int top = theY + theShape.getColumnTop(theRotation, column) + 1;
+                if (top > myHeights[theX + column]) {
+                    myHeights[theX + column] = top;
+                }
+            }
+        } else {
+            clearRows(theY + theShape.getMinY(theRotation));
+        }
+        return full;
+    }
+
+    /**
+     * Removes the full rows at or above a row and recomputes the heights.
+     *
+     * @param theBottom the lowest row that can be full
+     */
+    private void clearRows(final int theBottom) {
+        int to = theBottom;
+        for (int from = theBottom; from < myStackHeight; from++) {
+            if (myRows[from] != myFullRow) {
+                myRows[to] = myRows[from];
+                to++;
+            }
+        }
+        Arrays.fill(myRows, to, myStackHeight, 0L);
+        myStackHeight = to;
+        while (myStackHeight > 0 && myRows[myStackHeight - 1] == 0) {
+            myStackHeight--;
+        }
+        Arrays.fill(myHeights, 0);
+        long found = 0;
+        for (int y = myStackHeight - 1; y >= 0 && found != myFullRow; y--) {
+            long row = myRows[y] & ~found;
+            found |= row;
+            while (row != 0) {
+                myHeights[Long.numberOfTrailingZeros(row)] = y + 1;
+                row &= row - 1;
+            }
+        }
+    }
+
+    /**
+     * Moves a row mask of a piece to its column.
+     *
+     * @param theMask the mask, bit i for x offset i
+     * @param theX the x-coordinate of the piece
+     * @return the mask, bit x for column x
+     */
+    private static long shift(final long theMask, final int theX) {
+        final long result;
+        if (theX >= 0) {
+            result = theMask << theX;
+        } else {
+            result = theMask >>> -theX;
+        }
+        return result;
+    }
+}
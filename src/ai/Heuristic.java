@@ -0,0 +1,145 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package ai;
+
+import model.BoardFeatures;
+
+/**
+ * The weighted sum a placement is scored with. Each feature of the field
+ * after the placement is multiplied by its weight and the products are
+ * added; higher scores are better, so features that hurt have negative
+ * weights. The features are:
+ * <ul>
+ * <li>lines: the number of lines the placement clears;</li>
+ * <li>aggregate height: the sum of the heights of the columns;</li>
+ * <li>holes: the empty cells with a cell above them in their column;</li>
+ * <li>bumpiness: the sum of the height differences of neighbouring columns;</li>
+ * <li>wells: the sum of the depths of the columns lower than both of their
+ * neighbours, the walls counting as infinitely high.</li>
+ * </ul>
+ * These are the features a board keeps up to date, so a board is scored
+ * from its BoardFeatures in a few operations, while fields, which the
+ * search makes by the thousand and discards, are scanned.
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class Heuristic {
+
+    /**
+     * Weights found by tuning on 10 by 20 boards. Well depths are mostly
+     * counted by the bumpiness already, so their weight is small.
+     */
+    public static final Heuristic DEFAULT =
+                    new Heuristic(0.760666, -0.510066, -0.35663, -0.184483, -0.05);
+
+    /** The weight of the lines cleared. */
+    private final double myLines;
+
+    /** The weight of the aggregate height. */
+    private final double myHeight;
+
+    /** The weight of the holes. */
+    private final double myHoles;
+
+    /** The weight of the bumpiness. */
+    private final double myBumpiness;
+
+    /** The weight of the well depths. */
+    private final double myWells;
+
+    /**
+     * Creates a heuristic.
+     *
+     * @param theLines the weight of the lines cleared
+     * @param theHeight the weight of the aggregate height
+     * @param theHoles the weight of the holes
+     * @param theBumpiness the weight of the bumpiness
+     * @param theWells the weight of the well depths
+     */
+    public Heuristic(final double theLines, final double theHeight, final double theHoles,
+                     final double theBumpiness, final double theWells) {
+        myLines = theLines;
+        myHeight = theHeight;
+        myHoles = theHoles;
+        myBumpiness = theBumpiness;
+        myWells = theWells;
+    }
+
+    /**
+     * Scores a field.
+     *
+     * @param theField the field after the placement
+     * @param theLines the number of lines cleared on the way
+     * @return the score, Double.NEGATIVE_INFINITY if the game is over
+     */
+    double evaluate(final Field theField, final int theLines) {
+        if (theField.isToppedOut()) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        final int width = theField.getWidth();
+        int height = 0;
+        int bumpiness = 0;
+        int wells = 0;
+        int left = Integer.MAX_VALUE;
+        int column = theField.getColumnHeight(0);
+        for (int x = 0; x < width; x++) {
+            final int right;
+            if (x + 1 < width) {
+                right = theField.getColumnHeight(x + 1);
+                bumpiness += Math.abs(column - right);
+            } else {
+                right = Integer.MAX_VALUE;
+            }
+            height += column;
+            final int well = Math.min(left, right) - column;
+            if (well > 0 && well != Integer.MAX_VALUE - column) {
+                wells += well;
+            }
+            left = column;
+            column = right;
+        }
+
+        int holes = 0;
+        long covered = 0;
+        for (int y = theField.getStackHeight() - 1; y >= 0; y--) {
+            final long row = theField.getRow(y);
+            holes += Long.bitCount(covered & ~row);
+            covered |= row;
+        }
+        return myLines * theLines + myHeight * height + myHoles * holes
+               + myBumpiness * bumpiness + myWells * wells;
+    }
+
+    /**
+     * Scores the frozen blocks of a board.
+     *
+     * @param theFeatures the features of the board after the placement
+     * @param theLines the number of lines cleared on the way
+     * @return the score; whether the game is over is left to the caller
+     */
+    public double evaluate(final BoardFeatures theFeatures, final int theLines) {
+        return myLines * theLines + myHeight * theFeatures.getAggregateHeight()
+               + myHoles * theFeatures.getHoles() + myBumpiness * theFeatures.getBumpiness()
+               + myWells * theFeatures.getWells();
+    }
+
+    /**
+     * Scores the lines cleared on the way to a field, the part of evaluate
+     * that does not depend on the field.
+     *
+     * @param theLines the number of lines cleared
+     * @return their score
+     */
+    double scoreLines(final int theLines) {
+        return myLines * theLines;
+    }
+
+    @Override
+    public String toString() {
+        return "Heuristic[lines " + myLines + ", height " + myHeight + ", holes " + myHoles
+               + ", bumpiness " + myBumpiness + ", wells " + myWells + "]";
+    }
+}
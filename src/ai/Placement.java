@@ -0,0 +1,65 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package ai;
+
+import java.util.Collections;
+import java.util.List;
+import model.Block;
+import model.BoardAction;
+import model.PieceState;
+
+/**
+ * Where a piece ends up and the moves that take it there from where it
+ * spawned. Playing the moves on the board, in order, freezes the piece at
+ * the placement.
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class Placement {
+
+    /** The state the piece freezes in. */
+    private final PieceState myPiece;
+
+    /** The moves from the spawn position, ending with DROP. */
+    private final List<BoardAction> myPath;
+
+    /**
+     * Creates a placement.
+     *
+     * @param thePiece the state the piece freezes in
+     * @param thePath the moves from the spawn position, owned by the placement
+     */
+    Placement(final PieceState thePiece, final List<BoardAction> thePath) {
+        myPiece = thePiece;
+        myPath = Collections.unmodifiableList(thePath);
+    }
+
+    /**
+     * @return the type of the piece
+     */
+    public Block getType() {
+        return myPiece.getType();
+    }
+
+    /**
+     * @return the state the piece freezes in
+     */
+    public PieceState getPiece() {
+        return myPiece;
+    }
+
+    /**
+     * @return the moves from the spawn position, in order, ending with DROP
+     */
+    public List<BoardAction> getPath() {
+        return myPath;
+    }
+
+    @Override
+    public String toString() {
+        return myPiece + " via " + myPath;
+    }
+}
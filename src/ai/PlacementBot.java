@@ -0,0 +1,342 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package ai;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import model.Board;
+import model.BoardAction;
+import model.BoardSnapshot;
+import model.PieceShape;
+import model.PieceState;
+import model.Zobrist;
+import simulation.MovePolicy;
+
+/**
+ * A move policy that searches the placements of the current piece and,
+ * for each, the placements of the next piece, tucks and spins under
+ * overhangs included, and plays the current piece
+ * toward the pair the heuristic scores best. The placements of the current
+ * piece are scored in parallel on a fork-join pool; when the bot is itself
+ * run by a fork-join task, as in a headless simulation, they are scored in
+ * that task's pool instead.
+ *
+ * <p>The best score of the next piece on each field is kept in a
+ * transposition table keyed by the Zobrist hash of the field and the type
+ * of the piece, so a field reached again, by this bot or by another bot
+ * sharing the table, is not searched again. Bots may only share a table
+ * if they have the same heuristic. Where a piece cannot reach an overhang,
+ * its placements are straight drops onto the surface of the stack, whose
+ * landing rows are kept in a SurfaceCache that any bots may share.</p>
+ *
+ * <p>The search takes well under a millisecond on an ordinary board, and
+ * the bot plays the whole path to the placement at once, so it can keep up
+ * with the highest gravity as long as it is called before the board's next
+ * tick.</p>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class PlacementBot implements MovePolicy {
+
+    /** The number of placements a fork-join task scores without splitting further. */
+    private static final int PLACEMENTS_PER_TASK = 4;
+
+    /** The number of entries of the transposition table a bot makes for itself. */
+    private static final int TABLE_ENTRIES = 1 << 16;
+
+    /** The number of surfaces of the surface cache a bot makes for itself. */
+    private static final int CACHE_SURFACES = 1 << 14;
+
+    /** The depth of the scores of the next piece in the transposition table. */
+    private static final int LOOKAHEAD_DEPTH = 1;
+
+    /** Scores the placements. */
+    private final Heuristic myHeuristic;
+
+    /** Whether the placements of the next piece are searched too. */
+    private final boolean myLookahead;
+
+    /** Whether the piece is dropped, rather than left to fall, once it is in place. */
+    private final boolean myDrop;
+
+    /** The pool scoring the placements when the caller is not in one. */
+    private final ForkJoinPool myPool;
+
+    /** The scores of the next piece on the fields searched, null to keep none. */
+    private final TranspositionTable myTable;
+
+    /** The landing rows of straight drops on the surfaces searched, null to keep none. */
+    private final SurfaceCache myCache;
+
+    /**
+     * Creates a bot that looks one piece ahead with the default heuristic,
+     * drops the pieces and scores on the common pool.
+     */
+    public PlacementBot() {
+        this(Heuristic.DEFAULT, true, true, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a bot with a transposition table and a surface cache of its own.
+     *
+     * @param theHeuristic scores the placements
+     * @param theLookahead whether the placements of the next piece are searched too
+     * @param theDrop whether the piece is dropped once it is in place; if
+     *        not, it is left above its placement to fall on its own
+     * @param thePool the pool scoring the placements when the caller is not in one
+     */
+    public PlacementBot(final Heuristic theHeuristic, final boolean theLookahead,
+                        final boolean theDrop, final ForkJoinPool thePool) {
+        this(theHeuristic, theLookahead, theDrop, thePool,
+             new TranspositionTable(TABLE_ENTRIES), new SurfaceCache(CACHE_SURFACES));
+    }
+
+    /**
+     * Creates a bot.
+     *
+     * @param theHeuristic scores the placements
+     * @param theLookahead whether the placements of the next piece are searched too
+     * @param theDrop whether the piece is dropped once it is in place; if
+     *        not, it is left above its placement to fall on its own
+     * @param thePool the pool scoring the placements when the caller is not in one
+     * @param theTable the transposition table, possibly shared with other bots
+     *        of the same heuristic; null to keep none
+     * @param theCache the surface cache, possibly shared with any other bots;
+     *        null to keep none
+     */
+    public PlacementBot(final Heuristic theHeuristic, final boolean theLookahead,
+                        final boolean theDrop, final ForkJoinPool thePool,
+                        final TranspositionTable theTable, final SurfaceCache theCache) {
+        myHeuristic = theHeuristic;
+        myLookahead = theLookahead;
+        myDrop = theDrop;
+        myPool = thePool;
+        myTable = theTable;
+        myCache = theCache;
+    }
+
+    /**
+     * Chooses where to place the current piece of a board.
+     *
+     * @param theBoard the snapshot of the board
+     * @return the placement, null if the game is over
+     * @throws IllegalArgumentException if the board is wider than 60 columns
+     */
+    public Placement choose(final BoardSnapshot theBoard) {
+        final PieceState piece = theBoard.getCurrentPiece();
+        Placement result = null;
+        if (!theBoard.isGameOver() && piece != null) {
+            if (myTable != null) {
+                myTable.newSearch();
+            }
+            final Field field = Field.of(theBoard);
+            final PlacementSearch search = new PlacementSearch(myCache);
+            final int count = search.find(field, piece);
+            final int[] placements = search.getPlacements();
+            final double[] scores = new double[count];
+            PieceState next = null;
+            if (myLookahead) {
+                next = theBoard.getNextPiece();
+            }
+            final ScoreTask task = new ScoreTask(field, piece.getShape(), next,
+                                                 placements, scores, 0, count);
+            if (ForkJoinTask.inForkJoinPool()) {
+                task.invoke();
+            } else {
+                myPool.invoke(task);
+            }
+            int best = 0;
+            for (int i = 1; i < count; i++) {
+                if (scores[i] > scores[best]) {
+                    best = i;
+                }
+            }
+            if (count > 0) {
+                result = search.toPlacement(field, piece, placements[best]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void playPiece(final Board theBoard) {
+        final Placement placement = choose(theBoard.snapshot());
+        if (placement != null) {
+            for (final BoardAction action : placement.getPath()) {
+                apply(theBoard, action);
+            }
+        }
+    }
+
+    /**
+     * Plays a move of a path on the board.
+     *
+     * @param theBoard the board
+     * @param theAction the move
+     */
+    private void apply(final Board theBoard, final BoardAction theAction) {
+        switch (theAction) {
+            case MOVE_LEFT:
+                theBoard.moveLeft();
+                break;
+            case MOVE_RIGHT:
+                theBoard.moveRight();
+                break;
+            case MOVE_DOWN:
+                theBoard.moveDown();
+                break;
+            case ROTATE:
+                theBoard.rotate();
+                break;
+            case DROP:
+                if (myDrop) {
+                    theBoard.drop();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PlacementBot[" + myHeuristic + (myLookahead ? ", lookahead" : "") + "]";
+    }
+
+    /**
+     * A fork-join task scoring a range of the placements of the current piece.
+     */
+    private final class ScoreTask extends RecursiveAction {
+
+        /** The auto-generated serial ID. */
+        private static final long serialVersionUID = 4126839164502851079L;
+
+        /** The field before the current piece is placed. */
+        private final Field myField;
+
+        /** The shape of the current piece. */
+        private final PieceShape myShape;
+
+        /** The next piece at its spawn position, null to not look ahead. */
+        private final PieceState myNext;
+
+        /** The packed placements of the current piece. */
+        private final int[] myPlacements;
+
+        /** Receives the score of each placement. */
+        private final double[] myScores;
+
+        /** The index of the first placement of this task. */
+        private final int myFirst;
+
+        /** The index after the last placement of this task. */
+        private final int myLast;
+
+        /**
+         * Creates a task.
+         *
+         * @param theField the field before the current piece is placed; not changed
+         * @param theShape the shape of the current piece
+         * @param theNext the next piece at its spawn position, or null
+         * @param thePlacements the packed placements of the current piece
+         * @param theScores receives the score of each placement
+         * @param theFirst the index of the first placement
+         * @param theLast the index after the last placement
+         */
+        ScoreTask(final Field theField, final PieceShape theShape, final PieceState theNext,
+                  final int[] thePlacements, final double[] theScores,
+                  final int theFirst, final int theLast) {
+            super();
+            myField = theField;
+            myShape = theShape;
+            myNext = theNext;
+            myPlacements = thePlacements;
+            myScores = theScores;
+            myFirst = theFirst;
+            myLast = theLast;
+        }
+
+        @Override
+        protected void compute() {
+            if (myLast - myFirst <= PLACEMENTS_PER_TASK) {
+                scoreRange();
+            } else {
+                final int middle = (myFirst + myLast) >>> 1;
+                invokeAll(new ScoreTask(myField, myShape, myNext, myPlacements, myScores,
+                                        myFirst, middle),
+                          new ScoreTask(myField, myShape, myNext, myPlacements, myScores,
+                                        middle, myLast));
+            }
+        }
+
+        /**
+         * Scores the placements of this task.
+         */
+        private void scoreRange() {
+            final Field placed = new Field(myField.getWidth(), myField.getHeight());
+            Field next = null;
+            PlacementSearch search = null;
+            if (myNext != null) {
+                next = new Field(myField.getWidth(), myField.getHeight());
+                search = new PlacementSearch(myCache);
+            }
+            for (int i = myFirst; i < myLast; i++) {
+                final int placement = myPlacements[i];
+                placed.copyFrom(myField);
+                final int lines = placed.place(myShape, PlacementSearch.rotation(placement),
+                                               PlacementSearch.x(placement),
+                                               PlacementSearch.y(placement));
+                if (next == null || placed.isToppedOut()) {
+                    myScores[i] = myHeuristic.evaluate(placed, lines);
+                } else {
+                    myScores[i] = myHeuristic.scoreLines(lines) + scoreNext(placed, next, search);
+                }
+            }
+        }
+
+        /**
+         * Scores a field by the best placement of the next piece on it,
+         * leaving out the lines the current piece cleared. The score is
+         * rounded to a float whether or not it comes from the transposition
+         * table, so the bot chooses the same either way.
+         *
+         * @param theField the field after the current piece is placed
+         * @param theNext a field to place the next piece on
+         * @param theSearch finds the placements of the next piece
+         * @return the best score, Double.NEGATIVE_INFINITY if every
+         *         placement ends the game
+         */
+        private double scoreNext(final Field theField, final Field theNext,
+                                 final PlacementSearch theSearch) {
+            long key = 0;
+            float result = Float.NaN;
+            if (myTable != null) {
+                key = theField.getHash() ^ Zobrist.piece(myNext.getType());
+                result = myTable.probe(key, LOOKAHEAD_DEPTH);
+            }
+            if (Float.isNaN(result)) {
+                final PieceShape shape = myNext.getShape();
+                final int count = theSearch.find(theField, myNext);
+                final int[] placements = theSearch.getPlacements();
+                double best = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < count; i++) {
+                    final int placement = placements[i];
+                    theNext.copyFrom(theField);
+                    final int lines = theNext.place(shape, PlacementSearch.rotation(placement),
+                                                    PlacementSearch.x(placement),
+                                                    PlacementSearch.y(placement));
+                    best = Math.max(best, myHeuristic.evaluate(theNext, lines));
+                }
+                result = (float) best;
+                if (myTable != null) {
+                    myTable.store(key, LOOKAHEAD_DEPTH, result);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,934 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import model.Block;
+import model.BoardAction;
+import model.BoardSnapshot;
+import model.PieceShape;
+import model.PieceState;
+
+/**
+ * Finds every placement a piece can reach from where it is by the moves a
+ * player has: shifting left or right, rotating in place and moving down.
+ * That includes placements under overhangs that the piece can only be
+ * slid or turned into after falling.
+ *
+ * <p>The search works on whole rows at once. For each rotation and row it
+ * keeps a mask of the x-coordinates the piece fits at, built by shifting
+ * the rows of the field by the cells of the piece, and a mask of the
+ * x-coordinates it can reach, the visited set of the search. Moving
+ * sideways is a shift of a reach mask, moving down or rotating is an AND
+ * with the fits mask of another row or rotation, so a row is explored in a
+ * handful of word operations rather than one position at a time. Since no
+ * move goes up, the rows are explored once each, from the piece down. A
+ * placement is a reachable position the piece cannot move down from.</p>
+ *
+ * <p>Placements are packed into ints: the rotation in the lowest bits, then
+ * the x and the y coordinate, both offset by BOX_SIZE so that they are
+ * never negative. Rotations of a piece that cover the same cells, such as
+ * the two flat rotations of the I piece, give one placement, packed under
+ * the lower rotation index. The paths to the placements are found by a
+ * breadth-first search over the same masks, one set of masks per number
+ * of moves, so that every path uses the fewest turns and shifts; the path
+ * to cells two rotations cover leads to whichever takes fewer.</p>
+ *
+ * <p>Where the piece cannot reach an overhang, every placement is a
+ * straight drop, which depends only on the surface of the stack. A search
+ * given a SurfaceCache then takes the landing rows from the cache and
+ * explores only the row the piece starts in; tucks and spins are always
+ * searched.</p>
+ *
+ * <p>A search keeps its masks between calls so that find allocates nothing
+ * once it has seen a field of a given size; it is not thread-safe.</p>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class PlacementSearch {
+
+    /** The offset of the x-coordinates in the masks, so that they are never negative. */
+    private static final int X_OFFSET = PieceShape.BOX_SIZE;
+
+    /** The offset of the rows in the masks, so that they are never negative. */
+    private static final int Y_OFFSET = PieceShape.BOX_SIZE;
+
+    /** The number of bits of the rotation in a packed placement. */
+    private static final int ROTATION_BITS = 2;
+
+    /** The number of bits of the x-coordinate in a packed placement. */
+    private static final int X_BITS = 8;
+
+    /** The mask of the rotation in a packed placement. */
+    private static final int ROTATION_MASK = (1 << ROTATION_BITS) - 1;
+
+    /** The mask of the x-coordinate in a packed placement, once shifted down. */
+    private static final int X_MASK = (1 << X_BITS) - 1;
+
+    /** The shift of the y-coordinate in a packed placement. */
+    private static final int Y_SHIFT = ROTATION_BITS + X_BITS;
+
+    /** The placements a search can hold before it grows. */
+    private static final int INITIAL_PLACEMENTS = 64;
+
+    /**
+     * For each piece type, indexed by Block ordinal, and each rotation, the
+     * lowest rotation covering the same cells, or -1 if there is none.
+     */
+    private static final int[][] EQUIVALENT = new int[Block.values().length][];
+
+    /** The x-coordinate of the equivalent rotation minus that of the rotation. */
+    private static final int[][] EQUIVALENT_DX = new int[Block.values().length][];
+
+    /** The y-coordinate of the equivalent rotation minus that of the rotation. */
+    private static final int[][] EQUIVALENT_DY = new int[Block.values().length][];
+
+    static {
+        for (final Block type : Block.values()) {
+            if (type != Block.EMPTY) {
+                findEquivalents(PieceShape.of(type));
+            }
+        }
+    }
+
+    /** The number of rows of the field the masks are laid out for. */
+    private int myRows;
+
+    /** The number of masks per rotation: the rows of the field and those below it. */
+    private int myStride;
+
+    /**
+     * The lowest row, up to that of the piece, from which every rotation of
+     * the piece is clear of the stack, so fits wherever the walls allow.
+     */
+    private int myClear;
+
+    /** The number of bits of the masks that can be set: the columns and X_OFFSET. */
+    private int mySpan;
+
+    /** The x-coordinates each rotation fits at on the field, inside the walls. */
+    private final long[] myValid = new long[PieceShape.BOX_SIZE];
+
+    /** The x-coordinates the piece fits at, one mask per rotation and row. */
+    private long[] myFits = new long[0];
+
+    /** The x-coordinates the piece reaches, one mask per rotation and row. */
+    private long[] myReach = new long[0];
+
+    /** The x-coordinates the piece can be placed at, one mask per rotation and row. */
+    private long[] myLocks = new long[0];
+
+    /** The positions first reached after each number of moves, laid out like myReach. */
+    private long[][] myLayers = new long[0][];
+
+    /** The packed placements of the last search. */
+    private int[] myPlacements = new int[INITIAL_PLACEMENTS];
+
+    /** The landing rows of straight drops, null to search them. */
+    private final SurfaceCache myCache;
+
+    /**
+     * Creates a search that searches every placement.
+     */
+    public PlacementSearch() {
+        this(null);
+    }
+
+    /**
+     * Creates a search.
+     *
+     * @param theCache the landing rows of straight drops, possibly shared
+     *        with other searches; null to search them
+     */
+    public PlacementSearch(final SurfaceCache theCache) {
+        myCache = theCache;
+    }
+
+    /**
+     * Finds the placements of the current piece of a board and the moves
+     * reaching each.
+     *
+     * @param theBoard the snapshot of the board
+     * @return the placements, in no particular order; empty if the game is over
+     * @throws IllegalArgumentException if the board is wider than Field.MAX_WIDTH
+     */
+    public List<Placement> findAll(final BoardSnapshot theBoard) {
+        final PieceState piece = theBoard.getCurrentPiece();
+        List<Placement> result = Collections.emptyList();
+        if (!theBoard.isGameOver() && piece != null) {
+            result = findAll(Field.of(theBoard), piece);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the placements of a piece and the moves reaching each.
+     *
+     * @param theField the field
+     * @param thePiece the piece where it is
+     * @return the placements, in no particular order; empty if the piece
+     *         does not fit where it is
+     */
+    List<Placement> findAll(final Field theField, final PieceState thePiece) {
+        final int layers = explore(theField, thePiece);
+        int count = 0;
+        if (layers > 0) {
+            count = collect(thePiece, -Y_OFFSET, thePiece.getY());
+        }
+        final List<Placement> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(trace(thePiece, myPlacements[i], layers));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the placements of a piece without the moves reaching them.
+     * This is the fast path: it makes one pass down the rows, skipping
+     * those above the stack, or takes the straight drops from the cache
+     * where the piece cannot reach an overhang.
+     *
+     * @param theField the field
+     * @param thePiece the piece where it is
+     * @return the number of placements, which getPlacements() holds; 0 if
+     *         the piece does not fit where it is
+     */
+    int find(final Field theField, final PieceState thePiece) {
+        int result = -1;
+        if (myCache != null) {
+            final int base = lowestColumn(theField);
+            if (dropsOnly(theField, thePiece, base)) {
+                result = findDrops(theField, thePiece, base);
+            }
+        }
+        if (result < 0) {
+            result = search(theField, thePiece);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the placements of a piece by one pass down the rows.
+     *
+     * @param theField the field
+     * @param thePiece the piece where it is
+     * @return the number of placements; 0 if the piece does not fit where it is
+     */
+    private int search(final Field theField, final PieceState thePiece) {
+        final PieceShape shape = thePiece.getShape();
+        final int start = thePiece.getRotation();
+        final int top = thePiece.getY();
+        final int count = shape.getRotationCount();
+        int bottom = 0;
+        int clear = -1;
+        if (prepare(theField, thePiece, false)) {
+            clear = myClear;
+            for (int rotation = 0; rotation < count; rotation++) {
+                myReach[index(rotation, top)] = 0;
+            }
+            myReach[index(start, top)] = 1L << thePiece.getX() + X_OFFSET;
+            closeRow(shape, top);
+            // down to the stack, every row is reached as the top row is, and holds no placement
+            for (int rotation = 0; rotation < count; rotation++) {
+                myReach[index(rotation, clear)] = myReach[index(rotation, top)];
+            }
+            boolean reached = true;
+            for (bottom = clear; reached && bottom > -Y_OFFSET; bottom--) {
+                final int y = bottom - 1;
+                // a row the piece fits in as it does in the row above is reached as that row is
+                boolean same = true;
+                reached = false;
+                for (int rotation = 0; rotation < count; rotation++) {
+                    final int index = index(rotation, y);
+                    myReach[index] = myReach[index + 1] & myFits[index];
+                    same &= myFits[index] == myFits[index + 1];
+                    reached |= myReach[index] != 0;
+                }
+                if (reached && !same) {
+                    closeRow(shape, y);
+                }
+            }
+        }
+        return collect(thePiece, bottom, clear);
+    }
+
+    /**
+     * @param theField a field
+     * @return the height of its lowest column
+     */
+    private static int lowestColumn(final Field theField) {
+        int result = theField.getStackHeight();
+        for (int x = 0; x < theField.getWidth(); x++) {
+            result = Math.min(result, theField.getColumnHeight(x));
+        }
+        return result;
+    }
+
+    /**
+     * Tests whether every placement of a piece is a straight drop: the piece
+     * starts clear of the stack in every rotation, and no empty cell under
+     * an overhang is as high as the lowest cell of a dropped piece can be.
+     * A piece resting on the surface has a cell at or above the lowest
+     * column, and turning it lowers its lowest cell by less than BOX_SIZE
+     * rows, so a piece that never overlaps such a cell has nowhere to slide
+     * or turn into that it could not be dropped into.
+     *
+     * @param theField the field
+     * @param thePiece the piece where it is
+     * @param theBase the height of the lowest column
+     * @return true if the placements are the straight drops
+     */
+    private static boolean dropsOnly(final Field theField, final PieceState thePiece,
+                                     final int theBase) {
+        final PieceShape shape = thePiece.getShape();
+        boolean result = true;
+        for (int rotation = 0; result && rotation < shape.getRotationCount(); rotation++) {
+            result = theField.getStackHeight() <= thePiece.getY() + shape.getMinY(rotation);
+        }
+        final int low = Math.max(0, theBase - PieceShape.BOX_SIZE + 1);
+        long covered = 0;
+        for (int y = theField.getStackHeight() - 1; result && y >= low; y--) {
+            final long row = theField.getRow(y);
+            result = (covered & ~row) == 0;
+            covered |= row;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the placements of a piece that starts clear of the stack and
+     * cannot reach an overhang: the straight drops of the positions it can
+     * reach in the row it starts in, landing where the cache says. They are
+     * packed in the order collect packs them.
+     *
+     * @param theField the field
+     * @param thePiece the piece where it is
+     * @param theBase the height of the lowest column
+     * @return the number of placements; 0 if the piece does not fit where it is
+     */
+    private int findDrops(final Field theField, final PieceState thePiece,
+                          final int theBase) {
+        final PieceShape shape = thePiece.getShape();
+        final int top = thePiece.getY();
+        final int count = shape.getRotationCount();
+        int result = 0;
+        if (prepareRow(theField, thePiece)) {
+            for (int rotation = 0; rotation < count; rotation++) {
+                myReach[index(rotation, top)] = 0;
+            }
+            myReach[index(thePiece.getRotation(), top)] = 1L << thePiece.getX() + X_OFFSET;
+            closeRow(shape, top);
+            final int[] landings = myCache.landings(theField, shape, theBase);
+            final int width = theField.getWidth();
+            final int ordinal = thePiece.getType().ordinal();
+            for (int rotation = 0; rotation < count; rotation++) {
+                long reach = myReach[index(rotation, top)];
+                final int equivalent = EQUIVALENT[ordinal][rotation];
+                if (equivalent >= 0) {
+                    // the drop lands where that of the equivalent rotation does
+                    final int dx = EQUIVALENT_DX[ordinal][rotation];
+                    final long same = myReach[index(equivalent, top)];
+                    if (dx >= 0) {
+                        reach &= ~(same >>> dx);
+                    } else {
+                        reach &= ~(same << -dx);
+                    }
+                }
+                final int first = result;
+                final int row = rotation * width + shape.getMinX(rotation) - X_OFFSET;
+                while (reach != 0) {
+                    if (result == myPlacements.length) {
+                        myPlacements = Arrays.copyOf(myPlacements, 2 * result);
+                    }
+                    final int column = Long.numberOfTrailingZeros(reach);
+                    myPlacements[result] = pack(rotation, column - X_OFFSET,
+                                                theBase + landings[row + column]);
+                    result++;
+                    reach &= reach - 1;
+                }
+                Arrays.sort(myPlacements, first, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the packed placements found by the last search. The array is
+     * reused by the next search and may be longer than the number found.
+     *
+     * @return the packed placements
+     */
+    int[] getPlacements() {
+        return myPlacements;
+    }
+
+    /**
+     * Builds a placement and the fewest moves reaching it.
+     *
+     * @param theField the field
+     * @param theStart the piece where the search started
+     * @param thePlacement the packed placement, found by a search of the same piece
+     * @return the placement
+     */
+    Placement toPlacement(final Field theField, final PieceState theStart,
+                          final int thePlacement) {
+        return trace(theStart, thePlacement, explore(theField, theStart));
+    }
+
+    /**
+     * Packs a placement.
+     *
+     * @param theRotation the rotation index
+     * @param theX the x-coordinate
+     * @param theY the y-coordinate
+     * @return the packed placement
+     */
+    static int pack(final int theRotation, final int theX, final int theY) {
+        return (theY + PieceShape.BOX_SIZE) << Y_SHIFT
+               | (theX + PieceShape.BOX_SIZE) << ROTATION_BITS | theRotation;
+    }
+
+    /**
+     * @param thePlacement a packed placement
+     * @return its rotation index
+     */
+    static int rotation(final int thePlacement) {
+        return thePlacement & ROTATION_MASK;
+    }
+
+    /**
+     * @param thePlacement a packed placement
+     * @return its x-coordinate
+     */
+    static int x(final int thePlacement) {
+        return (thePlacement >>> ROTATION_BITS & X_MASK) - PieceShape.BOX_SIZE;
+    }
+
+    /**
+     * @param thePlacement a packed placement
+     * @return its y-coordinate
+     */
+    static int y(final int thePlacement) {
+        return (thePlacement >>> Y_SHIFT) - PieceShape.BOX_SIZE;
+    }
+
+    /**
+     * Lays the masks out for a field and computes where each rotation of a
+     * piece fits, from the row of the piece down.
+     *
+     * @param theField the field
+     * @param thePiece the piece where it is
+     * @param theAllRows whether to compute the rows between myClear and the
+     *        row of the piece, which fit wherever the walls allow
+     * @return true if the piece fits where it is
+     */
+    private boolean prepare(final Field theField, final PieceState thePiece,
+                            final boolean theAllRows) {
+        final PieceShape shape = thePiece.getShape();
+        final int count = shape.getRotationCount();
+        final int top = thePiece.getY();
+        final boolean result = layOut(theField, thePiece);
+        if (result) {
+            final int width = theField.getWidth();
+            myClear = -Y_OFFSET;
+            for (int rotation = 0; rotation < count; rotation++) {
+                myClear = Math.max(myClear,
+                                   theField.getStackHeight() - shape.getMinY(rotation));
+            }
+            myClear = Math.min(myClear, top);
+            for (int rotation = 0; rotation < count; rotation++) {
+                final int low = X_OFFSET - shape.getMinX(rotation);
+                final int high = width - 1 - shape.getMaxX(rotation) + X_OFFSET;
+                myValid[rotation] = -1L >>> Long.SIZE - 1 - high & -1L << low;
+                for (int y = -Y_OFFSET; y <= myClear; y++) {
+                    myFits[index(rotation, y)] = fits(theField, shape, rotation, y);
+                }
+                int y = top;
+                if (theAllRows) {
+                    y = myClear + 1;
+                }
+                for (; y <= top; y++) {
+                    myFits[index(rotation, y)] = fits(theField, shape, rotation, y);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lays the masks out for a field and computes where each rotation of a
+     * piece that starts clear of the stack fits in the row it starts in,
+     * wherever the walls allow.
+     *
+     * @param theField the field
+     * @param thePiece the piece where it is, clear of the stack
+     * @return true if the piece fits where it is
+     */
+    private boolean prepareRow(final Field theField, final PieceState thePiece) {
+        final PieceShape shape = thePiece.getShape();
+        final boolean result = layOut(theField, thePiece);
+        if (result) {
+            final int width = theField.getWidth();
+            for (int rotation = 0; rotation < shape.getRotationCount(); rotation++) {
+                final int low = X_OFFSET - shape.getMinX(rotation);
+                final int high = width - 1 - shape.getMaxX(rotation) + X_OFFSET;
+                myValid[rotation] = -1L >>> Long.SIZE - 1 - high & -1L << low;
+                myFits[index(rotation, thePiece.getY())] = myValid[rotation];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lays the masks out for a field, if they are not laid out for a field
+     * of its size already, and sets the span of the masks.
+     *
+     * @param theField the field
+     * @param thePiece the piece where it is
+     * @return true if the piece fits where it is
+     */
+    private boolean layOut(final Field theField, final PieceState thePiece) {
+        final int rows = theField.getRowCount();
+        if (myRows != rows) {
+            myRows = rows;
+            myStride = rows + Y_OFFSET;
+            myFits = new long[PieceShape.BOX_SIZE * myStride];
+            myReach = new long[PieceShape.BOX_SIZE * myStride];
+            myLocks = new long[PieceShape.BOX_SIZE * myStride];
+            myLayers = new long[0][];
+        }
+        mySpan = theField.getWidth() + X_OFFSET;
+        final int top = thePiece.getY();
+        return top >= -Y_OFFSET && top < rows
+               && theField.fits(thePiece.getShape(), thePiece.getRotation(),
+                                thePiece.getX(), top);
+    }
+
+    /**
+     * Returns the x-coordinates a rotation of a piece fits at in a row.
+     *
+     * @param theField the field
+     * @param theShape the shape of the piece
+     * @param theRotation the rotation index, whose myValid is computed
+     * @param theY the y-coordinate of the piece
+     * @return the mask of the x-coordinates
+     */
+    private long fits(final Field theField, final PieceShape theShape,
+                      final int theRotation, final int theY) {
+        final long result;
+        if (theY + theShape.getMinY(theRotation) < 0
+                        || theY + theShape.getMaxY(theRotation) >= theField.getRowCount()) {
+            result = 0;
+        } else if (theY + theShape.getMinY(theRotation) >= theField.getStackHeight()) {
+            result = myValid[theRotation];
+        } else {
+            result = myValid[theRotation] & ~blocked(theField, theShape, theRotation, theY);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the x-coordinates at which a rotation of a piece overlaps a
+     * cell of the field, ignoring the walls.
+     *
+     * @param theField the field
+     * @param theShape the shape of the piece
+     * @param theRotation the rotation index
+     * @param theY the y-coordinate of the piece
+     * @return the mask of the overlapping x-coordinates
+     */
+    private static long blocked(final Field theField, final PieceShape theShape,
+                                final int theRotation, final int theY) {
+        long result = 0;
+        for (int row = theShape.getMinY(theRotation);
+                        row <= theShape.getMaxY(theRotation); row++) {
+            // a cell at offset i overlaps column c when the piece is at c - i
+            final long cells = theField.getRow(theY + row) << X_OFFSET;
+            long mask = theShape.getRowMask(theRotation, row);
+            while (cells != 0 && mask != 0) {
+                result |= cells >>> Long.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Extends the reach of a row by every shift and turn within the row.
+     *
+     * @param theShape the shape of the piece
+     * @param theY the row
+     */
+    private void closeRow(final PieceShape theShape, final int theY) {
+        final int count = theShape.getRotationCount();
+        // one bit per rotation whose reach has grown since it was last spread
+        int changed = 0;
+        for (int rotation = 0; rotation < count; rotation++) {
+            if (myReach[index(rotation, theY)] != 0) {
+                changed |= 1 << rotation;
+            }
+        }
+        while (changed != 0) {
+            final int rotation = Integer.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+            final int index = index(rotation, theY);
+            final long reach = spread(myReach[index], myFits[index]);
+            myReach[index] = reach;
+            final int turned = theShape.nextRotation(rotation);
+            final int next = index(turned, theY);
+            final long added = reach & myFits[next] & ~myReach[next];
+            if (added != 0) {
+                myReach[next] |= added;
+                changed |= 1 << turned;
+            }
+        }
+    }
+
+    /**
+     * Spreads a set of x-coordinates left and right through the
+     * x-coordinates a piece fits at, by occluded fills of doubling shifts:
+     * after the shift by n, every run of up to 2n fitting positions from
+     * the start is filled.
+     *
+     * @param theFrom the starting x-coordinates
+     * @param theFits the x-coordinates the piece fits at
+     * @return every x-coordinate reachable from the start by shifting
+     */
+    private long spread(final long theFrom, final long theFits) {
+        long right = theFrom;
+        long left = theFrom;
+        long rightFits = theFits;
+        long leftFits = theFits;
+        for (int shift = 1; shift < mySpan; shift <<= 1) {
+            right |= rightFits & right << shift;
+            rightFits &= rightFits << shift;
+            left |= leftFits & left >>> shift;
+            leftFits &= leftFits >>> shift;
+        }
+        return right | left;
+    }
+
+    /**
+     * Explores the positions of a piece breadth first, recording in myLayers
+     * the positions first reached after each number of moves and in myReach
+     * every position reached.
+     *
+     * @param theField the field
+     * @param thePiece the piece where it is
+     * @return the number of layers, 0 if the piece does not fit where it is
+     */
+    private int explore(final Field theField, final PieceState thePiece) {
+        int result = 0;
+        if (prepare(theField, thePiece, true)) {
+            final PieceShape shape = thePiece.getShape();
+            final int count = shape.getRotationCount();
+            final int top = thePiece.getY();
+            for (int rotation = 0; rotation < count; rotation++) {
+                Arrays.fill(myReach, index(rotation, -Y_OFFSET), index(rotation, top) + 1, 0L);
+            }
+            final int start = index(thePiece.getRotation(), top);
+            final long origin = 1L << thePiece.getX() + X_OFFSET;
+            layer(0)[start] = origin;
+            myReach[start] = origin;
+            result = 1;
+            // the rows of the last layer; a move goes down at most one row
+            int low = top;
+            int high = top;
+            boolean found = true;
+            while (found) {
+                final long[] from = myLayers[result - 1];
+                final long[] to = layer(result);
+                found = false;
+                for (int rotation = 0; rotation < count; rotation++) {
+                    final int turned = shape.nextRotation(rotation);
+                    for (int y = low; y <= high; y++) {
+                        final int index = index(rotation, y);
+                        final long reach = from[index];
+                        if (reach != 0) {
+                            found |= visit(to, index,
+                                           (reach << 1 | reach >>> 1) & myFits[index]);
+                            final int next = index(turned, y);
+                            found |= visit(to, next, reach & myFits[next]);
+                            if (y > -Y_OFFSET) {
+                                found |= visit(to, index - 1, reach & myFits[index - 1]);
+                            }
+                        }
+                    }
+                }
+                if (found) {
+                    result++;
+                    while (low > -Y_OFFSET && !isEmpty(to, count, low - 1)) {
+                        low--;
+                    }
+                    while (isEmpty(to, count, high)) {
+                        high--;
+                    }
+                    while (isEmpty(to, count, low)) {
+                        low++;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tests whether a layer of the breadth-first search has no position in a row.
+     *
+     * @param theLayer the layer
+     * @param theCount the number of rotations of the piece
+     * @param theY the row
+     * @return true if no rotation of the piece is in the row
+     */
+    private boolean isEmpty(final long[] theLayer, final int theCount, final int theY) {
+        long result = 0;
+        for (int rotation = 0; rotation < theCount; rotation++) {
+            result |= theLayer[index(rotation, theY)];
+        }
+        return result == 0;
+    }
+
+    /**
+     * Returns a layer of the breadth-first search, cleared.
+     *
+     * @param theLayer the number of moves
+     * @return the layer
+     */
+    private long[] layer(final int theLayer) {
+        if (theLayer >= myLayers.length) {
+            final int old = myLayers.length;
+            myLayers = Arrays.copyOf(myLayers, Math.max(2 * old, PieceShape.BOX_SIZE));
+            for (int i = old; i < myLayers.length; i++) {
+                myLayers[i] = new long[PieceShape.BOX_SIZE * myStride];
+            }
+        }
+        final long[] result = myLayers[theLayer];
+        Arrays.fill(result, 0L);
+        return result;
+    }
+
+    /**
+     * Adds the positions not reached yet from a set to a layer.
+     *
+     * @param theLayer the layer
+     * @param theIndex the rotation and row of the positions
+     * @param thePositions the x-coordinates of the positions
+     * @return true if any was not reached yet
+     */
+    private boolean visit(final long[] theLayer, final int theIndex, final long thePositions) {
+        final long added = thePositions & ~myReach[theIndex];
+        myReach[theIndex] |= added;
+        theLayer[theIndex] |= added;
+        return added != 0;
+    }
+
+    /**
+     * Packs the reachable positions the piece cannot move down from into
+     * myPlacements, one per set of cells.
+     *
+     * @param thePiece the piece where it was
+     * @param theBottom the lowest row explored
+     * @param theTop the highest row explored, below theBottom if none was
+     * @return the number of placements
+     */
+    private int collect(final PieceState thePiece, final int theBottom, final int theTop) {
+        final PieceShape shape = thePiece.getShape();
+        final int count = shape.getRotationCount();
+        for (int rotation = 0; rotation < count; rotation++) {
+            for (int y = theBottom; y <= theTop; y++) {
+                final int index = index(rotation, y);
+                long below = 0;
+                if (y > -Y_OFFSET) {
+                    below = myFits[index - 1];
+                }
+                myLocks[index] = myReach[index] & ~below;
+            }
+        }
+        final int ordinal = thePiece.getType().ordinal();
+        int result = 0;
+        for (int rotation = 0; rotation < count; rotation++) {
+            final int equivalent = EQUIVALENT[ordinal][rotation];
+            for (int y = theBottom; y <= theTop; y++) {
+                long locks = myLocks[index(rotation, y)];
+                final int other = y + EQUIVALENT_DY[ordinal][rotation];
+                if (equivalent >= 0 && locks != 0 && other >= theBottom && other <= theTop) {
+                    final int dx = EQUIVALENT_DX[ordinal][rotation];
+                    final long same = myLocks[index(equivalent, other)];
+                    if (dx >= 0) {
+                        locks &= ~(same >>> dx);
+                    } else {
+                        locks &= ~(same << -dx);
+                    }
+                }
+                while (locks != 0) {
+                    if (result == myPlacements.length) {
+                        myPlacements = Arrays.copyOf(myPlacements, 2 * result);
+                    }
+                    myPlacements[result] = pack(rotation,
+                                                Long.numberOfTrailingZeros(locks) - X_OFFSET, y);
+                    result++;
+                    locks &= locks - 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Walks back through the layers of the breadth-first search from a
+     * placement to the piece, preferring to have moved down last, and turns
+     * the final run of moves down into a drop. Of the rotations covering
+     * the cells of the placement, the one reached with the fewest turns and
+     * shifts is taken.
+     *
+     * @param theStart the piece where the search started
+     * @param thePlacement the packed placement
+     * @param theLayers the number of layers explored
+     * @return the placement and its path
+     */
+    private Placement trace(final PieceState theStart, final int thePlacement,
+                            final int theLayers) {
+        final PieceShape shape = theStart.getShape();
+        final int ordinal = theStart.getType().ordinal();
+        final int top = theStart.getY();
+        final int placed = rotation(thePlacement);
+        int rotation = -1;
+        int column = 0;
+        int y = 0;
+        int layer = 0;
+        for (int other = placed; other < shape.getRotationCount(); other++) {
+            if (other == placed || EQUIVALENT[ordinal][other] == placed) {
+                int otherColumn = x(thePlacement) + X_OFFSET;
+                int otherY = y(thePlacement);
+                if (other != placed) {
+                    otherColumn -= EQUIVALENT_DX[ordinal][other];
+                    otherY -= EQUIVALENT_DY[ordinal][other];
+                }
+                final int otherLayer = layerOf(other, otherColumn, otherY, top, theLayers);
+                // the moves down are set by the rows fallen; compare the turns and shifts
+                if (otherLayer >= 0 && (rotation < 0
+                                || otherLayer - (top - otherY) < layer - (top - y))) {
+                    rotation = other;
+                    column = otherColumn;
+                    y = otherY;
+                    layer = otherLayer;
+                }
+            }
+        }
+        if (rotation < 0) {
+            throw new IllegalArgumentException("Unreachable placement " + thePlacement);
+        }
+        final PieceState piece = PieceState.valueOf(theStart.getType(), rotation,
+                                                    column - X_OFFSET, y);
+        final List<BoardAction> path = new ArrayList<>(layer + 1);
+        for (layer--; layer >= 0; layer--) {
+            final long[] from = myLayers[layer];
+            final int index = index(rotation, y);
+            if (y < top && (from[index + 1] & 1L << column) != 0) {
+                path.add(BoardAction.MOVE_DOWN);
+                y++;
+            } else if ((from[index] & 1L << column + 1) != 0) {
+                path.add(BoardAction.MOVE_LEFT);
+                column++;
+            } else if ((from[index] & 1L << column - 1) != 0) {
+                path.add(BoardAction.MOVE_RIGHT);
+                column--;
+            } else {
+                path.add(BoardAction.ROTATE);
+                rotation = previousRotation(shape, rotation);
+            }
+        }
+        Collections.reverse(path);
+        while (!path.isEmpty() && path.get(path.size() - 1) == BoardAction.MOVE_DOWN) {
+            path.remove(path.size() - 1);
+        }
+        path.add(BoardAction.DROP);
+        return new Placement(piece, path);
+    }
+
+    /**
+     * Returns the number of moves after which the breadth-first search first
+     * reached a position.
+     *
+     * @param theRotation the rotation index of the position
+     * @param theColumn the x-coordinate of the position, offset by X_OFFSET
+     * @param theY the y-coordinate of the position
+     * @param theTop the highest row explored
+     * @param theLayers the number of layers explored
+     * @return the number of moves, -1 if the position was not reached
+     */
+    private int layerOf(final int theRotation, final int theColumn, final int theY,
+                        final int theTop, final int theLayers) {
+        int result = -1;
+        if (theY >= -Y_OFFSET && theY <= theTop && theColumn >= 0 && theColumn < Long.SIZE
+                        && (myReach[index(theRotation, theY)] & 1L << theColumn) != 0) {
+            final int index = index(theRotation, theY);
+            result = 0;
+            while (result < theLayers && (myLayers[result][index] & 1L << theColumn) == 0) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns where the masks of a rotation and row are.
+     *
+     * @param theRotation the rotation index
+     * @param theY the y-coordinate of the piece
+     * @return the index of the masks
+     */
+    private int index(final int theRotation, final int theY) {
+        return theRotation * myStride + theY + Y_OFFSET;
+    }
+
+    /**
+     * Returns the rotation a piece turns from into a rotation.
+     *
+     * @param theShape the shape of the piece
+     * @param theRotation the rotation index
+     * @return the rotation index before it
+     */
+    private static int previousRotation(final PieceShape theShape, final int theRotation) {
+        return (theRotation + theShape.getRotationCount() - 1) % theShape.getRotationCount();
+    }
+
+    /**
+     * Records, for each rotation of a shape, the lowest rotation covering
+     * the same cells once moved, and how far to move it.
+     *
+     * @param theShape the shape
+     */
+    private static void findEquivalents(final PieceShape theShape) {
+        final int ordinal = theShape.getType().ordinal();
+        final int count = theShape.getRotationCount();
+        EQUIVALENT[ordinal] = new int[count];
+        EQUIVALENT_DX[ordinal] = new int[count];
+        EQUIVALENT_DY[ordinal] = new int[count];
+        for (int rotation = 0; rotation < count; rotation++) {
+            EQUIVALENT[ordinal][rotation] = -1;
+            for (int other = 0; other < rotation && EQUIVALENT[ordinal][rotation] < 0;
+                            other++) {
+                final int dx = theShape.getMinX(rotation) - theShape.getMinX(other);
+                final int dy = theShape.getMinY(rotation) - theShape.getMinY(other);
+                boolean same = theShape.getMaxY(rotation) - theShape.getMaxY(other) == dy;
+                for (int row = theShape.getMinY(rotation);
+                                same && row <= theShape.getMaxY(rotation); row++) {
+                    same = theShape.getRowMask(rotation, row) >>> theShape.getMinX(rotation)
+                           == theShape.getRowMask(other, row - dy) >>> theShape.getMinX(other);
+                }
+                if (same) {
+                    EQUIVALENT[ordinal][rotation] = other;
+                    EQUIVALENT_DX[ordinal][rotation] = dx;
+                    EQUIVALENT_DY[ordinal][rotation] = dy;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package ai;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+import model.PieceShape;
+
+/**
+ * A fixed-size cache of where a piece lands when it is dropped straight
+ * down onto a surface, that any number of search threads share without
+ * locking.
+ *
+ * <p>The surface of a field is its column heights less the lowest of them.
+ * A piece dropped straight down lands on the highest of the columns under
+ * it, so the row it lands in depends on the surface and the height of the
+ * lowest column and on nothing else: whatever lies buried beneath the
+ * surface, and however high the stack is, a contour seen once is found
+ * again. The cache keeps, under the piece type and the surface, the row
+ * each rotation lands in at each column, less the height of the lowest
+ * column. Placements a piece can only be slid or turned into under an
+ * overhang depend on more than the surface and are not cached; the search
+ * asks the cache only for fields where the piece cannot reach one.</p>
+ *
+ * <p>Entries are grouped four to a bucket; a surface can only be in the
+ * bucket its hash selects. Each bucket evicts by the clock: a hit marks
+ * its entry, and a new surface takes the place of the first entry from
+ * the hand of the bucket on that is not marked, unmarking those it passes.
+ * An entry is never changed once made, so a thread reading a slot another
+ * is writing sees either surface whole; a mark or a hand lost to a race
+ * only evicts a surface sooner than it should.</p>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class SurfaceCache {
+
+    /** The number of entries per bucket. */
+    private static final int BUCKET_ENTRIES = 4;
+
+    /** The most entries a cache can have. */
+    private static final int MAX_ENTRIES = 1 << 26;
+
+    /** The multiplier spreading the hash of a surface over the high bits. */
+    private static final int SPREAD = 0x9E3779B9;
+
+    /** The mask of an int read as unsigned. */
+    private static final long UNSIGNED_MASK = 0xFFFFFFFFL;
+
+    /** Reads and writes the entries whole. */
+    private static final VarHandle ENTRIES =
+        MethodHandles.arrayElementVarHandle(Entry[].class);
+
+    /** Reads and writes the marks and the hands. */
+    private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    /** The entries, null where empty. */
+    private final Entry[] myEntries;
+
+    /** Whether each entry was hit since the hand of its bucket last passed it. */
+    private final byte[] myMarks;
+
+    /** The hand of each bucket, the entry in it evicted next unless marked. */
+    private final byte[] myHands;
+
+    /** The number of lookups. */
+    private final LongAdder myLookups = new LongAdder();
+
+    /** The number of lookups that found the landing rows. */
+    private final LongAdder myHits = new LongAdder();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param theEntries the number of surfaces kept, a power of two from 4 to 2^26
+     * @throws IllegalArgumentException if the number of entries is not allowed
+     */
+    public SurfaceCache(final int theEntries) {
+        if (theEntries < BUCKET_ENTRIES || theEntries > MAX_ENTRIES
+            || Integer.bitCount(theEntries) != 1) {
+            throw new IllegalArgumentException("Bad cache size: " + theEntries);
+        }
+        myEntries = new Entry[theEntries];
+        myMarks = new byte[theEntries];
+        myHands = new byte[theEntries / BUCKET_ENTRIES];
+    }
+
+    /**
+     * @return the number of surfaces the cache can keep
+     */
+    public int getCapacity() {
+        return myEntries.length;
+    }
+
+    /**
+     * @return the number of surfaces kept
+     */
+    public int size() {
+        int result = 0;
+        for (int i = 0; i < myEntries.length; i++) {
+            if (ENTRIES.getOpaque(myEntries, i) != null) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of lookups so far
+     */
+    public long getLookups() {
+        return myLookups.sum();
+    }
+
+    /**
+     * @return the number of lookups so far that found the landing rows
+     */
+    public long getHits() {
+        return myHits.sum();
+    }
+
+    /**
+     * Returns where each rotation of a piece lands at each column when it is
+     * dropped straight down onto a field, from the cache or, if the surface
+     * is not kept, by dropping it and keeping the result.
+     *
+     * @param theField the field
+     * @param theShape the shape of the piece
+     * @param theBase the height of the lowest column of the field
+     * @return the y-coordinates the piece lands at less theBase, indexed by
+     *         the rotation times the width of the field plus the column of
+     *         the leftmost cell of the piece; not to be modified
+     */
+    int[] landings(final Field theField, final PieceShape theShape, final int theBase) {
+        myLookups.increment();
+        final int type = theShape.getType().ordinal();
+        int hash = type;
+        for (int x = 0; x < theField.getWidth(); x++) {
+            hash = hash * SPREAD + theField.getColumnHeight(x) - theBase;
+        }
+        hash *= SPREAD;
+        // the high bits of the hash depend on every column, so those select the bucket
+        final int bucket = (int) ((hash & UNSIGNED_MASK) * myHands.length >>> Integer.SIZE)
+                           * BUCKET_ENTRIES;
+        int[] result = null;
+        for (int entry = bucket; result == null && entry < bucket + BUCKET_ENTRIES; entry++) {
+            final Entry kept = (Entry) ENTRIES.getOpaque(myEntries, entry);
+            if (kept != null && kept.matches(hash, type, theField, theBase)) {
+                result = kept.myLandings;
+                BYTES.setOpaque(myMarks, entry, (byte) 1);
+                myHits.increment();
+            }
+        }
+        if (result == null) {
+            result = drop(theField, theShape, theBase);
+            final int[] heights = new int[theField.getWidth()];
+            for (int x = 0; x < heights.length; x++) {
+                heights[x] = theField.getColumnHeight(x) - theBase;
+            }
+            ENTRIES.setOpaque(myEntries, victim(bucket),
+                              new Entry(hash, type, heights, result));
+        }
+        return result;
+    }
+
+    /**
+     * Advances the hand of a bucket past the marked entries, unmarking them,
+     * to the entry to evict, and past that.
+     *
+     * @param theBucket the first entry of the bucket
+     * @return the entry to evict
+     */
+    private int victim(final int theBucket) {
+        final int hand = theBucket / BUCKET_ENTRIES;
+        int next = (byte) BYTES.getOpaque(myHands, hand);
+        int result = theBucket + next;
+        // at most one turn: the hand unmarks every entry it passes
+        while ((byte) BYTES.getOpaque(myMarks, result) != 0) {
+            BYTES.setOpaque(myMarks, result, (byte) 0);
+            next = (next + 1) % BUCKET_ENTRIES;
+            result = theBucket + next;
+        }
+        BYTES.setOpaque(myHands, hand, (byte) ((next + 1) % BUCKET_ENTRIES));
+        return result;
+    }
+
+    /**
+     * Drops every rotation of a piece straight down at every column.
+     *
+     * @param theField the field
+     * @param theShape the shape of the piece
+     * @param theBase the height of the lowest column of the field
+     * @return the landing rows, laid out as landings returns them
+     */
+    private static int[] drop(final Field theField, final PieceShape theShape,
+                              final int theBase) {
+        final int width = theField.getWidth();
+        final int[] result = new int[theShape.getRotationCount() * width];
+        for (int rotation = 0; rotation < theShape.getRotationCount(); rotation++) {
+            final int minX = theShape.getMinX(rotation);
+            final int maxX = theShape.getMaxX(rotation);
+            for (int left = 0; left + maxX - minX < width; left++) {
+                int landing = Integer.MIN_VALUE;
+                for (int column = minX; column <= maxX; column++) {
+                    landing = Math.max(landing, theField.getColumnHeight(left + column - minX)
+                                                - theShape.getColumnBottom(rotation, column));
+                }
+                result[rotation * width + left] = landing - theBase;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SurfaceCache[" + getCapacity() + " entries, " + getHits() + " hits of "
+               + getLookups() + " lookups]";
+    }
+
+    /**
+     * A surface kept and the landing rows of a piece type dropped onto it.
+     */
+    private static final class Entry {
+
+        /** The hash of the type and the surface. */
+        private final int myHash;
+
+        /** The ordinal of the piece type. */
+        private final int myType;
+
+        /** The column heights less the lowest. */
+        private final int[] myHeights;
+
+        /** The landing rows, laid out as landings returns them. */
+        private final int[] myLandings;
+
+        /**
+         * Creates an entry.
+         *
+         * @param theHash the hash of the type and the surface
+         * @param theType the ordinal of the piece type
+         * @param theHeights the column heights less the lowest
+         * @param theLandings the landing rows
+         */
+        Entry(final int theHash, final int theType, final int[] theHeights,
+              final int[] theLandings) {
+            myHash = theHash;
+            myType = theType;
+            myHeights = theHeights;
+            myLandings = theLandings;
+        }
+
+        /**
+         * Tests whether this is the entry of a piece type and the surface of
+         * a field.
+         *
+         * @param theHash the hash of the type and the surface
+         * @param theType the ordinal of the piece type
+         * @param theField the field
+         * @param theBase the height of the lowest column of the field
+         * @return true if it is
+         */
+        boolean matches(final int theHash, final int theType, final Field theField,
+                        final int theBase) {
+            boolean result = myHash == theHash && myType == theType
+                             && myHeights.length == theField.getWidth();
+            for (int x = 0; result && x < myHeights.length; x++) {
+                result = myHeights[x] == theField.getColumnHeight(x) - theBase;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package ai;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size table of scores already searched, keyed by the Zobrist hash
+ * of what was searched, that any number of search threads share without
+ * locking.
+ *
+ * <p>The table lives off the heap in a direct buffer, so it costs the
+ * garbage collector nothing however large it is. Entries are grouped four
+ * to a bucket of one cache line; a key can only be in the bucket its high
+ * bits select. An entry is two words: the data, which packs the score, the
+ * depth it was searched to and the search it was stored in, and the key
+ * exclusive-or the data. Each word is written and read whole, so a reader
+ * racing a writer can see the words of two different entries; the key then
+ * does not check out and the entry is simply missed.</p>
+ *
+ * <p>Replacement prefers depth: an entry is only overwritten by the same
+ * key searched at least as deep, and a new key takes the place of the entry
+ * of an older search, or failing that the shallowest entry of its
+ * bucket.</p>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class TranspositionTable {
+
+    /** The deepest search an entry can record. */
+    public static final int MAX_DEPTH = 254;
+
+    /** The number of entries per bucket. */
+    private static final int BUCKET_ENTRIES = 4;
+
+    /** The size of an entry: the checked key and the data. */
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+    /** The size of a bucket. */
+    private static final int BUCKET_BYTES = BUCKET_ENTRIES * ENTRY_BYTES;
+
+    /** The most entries a table can have, as its buffer is indexed by int. */
+    private static final int MAX_ENTRIES =
+        Integer.highestOneBit(Integer.MAX_VALUE / ENTRY_BYTES);
+
+    /** The shift of the depth in the data of an entry. */
+    private static final int DEPTH_SHIFT = Integer.SIZE;
+
+    /** The shift of the search in the data of an entry. */
+    private static final int SEARCH_SHIFT = DEPTH_SHIFT + Byte.SIZE;
+
+    /** The mask of a byte. */
+    private static final int BYTE_MASK = 0xFF;
+
+    /** The mask of the score in the data of an entry. */
+    private static final long SCORE_MASK = 0xFFFFFFFFL;
+
+    /** Reads and writes the words of the buffer whole. */
+    private static final VarHandle WORDS =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** The entries. */
+    private final ByteBuffer myTable;
+
+    /** The mask of the high half of a key that selects its bucket. */
+    private final int myBucketMask;
+
+    /** The search entries are stored in, modulo 256. */
+    private volatile int mySearch;
+
+    /** The number of lookups. */
+    private final LongAdder myProbes = new LongAdder();
+
+    /** The number of lookups that found a score. */
+    private final LongAdder myHits = new LongAdder();
+
+    /**
+     * Creates an empty table.
+     *
+     * @param theEntries the number of entries, a power of two from 4 to 2^26
+     * @throws IllegalArgumentException if the number of entries is not allowed
+     */
+    public TranspositionTable(final int theEntries) {
+        if (theEntries < BUCKET_ENTRIES || theEntries > MAX_ENTRIES
+            || Integer.bitCount(theEntries) != 1) {
+            throw new IllegalArgumentException("Bad table size: " + theEntries);
+        }
+        myTable = ByteBuffer.allocateDirect(theEntries * ENTRY_BYTES)
+                            .order(ByteOrder.nativeOrder());
+        myBucketMask = theEntries / BUCKET_ENTRIES - 1;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int getCapacity() {
+        return myTable.capacity() / ENTRY_BYTES;
+    }
+
+    /**
+     * Starts a new search: the entries stored so far become the first to
+     * be replaced, though they can still be found.
+     */
+    public void newSearch() {
+        mySearch = mySearch + 1 & BYTE_MASK;
+    }
+
+    /**
+     * Empties the table. Not to be called while other threads use it.
+     */
+    public void clear() {
+        for (int offset = 0; offset < myTable.capacity(); offset += Long.BYTES) {
+            WORDS.setOpaque(myTable, offset, 0L);
+        }
+    }
+
+    /**
+     * Looks up a score.
+     *
+     * @param theKey the key
+     * @param theDepth the least depth the score must have been searched to
+     * @return the score, NaN if the table has none deep enough
+     */
+    public float probe(final long theKey, final int theDepth) {
+        myProbes.increment();
+        final int bucket = bucket(theKey);
+        float result = Float.NaN;
+        for (int entry = 0; entry < BUCKET_ENTRIES; entry++) {
+            final int offset = bucket + entry * ENTRY_BYTES;
+            final long data = (long) WORDS.getOpaque(myTable, offset + Long.BYTES);
+            final long check = (long) WORDS.getOpaque(myTable, offset);
+            if ((check ^ data) == theKey && depth(data) >= theDepth) {
+                result = Float.intBitsToFloat((int) data);
+                myHits.increment();
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores a score, unless the table has the key searched deeper.
+     *
+     * @param theKey the key
+     * @param theDepth the depth the score was searched to, 0 to MAX_DEPTH
+     * @param theScore the score
+     * @throws IllegalArgumentException if the depth is out of range
+     */
+    public void store(final long theKey, final int theDepth, final float theScore) {
+        if (theDepth < 0 || theDepth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Bad depth: " + theDepth);
+        }
+        final int bucket = bucket(theKey);
+        final int search = mySearch;
+        int victim = -1;
+        int victimRank = Integer.MAX_VALUE;
+        boolean replace = true;
+        for (int entry = 0; entry < BUCKET_ENTRIES; entry++) {
+            final int offset = bucket + entry * ENTRY_BYTES;
+            final long data = (long) WORDS.getOpaque(myTable, offset + Long.BYTES);
+            final long check = (long) WORDS.getOpaque(myTable, offset);
+            final int depth = depth(data);
+            if ((check ^ data) == theKey && depth >= 0) {
+                // the same key: replace it unless it is deeper
+                victim = offset;
+                replace = depth <= theDepth;
+                break;
+            }
+            // empty entries go first, then those of older searches, shallowest first
+            int rank = depth;
+            if (depth >= 0 && (int) (data >>> SEARCH_SHIFT & BYTE_MASK) == search) {
+                rank += MAX_DEPTH + 1;
+            }
+            if (rank < victimRank) {
+                victim = offset;
+                victimRank = rank;
+            }
+        }
+        if (replace) {
+            final long data = Float.floatToRawIntBits(theScore) & SCORE_MASK
+                              | (long) (theDepth + 1) << DEPTH_SHIFT
+                              | (long) search << SEARCH_SHIFT;
+            WORDS.setOpaque(myTable, victim + Long.BYTES, data);
+            WORDS.setOpaque(myTable, victim, theKey ^ data);
+        }
+    }
+
+    /**
+     * @return the number of lookups so far
+     */
+    public long getProbes() {
+        return myProbes.sum();
+    }
+
+    /**
+     * @return the number of lookups so far that found a score
+     */
+    public long getHits() {
+        return myHits.sum();
+    }
+
+    /**
+     * Returns the bucket of a key. The hash of a grid combines products,
+     * whose high bits depend on every bit of the cells, so those are used.
+     *
+     * @param theKey the key
+     * @return the offset of its bucket
+     */
+    private int bucket(final long theKey) {
+        return ((int) (theKey >>> Integer.SIZE) & myBucketMask) * BUCKET_BYTES;
+    }
+
+    /**
+     * @param theData the data of an entry
+     * @return the depth the entry was searched to, -1 if the entry is empty
+     */
+    private static int depth(final long theData) {
+        return (int) (theData >>> DEPTH_SHIFT & BYTE_MASK) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "TranspositionTable[" + getCapacity() + " entries, " + getHits() + " hits of "
+               + getProbes() + " probes]";
+    }
+}
@@ -10,34 +10,53 @@
 
 package board;
 
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Stroke;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.awt.Toolkit;
+import java.awt.Transparency;
 import java.awt.event.ComponentEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.ForkJoinPool;
+import ai.Heuristic;
+import ai.PlacementBot;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.SwingConstants;
-import javax.swing.Timer;
-import model.AbstractPiece;
 import model.Block;
 import model.Board;
+import model.BoardAction;
+import model.BoardEvent;
+import model.BoardListener;
+import model.BoardSnapshot;
 import model.Piece;
+import model.PieceShape;
+import model.PieceState;
+import replay.ReplayRecorder;
+import simulation.MovePolicy;
 import view.TetrisGUI;
 
 /**
@@ -52,7 +71,7 @@ import view.TetrisGUI;
  * @since November 22, 2015
  */
 
-public class BoardPanel extends JPanel implements Observer {
+public class BoardPanel extends JPanel implements Observer, BoardListener {
 
     /**
      * The auto-generated serial ID.
@@ -71,7 +90,7 @@ public class BoardPanel extends JPanel implements Observer {
     private static final Map<String, Integer> CONTROL_KEY_MAP = new HashMap<String, Integer>();
 
     /**
-     * The initial timer delay and the time interval between each timer tick.
+     * The time in milliseconds a piece takes to fall one row at difficulty 0.
      * The delay in different levels is the level number multiply by the
      * TIMER_DELAY_CHANGE variable multiply by the INITIAL_TIMER_INTERVAL variable.
      * As a result, the initial timer delay of 2000 and the TIMER_DELAY_CHANGE of 0.5
@@ -84,6 +103,21 @@ public class BoardPanel extends JPanel implements Observer {
      */
     private static final float TIMER_DELAY_CHANGE = 0.5f;
 
+    /**
+     * The number of game loop ticks per second.
+     */
+    private static final int TICKS_PER_SECOND = 60;
+
+    /**
+     * The number of milliseconds in a second.
+     */
+    private static final int MILLIS_PER_SECOND = 1000;
+
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
     /**
      * The panel's background color.
      */
@@ -104,6 +138,11 @@ public class BoardPanel extends JPanel implements Observer {
      */
     private static final Color RUNNING_BLOCK_COLOR = Color.red;
 
+    /**
+     * The color of the landing position of the running block.
+     */
+    private static final Color GHOST_BLOCK_COLOR = new Color(255, 0, 0, 60);
+
     /**
      * The dead block color.
      */
@@ -119,15 +158,36 @@ public class BoardPanel extends JPanel implements Observer {
      */
     private static final int HEIGHT_RATIO = 24;
 
+    /**
+     * The pixels added around a dirty region to cover the block outlines.
+     */
+    private static final int DIRTY_PADDING = 2;
+
+    /**
+     * The stroke of the block outlines.
+     */
+    private static final Stroke BLOCK_STROKE = new BasicStroke(2);
+
+    /**
+     * The name of the header font.
+     */
+    private static final String FONT_NAME = "Tahoma";
+
+    /**
+     * The system property naming the directory the games are recorded to;
+     * games are not recorded when it is not set.
+     */
+    private static final String REPLAY_DIR_PROPERTY = "tetris.replay.dir";
+
     /**
      * The game board.
      */
     private final Board myBoard;
 
     /**
-     * The timer controlling the speed of the game.
+     * The loop running the game on its own thread.
      */
-    private final Timer myMainTimer;
+    private final GameLoop myLoop;
 
     /**
      * The width of game board.
@@ -160,6 +220,12 @@ public class BoardPanel extends JPanel implements Observer {
      */
     private boolean myIsPlaying;
 
+    /**
+     * Boolean that shows if the game is played by the bot. True means the
+     * user's keys only pause the game and vice versa.
+     */
+    private boolean myIsDemo;
+
     /**
      * The key listener for an active game.
      */
@@ -190,6 +256,39 @@ public class BoardPanel extends JPanel implements Observer {
      */
     private int myDifficultyLevel;
 
+    /**
+     * The frozen blocks drawn at the current scale, null when it has to be
+     * rebuilt. The image is padded by DIRTY_PADDING pixels on every side.
+     */
+    private BufferedImage myFrozenLayer;
+
+    /**
+     * The rows of the frozen layer that no longer match the board and are
+     * redrawn on the next paint.
+     */
+    private final boolean[] myDirtyRows;
+
+    /**
+     * The header font at the current scale.
+     */
+    private final RenderCache myRenderCache = new RenderCache(FONT_NAME, Font.BOLD, 1, 0);
+
+    /**
+     * The number of times the key bindings were set.
+     */
+    private int myKeyBindingsVersion;
+
+    /**
+     * Where the current piece would land, null if there is no current piece.
+     * It is only recomputed when the piece moves sideways, rotates or is replaced.
+     */
+    private PieceState myGhostPiece;
+
+    /**
+     * The area being painted, reused by every paint.
+     */
+    private final Rectangle myClip = new Rectangle();
+
     /**
      * Constructor for game board.
      * 
@@ -201,11 +300,43 @@ public class BoardPanel extends JPanel implements Observer {
         myBoardWidth = theWidth;
         myBoardHeight = theHeight;
         myBoard = new Board(myBoardWidth, myBoardHeight, new LinkedList<Piece>());
-        myBoard.addObserver(this);
-        myMainTimer = new Timer(INITIAL_TIMER_INTERVAL, new TickListener());
+        myLoop = new GameLoop(myBoard, NANOS_PER_SECOND / TICKS_PER_SECOND);
+        myLoop.addBoardListener(this);
+        locateGhostPiece();
+        myDirtyRows = new boolean[myBoardHeight];
         myHeader = new JLabel("", SwingConstants.CENTER);
         myDifficultyLevel = 1;
         setup();
+        startRecording();
+        myLoop.start();
+    }
+
+    /**
+     * Records the games into a new replay file in the directory named by
+     * the tetris.replay.dir system property, if it is set. The file is
+     * closed when the program exits.
+     */
+    private void startRecording() {
+        final String directory = System.getProperty(REPLAY_DIR_PROPERTY);
+        if (directory != null) {
+            final Path file = Paths.get(directory, "tetris-" + System.currentTimeMillis()
+                                                   + ".replay");
+            try {
+                final ReplayRecorder recorder = new ReplayRecorder(myBoard, file);
+                Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            recorder.close();
+                        } catch (final IOException e) {
+                            System.err.println("Could not save the replay " + file + ": " + e);
+                        }
+                    }
+                }, "Replay closer"));
+            } catch (final IOException e) {
+                System.err.println("Could not record to " + file + ": " + e);
+            }
+        }
     }
 
     /**
@@ -239,28 +370,67 @@ public class BoardPanel extends JPanel implements Observer {
      * Starts a new game.
      */
     public void start() {
-        myMainTimer.start();
+        myLoop.setTicking(true);
     }
 
     /**
      * Starts a new game and eliminates the old game.
      */
     public void newGame() {
-        myBoard.newGame(myBoardWidth, myBoardHeight, new LinkedList<Piece>());
+        startGame(null, "Playing");
+    }
+
+    /**
+     * Starts a new game played by the placement bot. Every piece is moved
+     * into place as soon as it appears and then falls with the gravity of
+     * the difficulty level, so the demo keeps up with every level. The
+     * user's keys only pause the demo, so they never move the bot's pieces
+     * or end up in a recorded replay.
+     */
+    public void demoMode() {
+        startGame(new PlacementBot(Heuristic.DEFAULT, true, false, ForkJoinPool.commonPool()),
+                  "Demo");
+    }
+
+    /**
+     * Starts a new game and the key listener for it.
+     * 
+     * @param theAutoplayer the policy playing the game, null for the user
+     * @param theHeader the text of the header
+     */
+    private void startGame(final MovePolicy theAutoplayer, final String theHeader) {
+        myLoop.newGame(theAutoplayer);
+        myIsDemo = theAutoplayer != null;
+        myIsPaused = false;
         removeKeyListener(myPauseListener);
-        addKeyListener(myPlayListener);
+        removeKeyListener(myPlayListener);
+        addKeyListener(getGameListener());
         myIsPlaying = true;
-        myHeader.setText("Playing");
+        myHeader.setText(theHeader);
         setDifficulty(myDifficultyLevel);
         start();
     }
 
+    /**
+     * Returns the key listener for a running game: the pause listener in
+     * demo mode, where the bot makes the moves.
+     * 
+     * @return the key listener
+     */
+    private KeyListener getGameListener() {
+        KeyListener result = myPlayListener;
+        if (myIsDemo) {
+            result = myPauseListener;
+        }
+        return result;
+    }
+
     /**
      * Clears the board to a stand-by mode.
      */
     public void clearBoard() {
         endGame();
-        myBoard.newGame(myBoardWidth, myBoardHeight, new LinkedList<Piece>());
+        myLoop.post(BoardAction.NEW_GAME);
         pause();
         removeKeyListener(myPauseListener);
         addKeyListener(myPlayListener);
@@ -278,7 +448,8 @@ public class BoardPanel extends JPanel implements Observer {
     }
 
     /**
-     * Method to add observer to he board.
+     * Method to add observer to he board. Observers are notified on the
+     * game loop thread.
      * 
      * @param theObserver the observer to add to the board
      */
@@ -286,17 +457,57 @@ public class BoardPanel extends JPanel implements Observer {
         myBoard.addObserver(theObserver);
     }
 
+    /**
+     * Method to add a listener to the board. Listeners are notified on the
+     * event dispatch thread.
+     * 
+     * @param theListener the listener to add to the board
+     */
+    public void addBoardListener(final BoardListener theListener) {
+        myLoop.addBoardListener(theListener);
+    }
+
+    /**
+     * Sets how the game loop delivers board changes to be painted.
+     * 
+     * @param theMode the rendering mode
+     */
+    public void setRenderMode(final GameLoop.RenderMode theMode) {
+        myLoop.setRenderMode(theMode);
+    }
+
+    /**
+     * Sets the most frames per second painted in the CAPPED rendering mode.
+     * 
+     * @param theFrameRate the frame rate cap
+     */
+    public void setFrameRateCap(final int theFrameRate) {
+        myLoop.setFrameRateCap(theFrameRate);
+    }
+
     /**
      * Returns the set of control keys.
      * 
-     * @return map of control keys
+     * @return read-only map of control keys
      */
     public Map<String, Integer> getControlKeys() {
-        return myPlayListener.getKeyMap();
+        return Collections.unmodifiableMap(myPlayListener.getKeyMap());
+    }
+
+    /**
+     * Returns a number that changes whenever the control keys are set, so
+     * views of the keys know when to update.
+     * 
+     * @return the version of the control keys
+     */
+    public int getKeyBindingsVersion() {
+        return myKeyBindingsVersion;
     }
 
     /**
-     * Paints the game board.
+     * Paints the game board. Only the part of the board inside the clip is
+     * filled, copied from the frozen layer and ruled, so the small repaints
+     * of a moving piece cost little.
      * 
      * @param theGraphic the graphic object to be drawn
      */
@@ -306,75 +517,248 @@ public class BoardPanel extends JPanel implements Observer {
         final Graphics2D g2d = (Graphics2D) theGraphic;
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, 
                              RenderingHints.VALUE_ANTIALIAS_ON);
+        myClip.setBounds(0, 0, getWidth(), getHeight());
+        g2d.getClipBounds(myClip);
+        final int clipRight = myClip.x + myClip.width;
+        final int clipBottom = myClip.y + myClip.height;
+
         g2d.setColor(BOARD_COLOR);
-        Stroke stroke = new BasicStroke(2);
-        g2d.setStroke(stroke);
-        g2d.fillRect(myLeftMargin, myTopMargin,
-                     myBoardWidth * myScale + 1, myBoardHeight * myScale + 1);
+        g2d.setStroke(BLOCK_STROKE);
+        final int fillLeft = Math.max(myLeftMargin, myClip.x);
+        final int fillTop = Math.max(myTopMargin, myClip.y);
+        final int fillRight = Math.min(myLeftMargin + myBoardWidth * myScale + 1, clipRight);
+        final int fillBottom = Math.min(myTopMargin + myBoardHeight * myScale + 1, clipBottom);
+        if (fillLeft < fillRight && fillTop < fillBottom) {
+            g2d.fillRect(fillLeft, fillTop, fillRight - fillLeft, fillBottom - fillTop);
+        }
+
+        if (myFrozenLayer == null) {
+            buildFrozenLayer();
+        } else {
+            redrawDirtyRows();
+        }
+        final int layerX = myLeftMargin - DIRTY_PADDING;
+        final int layerY = myTopMargin - DIRTY_PADDING;
+        final int left = Math.max(layerX, myClip.x);
+        final int top = Math.max(layerY, myClip.y);
+        final int right = Math.min(layerX + myFrozenLayer.getWidth(), clipRight);
+        final int bottom = Math.min(layerY + myFrozenLayer.getHeight(), clipBottom);
+        if (left < right && top < bottom) {
+            g2d.drawImage(myFrozenLayer, left, top, right, bottom, left - layerX, top - layerY,
+                          right - layerX, bottom - layerY, null);
+        }
         drawPanel(g2d);
+        if (myLoop.getRenderMode() == GameLoop.RenderMode.VSYNC) {
+            Toolkit.getDefaultToolkit().sync();
+        }
     }
 
     /**
-     * Draws blocks on the board panel.
-     * 
-     * @param theGraphic the graphics2D object to be drawn on
+     * Draws all the frozen blocks into a new frozen layer.
      */
-    private void drawPanel(final Graphics2D theGraphic) {
-        // draws frozen blocks
+    private void buildFrozenLayer() {
+        final int width = myBoardWidth * myScale + 2 * DIRTY_PADDING;
+        final int height = myBoardHeight * myScale + 2 * DIRTY_PADDING;
+        final GraphicsConfiguration configuration = getGraphicsConfiguration();
+        if (configuration == null) {
+            myFrozenLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        } else {
+            myFrozenLayer = configuration.createCompatibleImage(width, height,
+                                                                Transparency.TRANSLUCENT);
+        }
+        final Graphics2D graphic = createLayerGraphics();
+        drawFrozenRows(graphic, 0, myBoardHeight - 1);
+        graphic.dispose();
+        Arrays.fill(myDirtyRows, false);
+    }
+
+    /**
+     * Redraws the bands of dirty rows of the frozen layer.
+     */
+    private void redrawDirtyRows() {
         int row = 0;
-        for (final Block[] localBlock : myBoard.getFrozenBlocks()) {
+        while (row < myBoardHeight) {
+            if (myDirtyRows[row]) {
+                final int first = row;
+                while (row < myBoardHeight && myDirtyRows[row]) {
+                    myDirtyRows[row] = false;
+                    row++;
+                }
+                redrawFrozenRows(first, row - 1);
+            } else {
+                row++;
+            }
+        }
+    }
+
+    /**
+     * Redraws a band of rows of the frozen layer from the board.
+     * 
+     * @param theFirstRow the lowest row to redraw
+     * @param theLastRow the highest row to redraw
+     */
+    private void redrawFrozenRows(final int theFirstRow, final int theLastRow) {
+        final int top = DIRTY_PADDING + (myBoardHeight - 1 - theLastRow) * myScale
+                        - DIRTY_PADDING;
+        final int height = (theLastRow - theFirstRow + 1) * myScale + 2 * DIRTY_PADDING;
+        final Graphics2D graphic = createLayerGraphics();
+        graphic.clipRect(0, top, myFrozenLayer.getWidth(), height);
+        graphic.setComposite(AlphaComposite.Clear);
+        graphic.fillRect(0, top, myFrozenLayer.getWidth(), height);
+        graphic.setComposite(AlphaComposite.SrcOver);
+        drawFrozenRows(graphic, theFirstRow - 1, theLastRow + 1);
+        graphic.dispose();
+    }
+
+    /**
+     * Brings the frozen layer up to date with a change of the board: the rows
+     * of the frozen piece are marked dirty, then the rows above each cleared
+     * row are moved down together with their marks. The row moved onto a
+     * cleared row is marked dirty, since its outline meets a new row below,
+     * and so are the rows emptied at the top. The dirty rows are redrawn from the latest
+     * snapshot when the panel is painted, so a batch of changes is applied
+     * correctly whatever the snapshot it ends with.
+     * 
+     * @param theEvent the description of the change
+     */
+    private void updateFrozenLayer(final BoardEvent theEvent) {
+        final PieceState frozen = theEvent.getFrozenPiece();
+        if (myFrozenLayer == null || frozen == null) {
+            return;
+        }
+        final int rotation = frozen.getRotation();
+        final int lowest = Math.max(0, frozen.getY() + frozen.getShape().getMinY(rotation));
+        final int highest = Math.min(myBoardHeight - 1,
+                                     frozen.getY() + frozen.getShape().getMaxY(rotation));
+        for (int row = lowest; row <= highest; row++) {
+            myDirtyRows[row] = true;
+        }
+        final int cleared = theEvent.getClearedRowCount();
+        if (cleared > 0) {
+            final Graphics2D graphic = myFrozenLayer.createGraphics();
+            graphic.setComposite(AlphaComposite.Src);
+            for (int i = cleared - 1; i >= 0; i--) {
+                final int row = theEvent.getClearedRow(i);
+                if (row < myBoardHeight) {
+                    final int rowTop = DIRTY_PADDING + (myBoardHeight - 1 - row) * myScale;
+                    graphic.copyArea(0, 0, myFrozenLayer.getWidth(), rowTop, 0, myScale);
+                    System.arraycopy(myDirtyRows, row + 1, myDirtyRows, row,
+                                     myBoardHeight - 1 - row);
+                    myDirtyRows[row] = true;
+                    myDirtyRows[myBoardHeight - 1] = true;
+                }
+            }
+            graphic.dispose();
+        }
+    }
 
-            int column = 0;
-            for (final Block block : localBlock) {
-                if (block == Block.EMPTY) {
+    /**
+     * Creates a graphics object for the frozen layer with the board's
+     * rendering settings.
+     * 
+     * @return the graphics object
+     */
+    private Graphics2D createLayerGraphics() {
+        final Graphics2D result = myFrozenLayer.createGraphics();
+        result.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                                RenderingHints.VALUE_ANTIALIAS_ON);
+        result.setStroke(BLOCK_STROKE);
+        return result;
+    }
+
+    /**
+     * Draws rows of frozen blocks in frozen layer coordinates. Rows outside
+     * the stack are skipped.
+     * 
+     * @param theGraphic the graphics object of the frozen layer
+     * @param theFirstRow the lowest row to draw
+     * @param theLastRow the highest row to draw
+     */
+    private void drawFrozenRows(final Graphics2D theGraphic, final int theFirstRow,
+                                final int theLastRow) {
+        final int firstRow = Math.max(0, theFirstRow);
+        final BoardSnapshot snapshot = myLoop.getSnapshot();
+        final int lastRow = Math.min(theLastRow, Math.min(snapshot.getStackHeight(),
+                                                          myBoardHeight) - 1);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = 0; column < myBoardWidth; column++) {
+                if (snapshot.getFrozenBlock(column, row) == Block.EMPTY) {
                     theGraphic.setColor(Color.gray);
                 } else {
                     theGraphic.setColor(DEAD_BLOCK_COLOR);
                 }
-                theGraphic.fillRect(myLeftMargin + column * myScale,
-                                    myTopMargin + (myBoardHeight - row - 1) 
+                theGraphic.fillRect(DIRTY_PADDING + column * myScale,
+                                    DIRTY_PADDING + (myBoardHeight - row - 1)
                                     * myScale, myScale, myScale);
                 theGraphic.setColor(Color.gray);
-                theGraphic.drawRect(myLeftMargin + column * myScale,
-                                    myTopMargin + (myBoardHeight - row - 1) 
+                theGraphic.drawRect(DIRTY_PADDING + column * myScale,
+                                    DIRTY_PADDING + (myBoardHeight - row - 1)
                                     * myScale, myScale, myScale);
-                column++;
             }
-            row++;
         }
+    }
 
-        // draws current block
-        final Piece localPiece = myBoard.getCurrentPiece();
-        final int[][] pieceCoordinates = ((AbstractPiece) localPiece).getBoardCoordinates();
-
-        for (final int[] block : pieceCoordinates) {
-            theGraphic.setColor(RUNNING_BLOCK_COLOR);
-
-            theGraphic.fillRect(myLeftMargin + block[0] * myScale,
-                                (myBoardHeight - block[1] - 1) 
+    /**
+     * Draws the cells of a piece.
+     * 
+     * @param theGraphic the graphics2D object to be drawn on
+     * @param thePiece the piece to draw
+     * @param theColor the color to fill the cells with
+     */
+    private void drawPiece(final Graphics2D theGraphic, final PieceState thePiece,
+                           final Color theColor) {
+        final PieceShape localShape = thePiece.getShape();
+        final int localRotation = thePiece.getRotation();
+
+        for (int block = 0; block < PieceShape.CELLS; block++) {
+            final int column = thePiece.getX() + localShape.getCellX(localRotation, block);
+            final int localRow = thePiece.getY() + localShape.getCellY(localRotation, block);
+            theGraphic.setColor(theColor);
+
+            theGraphic.fillRect(myLeftMargin + column * myScale,
+                                (myBoardHeight - localRow - 1) 
                                 * myScale + myTopMargin, myScale, myScale);
             theGraphic.setColor(Color.gray);
-            theGraphic.drawRect(myLeftMargin + block[0] * myScale,
-                                (myBoardHeight - block[1] - 1) 
+            theGraphic.drawRect(myLeftMargin + column * myScale,
+                                (myBoardHeight - localRow - 1) 
                                 * myScale + myTopMargin, myScale, myScale);
         }
+    }
 
-        // updates the header label
-        myHeader.setLocation(myLeftMargin , 0);
-        myHeader.setSize(myBoardWidth * myScale + 1, myTopMargin);
-        myHeader.setFont(new Font("Tahoma", Font.BOLD, myScale));
+    /**
+     * Draws blocks on the board panel, and the grid lines inside the clip
+     * paintComponent found.
+     * 
+     * @param theGraphic the graphics2D object to be drawn on
+     */
+    private void drawPanel(final Graphics2D theGraphic) {
+        // draws the landing position of the current block
+        if (myGhostPiece != null) {
+            drawPiece(theGraphic, myGhostPiece, GHOST_BLOCK_COLOR);
+        }
 
-        // draws grid if it is enabled
+        // draws current block
+        drawPiece(theGraphic, myLoop.getSnapshot().getCurrentPiece(), RUNNING_BLOCK_COLOR);
+
+        // draws the grid lines that reach into the clip if it is enabled
         if (myGridEnabled) {
             theGraphic.setColor(GRID_COLOR);
-            for (int i = 1; i < myBoardWidth; i++) {
+            final int firstColumn = Math.max(1, Math.floorDiv(
+                            myClip.x - DIRTY_PADDING - myLeftMargin + myScale - 1, myScale));
+            final int lastColumn = Math.min(myBoardWidth - 1, Math.floorDiv(
+                            myClip.x + myClip.width + DIRTY_PADDING - myLeftMargin, myScale));
+            for (int i = firstColumn; i <= lastColumn; i++) {
                 //vertical lines
                 theGraphic.drawLine(myScale * i + myLeftMargin,
                                     myTopMargin, myScale * i + myLeftMargin,
                                     myBoardHeight * myScale + myTopMargin);
             }
             //horizontal lines
-            for (int i = 1; i <= myBoardHeight; i++) {
+            final int firstRow = Math.max(1, Math.floorDiv(
+                            myClip.y - DIRTY_PADDING - myTopMargin + myScale - 1, myScale));
+            final int lastRow = Math.min(myBoardHeight, Math.floorDiv(
+                            myClip.y + myClip.height + DIRTY_PADDING - myTopMargin, myScale));
+            for (int i = firstRow; i <= lastRow; i++) {
                 theGraphic.drawLine(myLeftMargin, myScale * i + myTopMargin,
                                     myBoardWidth * myScale + myLeftMargin,
                                     myScale * i + myTopMargin);
@@ -382,6 +766,129 @@ public class BoardPanel extends JPanel implements Observer {
         }
     }
 
+    /**
+     * Repaints the parts of the board touched by a change of the board: the
+     * old and new footprints of the current piece, the full rows of the
+     * frozen piece, and every row at or above the lowest cleared row. When
+     * the running game ends, the ticks stop and the controls are released.
+     * 
+     * @param theEvent the description of the change
+     */
+    @Override
+    public void boardChanged(final BoardEvent theEvent) {
+        final boolean restart = theEvent.getAction() == BoardAction.NEW_GAME
+                                || theEvent.isGameOver();
+        if (restart) {
+            myFrozenLayer = null;
+        } else {
+            updateFrozenLayer(theEvent);
+        }
+        final PieceState ghost = myGhostPiece;
+        updateGhostPiece(theEvent);
+        if (theEvent.isGameOver() && myLoop.isTicking()) {
+            myIsPlaying = false;
+            myLoop.setTicking(false);
+            myHeader.setText("Game Over");
+            for (final KeyListener localLitstener : getKeyListeners()) {
+                removeKeyListener(localLitstener);
+            }
+        }
+        final int left = myLeftMargin;
+        final int top = myTopMargin;
+        updateMargins();
+        if (left != myLeftMargin || top != myTopMargin) {
+            layoutHeader();
+            repaint();
+        } else if (restart) {
+            repaint();
+        } else {
+            repaintPiece(theEvent.getPreviousPiece());
+            repaintPiece(theEvent.getCurrentPiece());
+            repaintRows(theEvent.getFrozenPiece());
+            if (!Objects.equals(ghost, myGhostPiece)) {
+                repaintPiece(ghost);
+                repaintPiece(myGhostPiece);
+            }
+            if (theEvent.getClearedRowCount() > 0) {
+                final int bottom = myTopMargin
+                                + (myBoardHeight - theEvent.getClearedRow(0)) * myScale;
+                repaint(myLeftMargin - DIRTY_PADDING, 0,
+                        myBoardWidth * myScale + 2 * DIRTY_PADDING, bottom + DIRTY_PADDING);
+            }
+        }
+    }
+
+    /**
+     * Recomputes where the current piece would land if the change moved it
+     * sideways, rotated it or replaced it. Moving down does not change the
+     * landing position. The position is taken from the latest snapshot, which
+     * already includes every change of the frame being delivered.
+     * 
+     * @param theEvent the description of the change
+     */
+    private void updateGhostPiece(final BoardEvent theEvent) {
+        final PieceState previous = theEvent.getPreviousPiece();
+        final PieceState current = theEvent.getCurrentPiece();
+        if (previous == null || current == null || theEvent.getFrozenPiece() != null
+            || previous.getX() != current.getX()
+            || previous.getRotation() != current.getRotation()) {
+            locateGhostPiece();
+        }
+    }
+
+    /**
+     * Computes where the current piece of the latest snapshot would land.
+     */
+    private void locateGhostPiece() {
+        final BoardSnapshot snapshot = myLoop.getSnapshot();
+        final PieceState piece = snapshot.getCurrentPiece();
+        if (piece == null || snapshot.isGameOver()) {
+            myGhostPiece = null;
+        } else {
+            myGhostPiece = PieceState.valueOf(piece.getType(), piece.getRotation(),
+                                              piece.getX(),
+                                              piece.getY() - snapshot.dropDistance());
+        }
+    }
+
+    /**
+     * Repaints the full width of the rows a piece covers. A frozen piece may
+     * add rows to the stack, whose empty cells are painted too.
+     * 
+     * @param thePiece the piece, or null for none
+     */
+    private void repaintRows(final PieceState thePiece) {
+        if (thePiece != null) {
+            final int rotation = thePiece.getRotation();
+            final int top = myTopMargin + (myBoardHeight - 1 - thePiece.getY()
+                            - thePiece.getShape().getMaxY(rotation)) * myScale;
+            final int rows = thePiece.getShape().getMaxY(rotation)
+                             - thePiece.getShape().getMinY(rotation) + 1;
+            repaint(myLeftMargin - DIRTY_PADDING, top - DIRTY_PADDING,
+                    myBoardWidth * myScale + 2 * DIRTY_PADDING,
+                    rows * myScale + 2 * DIRTY_PADDING);
+        }
+    }
+
+    /**
+     * Repaints the bounding box of a piece's cells.
+     * 
+     * @param thePiece the piece, or null for none
+     */
+    private void repaintPiece(final PieceState thePiece) {
+        if (thePiece != null) {
+            final PieceShape shape = thePiece.getShape();
+            final int rotation = thePiece.getRotation();
+            final int left = myLeftMargin + (thePiece.getX() + shape.getMinX(rotation)) * myScale;
+            final int top = myTopMargin + (myBoardHeight - 1 - thePiece.getY()
+                            - shape.getMaxY(rotation)) * myScale;
+            final int columns = shape.getMaxX(rotation) - shape.getMinX(rotation) + 1;
+            final int rows = shape.getMaxY(rotation) - shape.getMinY(rotation) + 1;
+            repaint(left - DIRTY_PADDING, top - DIRTY_PADDING,
+                    columns * myScale + 2 * DIRTY_PADDING, rows * myScale + 2 * DIRTY_PADDING);
+        }
+    }
+
     /**
      * Updates the board.
      * 
@@ -396,17 +903,39 @@ public class BoardPanel extends JPanel implements Observer {
             final double width = currentSize.getWidth();
             final double height = currentSize.getHeight();
 
+            final int scale;
             if (width < height) {
-                myScale = (int) width / WIDTH_RATIO;
+                scale = (int) width / WIDTH_RATIO;
             } else {
-                myScale = (int) height / HEIGHT_RATIO;
+                scale = (int) height / HEIGHT_RATIO;
+            }
+            if (scale != myScale) {
+                myScale = scale;
+                myFrozenLayer = null;
             }
         }
 
+        updateMargins();
+        layoutHeader();
+        repaint();
+    }
+
+    /**
+     * Centers the board in the panel.
+     */
+    private void updateMargins() {
         myLeftMargin = (getWidth() - myBoardWidth * myScale) / 2;
         myTopMargin = (getHeight() - myBoardHeight * myScale) / 2;
+    }
 
-        repaint();
+    /**
+     * Lays out the header label above the board.
+     */
+    private void layoutHeader() {
+        myHeader.setLocation(myLeftMargin , 0);
+        myHeader.setSize(myBoardWidth * myScale + 1, myTopMargin);
+        myRenderCache.setScale(myScale);
+        myHeader.setFont(myRenderCache.getFont());
     }
 
     /**
@@ -414,26 +943,30 @@ public class BoardPanel extends JPanel implements Observer {
      * @return The frozenblock size
      */
     public int getFrozenBlockSize() {
-        return myBoard.getFrozenBlocks().size();
+        return myLoop.getSnapshot().getStackHeight();
     }
 
     /**
      * Method to pause game.
      */
     public void pause() {
-        if (myMainTimer.isRunning() && !myIsPaused) {
-            myMainTimer.stop();
+        if (myLoop.isTicking() && !myIsPaused) {
+            myLoop.setTicking(false);
+            removeKeyListener(getGameListener());
             addKeyListener(myPauseListener);
-            removeKeyListener(myPlayListener);
             myIsPaused = true;
             update((Observable) myBoard, null);
             myHeader.setText("Paused");
-        } else if (!myBoard.isGameOver() && myIsPaused) {
-            addKeyListener(myPlayListener);
+        } else if (!myLoop.getSnapshot().isGameOver() && myIsPaused) {
             removeKeyListener(myPauseListener);
+            addKeyListener(getGameListener());
             myIsPaused = false;
-            myMainTimer.start();
-            myHeader.setText("Playing");
+            myLoop.setTicking(true);
+            if (myIsDemo) {
+                myHeader.setText("Demo");
+            } else {
+                myHeader.setText("Playing");
+            }
         }
     }
 
@@ -441,9 +974,11 @@ public class BoardPanel extends JPanel implements Observer {
      * Method to stop the game.
      */
     public void endGame() {
-        myMainTimer.stop();
+        myLoop.setTicking(false);
+        myLoop.setAutoplayer(null);
         removeKeyListener(myPauseListener);
         removeKeyListener(myPlayListener);
+        myIsDemo = false;
         myIsPaused = false;
         myIsPlaying = false;
         myHeader.setText("");
@@ -465,13 +1000,16 @@ public class BoardPanel extends JPanel implements Observer {
 //    }
 
     /**
-     * Sets the difficulty of the game.
+     * Sets the difficulty of the game. The gravity of a level is the one the
+     * timer delay of the level would give, exactly: 2^level rows every 120
+     * ticks. It stops growing at 20 rows per tick.
      * @param theDifficulty The desired difficulty level.
      */
     public void setDifficulty(final int theDifficulty) {
         myDifficultyLevel = theDifficulty;
-        myMainTimer.setDelay((int) ((Math.pow(TIMER_DELAY_CHANGE,
-                                              theDifficulty)) * INITIAL_TIMER_INTERVAL));
+        final int ticks = INITIAL_TIMER_INTERVAL * TICKS_PER_SECOND / MILLIS_PER_SECOND;
+        final long rows = Math.round(Math.pow(TIMER_DELAY_CHANGE, -theDifficulty));
+        myLoop.setGravity((int) Math.min(rows, (long) Board.MAX_GRAVITY * ticks), ticks);
     }
 
     /**
@@ -482,37 +1020,6 @@ public class BoardPanel extends JPanel implements Observer {
         repaint();
     }
 
-    /**
-     * <pre>
-     * This class makes defines the actions need to be done on each timer's tick.
-     * </pre>
-     * 
-     * @author Benjamin Abdipour
-     * @version 12/11/2015
-     * @since November 22, 2015
-     */
-    private class TickListener implements ActionListener {
-
-        /**
-         * Makes the actions to be done on each timer's tick.
-         * 
-         * @param theEvent the timer firing event
-         */
-        @Override
-        public void actionPerformed(final ActionEvent theEvent) {
-            if (myBoard.isGameOver()) {
-                myIsPlaying = false;
-                myMainTimer.stop();
-                myHeader.setText("Game Over");
-                for (final KeyListener localLitstener : getKeyListeners()) {
-                    removeKeyListener(localLitstener);
-                }
-            } else {
-                myBoard.step();
-            }
-        }
-    }
-
     /**
      * <pre>
      * This class sets the key controllers of the game.
@@ -573,6 +1080,7 @@ public class BoardPanel extends JPanel implements Observer {
             for (int i = 0; i < myControls.length; i++) {
                 CONTROL_KEY_MAP.put(myControls[i], myControlKeys[i]);
             }
+            myKeyBindingsVersion++;
         }
 
         /**
@@ -601,15 +1109,15 @@ public class BoardPanel extends JPanel implements Observer {
         @Override
         public void keyPressed(final KeyEvent theEvent) {
             if (theEvent.getKeyCode() == CONTROL_KEY_MAP.get(LEFT)) {
-                myBoard.moveLeft();
+                myLoop.post(BoardAction.MOVE_LEFT);
             } else if (theEvent.getKeyCode() == CONTROL_KEY_MAP.get(RIGHT)) {
-                myBoard.moveRight();
+                myLoop.post(BoardAction.MOVE_RIGHT);
             } else if (theEvent.getKeyCode() == CONTROL_KEY_MAP.get(DOWN)) {
-                myBoard.moveDown();
+                myLoop.post(BoardAction.MOVE_DOWN);
             } else if (theEvent.getKeyCode() == CONTROL_KEY_MAP.get(DROP)) {
-                myBoard.drop();
+                myLoop.post(BoardAction.DROP);
             } else if (theEvent.getKeyCode() == CONTROL_KEY_MAP.get(ROTATE)) {
-                myBoard.rotate();
+                myLoop.post(BoardAction.ROTATE);
             } else if (theEvent.getKeyCode() == CONTROL_KEY_MAP.get(PAUSE)) {  
                 pause();
             } 
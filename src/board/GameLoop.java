@@ -0,0 +1,642 @@
+/*
+ * <pre>
+ * Class: <b>GameLoop</b>
+ * File: GameLoop.java
+ * Course: TCSS 305 - Autumn 2015
+ * Assignment 6 - Tetris
+ * Copyright 2015 Benjamin Abdipour
+ * </pre>
+ */
+
+package board;
+
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import model.Board;
+import model.BoardAction;
+import model.BoardEvent;
+import model.BoardListener;
+import model.BoardSnapshot;
+import simulation.MovePolicy;
+
+/**
+ * <pre>
+ * This class runs a game on its own thread. The thread owns the board: it
+ * applies the actions posted from the user interface and ticks the board
+ * at a fixed timestep measured with System.nanoTime, so the ticks stay on
+ * schedule however long painting takes. How fast pieces fall is set by the
+ * gravity of the board, not by the timestep. After every change it
+ * publishes a frame, the board events in order together with an immutable
+ * snapshot of the board, and the frames are delivered to the listeners on
+ * the event dispatch thread according to the rendering mode.
+ * </pre>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ * @since November 22, 2015
+ */
+public final class GameLoop {
+
+    /**
+     * The ways frames are delivered to the event dispatch thread.
+     */
+    public enum RenderMode {
+
+        /** One frame per refresh of the display. */
+        VSYNC,
+
+        /** At most the frame rate cap frames per second. */
+        CAPPED,
+
+        /** A frame as soon as the board changes. */
+        ON_CHANGE
+    }
+
+    /**
+     * The frame rate used when the display does not report its refresh rate.
+     */
+    private static final int DEFAULT_FRAME_RATE = 60;
+
+    /**
+     * The number of milliseconds in a second.
+     */
+    private static final int MILLIS_PER_SECOND = 1000;
+
+    /**
+     * The most ticks run to catch up after the thread was held up. Ticks
+     * further behind are dropped instead of bunching up.
+     */
+    private static final int MAX_CATCH_UP_TICKS = 8;
+
+    /**
+     * The board, only touched by the loop thread once the loop is started.
+     */
+    private final Board myBoard;
+
+    /**
+     * The actions posted to the loop thread.
+     */
+    private final Queue<Posted> myActions;
+
+    /**
+     * The frames published for the event dispatch thread.
+     */
+    private final Queue<Frame> myFrames;
+
+    /**
+     * The listeners notified on the event dispatch thread.
+     */
+    private final List<BoardListener> myListeners;
+
+    /**
+     * The events of the board not yet published, only touched by the loop thread.
+     */
+    private final List<BoardEvent> myPendingEvents;
+
+    /**
+     * Whether a delivery of frames is already waiting on the event dispatch thread.
+     */
+    private final AtomicBoolean myDeliveryQueued;
+
+    /**
+     * The task that delivers the published frames.
+     */
+    private final Runnable myDelivery;
+
+    /**
+     * The timer pacing deliveries in the VSYNC and CAPPED modes.
+     */
+    private final Timer myFrameTimer;
+
+    /**
+     * The loop thread, null until the loop is started.
+     */
+    private Thread myThread;
+
+    /**
+     * Whether the loop thread should keep running.
+     */
+    private volatile boolean myRunning;
+
+    /**
+     * Whether the game advances on its own.
+     */
+    private volatile boolean myTicking;
+
+    /**
+     * The time between two ticks in nanoseconds.
+     */
+    private volatile long myTickPeriod;
+
+    /**
+     * The gravity to apply to the board: the rows in the high half and the
+     * ticks in the low half, so both change together; -1 until it is set.
+     */
+    private volatile long myGravity;
+
+    /**
+     * The current rendering mode.
+     */
+    private volatile RenderMode myRenderMode;
+
+    /**
+     * The policy playing every piece as it appears, null when the user plays.
+     */
+    private volatile MovePolicy myAutoplayer;
+
+    /**
+     * The number of games started by the loop thread.
+     */
+    private int myGames;
+
+    /**
+     * The last piece played by the autoplayer: the game in the high half and
+     * the pieces placed before it in the low half.
+     */
+    private long myAutoplayedPiece;
+
+    /**
+     * The frame rate cap of the CAPPED mode.
+     */
+    private int myFrameRateCap;
+
+    /**
+     * The snapshot of the last delivered frame.
+     */
+    private BoardSnapshot mySnapshot;
+
+    /**
+     * Whether frames are being delivered, to keep a modal dialog opened by a
+     * listener from delivering later frames in the middle of a frame.
+     */
+    private boolean myDelivering;
+
+    /**
+     * Constructor for the game loop. The loop does not run until it is started.
+     *
+     * @param theBoard the board to run; it must not be used by anything else
+     *        once the loop is started
+     * @param theTickPeriod the time between two ticks in nanoseconds
+     */
+    public GameLoop(final Board theBoard, final long theTickPeriod) {
+        myBoard = theBoard;
+        myActions = new ConcurrentLinkedQueue<Posted>();
+        myFrames = new ConcurrentLinkedQueue<Frame>();
+        myListeners = new CopyOnWriteArrayList<BoardListener>();
+        myPendingEvents = new ArrayList<BoardEvent>();
+        myDeliveryQueued = new AtomicBoolean();
+        myTickPeriod = theTickPeriod;
+        myGravity = -1;
+        myAutoplayedPiece = -1;
+        myRenderMode = RenderMode.ON_CHANGE;
+        myFrameRateCap = DEFAULT_FRAME_RATE;
+        mySnapshot = theBoard.snapshot();
+        myBoard.addBoardListener(new BoardListener() {
+            @Override
+            public void boardChanged(final BoardEvent theEvent) {
+                myPendingEvents.add(theEvent);
+            }
+        });
+        myDelivery = new Runnable() {
+            @Override
+            public void run() {
+                deliverFrames();
+            }
+        };
+        myFrameTimer = new Timer(MILLIS_PER_SECOND / DEFAULT_FRAME_RATE, new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent theEvent) {
+                deliverFrames();
+            }
+        });
+    }
+
+    /**
+     * Starts the loop thread.
+     */
+    public void start() {
+        if (myThread == null) {
+            myRunning = true;
+            myThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runLoop();
+                }
+            }, "Tetris game loop");
+            myThread.setDaemon(true);
+            myThread.start();
+        }
+    }
+
+    /**
+     * Stops the loop thread and the delivery of frames. Actions posted
+     * afterwards are ignored.
+     */
+    public void stop() {
+        myRunning = false;
+        myFrameTimer.stop();
+        LockSupport.unpark(myThread);
+    }
+
+    /**
+     * Registers a listener notified of every change of the board on the
+     * event dispatch thread. The source of the events must not be used.
+     *
+     * @param theListener the listener to add
+     */
+    public void addBoardListener(final BoardListener theListener) {
+        myListeners.add(theListener);
+    }
+
+    /**
+     * Posts an action to be applied to the board by the loop thread. Moves
+     * are ignored once the game is over; NEW_GAME starts a random game
+     * played by the user, as newGame(null) does.
+     *
+     * @param theAction the action to apply
+     */
+    public void post(final BoardAction theAction) {
+        myActions.add(Posted.ACTIONS[theAction.ordinal()]);
+        LockSupport.unpark(myThread);
+    }
+
+    /**
+     * Posts a new random game to be started by the loop thread, together
+     * with the policy playing it. The policy takes over when the game
+     * starts, after the actions posted before, so it never plays a piece
+     * of the previous game.
+     *
+     * @param theAutoplayer the policy, or null to let the user play
+     */
+    public void newGame(final MovePolicy theAutoplayer) {
+        myActions.add(new Posted(BoardAction.NEW_GAME, theAutoplayer));
+        LockSupport.unpark(myThread);
+    }
+
+    /**
+     * Sets whether the game advances on its own. The first tick after the
+     * game is resumed comes a full tick period later.
+     *
+     * @param theTicking true to run the ticks, false to hold them
+     */
+    public void setTicking(final boolean theTicking) {
+        myTicking = theTicking;
+        LockSupport.unpark(myThread);
+    }
+
+    /**
+     * @return whether the game advances on its own
+     */
+    public boolean isTicking() {
+        return myTicking;
+    }
+
+    /**
+     * Sets the time between two ticks. The tick already scheduled is kept.
+     *
+     * @param theTickPeriod the time between two ticks in nanoseconds
+     */
+    public void setTickPeriod(final long theTickPeriod) {
+        myTickPeriod = theTickPeriod;
+    }
+
+    /**
+     * Sets the gravity of the board, applied by the loop thread before its
+     * next tick. See Board.setGravity.
+     *
+     * @param theRows the number of rows the piece falls, 0 to
+     *        Board.MAX_GRAVITY * theTicks
+     * @param theTicks the number of ticks it takes, 1 or greater
+     */
+    public void setGravity(final int theRows, final int theTicks) {
+        if (theRows < 0 || theTicks < 1
+                        || (long) theRows > (long) Board.MAX_GRAVITY * theTicks) {
+            throw new IllegalArgumentException("Bad gravity: " + theRows + " / " + theTicks);
+        }
+        myGravity = (long) theRows << Integer.SIZE | theTicks;
+        LockSupport.unpark(myThread);
+    }
+
+    /**
+     * Sets the policy playing the game at once, whatever actions are still
+     * posted; newGame sets one for a new game instead. The loop thread lets
+     * it play every piece once, as soon as the piece appears and before the
+     * next tick, so the policy must choose its move in much less than a
+     * tick period.
+     *
+     * @param theAutoplayer the policy, or null to let the user play
+     */
+    public void setAutoplayer(final MovePolicy theAutoplayer) {
+        myAutoplayer = theAutoplayer;
+        LockSupport.unpark(myThread);
+    }
+
+    /**
+     * Sets how frames are delivered to the event dispatch thread. Must be
+     * called on the event dispatch thread.
+     *
+     * @param theMode the rendering mode
+     */
+    public void setRenderMode(final RenderMode theMode) {
+        myRenderMode = theMode;
+        if (theMode == RenderMode.ON_CHANGE) {
+            myFrameTimer.stop();
+            queueDelivery();
+        } else {
+            final int rate;
+            if (theMode == RenderMode.VSYNC) {
+                rate = displayRefreshRate();
+            } else {
+                rate = myFrameRateCap;
+            }
+            myFrameTimer.setDelay(Math.max(1, MILLIS_PER_SECOND / rate));
+            myFrameTimer.start();
+        }
+    }
+
+    /**
+     * @return the current rendering mode
+     */
+    public RenderMode getRenderMode() {
+        return myRenderMode;
+    }
+
+    /**
+     * Sets the frame rate cap of the CAPPED mode. Must be called on the event
+     * dispatch thread.
+     *
+     * @param theFrameRate the most frames per second, 1 or greater
+     */
+    public void setFrameRateCap(final int theFrameRate) {
+        if (theFrameRate < 1) {
+            throw new IllegalArgumentException("Bad frame rate: " + theFrameRate);
+        }
+        myFrameRateCap = theFrameRate;
+        if (myRenderMode == RenderMode.CAPPED) {
+            setRenderMode(RenderMode.CAPPED);
+        }
+    }
+
+    /**
+     * Returns the snapshot of the board matching the events delivered so far.
+     * Must be called on the event dispatch thread.
+     *
+     * @return the snapshot
+     */
+    public BoardSnapshot getSnapshot() {
+        return mySnapshot;
+    }
+
+    /**
+     * The body of the loop thread.
+     */
+    private void runLoop() {
+        boolean ticking = false;
+        long nextTick = 0;
+        long gravity = myGravity;
+        while (myRunning) {
+            if (gravity != myGravity) {
+                gravity = myGravity;
+                myBoard.setGravity((int) (gravity >>> Integer.SIZE), (int) gravity);
+            }
+            Posted action = myActions.poll();
+            while (action != null) {
+                apply(action);
+                action = myActions.poll();
+            }
+            final long now = System.nanoTime();
+            if (myTicking) {
+                if (!ticking) {
+                    ticking = true;
+                    nextTick = now + myTickPeriod;
+                }
+                int ticks = 0;
+                while (now - nextTick >= 0 && ticks < MAX_CATCH_UP_TICKS) {
+                    autoplay();
+                    myBoard.tick();
+                    nextTick += myTickPeriod;
+                    ticks++;
+                }
+                if (now - nextTick >= 0) {
+                    nextTick = now + myTickPeriod;
+                }
+            } else {
+                ticking = false;
+            }
+            autoplay();
+            publish();
+            if (myActions.isEmpty() && myRunning) {
+                if (ticking) {
+                    LockSupport.parkNanos(this, nextTick - System.nanoTime());
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lets the autoplayer play the current piece if it has not played it yet.
+     */
+    private void autoplay() {
+        final MovePolicy autoplayer = myAutoplayer;
+        if (autoplayer != null && !myBoard.isGameOver()) {
+            final long piece = (long) myGames << Integer.SIZE | myBoard.getPiecesPlaced();
+            if (piece != myAutoplayedPiece) {
+                myAutoplayedPiece = piece;
+                autoplayer.playPiece(myBoard);
+            }
+        }
+    }
+
+    /**
+     * Applies a posted action to the board.
+     *
+     * @param thePosted the action
+     */
+    private void apply(final Posted thePosted) {
+        if (thePosted.myAction == BoardAction.NEW_GAME) {
+            myAutoplayer = thePosted.myAutoplayer;
+            myBoard.newGame(myBoard.getWidth(), myBoard.getHeight(), null);
+            myGames++;
+        } else if (!myBoard.isGameOver()) {
+            switch (thePosted.myAction) {
+                case MOVE_LEFT:
+                    myBoard.moveLeft();
+                    break;
+                case MOVE_RIGHT:
+                    myBoard.moveRight();
+                    break;
+                case MOVE_DOWN:
+                    myBoard.moveDown();
+                    break;
+                case ROTATE:
+                    myBoard.rotate();
+                    break;
+                case DROP:
+                    myBoard.drop();
+                    break;
+                case STEP:
+                    myBoard.step();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Publishes the pending events and a snapshot of the board as a frame.
+     */
+    private void publish() {
+        if (!myPendingEvents.isEmpty()) {
+            final BoardEvent[] events = myPendingEvents.toArray(
+                            new BoardEvent[myPendingEvents.size()]);
+            myPendingEvents.clear();
+            myFrames.add(new Frame(events, myBoard.snapshot()));
+            if (myRenderMode == RenderMode.ON_CHANGE) {
+                queueDelivery();
+            }
+        }
+    }
+
+    /**
+     * Queues a delivery of frames on the event dispatch thread unless one is
+     * already waiting.
+     */
+    private void queueDelivery() {
+        if (myDeliveryQueued.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(myDelivery);
+        }
+    }
+
+    /**
+     * Delivers the published frames to the listeners, in order.
+     */
+    private void deliverFrames() {
+        myDeliveryQueued.set(false);
+        if (!myDelivering) {
+            myDelivering = true;
+            try {
+                Frame frame = myFrames.poll();
+                while (frame != null) {
+                    mySnapshot = frame.mySnapshot;
+                    for (final BoardEvent event : frame.myEvents) {
+                        for (final BoardListener listener : myListeners) {
+                            listener.boardChanged(event);
+                        }
+                    }
+                    frame = myFrames.poll();
+                }
+            } finally {
+                myDelivering = false;
+            }
+        }
+    }
+
+    /**
+     * Returns the refresh rate of the default screen.
+     *
+     * @return the refresh rate in hertz, DEFAULT_FRAME_RATE if it is unknown
+     */
+    private static int displayRefreshRate() {
+        int result = DEFAULT_FRAME_RATE;
+        if (!GraphicsEnvironment.isHeadless()) {
+            final int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().
+                            getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+            if (rate != DisplayMode.REFRESH_RATE_UNKNOWN) {
+                result = rate;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * <pre>
+     * The board events of one batch of changes and the state they led to.
+     * </pre>
+     *
+     * @author Benjamin Abdipour
+     * @version 12/11/2015
+     * @since November 22, 2015
+     */
+    private static final class Frame {
+
+        /**
+         * The events, in the order they happened.
+         */
+        private final BoardEvent[] myEvents;
+
+        /**
+         * The board after the last event.
+         */
+        private final BoardSnapshot mySnapshot;
+
+        /**
+         * Constructor for a frame.
+         *
+         * @param theEvents the events, in order
+         * @param theSnapshot the board after the last event
+         */
+        Frame(final BoardEvent[] theEvents, final BoardSnapshot theSnapshot) {
+            myEvents = theEvents;
+            mySnapshot = theSnapshot;
+        }
+    }
+
+    /**
+     * <pre>
+     * An action posted to the loop thread and, for a new game, the policy
+     * playing it.
+     * </pre>
+     *
+     * @author Benjamin Abdipour
+     * @version 12/11/2015
+     * @since November 22, 2015
+     */
+    private static final class Posted {
+
+        /**
+         * Every action played by the user, by ordinal, shared by all posts.
+         */
+        private static final Posted[] ACTIONS = new Posted[BoardAction.values().length];
+
+        static {
+            for (final BoardAction action : BoardAction.values()) {
+                ACTIONS[action.ordinal()] = new Posted(action, null);
+            }
+        }
+
+        /**
+         * The action.
+         */
+        private final BoardAction myAction;
+
+        /**
+         * The policy playing a new game, null for the user.
+         */
+        private final MovePolicy myAutoplayer;
+
+        /**
+         * Constructor for a posted action.
+         *
+         * @param theAction the action
+         * @param theAutoplayer the policy playing a new game, null for the user
+         */
+        Posted(final BoardAction theAction, final MovePolicy theAutoplayer) {
+            myAction = theAction;
+            myAutoplayer = theAutoplayer;
+        }
+    }
+}
@@ -18,15 +18,18 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.event.ComponentEvent;
 import java.awt.event.KeyEvent;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
-import model.AbstractPiece;
+import model.Block;
 import model.Board;
-import model.IPiece;
-import model.OPiece;
-import model.Piece;
+import model.BoardAction;
+import model.BoardEvent;
+import model.BoardListener;
+import model.PieceShape;
+import model.PieceState;
 import view.TetrisGUI;
 
 /**
@@ -40,7 +43,7 @@ import view.TetrisGUI;
  * @since November 22, 2015
  */
 
-public class InfoPanel extends JPanel implements Observer {
+public class InfoPanel extends JPanel implements Observer, BoardListener {
 
     /**
      * The auto-generated serial ID.
@@ -67,16 +70,6 @@ public class InfoPanel extends JPanel implements Observer {
      */
     private static final String FONT_NAME = "Tahoma";
 
-    /**
-     * Points scored per piece played.
-     */
-    private static final int SCORE_PER_PIECE = 10;
-
-    /**
-     * Points scored per line cleared.
-     */
-    private static final int SCORE_PER_LINE = 50;
-
     /**
      * The ratio of scale to width.
      */
@@ -153,14 +146,64 @@ public class InfoPanel extends JPanel implements Observer {
     private static final int PIECE_PER_LEVEL = 10;
 
     /**
-     * The frozen lines number.
+     * The index of the "Next Piece" label.
+     */
+    private static final int NEXT_PIECE_LABEL = 0;
+
+    /**
+     * The index of the lines label.
+     */
+    private static final int LINES_LABEL = 1;
+
+    /**
+     * The index of the score label.
+     */
+    private static final int SCORE_LABEL = 2;
+
+    /**
+     * The index of the level label.
+     */
+    private static final int LEVEL_LABEL = 3;
+
+    /**
+     * The index of the next level label.
      */
-    private int myFrozenBlocksSize;
+    private static final int NEXT_LEVEL_LABEL = 4;
+
+    /**
+     * The index of the first control key label.
+     */
+    private static final int KEY_LABEL = 5;
+
+    /**
+     * The names of the control keys, in the order they are listed.
+     */
+    private static final String[] KEY_NAMES = {"left", "right", "down", "rotate", "drop",
+                                               "pause"};
+
+    /**
+     * The captions of the control keys, in the order they are listed.
+     */
+    private static final String[] KEY_CAPTIONS = {"Move Left: ", "Move Right: ",
+                                                  "Move Down: ", "Rotate: ", "Drop: ",
+                                                  "Pause: "};
+
+    /**
+     * The font and the laid out labels of the panel.
+     */
+    private final RenderCache myRenderCache = new RenderCache(FONT_NAME, Font.BOLD,
+                                                              PERCENT_75,
+                                                              KEY_LABEL + KEY_NAMES.length);
+
+    /**
+     * The version of the key bindings the control key labels show.
+     */
+    private int myKeyBindingsVersion = -1;
 
     /**
      * The next piece.
      */
-    private Piece myNextPiece;
+    private PieceState myNextPiece;
 
     /**
      * Pixel x-coordinate shift adjustment for next piece display.
@@ -177,11 +220,6 @@ public class InfoPanel extends JPanel implements Observer {
      */
     private int myLineScore;
 
-    /**
-     * The total points scored in current game.
-     */
-    private int myTotalScore;
-
     /**
      * The total number of pieces played.
      */
@@ -221,17 +259,18 @@ public class InfoPanel extends JPanel implements Observer {
         myBoardPanel = theBoardPanel;
         myScale = INITIAL_SCALE;
         myLevel = 0;
+        myRenderCache.setText(NEXT_PIECE_LABEL, "Next Piece");
+        updateStatLabels();
     }
 
     /**
      * Initializes the variables.
      */
     private void init() {
+        myNextPiece = null;
         myXAdjust = 0;
         myYAdjust = 0;
         myLineScore = 0;
-        myTotalScore = 0;
-        myFrozenBlocksSize = 0;
         myPiecePlayed = 0;
     }
 
@@ -241,6 +280,7 @@ public class InfoPanel extends JPanel implements Observer {
     public void newGame() {
         init();
         myLevel = 1;
+        updateStatLabels();
     }
 
     /**
@@ -248,31 +288,49 @@ public class InfoPanel extends JPanel implements Observer {
      */
     public void stop() {
         JOptionPane.showMessageDialog(this.getParent(), "Game Ended\nYour Score: " 
-                        + myTotalScore, "Game Ended", 
+                        + getTotalScore(), "Game Ended", 
                         JOptionPane.INFORMATION_MESSAGE);
     }
 
+    /**
+     * Updates the info panel after a change of the board. The stats are
+     * reset when the board starts a new game, after any change of the old
+     * game still on its way from the game loop.
+     * 
+     * @param theEvent the description of the change
+     */
+    @Override
+    public void boardChanged(final BoardEvent theEvent) {
+        if (theEvent.getAction() == BoardAction.NEW_GAME) {
+            init();
+            myLevel = 1;
+        }
+        if (theEvent.getFrozenPiece() != null) {
+            calculatePieceScore();
+            calculateLevel();
+        }
+        calculateLinesCleared(theEvent.getClearedRowCount());
+        if (theEvent.isNextPieceChanged()) {
+            calculatePieceAlignment(theEvent.getNextPiece());
+        }
+        if (theEvent.isGameOver()) {
+            JOptionPane.showMessageDialog(this.getParent(), "Game Over\nYour Score: " 
+                            + getTotalScore(), "Game Over", 
+                            JOptionPane.INFORMATION_MESSAGE);
+        }
+        updateStatLabels();
+        repaint();
+    }
+
     /**
      * Updates the info panel.
      * 
-     * @param theObserver the in-action observable (Board)
+     * @param theObserver the in-action observable (GUI)
      * @param theObject the object passed in by observable object
      */
     @Override
     public void update(final Observable theObservable, final Object theObject) {
-        if (theObservable instanceof Board) {
-            final Board localBoard = (Board) theObservable;
-            final Piece localNextPiece = localBoard.getNextPiece();
-            calculatePieceScore(localNextPiece);
-            calculateLevel();
-            calculatePieceAlignment(localNextPiece);
-            calculateLinesCleared(myBoardPanel.getFrozenBlockSize());
-            if (localBoard.isGameOver()) {
-                JOptionPane.showMessageDialog(this.getParent(), "Game Over\nYour Score: " 
-                                + myTotalScore, "Game Over", 
-                                JOptionPane.INFORMATION_MESSAGE);
-            }
-        } else if (theObservable instanceof TetrisGUI) {
+        if (theObservable instanceof TetrisGUI) {
             final Dimension currentSize = ((ComponentEvent) theObject).
                             getComponent().getSize();
             final double width = currentSize.getWidth();
@@ -289,15 +347,33 @@ public class InfoPanel extends JPanel implements Observer {
 
 
     /**
-     * Calculates the total score for each piece that is placed.
-     * 
-     * @param thePiece the current piece in play on board
+     * Lays out the stats labels again. Called whenever the stats change.
      */
-    private void calculatePieceScore(final Piece thePiece) {
-        if (myNextPiece != null && !thePiece.equals(myNextPiece)) {
-            myPiecePlayed++;
-            myTotalScore += SCORE_PER_PIECE;
-        }   
+    private void updateStatLabels() {
+        myRenderCache.setText(LINES_LABEL, "Lines: " + myLineScore);
+        myRenderCache.setText(SCORE_LABEL, "Score: " + getTotalScore());
+        myRenderCache.setText(LEVEL_LABEL, "Level: " + myLevel);
+        myRenderCache.setText(NEXT_LEVEL_LABEL, "Next Level in "
+                              + (PIECE_PER_LEVEL * myLevel - myPiecePlayed) + " pieces");
+    }
+
+    /**
+     * Lays out the control key labels again. Called whenever the key bindings change.
+     */
+    private void updateKeyLabels() {
+        final Map<String, Integer> keys = myBoardPanel.getControlKeys();
+        for (int i = 0; i < KEY_NAMES.length; i++) {
+            myRenderCache.setText(KEY_LABEL + i, KEY_CAPTIONS[i]
+                                  + KeyEvent.getKeyText(keys.get(KEY_NAMES[i])));
+        }
+        myKeyBindingsVersion = myBoardPanel.getKeyBindingsVersion();
+    }
+
+    /**
+     * Counts a piece that is placed.
+     */
+    private void calculatePieceScore() {
+        myPiecePlayed++;
     }
 
     /**
@@ -313,15 +389,15 @@ public class InfoPanel extends JPanel implements Observer {
     /**
      * Adjusts the position for the next piece display.
      * 
-     * @param thePiece the current piece in play on board
+     * @param thePiece the next piece to be played on board
      */
-    private void calculatePieceAlignment(final Piece thePiece) {
+    private void calculatePieceAlignment(final PieceState thePiece) {
         if (!thePiece.equals(myNextPiece)) {
             myNextPiece = thePiece;
-            if (myNextPiece instanceof IPiece) {
+            if (myNextPiece.getType() == Block.I) {
                 myXAdjust = -TEN_PIXELS;
                 myYAdjust = 0;
-            } else if (myNextPiece instanceof OPiece) {
+            } else if (myNextPiece.getType() == Block.O) {
                 myYAdjust = -FIVE_PIXELS; 
                 myXAdjust = 0;
             } else {
@@ -334,14 +410,20 @@ public class InfoPanel extends JPanel implements Observer {
     /**
      * Updates lines cleared score.
      * 
-     * @param theFrozenBlocksSize the current frozen blocks on the board
+     * @param theLines the number of lines just cleared on the board
      */
-    private void calculateLinesCleared(final int theFrozenBlocksSize) { 
-        if (theFrozenBlocksSize < myFrozenBlocksSize) {
-            myLineScore++;
-            myTotalScore += SCORE_PER_LINE;
-        }
-        myFrozenBlocksSize = theFrozenBlocksSize;
+    private void calculateLinesCleared(final int theLines) { 
+        myLineScore += theLines;
+    }
+
+    /**
+     * Returns the total points scored in current game. The score is
+     * computed by the model, so it matches the score of a replay.
+     * 
+     * @return the score
+     */
+    private long getTotalScore() {
+        return Board.score(myPiecePlayed, myLineScore);
     }
 
     /**
@@ -357,6 +439,7 @@ public class InfoPanel extends JPanel implements Observer {
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, 
                              RenderingHints.VALUE_ANTIALIAS_ON);
 
+        myRenderCache.setScale(myScale);
         final int panelWidth = getWidth();
         drawPanel(g2d, panelWidth);
         drawNextPiece(g2d, panelWidth);
@@ -374,23 +457,23 @@ public class InfoPanel extends JPanel implements Observer {
         theGraphic.fillRect(0, 0, myBoardPanel.getWidth(), 
                             myBoardPanel.getHeight());
         theGraphic.setColor(DEAD_BLOCK_COLOR);
-        theGraphic.setFont(new Font(FONT_NAME, Font.BOLD, (int) (PERCENT_75 * myScale)));
-        theGraphic.drawString("Next Piece", (int) (theWidth * PERCENT_33) - 1, 
-                              (myScale - 1) * TWO_PIXELS);
-        theGraphic.drawString("Lines: " + myLineScore, 
-                              (int) (theWidth * PERCENT_33) - TWENTY_PIXELS, 
-                              myScale * ELEVEN_PIXELS);
-        theGraphic.drawString("Score: " + myTotalScore, 
-                              (int) (theWidth * PERCENT_33) - TWENTY_PIXELS, 
-                              myScale * TWELVE_PIXELS);
-        theGraphic.drawString("Level: " + myLevel, 
-                              (int) (theWidth * PERCENT_33) - TWENTY_PIXELS, 
-                              myScale * THIRTEEN_PIXELS);
+        theGraphic.setFont(myRenderCache.getFont());
+        myRenderCache.drawLabel(theGraphic, NEXT_PIECE_LABEL,
+                                (int) (theWidth * PERCENT_33) - 1,
+                                (myScale - 1) * TWO_PIXELS);
+        myRenderCache.drawLabel(theGraphic, LINES_LABEL,
+                                (int) (theWidth * PERCENT_33) - TWENTY_PIXELS,
+                                myScale * ELEVEN_PIXELS);
+        myRenderCache.drawLabel(theGraphic, SCORE_LABEL,
+                                (int) (theWidth * PERCENT_33) - TWENTY_PIXELS,
+                                myScale * TWELVE_PIXELS);
+        myRenderCache.drawLabel(theGraphic, LEVEL_LABEL,
+                                (int) (theWidth * PERCENT_33) - TWENTY_PIXELS,
+                                myScale * THIRTEEN_PIXELS);
         if (myBoardPanel.isPlaying()) {
-            theGraphic.drawString("Next Level in " 
-                            + (PIECE_PER_LEVEL * myLevel - myPiecePlayed) 
-                            + " pieces", (int) (theWidth * PERCENT_33) - TWENTY_PIXELS, 
-                            myScale * FOURTEEN_PIXELS);
+            myRenderCache.drawLabel(theGraphic, NEXT_LEVEL_LABEL,
+                                    (int) (theWidth * PERCENT_33) - TWENTY_PIXELS,
+                                    myScale * FOURTEEN_PIXELS);
         }
     }
 
@@ -402,19 +485,22 @@ public class InfoPanel extends JPanel implements Observer {
      */
     private void drawNextPiece(final Graphics2D theGraphic, final int theWidth) {
         if (myNextPiece != null) {
-            final int[][] piece = ((AbstractPiece) myNextPiece).getRotation();
+            final PieceShape shape = myNextPiece.getShape();
+            final int rotation = myNextPiece.getRotation();
 
-            for (final int[] block : piece) {
+            for (int block = 0; block < PieceShape.CELLS; block++) {
+                final int blockX = shape.getCellX(rotation, block);
+                final int blockY = shape.getCellY(rotation, block);
                 theGraphic.setColor(DEAD_BLOCK_COLOR);
                 theGraphic.fillRect((int) (theWidth * PERCENT_33) 
-                                    + block[1] * myScale + myXAdjust, 
-                                    THREE_PIXELS * myScale + block[0] 
+                                    + blockY * myScale + myXAdjust, 
+                                    THREE_PIXELS * myScale + blockX 
                                                     * myScale + myScale / 2 + myYAdjust, 
                                                     myScale, myScale);  
                 theGraphic.setColor(PANEL_COLOR);
                 theGraphic.drawRect((int) (theWidth * PERCENT_33) 
-                                    + block[1] * myScale + myXAdjust, 
-                                    THREE_PIXELS * myScale + block[0] 
+                                    + blockY * myScale + myXAdjust, 
+                                    THREE_PIXELS * myScale + blockX 
                                                     * myScale + myScale / 2 + myYAdjust, 
                                                     myScale, myScale);
             }
@@ -433,35 +519,15 @@ public class InfoPanel extends JPanel implements Observer {
         theGraphic.drawRect((int) (theWidth * PERCENT_33) - TEN_PIXELS, 
                             THREE_PIXELS * myScale, myScale * FIVE_PIXELS, 
                             myScale * FIVE_PIXELS);
-        theGraphic.setFont(new Font(FONT_NAME, Font.BOLD, (int) (PERCENT_75 * myScale)));
-        theGraphic.drawString("Move Left: " + KeyEvent.getKeyText(myBoardPanel.
-                                                                  getControlKeys().
-                                                                  get("left")), 
-                              (int) (theWidth * PERCENT_33) - TWENTY_PIXELS, myScale 
-                              * localOffset++);
-        theGraphic.drawString("Move Right: " + KeyEvent.getKeyText(myBoardPanel.
-                                                                   getControlKeys().
-                                                                   get("right")), 
-                              (int) (theWidth * PERCENT_33) - TWENTY_PIXELS, myScale 
-                              * localOffset++);
-        theGraphic.drawString("Move Down: " + KeyEvent.getKeyText(myBoardPanel.
-                                                                  getControlKeys().
-                                                                  get("down")), 
-                              (int) (theWidth * PERCENT_33) - TWENTY_PIXELS, myScale 
-                              * localOffset++);
-        theGraphic.drawString("Rotate: " + KeyEvent.getKeyText(myBoardPanel.
-                                                                  getControlKeys().
-                                                                  get("rotate")), 
-                              (int) (theWidth * PERCENT_33) - TWENTY_PIXELS, myScale 
-                              * localOffset++);
-        theGraphic.drawString("Drop: " + KeyEvent.getKeyText(myBoardPanel.getControlKeys().
-                                                             get("drop")), 
-                              (int) (theWidth * PERCENT_33) - TWENTY_PIXELS, myScale 
-                              * localOffset++);
-        theGraphic.drawString("Pause: " + KeyEvent.getKeyText(myBoardPanel.getControlKeys().
-                                                             get("pause")), 
-                              (int) (theWidth * PERCENT_33) - TWENTY_PIXELS, myScale 
-                              * localOffset++);
+        theGraphic.setFont(myRenderCache.getFont());
+        if (myKeyBindingsVersion != myBoardPanel.getKeyBindingsVersion()) {
+            updateKeyLabels();
+        }
+        for (int i = 0; i < KEY_NAMES.length; i++) {
+            myRenderCache.drawLabel(theGraphic, KEY_LABEL + i,
+                                    (int) (theWidth * PERCENT_33) - TWENTY_PIXELS,
+                                    myScale * localOffset++);
+        }
     }
 
     /**
@@ -0,0 +1,155 @@
+/*
+ * <pre>
+ * Class: <b>RenderCache</b>
+ * File: RenderCache.java
+ * Course: TCSS 305 - Autumn 2015
+ * Assignment 6 - Tetris
+ * Copyright 2015 Benjamin Abdipour
+ * </pre>
+ */
+
+package board;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+
+/**
+ * <pre>
+ * This class keeps the font of a panel at the current scale and a set of text
+ * labels laid out in that font, so painting does not create fonts or strings.
+ * The font is rebuilt only when the scale changes, and a label is laid out
+ * again only when its text, the scale or the rendering context changes.
+ * </pre>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ * @since November 22, 2015
+ */
+final class RenderCache {
+
+    /**
+     * The name of the font.
+     */
+    private final String myFontName;
+
+    /**
+     * The style of the font.
+     */
+    private final int myFontStyle;
+
+    /**
+     * The ratio of the font size to the scale.
+     */
+    private final double myFontRatio;
+
+    /**
+     * The text of each label.
+     */
+    private final String[] myTexts;
+
+    /**
+     * The laid out labels, null where a label has to be laid out again.
+     */
+    private final GlyphVector[] myLabels;
+
+    /**
+     * The scale the font was built for.
+     */
+    private int myScale;
+
+    /**
+     * The font at the current scale.
+     */
+    private Font myFont;
+
+    /**
+     * The rendering context the labels were laid out for.
+     */
+    private FontRenderContext myContext;
+
+    /**
+     * Constructor for the render cache.
+     *
+     * @param theFontName the name of the font
+     * @param theFontStyle the style of the font
+     * @param theFontRatio the ratio of the font size to the scale
+     * @param theLabelCount the number of labels
+     */
+    RenderCache(final String theFontName, final int theFontStyle,
+                final double theFontRatio, final int theLabelCount) {
+        myFontName = theFontName;
+        myFontStyle = theFontStyle;
+        myFontRatio = theFontRatio;
+        myTexts = new String[theLabelCount];
+        myLabels = new GlyphVector[theLabelCount];
+        myScale = -1;
+    }
+
+    /**
+     * Sets the scale, rebuilding the font and dropping the labels if it changed.
+     *
+     * @param theScale the scale of the panel
+     */
+    void setScale(final int theScale) {
+        if (theScale != myScale) {
+            myScale = theScale;
+            myFont = new Font(myFontName, myFontStyle, (int) (myFontRatio * theScale));
+            clearLabels();
+        }
+    }
+
+    /**
+     * Returns the font at the current scale.
+     *
+     * @return the font
+     */
+    Font getFont() {
+        return myFont;
+    }
+
+    /**
+     * Sets the text of a label. The label is laid out again only if the text changed.
+     *
+     * @param theLabel the index of the label
+     * @param theText the text of the label
+     */
+    void setText(final int theLabel, final String theText) {
+        if (!theText.equals(myTexts[theLabel])) {
+            myTexts[theLabel] = theText;
+            myLabels[theLabel] = null;
+        }
+    }
+
+    /**
+     * Draws a label with its baseline starting at the given point, in the
+     * current color of the graphics object.
+     *
+     * @param theGraphic the graphics object to draw on
+     * @param theLabel the index of the label
+     * @param theX the x coordinate of the label
+     * @param theY the y coordinate of the baseline
+     */
+    void drawLabel(final Graphics2D theGraphic, final int theLabel,
+                   final int theX, final int theY) {
+        final FontRenderContext context = theGraphic.getFontRenderContext();
+        if (!context.equals(myContext)) {
+            myContext = context;
+            clearLabels();
+        }
+        if (myLabels[theLabel] == null) {
+            myLabels[theLabel] = myFont.createGlyphVector(context, myTexts[theLabel]);
+        }
+        theGraphic.drawGlyphVector(myLabels[theLabel], theX, theY);
+    }
+
+    /**
+     * Drops every laid out label.
+     */
+    private void clearLabels() {
+        for (int i = 0; i < myLabels.length; i++) {
+            myLabels[i] = null;
+        }
+    }
+}
@@ -162,6 +162,16 @@ public class MenuBar extends JMenuBar {
 
         myEndGameMenuItem.addPropertyChangeListener(myEndGmmeListener);
 
+        final JMenuItem demoMenuItem = new JMenuItem("Demo");
+        demoMenuItem.setMnemonic(KeyEvent.VK_M);
+        demoMenuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent theEvent) {
+                myBoardPanel.demoMode();
+                myInfoPanel.newGame();
+            }
+        });
+
         final JMenuItem exitMenuItem = new JMenuItem("Exit");
         exitMenuItem.setMnemonic(KeyEvent.VK_X);
         exitMenuItem.addActionListener(new ActionListener() {
@@ -172,6 +182,7 @@ public class MenuBar extends JMenuBar {
         });
 
         gameMenu.add(myNewGameMenuItem);
+        gameMenu.add(demoMenuItem);
         gameMenu.addSeparator();
         gameMenu.add(myEndGameMenuItem);
         gameMenu.addSeparator();
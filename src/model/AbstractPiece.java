@@ -15,7 +15,7 @@ public abstract class AbstractPiece implements Piece, Cloneable {
     /**
      * The number of blocks in a piece.
      */
-    private static final int BLOCKS = 4;
+    private static final int BLOCKS = PieceShape.CELLS;
 
     /** The x coordinate of this Piece. */
     private int myX;
@@ -23,8 +23,8 @@ public abstract class AbstractPiece implements Piece, Cloneable {
     /** The y coordinate of this Piece. */
     private int myY;
 
-    /** The rotational states of this Piece. */
-    private int[][][] myRotations;
+    /** The shared rotational states of this Piece. */
+    private final PieceShape myShape;
 
     /** The index of the current rotational state of this Piece. */
     private int myCurrentRotation;
@@ -35,28 +35,78 @@ public abstract class AbstractPiece implements Piece, Cloneable {
     /**
      * Creates a new piece at the given coordinates.
      * 
-     * @param theRotations the rotational states for this Piece.
      * @param theX the initial x coordinate for this piece.
      * @param theY the initial y coordinate for this piece.
      * @param theBlock the type of block.
      */
-    protected AbstractPiece(final int[][][] theRotations,
-                            final int theX, final int theY,
+    protected AbstractPiece(final int theX, final int theY,
                             final Block theBlock) {
         
-        // make a defensive copy of theRotations 3D array since arrays are mutable
-        myRotations = new int[theRotations.length][theRotations[0].length][];
-        for (int array2D = 0; array2D < theRotations.length; array2D++) {
-            for (int array1D = 0; array1D < theRotations[0].length; array1D++) {
-                myRotations[array2D][array1D] = theRotations[array2D][array1D].clone();
-            }
-        }
+        // the rotation tables are immutable, so every piece of a type shares them
+        myShape = PieceShape.of(theBlock);
         myCurrentRotation = 0;
         myX = theX;
         myY = theY;
         myBlock = theBlock;
     }
 
+    /**
+     * Creates a mutable piece with the type, rotation and position of a piece state.
+     *
+     * @param theState the state of the piece
+     * @return a new piece in that state
+     */
+    static AbstractPiece of(final PieceState theState) {
+        final AbstractPiece result = create(theState.getType(), theState.getX(), theState.getY());
+        result.myCurrentRotation = theState.getRotation();
+        return result;
+    }
+
+    /**
+     * Creates a new piece of a type at the given coordinates.
+     *
+     * @param theType the type of the piece; EMPTY is not allowed
+     * @param theX the x coordinate of the piece
+     * @param theY the y coordinate of the piece
+     * @return the new piece in its initial rotation
+     */
+    static AbstractPiece create(final Block theType, final int theX, final int theY) {
+        final AbstractPiece result;
+        switch (theType) {
+            case I:
+                result = new IPiece(theX, theY);
+                break;
+
+            case J:
+                result = new JPiece(theX, theY);
+                break;
+
+            case L:
+                result = new LPiece(theX, theY);
+                break;
+
+            case O:
+                result = new OPiece(theX, theY);
+                break;
+
+            case S:
+                result = new SPiece(theX, theY);
+                break;
+
+            case T:
+                result = new TPiece(theX, theY);
+                break;
+
+            case Z:
+                result = new ZPiece(theX, theY);
+                break;
+
+            default:
+                throw new IllegalArgumentException("Not a piece: " + theType);
+        }
+        return result;
+    }
+
     @Override
     public final void moveLeft() {
         myX--;
@@ -74,18 +124,38 @@ public abstract class AbstractPiece implements Piece, Cloneable {
 
     @Override
     public final void rotate() {
-        if (myRotations.length > 1) {
-            myCurrentRotation = (myCurrentRotation + 1) % myRotations.length;
-        }
+        myCurrentRotation = myShape.nextRotation(myCurrentRotation);
     }
 
     /**
      * Returns the coordinates of this piece's current rotation.
+     * The returned array is a new copy; use {@link #getShape()} and
+     * {@link #getRotationIndex()} to read the coordinates without allocating.
      * 
      * @return The coordinates of this piece's current rotation.
      */
     public final int[][] getRotation() {
-        return myRotations[myCurrentRotation].clone();
+        final int[][] result = new int[BLOCKS][2];
+
+        for (int i = 0; i < BLOCKS; i++) {
+            result[i][0] = myShape.getCellX(myCurrentRotation, i);
+            result[i][1] = myShape.getCellY(myCurrentRotation, i);
+        }
+        return result;
+    }
+
+    /**
+     * @return the index of this piece's current rotation in its shape
+     */
+    public final int getRotationIndex() {
+        return myCurrentRotation;
+    }
+
+    /**
+     * @return the shared geometry of this piece
+     */
+    public final PieceShape getShape() {
+        return myShape;
     }
 
     @Override
@@ -105,8 +175,8 @@ public abstract class AbstractPiece implements Piece, Cloneable {
         final int[][] result = new int[BLOCKS][2];
 
         for (int i = 0; i < BLOCKS; i++) {
-            result[i][0] = myRotations[myCurrentRotation][i][0] + myX;
-            result[i][1] = myRotations[myCurrentRotation][i][1] + myY;
+            result[i][0] = myShape.getCellX(myCurrentRotation, i) + myX;
+            result[i][1] = myShape.getCellY(myCurrentRotation, i) + myY;
         }
         return result;
     }
@@ -121,19 +191,8 @@ public abstract class AbstractPiece implements Piece, Cloneable {
     @Override
     public Piece clone() throws CloneNotSupportedException {
 
-        // clone this Piece
-        final Piece result = (Piece) super.clone();
-
-        // now separately clone the my_rotations 3D array since arrays are mutable
-        final int[][][] newArray3D = new int[myRotations.length][myRotations[0].length][];
-        for (int array2D = 0; array2D < myRotations.length; array2D++) {
-            for (int array1D = 0; array1D < myRotations[0].length; array1D++) {
-                newArray3D[array2D][array1D] = myRotations[array2D][array1D].clone();
-            }
-        }
-        ((AbstractPiece) result).myRotations = newArray3D;
-
-        return result;
+        // the shape is immutable and shared, so a shallow copy is enough
+        return (Piece) super.clone();
     }
 
     @Override
@@ -148,8 +207,8 @@ public abstract class AbstractPiece implements Piece, Cloneable {
             for (int row = 0; row < width; row++) {
                 boolean found = false;
                 for (int block = 0; block < BLOCKS; block++) {
-                    if (myRotations[myCurrentRotation][block][1] == col
-                        && myRotations[myCurrentRotation][block][0] == row) {
+                    if (myShape.getCellY(myCurrentRotation, block) == col
+                        && myShape.getCellX(myCurrentRotation, block) == row) {
                         // There is a block here, so print and move on
                         sb.append("[]");
                         found = true;
@@ -173,13 +232,7 @@ public abstract class AbstractPiece implements Piece, Cloneable {
      * @return The height of this piece
      */
     private int determineHeight() {
-        int result = 0;
-        for (int i = 0; i < BLOCKS; i++) {
-            if (myRotations[myCurrentRotation][i][1] > result) {
-                result = myRotations[myCurrentRotation][i][1];
-            }
-        }
-        return result + 1;
+        return Math.max(myShape.getMaxY(myCurrentRotation), 0) + 1;
     }
 
     /**
@@ -188,12 +241,6 @@ public abstract class AbstractPiece implements Piece, Cloneable {
      * @return The width of this piece
      */
     private int determineWidth() {
-        int result = 0;
-        for (int i = 0; i < BLOCKS; i++) {
-            if (myRotations[myCurrentRotation][i][0] > result) {
-                result = myRotations[myCurrentRotation][i][0];
-            }
-        }
-        return result + 1;
+        return Math.max(myShape.getMaxX(myCurrentRotation), 0) + 1;
     }
 }
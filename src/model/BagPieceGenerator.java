@@ -0,0 +1,77 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+import java.util.SplittableRandom;
+
+/**
+ * Deals the seven pieces from a shuffled bag, refilling and reshuffling the
+ * bag once it is empty. Every run of seven pieces starting at a multiple of
+ * seven contains each piece exactly once, so at most twelve other pieces
+ * ever come between two pieces of the same type.
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public final class BagPieceGenerator implements PieceGenerator {
+
+    /** The source of randomness. */
+    private SplittableRandom myRandom;
+
+    /** The bag, shuffled in place. */
+    private final Block[] myBag;
+
+    /** The index of the next piece to deal from the bag. */
+    private int myIndex;
+
+    /**
+     * Creates a generator with an unpredictable seed.
+     */
+    public BagPieceGenerator() {
+        this(new SplittableRandom());
+    }
+
+    /**
+     * Creates a generator with the given seed.
+     *
+     * @param theSeed the seed
+     */
+    public BagPieceGenerator(final long theSeed) {
+        this(new SplittableRandom(theSeed));
+    }
+
+    /**
+     * Creates a generator drawing from a source of randomness.
+     *
+     * @param theRandom the source of randomness
+     */
+    private BagPieceGenerator(final SplittableRandom theRandom) {
+        myRandom = theRandom;
+        myBag = Block.PIECES.clone();
+        myIndex = myBag.length;
+    }
+
+    @Override
+    public Block next() {
+        if (myIndex == myBag.length) {
+            // Fisher-Yates shuffle
+            for (int i = myBag.length - 1; i > 0; i--) {
+                final int j = myRandom.nextInt(i + 1);
+                final Block swap = myBag[i];
+                myBag[i] = myBag[j];
+                myBag[j] = swap;
+            }
+            myIndex = 0;
+        }
+        return myBag[myIndex++];
+    }
+
+    @Override
+    public void reset(final long theSeed) {
+        myRandom = new SplittableRandom(theSeed);
+        System.arraycopy(Block.PIECES, 0, myBag, 0, myBag.length);
+        myIndex = myBag.length;
+    }
+}
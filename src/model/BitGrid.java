@@ -0,0 +1,587 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A bitboard representation of the frozen cells of a Tetris board.
+ *
+ * <p>Occupancy is stored as one bit per cell, packed row by row into
+ * {@code long} words. Boards up to 64 columns wide use a single word per row;
+ * wider boards use several consecutive words per row. The type of each
+ * occupied cell is kept in a separate byte plane so that collision and
+ * line-clear checks only ever touch the occupancy masks. A count of the
+ * occupied cells of every row is kept alongside, so a full row is found
+ * without reading its masks.</p>
+ *
+ * <p>The occupancy is also kept column by column, one bit per row, together
+ * with the height of every column, so the surface of the stack and the
+ * distance a piece can fall are found without walking down row by row.</p>
+ *
+ * <p>Row 0 is the bottom row of the board. Cells above the last stored row
+ * are considered empty.</p>
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public final class BitGrid {
+
+    /** The number of bits in an occupancy word. */
+    private static final int WORD_SIZE = Long.SIZE;
+
+    /** The shift converting a column index into a word index. */
+    private static final int WORD_SHIFT = 6;
+
+    /** The mask converting a column index into a bit index within its word. */
+    private static final int BIT_MASK = WORD_SIZE - 1;
+
+    /** The 64-bit FNV-1a prime. */
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    /** The mask of the lowest byte of a value. */
+    private static final long BYTE_MASK = 0xFF;
+
+    /** All block types, indexed by ordinal. */
+    private static final Block[] BLOCKS = Block.values();
+
+    /** The number of columns in this grid. */
+    private final int myWidth;
+
+    /** The number of occupancy words used for each row. */
+    private final int myWords;
+
+    /** The mask of valid bits in the last word of each row. */
+    private final long myLastWordMask;
+
+    /** The number of rows this grid can currently store. */
+    private int myRows;
+
+    /** The occupancy masks, myWords consecutive words per row. */
+    private long[] myOccupancy;
+
+    /** The block type ordinal of every cell, myWidth consecutive bytes per row. */
+    private byte[] myTypes;
+
+    /** The number of occupied cells in each row. */
+    private int[] myFill;
+
+    /** The number of words used for the occupancy of each column. */
+    private int myColumnWords;
+
+    /** The column occupancy masks, myColumnWords consecutive words per column, bit y for row y. */
+    private long[] myColumns;
+
+    /** The number of rows from the bottom up to and including the highest occupied cell of each column. */
+    private final int[] myHeights;
+
+    /** The number of rows from the bottom up to and including the highest occupied row. */
+    private int myStackHeight;
+
+    /**
+     * Creates an empty grid.
+     *
+     * @param theWidth the number of columns
+     * @param theRows the number of rows to reserve storage for
+     */
+    public BitGrid(final int theWidth, final int theRows) {
+        if (theWidth <= 0 || theRows < 0) {
+            throw new IllegalArgumentException();
+        }
+        myWidth = theWidth;
+        myWords = (theWidth + WORD_SIZE - 1) >>> WORD_SHIFT;
+        final int lastBits = theWidth - (myWords - 1) * WORD_SIZE;
+        if (lastBits == WORD_SIZE) {
+            myLastWordMask = -1L;
+        } else {
+            myLastWordMask = (1L << lastBits) - 1;
+        }
+        myRows = theRows;
+        myOccupancy = new long[theRows * myWords];
+        myTypes = new byte[theRows * theWidth];
+        myFill = new int[theRows];
+        myColumnWords = columnWords(theRows);
+        myColumns = new long[theWidth * myColumnWords];
+        myHeights = new int[theWidth];
+    }
+
+    /**
+     * Returns the number of words needed to store one bit per row of a column.
+     *
+     * @param theRows the number of rows
+     * @return the number of words, at least 1
+     */
+    private static int columnWords(final int theRows) {
+        return Math.max(1, (theRows + WORD_SIZE - 1) >>> WORD_SHIFT);
+    }
+
+    /**
+     * @return the number of columns in this grid
+     */
+    public int getWidth() {
+        return myWidth;
+    }
+
+    /**
+     * @return the number of rows this grid currently stores
+     */
+    public int getRows() {
+        return myRows;
+    }
+
+    /**
+     * Returns the number of rows from the bottom of the grid up to and
+     * including the highest row containing an occupied cell.
+     *
+     * @return the height of the stack of frozen cells
+     */
+    public int getStackHeight() {
+        return myStackHeight;
+    }
+
+    /**
+     * Counts the occupied cells of the grid, a word of each row at a time.
+     *
+     * @return the number of occupied cells
+     */
+    public int getCellCount() {
+        int result = 0;
+        for (int i = 0; i < myStackHeight * myWords; i++) {
+            result += Long.bitCount(myOccupancy[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of rows from the bottom of the grid up to and
+     * including the highest occupied cell of a column.
+     *
+     * @param theX the column, 0 to width - 1
+     * @return the height of the column, 0 if it is empty
+     */
+    public int getColumnHeight(final int theX) {
+        return myHeights[theX];
+    }
+
+    /**
+     * Returns the highest occupied cell of a column below a row.
+     *
+     * @param theX the column, 0 to width - 1
+     * @param theY the row, 0 or greater; cells in this row and above are ignored
+     * @return the row of the highest occupied cell below theY, -1 if there is none
+     */
+    public int highestBelow(final int theX, final int theY) {
+        int result = -1;
+        final int limit = Math.min(theY, myHeights[theX]);
+        if (limit > 0) {
+            final int base = theX * myColumnWords;
+            int word = (limit - 1) >>> WORD_SHIFT;
+            long bits = myColumns[base + word] & (-1L >>> (WORD_SIZE - 1 - ((limit - 1) & BIT_MASK)));
+            while (bits == 0 && word > 0) {
+                word--;
+                bits = myColumns[base + word];
+            }
+            if (bits != 0) {
+                result = word * WORD_SIZE + BIT_MASK - Long.numberOfLeadingZeros(bits);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns how many rows a piece can move down before it lands. Each
+     * column of the piece only needs the highest occupied cell below its
+     * lowest cell in that column.
+     *
+     * @param theShape the shape of the piece
+     * @param theRotation the rotation index of the piece
+     * @param theX the x-coordinate of the piece, inside the grid
+     * @param theY the y-coordinate of the piece, not overlapping any cell
+     * @return the number of rows, 0 if the piece cannot move down
+     */
+    public int dropDistance(final PieceShape theShape, final int theRotation,
+                            final int theX, final int theY) {
+        int result = Integer.MAX_VALUE;
+        for (int column = theShape.getMinX(theRotation);
+                        column <= theShape.getMaxX(theRotation); column++) {
+            final int bottom = theY + theShape.getColumnBottom(theRotation, column);
+            result = Math.min(result, bottom - highestBelow(theX + column, bottom) - 1);
+        }
+        return result;
+    }
+
+    /**
+     * Removes all cells from this grid.
+     */
+    public void clear() {
+        Arrays.fill(myOccupancy, 0, myStackHeight * myWords, 0L);
+        Arrays.fill(myTypes, 0, myStackHeight * myWidth, (byte) 0);
+        Arrays.fill(myFill, 0, myStackHeight, 0);
+        Arrays.fill(myColumns, 0L);
+        Arrays.fill(myHeights, 0);
+        myStackHeight = 0;
+    }
+
+    /**
+     * Makes sure this grid can store at least the given number of rows.
+     *
+     * @param theRows the number of rows required
+     */
+    public void ensureRows(final int theRows) {
+        if (theRows > myRows) {
+            final int rows = Math.max(theRows, myRows + (myRows >> 1));
+            myOccupancy = Arrays.copyOf(myOccupancy, rows * myWords);
+            myTypes = Arrays.copyOf(myTypes, rows * myWidth);
+            myFill = Arrays.copyOf(myFill, rows);
+            final int columnWords = columnWords(rows);
+            if (columnWords != myColumnWords) {
+                final long[] columns = new long[myWidth * columnWords];
+                for (int x = 0; x < myWidth; x++) {
+                    System.arraycopy(myColumns, x * myColumnWords,
+                                     columns, x * columnWords, myColumnWords);
+                }
+                myColumns = columns;
+                myColumnWords = columnWords;
+            }
+            myRows = rows;
+        }
+    }
+
+    /**
+     * Tests whether a cell inside the grid is occupied. Cells above the
+     * stored rows are reported as empty.
+     *
+     * @param theX the column, 0 to width - 1
+     * @param theY the row, 0 or greater
+     * @return true if the cell holds a frozen block
+     */
+    public boolean isOccupied(final int theX, final int theY) {
+        return theY < myStackHeight
+            && (myOccupancy[theY * myWords + (theX >>> WORD_SHIFT)] & (1L << theX)) != 0;
+    }
+
+    /**
+     * Returns the block stored in a cell inside the grid.
+     *
+     * @param theX the column, 0 to width - 1
+     * @param theY the row, 0 or greater
+     * @return the block in the cell, EMPTY if the cell is not occupied
+     */
+    public Block getBlock(final int theX, final int theY) {
+        Block result = Block.EMPTY;
+        if (theY < myStackHeight) {
+            result = BLOCKS[myTypes[theY * myWidth + theX]];
+        }
+        return result;
+    }
+
+    /**
+     * Stores a block in a cell of the grid, growing the grid if the row is
+     * beyond the current storage.
+     *
+     * @param theX the column, 0 to width - 1
+     * @param theY the row, 0 or greater
+     * @param theBlock the block to store; EMPTY is not allowed
+     */
+    public void set(final int theX, final int theY, final Block theBlock) {
+        ensureRows(theY + 1);
+        final int word = theY * myWords + (theX >>> WORD_SHIFT);
+        if ((myOccupancy[word] & (1L << theX)) == 0) {
+            myOccupancy[word] |= 1L << theX;
+            myFill[theY]++;
+            myColumns[theX * myColumnWords + (theY >>> WORD_SHIFT)] |= 1L << theY;
+            if (theY >= myHeights[theX]) {
+                myHeights[theX] = theY + 1;
+            }
+        }
+        myTypes[theY * myWidth + theX] = (byte) theBlock.ordinal();
+        if (theY >= myStackHeight) {
+            myStackHeight = theY + 1;
+        }
+    }
+
+    /**
+     * Tests whether every cell of a row is occupied.
+     *
+     * @param theY the row to test
+     * @return true if the row is full
+     */
+    public boolean isRowFull(final int theY) {
+        return theY < myStackHeight && myFill[theY] == myWidth;
+    }
+
+    /**
+     * Counts the changes between occupied and empty cells along a row, the
+     * walls counting as occupied: 0 for a full row, 2 for an empty one.
+     *
+     * @param theY the row, 0 or greater
+     * @return the number of transitions
+     */
+    public int rowTransitions(final int theY) {
+        int result = 0;
+        if (theY < myStackHeight) {
+            final int base = theY * myWords;
+            // the bit left of each word, the left wall for the first
+            long carry = 1;
+            for (int word = 0; word < myWords; word++) {
+                final long bits = myOccupancy[base + word];
+                long mask = -1L;
+                if (word == myWords - 1) {
+                    mask = myLastWordMask;
+                }
+                result += Long.bitCount((bits ^ (bits << 1 | carry)) & mask);
+                carry = bits >>> BIT_MASK;
+            }
+            if (!isOccupied(myWidth - 1, theY)) {
+                result++;
+            }
+        } else {
+            result = 2;
+        }
+        return result;
+    }
+
+    /**
+     * Counts the changes between occupied and empty cells up a column, from
+     * the floor, which counts as occupied, to the empty cell above its
+     * highest cell: 1 for a column without holes.
+     *
+     * @param theX the column, 0 to width - 1
+     * @return the number of transitions
+     */
+    public int columnTransitions(final int theX) {
+        // the change from the highest cell to the empty cell above it
+        int result = 1;
+        final int base = theX * myColumnWords;
+        // the bit below each word, the floor for the first
+        long carry = 1;
+        for (int word = 0; word * WORD_SIZE < myHeights[theX]; word++) {
+            final long bits = myColumns[base + word];
+            long mask = -1L;
+            final int remaining = myHeights[theX] - word * WORD_SIZE;
+            if (remaining < WORD_SIZE) {
+                mask = (1L << remaining) - 1;
+            }
+            result += Long.bitCount((bits ^ (bits << 1 | carry)) & mask);
+            carry = bits >>> BIT_MASK;
+        }
+        return result;
+    }
+
+    /**
+     * Tests whether a row mask placed at a column overlaps any occupied cell.
+     * The caller is responsible for keeping the placed bits inside the grid.
+     *
+     * @param theY the row to test, 0 or greater
+     * @param theMask the cells to test, bit i standing for column theX + i
+     * @param theX the column of bit 0 of the mask; may be negative as long
+     *        as no set bit of the mask falls left of column 0
+     * @return true if any of the cells is occupied
+     */
+    public boolean intersects(final int theY, final long theMask, final int theX) {
+        boolean result = false;
+        if (theY < myStackHeight) {
+            final int base = theY * myWords;
+            long mask = theMask;
+            int x = theX;
+            if (x < 0) {
+                mask >>>= -x;
+                x = 0;
+            }
+            final int word = x >>> WORD_SHIFT;
+            final int bit = x & BIT_MASK;
+            result = (myOccupancy[base + word] & (mask << bit)) != 0;
+            if (!result && bit != 0 && word + 1 < myWords) {
+                result = (myOccupancy[base + word + 1] & (mask >>> (WORD_SIZE - bit))) != 0;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes several rows from the grid in a single pass, moving every
+     * remaining row down past the removed rows below it. Each run of rows
+     * between two removed rows is moved with one copy.
+     *
+     * @param theRows the rows to remove, in descending order without duplicates
+     * @param theCount the number of rows to remove from the start of theRows
+     */
+    public void removeRows(final int[] theRows, final int theCount) {
+        int count = 0;
+        while (count < theCount && theRows[count] >= myStackHeight) {
+            count++;
+        }
+        if (count < theCount) {
+            int to = theRows[theCount - 1];
+            for (int i = theCount - 1; i >= count; i--) {
+                final int from = theRows[i] + 1;
+                int end = myStackHeight;
+                if (i > count) {
+                    end = theRows[i - 1];
+                }
+                final int run = end - from;
+                System.arraycopy(myOccupancy, from * myWords,
+                                 myOccupancy, to * myWords, run * myWords);
+                System.arraycopy(myTypes, from * myWidth, myTypes, to * myWidth, run * myWidth);
+                System.arraycopy(myFill, from, myFill, to, run);
+                to += run;
+            }
+            Arrays.fill(myOccupancy, to * myWords, myStackHeight * myWords, 0L);
+            Arrays.fill(myTypes, to * myWidth, myStackHeight * myWidth, (byte) 0);
+            Arrays.fill(myFill, to, myStackHeight, 0);
+            myStackHeight = to;
+            for (int x = 0; x < myWidth; x++) {
+                removeColumnRows(x, theRows, count, theCount);
+            }
+        }
+    }
+
+    /**
+     * Removes rows from the occupancy of one column and updates its height.
+     *
+     * @param theX the column
+     * @param theRows the rows to remove, in descending order
+     * @param theFrom the index of the first row of theRows to remove
+     * @param theTo the index after the last row of theRows to remove
+     */
+    private void removeColumnRows(final int theX, final int[] theRows,
+                                  final int theFrom, final int theTo) {
+        if (myHeights[theX] == 0) {
+            return;
+        }
+        final int base = theX * myColumnWords;
+        final int last = base + ((myHeights[theX] - 1) >>> WORD_SHIFT);
+        for (int i = theFrom; i < theTo; i++) {
+            final int word = base + (theRows[i] >>> WORD_SHIFT);
+            final long above = -1L << (theRows[i] & BIT_MASK);
+            myColumns[word] = (myColumns[word] & ~above) | ((myColumns[word] >>> 1) & above);
+            for (int next = word + 1; next <= last; next++) {
+                myColumns[next - 1] |= myColumns[next] << BIT_MASK;
+                myColumns[next] >>>= 1;
+            }
+        }
+        int word = last;
+        while (word > base && myColumns[word] == 0) {
+            word--;
+        }
+        myHeights[theX] = (word - base + 1) * WORD_SIZE
+                          - Long.numberOfLeadingZeros(myColumns[word]);
+    }
+
+    /**
+     * Creates an independent copy of this grid that stores only the rows of
+     * the stack.
+     *
+     * @return the copy
+     */
+    public BitGrid copy() {
+        final BitGrid result = new BitGrid(myWidth, myStackHeight);
+        System.arraycopy(myOccupancy, 0, result.myOccupancy, 0, myStackHeight * myWords);
+        System.arraycopy(myTypes, 0, result.myTypes, 0, myStackHeight * myWidth);
+        System.arraycopy(myFill, 0, result.myFill, 0, myStackHeight);
+        for (int x = 0; x < myWidth; x++) {
+            System.arraycopy(myColumns, x * myColumnWords,
+                             result.myColumns, x * result.myColumnWords, result.myColumnWords);
+        }
+        System.arraycopy(myHeights, 0, result.myHeights, 0, myWidth);
+        result.myStackHeight = myStackHeight;
+        return result;
+    }
+
+    /**
+     * Returns the number of bytes save writes.
+     *
+     * @return the size of the saved grid
+     */
+    public int getSavedSize() {
+        return Integer.BYTES + myStackHeight * myWidth;
+    }
+
+    /**
+     * Writes the stack height and then the block of every cell of the stack,
+     * one byte each, row by row from the bottom.
+     *
+     * @param theBuffer the buffer to write to
+     */
+    public void save(final ByteBuffer theBuffer) {
+        theBuffer.putInt(myStackHeight);
+        theBuffer.put(myTypes, 0, myStackHeight * myWidth);
+    }
+
+    /**
+     * Replaces the cells of this grid with ones written by save for a grid
+     * of the same width.
+     *
+     * @param theBuffer the buffer to read from
+     * @param theMaxRows the largest stack height accepted
+     * @throws IllegalArgumentException if the saved grid is malformed; the
+     *         grid is then left partly restored
+     */
+    public void restore(final ByteBuffer theBuffer, final int theMaxRows) {
+        final int rows = theBuffer.getInt();
+        if (rows < 0 || rows > theMaxRows) {
+            throw new IllegalArgumentException("Bad stack height: " + rows);
+        }
+        clear();
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < myWidth; x++) {
+                final int type = theBuffer.get();
+                if (type < 0 || type >= BLOCKS.length) {
+                    throw new IllegalArgumentException("Bad block: " + type);
+                }
+                if (type != 0) {
+                    set(x, y, BLOCKS[type]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the stack height and the block of every cell of the stack to a
+     * 64-bit FNV-1a hash, row by row from the bottom.
+     *
+     * @param theHash the hash so far
+     * @return the new hash
+     */
+    public long hash(final long theHash) {
+        long result = hash(theHash, myStackHeight);
+        for (int i = 0; i < myStackHeight * myWidth; i++) {
+            result = (result ^ myTypes[i]) * FNV_PRIME;
+        }
+        return result;
+    }
+
+    /**
+     * Adds a value to a 64-bit FNV-1a hash, one byte at a time from the
+     * least significant byte.
+     *
+     * @param theHash the hash so far
+     * @param theValue the value
+     * @return the new hash
+     */
+    static long hash(final long theHash, final long theValue) {
+        long result = theHash;
+        for (int shift = 0; shift < WORD_SIZE; shift += Byte.SIZE) {
+            result = (result ^ ((theValue >>> shift) & BYTE_MASK)) * FNV_PRIME;
+        }
+        return result;
+    }
+
+    /**
+     * Copies the blocks of a row into a new array.
+     *
+     * @param theY the row to copy
+     * @return the blocks of the row, left to right
+     */
+    public Block[] copyRow(final int theY) {
+        final Block[] result = new Block[myWidth];
+        final int base = theY * myWidth;
+        for (int x = 0; x < myWidth; x++) {
+            result[x] = BLOCKS[myTypes[base + x]];
+        }
+        return result;
+    }
+}
@@ -29,4 +29,7 @@ public enum Block {
     /** A Block from a ZPiece. */
     Z;
 
+    /** The block types of the seven pieces, without EMPTY. Never modified. */
+    static final Block[] PIECES = {I, J, L, O, S, T, Z};
+
 }
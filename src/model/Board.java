@@ -4,16 +4,25 @@
 
 package model;
 
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Observable;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A representation of a Tetris game board.
  * 
+ * <p>Every operation that changes the board is reported once to each
+ * registered {@link BoardListener} as a {@link BoardEvent}. For
+ * compatibility, registered Observers are also notified once per operation,
+ * with the same event as the argument.</p>
+ * 
  * @author Alan Fowler
  * @version Autumn 2015
  */
@@ -39,20 +48,42 @@ public final class Board extends Observable {
     /** The representation of the current piece's position in string output. */
     private static final String CURRENT_PIECE = "*";
 
-    /** The random number generator used for choosing new pieces. */
-    private static final Random RANDOM = new Random();
-
     /** The minimum size of a board. */
     private static final int MIN_SIZE = 5;
 
-    /** The number of rotations to return a piece to initial state. */
-    private static final int ROTATIONS = 4;
-
     /** The number of extra rows above the board to display in String output. */
     private static final int EXTRA_ROWS = 4;
+
+    /** The number of pieces drawn before the first is placed: the current and the next. */
+    private static final int DRAWN_AHEAD = 2;
     
     /** Represents the state when no current piece exists. */
-    private static final Piece NO_PIECE = null;
+    private static final PieceState NO_PIECE = null;
+
+
+    /** The cleared rows of an event that cleared no rows. */
+    private static final int[] NO_ROWS = {};
+
+    /** The most rows gravity can move a piece in one tick (20G). */
+    public static final int MAX_GRAVITY = 20;
+
+    /** The number of ticks per row of the default gravity. */
+    private static final int DEFAULT_GRAVITY_TICKS = 60;
+
+    /** The initial value of a checksum (the 64-bit FNV-1a offset basis). */
+    private static final long CHECKSUM_BASIS = 0xCBF29CE484222325L;
+
+    /** The size of a saved state without its grid. */
+    private static final int STATE_SIZE = 2 * Long.BYTES + 8 * Integer.BYTES + 1;
+
+    /** The size of a saved piece. */
+    private static final int PIECE_STATE_SIZE = 2 * Integer.BYTES + 2;
+
+    /** The points scored per piece placed. */
+    private static final int SCORE_PER_PIECE = 10;
+
+    /** The points scored per line cleared. */
+    private static final int SCORE_PER_LINE = 50;
 
     
     // instance fields
@@ -69,29 +100,146 @@ public final class Board extends Observable {
     /**
      * The current frozen blocks on the board.
      */
+    private BitGrid myGrid;
+
+    /**
+     * A read-only row view of the frozen blocks on the board.
+     */
     private final List<Block[]> myFrozenBlocks;
 
     /**
      * The piece currently being moved on the board.
      */
-    private Piece myCurrentPiece;
+    private PieceState myCurrentPiece;
 
     /**
      * The next piece to be used in the board.
      */
-    private Piece myNextPiece;
+    private PieceState myNextPiece;
 
     /**
      * The predetermined queue of pieces to be fed into the board.
-     * This queue will be used repeatedly.
+     * This queue will be used repeatedly. The board never moves these
+     * pieces, it only reads their initial state.
      */
     private Deque<Piece> myPieces;
 
+    /**
+     * The strategy choosing the pieces when there is no predetermined queue.
+     */
+    private PieceGenerator myGenerator;
+
+    /**
+     * Chooses the seeds of games started without one.
+     */
+    private final SplittableRandom mySeeds;
+
+    /**
+     * The seed of the current game.
+     */
+    private long mySeed;
+
+    /**
+     * The number of pieces drawn from the generator in the current game.
+     */
+    private int myDraws;
+
     /**
      * The boolean representing the game state of Tetris.
      */
     private boolean myGameOver;
 
+    /**
+     * The number of pieces frozen in the current game.
+     */
+    private int myPiecesPlaced;
+
+    /**
+     * The number of lines cleared in the current game.
+     */
+    private int myLinesCleared;
+
+    /**
+     * The listeners notified of every change of this board.
+     */
+    private final List<BoardListener> myListeners;
+
+    /**
+     * The rows cleared by the last call to clearLines, in descending order.
+     */
+    private int[] myClearedRows;
+
+    /**
+     * The number of rows cleared by the last call to clearLines.
+     */
+    private int myClearedRowCount;
+
+    /**
+     * The rows gravity moves the current piece every myGravityTicks ticks.
+     */
+    private int myGravityRows;
+
+    /**
+     * The number of ticks over which gravity moves the piece myGravityRows rows.
+     */
+    private int myGravityTicks;
+
+    /**
+     * The progress of gravity towards the next row, in 1 / myGravityTicks rows.
+     */
+    private int myGravityProgress;
+
+    /**
+     * The number of ticks in the current game.
+     */
+    private long myTicks;
+
+    /**
+     * The Zobrist hash of the cells of each row of the frozen blocks.
+     */
+    private long[] myRowHashes;
+
+    /**
+     * The Zobrist hash of the frozen blocks, kept up to date as pieces
+     * freeze and lines clear.
+     */
+    private long myZobristHash;
+
+    /**
+     * The number of frozen blocks.
+     */
+    private int myCells;
+
+    /**
+     * The sum of the column heights.
+     */
+    private int myAggregateHeight;
+
+    /**
+     * The sum of the height differences of neighbouring columns.
+     */
+    private int myBumpiness;
+
+    /**
+     * The sum of the depths of the columns lower than both neighbours.
+     */
+    private int myWells;
+
+    /**
+     * The number of changes between occupied and empty cells along the rows of the stack.
+     */
+    private int myRowTransitions;
+
+    /**
+     * The number of changes between occupied and empty cells up the columns.
+     */
+    private int myColumnTransitions;
+
+    /**
+     * The features last handed out, null if the counts changed since.
+     */
+    private BoardFeatures myFeatures;
+
     /**
      * Constructs a Board using the specified dimensions and the specified sequence of pieces.
      * 
@@ -102,10 +250,25 @@ public final class Board extends Observable {
      */
     public Board(final int theWidth, final int theHeight,
                  final Deque<Piece> thePieces) {
+        this(new RandomPieceGenerator());
+        newGame(theWidth, theHeight, thePieces);
+    }
+
+    /**
+     * Creates a Board without a game, choosing pieces with the given strategy.
+     * 
+     * @param theGenerator the strategy choosing the pieces
+     */
+    private Board(final PieceGenerator theGenerator) {
         super();
         myPieces = new ArrayDeque<>();
-        myFrozenBlocks = new LinkedList<Block[]>();
-        newGame(theWidth, theHeight, thePieces);
+        myFrozenBlocks = new FrozenBlocksView();
+        myListeners = new CopyOnWriteArrayList<>();
+        myClearedRows = new int[PieceShape.BOX_SIZE];
+        myGenerator = Objects.requireNonNull(theGenerator);
+        mySeeds = new SplittableRandom();
+        myGravityRows = 1;
+        myGravityTicks = DEFAULT_GRAVITY_TICKS;
     }
     
     /**
@@ -115,12 +278,67 @@ public final class Board extends Observable {
      * @param theHeight the grid height to assign to this Tetris board; 20 is the standard
      */
     public Board(final int theWidth, final int theHeight) {
-        this(theWidth, theHeight, null);
+        this(theWidth, theHeight, (Deque<Piece>) null);
+    }
+
+    /**
+     * Constructs a Board using the specified dimensions and a strategy
+     * choosing the pieces.
+     * 
+     * @param theWidth the grid width to assign to this Tetris board; 10 is the standard
+     * @param theHeight the grid height to assign to this Tetris board; 20 is the standard
+     * @param theGenerator the strategy choosing the pieces, owned by this board from now on
+     */
+    public Board(final int theWidth, final int theHeight, final PieceGenerator theGenerator) {
+        this(theGenerator);
+        newGame(theWidth, theHeight, null);
+    }
+
+    /**
+     * Constructs a Board using the specified dimensions and random pieces
+     * chosen from a seed. Boards built with the same seed and given the same
+     * operations play exactly the same game.
+     * 
+     * @param theWidth the grid width to assign to this Tetris board; 10 is the standard
+     * @param theHeight the grid height to assign to this Tetris board; 20 is the standard
+     * @param theSeed the seed of the game
+     */
+    public Board(final int theWidth, final int theHeight, final long theSeed) {
+        this(new RandomPieceGenerator());
+        newGame(theWidth, theHeight, theSeed);
+    }
+
+    /**
+     * Constructs a Board using the specified dimensions and a strategy
+     * choosing the pieces from a seed.
+     * 
+     * @param theWidth the grid width to assign to this Tetris board; 10 is the standard
+     * @param theHeight the grid height to assign to this Tetris board; 20 is the standard
+     * @param theGenerator the strategy choosing the pieces, owned by this board from now on
+     * @param theSeed the seed of the game
+     */
+    public Board(final int theWidth, final int theHeight,
+                 final PieceGenerator theGenerator, final long theSeed) {
+        this(theGenerator);
+        newGame(theWidth, theHeight, theSeed);
+    }
+
+    /**
+     * Sets the strategy choosing the pieces of games without a predetermined
+     * queue. The pieces already chosen are kept; every piece drawn after them
+     * comes from the new strategy. The strategy is reset with the seed of
+     * every new game.
+     * 
+     * @param theGenerator the strategy, owned by this board from now on
+     */
+    public void setPieceGenerator(final PieceGenerator theGenerator) {
+        myGenerator = Objects.requireNonNull(theGenerator);
     }
 
     /**
      * Creates a new game on a Board of the specified width and height
-     * and loads the given set of pieces.
+     * and loads the given set of pieces. A game without pieces chooses its
+     * pieces from a new random seed, reported by getSeed().
      * 
      * @param theWidth The grid width of the board; 10 is the standard value
      * @param theHeight The grid height of the board; 20 is the standard value
@@ -129,6 +347,32 @@ public final class Board extends Observable {
     public void newGame(final int theWidth,
                         final int theHeight,
                         final Deque<Piece> thePieces) {
+        startGame(theWidth, theHeight, thePieces, mySeeds.nextLong());
+    }
+
+    /**
+     * Creates a new game on a Board of the specified width and height with
+     * pieces chosen from a seed. The same seed followed by the same
+     * operations always plays exactly the same game.
+     * 
+     * @param theWidth The grid width of the board; 10 is the standard value
+     * @param theHeight The grid height of the board; 20 is the standard value
+     * @param theSeed The seed of the game
+     */
+    public void newGame(final int theWidth, final int theHeight, final long theSeed) {
+        startGame(theWidth, theHeight, null, theSeed);
+    }
+
+    /**
+     * Creates a new game.
+     * 
+     * @param theWidth The grid width of the board
+     * @param theHeight The grid height of the board
+     * @param thePieces The pieces to use; null indicates that random pieces should be used
+     * @param theSeed The seed of the game
+     */
+    private void startGame(final int theWidth, final int theHeight,
+                           final Deque<Piece> thePieces, final long theSeed) {
         
         if (theWidth < MIN_SIZE || theHeight < MIN_SIZE) {
             throw new IllegalArgumentException();
@@ -136,6 +380,9 @@ public final class Board extends Observable {
         
         myWidth = theWidth;
         myHeight = theHeight;
+        mySeed = theSeed;
+        myGenerator.reset(theSeed);
+        myDraws = 0;
         
         if (thePieces == null) {
             myPieces.clear();
@@ -144,12 +391,42 @@ public final class Board extends Observable {
         }
         
         myCurrentPiece = NO_PIECE;
-        myFrozenBlocks.clear();
+        if (myGrid == null || myGrid.getWidth() != theWidth) {
+            myGrid = new BitGrid(theWidth, theHeight + EXTRA_ROWS);
+        } else {
+            myGrid.clear();
+        }
+        rehash();
+        recount();
         myGameOver = false;
+        myPiecesPlaced = 0;
+        myLinesCleared = 0;
+        myGravityProgress = 0;
+        myTicks = 0;
         assignNextPiece();
         assignCurrentPiece();
-        setChanged();
-        notifyObservers();
+        if (isObserved()) {
+            fire(new BoardEvent(this, BoardAction.NEW_GAME, null, myCurrentPiece, null,
+                                NO_ROWS, myNextPiece, false));
+        }
+    }
+
+    /**
+     * Registers a listener to be notified of every change of this board.
+     * 
+     * @param theListener the listener to add
+     */
+    public void addBoardListener(final BoardListener theListener) {
+        myListeners.add(theListener);
+    }
+
+    /**
+     * Removes a previously registered listener.
+     * 
+     * @param theListener the listener to remove
+     */
+    public void removeBoardListener(final BoardListener theListener) {
+        myListeners.remove(theListener);
     }
 
     /**
@@ -167,7 +444,9 @@ public final class Board extends Observable {
     }
 
     /**
-     * Returns the current frozen blocks on the board.
+     * Returns the current frozen blocks on the board, one array per row from
+     * the bottom of the board up to the highest row containing a block.
+     * The returned list is a read-only view; each row array is a copy.
      * 
      * @return the current frozen blocks on the board.
      */
@@ -176,20 +455,55 @@ public final class Board extends Observable {
     }
 
     /**
-     * Returns the current Piece being moved.
+     * Returns the frozen block at the specified position.
      * 
-     * @return the current Piece being moved.
+     * @param theX the x-coordinate, 0 to width - 1
+     * @param theY the y-coordinate, 0 or greater
+     * @return the frozen block at the position, EMPTY if there is none
+     */
+    public Block getFrozenBlock(final int theX, final int theY) {
+        if (theX < 0 || theX >= myWidth || theY < 0) {
+            throw new IndexOutOfBoundsException("(" + theX + ", " + theY + ")");
+        }
+        return myGrid.getBlock(theX, theY);
+    }
+
+    /**
+     * Returns a copy of the current Piece being moved. Moving the copy does
+     * not move the piece on the board.
+     * 
+     * @return a copy of the current Piece being moved, null if there is none
      */
     public Piece getCurrentPiece() {
-        return myCurrentPiece;
+        return toPiece(myCurrentPiece);
     }
     
     /**
-     * Returns the next piece to be used.
+     * Returns a copy of the next piece to be used.
      * 
-     * @return the next piece to be used.
+     * @return a copy of the next piece to be used, null if there is none
      */
     public Piece getNextPiece() {
+        return toPiece(myNextPiece);
+    }
+
+    /**
+     * Returns the state of the current piece being moved. This method does
+     * not allocate.
+     * 
+     * @return the current piece, null if there is none
+     */
+    public PieceState getCurrentPieceState() {
+        return myCurrentPiece;
+    }
+
+    /**
+     * Returns the state of the next piece to be used. This method does not
+     * allocate.
+     * 
+     * @return the next piece, null if there is none
+     */
+    public PieceState getNextPieceState() {
         return myNextPiece;
     }
 
@@ -202,27 +516,308 @@ public final class Board extends Observable {
         return myGameOver;
     }
 
+    /**
+     * Returns the number of pieces frozen on the board in the current game.
+     * 
+     * @return the number of pieces placed
+     */
+    public int getPiecesPlaced() {
+        return myPiecesPlaced;
+    }
+
+    /**
+     * Returns the number of pieces drawn from the piece generator in the
+     * current game, including the current and the next piece.
+     * 
+     * @return the number of pieces drawn
+     */
+    public int getPiecesDrawn() {
+        return myDraws;
+    }
+
+    /**
+     * Returns the number of lines cleared in the current game.
+     * 
+     * @return the number of lines cleared
+     */
+    public int getLinesCleared() {
+        return myLinesCleared;
+    }
+
+    /**
+     * Returns the score of the current game. See score(int, int).
+     * 
+     * @return the score
+     */
+    public long getScore() {
+        return score(myPiecesPlaced, myLinesCleared);
+    }
+
+    /**
+     * Returns the score of a game: 10 points per piece placed and 50 points
+     * per line cleared.
+     * 
+     * @param thePieces the number of pieces placed
+     * @param theLines the number of lines cleared
+     * @return the score
+     */
+    public static long score(final int thePieces, final int theLines) {
+        return (long) SCORE_PER_PIECE * thePieces + (long) SCORE_PER_LINE * theLines;
+    }
+
+    /**
+     * Returns the seed the pieces of the current game are chosen from.
+     * 
+     * @return the seed of the current game
+     */
+    public long getSeed() {
+        return mySeed;
+    }
+
+    /**
+     * Returns a checksum of the state of the current game: the size of the
+     * board, every frozen block, the current and next pieces, the counters,
+     * the gravity and the number of ticks. Two boards with equal states
+     * have equal checksums, so comparing checksums after every operation
+     * checks that two runs play the same game. The checksum is a 64-bit
+     * FNV-1a hash over those values and does not depend on the JVM.
+     * 
+     * @return the checksum
+     */
+    public long checksum() {
+        long result = CHECKSUM_BASIS;
+        result = BitGrid.hash(result, myWidth);
+        result = BitGrid.hash(result, myHeight);
+        result = myGrid.hash(result);
+        result = hash(result, myCurrentPiece);
+        result = hash(result, myNextPiece);
+        result = BitGrid.hash(result, myPiecesPlaced);
+        result = BitGrid.hash(result, myLinesCleared);
+        result = BitGrid.hash(result, myGameOver ? 1 : 0);
+        result = BitGrid.hash(result, myGravityRows);
+        result = BitGrid.hash(result, myGravityTicks);
+        result = BitGrid.hash(result, myGravityProgress);
+        return BitGrid.hash(result, myTicks);
+    }
+
+    /**
+     * Returns the Zobrist hash of the frozen blocks, as described in
+     * Zobrist. It is updated as each piece freezes and each line clears, so
+     * reading it costs nothing; boards whose frozen blocks occupy the same
+     * cells have equal hashes, whatever the types of the blocks.
+     * 
+     * @return the hash, 0 for an empty grid
+     */
+    public long getZobristHash() {
+        return myZobristHash;
+    }
+
+    /**
+     * Returns the features of the frozen blocks. They are updated as each
+     * piece freezes, in the cells and columns of the piece only, and as
+     * each line clears, so reading them costs nothing; the same value is
+     * returned until they change.
+     * 
+     * @return the features
+     */
+    public BoardFeatures getFeatures() {
+        if (myFeatures == null) {
+            myFeatures = new BoardFeatures(myAggregateHeight, myAggregateHeight - myCells,
+                                           myBumpiness, myWells, myRowTransitions,
+                                           myColumnTransitions);
+        }
+        return myFeatures;
+    }
+
+    /**
+     * Returns the number of bytes saveState writes for the current state.
+     * 
+     * @return the size of the saved state
+     */
+    public int getStateSize() {
+        return STATE_SIZE + 2 * PIECE_STATE_SIZE + myGrid.getSavedSize();
+    }
+
+    /**
+     * Writes the complete state of the current game, from which
+     * restoreState can continue it exactly: the size of the board, the seed
+     * and how many pieces were drawn from the piece generator, the
+     * counters, the gravity, the ticks, the current and next pieces and
+     * every frozen block. A predetermined queue of pieces is not saved, so
+     * only games choosing their pieces with the generator can be restored.
+     * 
+     * @param theBuffer the buffer to write to, with getStateSize() bytes remaining
+     */
+    public void saveState(final ByteBuffer theBuffer) {
+        theBuffer.putInt(myWidth);
+        theBuffer.putInt(myHeight);
+        theBuffer.putLong(mySeed);
+        theBuffer.putInt(myDraws);
+        theBuffer.putInt(myPiecesPlaced);
+        theBuffer.putInt(myLinesCleared);
+        theBuffer.put((byte) (myGameOver ? 1 : 0));
+        theBuffer.putInt(myGravityRows);
+        theBuffer.putInt(myGravityTicks);
+        theBuffer.putInt(myGravityProgress);
+        theBuffer.putLong(myTicks);
+        savePiece(theBuffer, myCurrentPiece);
+        savePiece(theBuffer, myNextPiece);
+        myGrid.save(theBuffer);
+    }
+
+    /**
+     * Replaces the current game with one written by saveState for a game of
+     * the same size. The piece generator is reset with the saved seed and
+     * the saved number of pieces is drawn from it, so it must be the same
+     * kind of generator that played the saved game. Reported as NEW_GAME,
+     * since the whole board changed.
+     * 
+     * <p>The state may come from an untrusted file, so anything a game could
+     * not have reached is rejected: a board of another size, more pieces
+     * drawn than placed and shown, or a current or next piece outside the
+     * walls, below the floor or above where pieces start. The caller bounds
+     * the pieces placed, and with them the time spent drawing pieces.</p>
+     * 
+     * @param theBuffer the buffer to read from
+     * @param theMaxPieces the most pieces the saved game may have placed
+     * @throws IllegalArgumentException if the saved state is malformed; the
+     *         board is then left in an unspecified state
+     */
+    public void restoreState(final ByteBuffer theBuffer, final int theMaxPieces) {
+        final int width = theBuffer.getInt();
+        final int height = theBuffer.getInt();
+        final long seed = theBuffer.getLong();
+        final int draws = theBuffer.getInt();
+        final int pieces = theBuffer.getInt();
+        final int lines = theBuffer.getInt();
+        final boolean gameOver = theBuffer.get() != 0;
+        final int rows = theBuffer.getInt();
+        final int ticks = theBuffer.getInt();
+        final int progress = theBuffer.getInt();
+        final long gameTicks = theBuffer.getLong();
+        final PieceState current = restorePiece(theBuffer);
+        final PieceState next = restorePiece(theBuffer);
+        if (width != myWidth || height != myHeight) {
+            throw new IllegalArgumentException("Board state of another size: " + width + "x"
+                                               + height);
+        }
+        if (pieces < 0 || pieces > theMaxPieces || draws < 0 || draws - DRAWN_AHEAD > pieces
+            || lines < 0 || progress < 0 || progress >= ticks || gameTicks < 0
+            || !isInside(current) || !isInside(next)) {
+            throw new IllegalArgumentException("Bad board state");
+        }
+        checkGravity(rows, ticks);
+
+        mySeed = seed;
+        myPieces.clear();
+        myGenerator.reset(seed);
+        for (int i = 0; i < draws; i++) {
+            myGenerator.next();
+        }
+        myDraws = draws;
+        myPiecesPlaced = pieces;
+        myLinesCleared = lines;
+        myGameOver = gameOver;
+        myGravityRows = rows;
+        myGravityTicks = ticks;
+        myGravityProgress = progress;
+        myTicks = gameTicks;
+        myCurrentPiece = current;
+        myNextPiece = next;
+        myGrid.restore(theBuffer, height + EXTRA_ROWS + PieceShape.BOX_SIZE);
+        // the piece that ended a game was frozen where it is
+        if (!gameOver && !fits(current.getType(), current.getRotation(),
+                               current.getX(), current.getY())) {
+            throw new IllegalArgumentException("Current piece overlaps the frozen blocks");
+        }
+        rehash();
+        recount();
+        if (isObserved()) {
+            fire(new BoardEvent(this, BoardAction.NEW_GAME, null, myCurrentPiece, null,
+                                NO_ROWS, myNextPiece, myGameOver));
+        }
+    }
+
+    /**
+     * Sets the gravity as a number of rows the current piece falls over a
+     * number of ticks, for example 1 row every 60 ticks, or 20 rows every
+     * tick for 20G. The gravity is kept across games. A change is reported
+     * as GRAVITY.
+     *
+     * @param theRows the number of rows, 0 or greater
+     * @param theTicks the number of ticks, 1 or greater
+     * @throws IllegalArgumentException if the gravity is negative or above MAX_GRAVITY
+     */
+    public void setGravity(final int theRows, final int theTicks) {
+        checkGravity(theRows, theTicks);
+        if (theRows != myGravityRows || theTicks != myGravityTicks) {
+            myGravityRows = theRows;
+            myGravityTicks = theTicks;
+            myGravityProgress = 0;
+            fireMove(BoardAction.GRAVITY, myCurrentPiece);
+        }
+    }
+
+    /**
+     * Checks a gravity for setGravity.
+     *
+     * @param theRows the number of rows
+     * @param theTicks the number of ticks
+     * @throws IllegalArgumentException if the gravity is negative or above MAX_GRAVITY
+     */
+    private static void checkGravity(final int theRows, final int theTicks) {
+        if (theRows < 0 || theTicks < 1 || (long) theRows > (long) MAX_GRAVITY * theTicks) {
+            throw new IllegalArgumentException("Bad gravity: " + theRows + " / " + theTicks);
+        }
+    }
+
+    /**
+     * Returns the rows of the gravity. See setGravity.
+     *
+     * @return the number of rows the piece falls every getGravityTicks() ticks
+     */
+    public int getGravityRows() {
+        return myGravityRows;
+    }
+
+    /**
+     * Returns the ticks of the gravity. See setGravity.
+     *
+     * @return the number of ticks over which the piece falls getGravityRows() rows
+     */
+    public int getGravityTicks() {
+        return myGravityTicks;
+    }
+
+    /**
+     * Returns the number of ticks in the current game.
+     *
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return myTicks;
+    }
+
+    /**
+     * Captures the current state of the board in an immutable snapshot.
+     *
+     * @return the snapshot
+     */
+    public BoardSnapshot snapshot() {
+        return new BoardSnapshot(myWidth, myHeight, myGrid.copy(), myCurrentPiece, myNextPiece,
+                                 myGameOver, myPiecesPlaced, myLinesCleared, myZobristHash,
+                                 getFeatures());
+    }
+
     /**
      * Attempts to move the current piece to the left.
      */
     public void moveLeft() {
-        final int[][] blocks = ((AbstractPiece) myCurrentPiece).getBoardCoordinates();
-        boolean canPass = true;
-
-        // perform bounds checking on each block
-        for (int i = 0; i < blocks.length; i++) {
-            if (blocks[i][0] == 0 || // block is already at the left wall
-                blockAt(blocks[i][0] - 1, blocks[i][1]) != Block.EMPTY) {
-                // block to left is occupied
-                canPass = false;
-                break; // can't move, no need to keep checking
-            }
-        }
+        final PieceState piece = myCurrentPiece;
 
-        if (canPass) {
-            myCurrentPiece.moveLeft();
-            setChanged();
-            notifyObservers();
+        if (fits(piece.getType(), piece.getRotation(), piece.getX() - 1, piece.getY())) {
+            myCurrentPiece = piece.withPosition(piece.getX() - 1, piece.getY());
+            fireMove(BoardAction.MOVE_LEFT, piece);
         }
     }
 
@@ -230,23 +825,11 @@ public final class Board extends Observable {
      * Attempts to move the current piece to the right.
      */
     public void moveRight() {
-        final int[][] blocks = ((AbstractPiece) myCurrentPiece).getBoardCoordinates();
-        boolean canPass = true;
-
-        // perform bounds checking on each block
-        for (int i = 0; i < blocks.length; i++) {
-            if (blocks[i][0] == myWidth - 1 || // block is already at the right wall
-                blockAt(blocks[i][0] + 1, blocks[i][1]) != Block.EMPTY) {
-                // block to right is occupied
-                canPass = false;
-                break; // can't move, no need to keep checking
-            }
-        }
+        final PieceState piece = myCurrentPiece;
 
-        if (canPass) {
-            myCurrentPiece.moveRight();
-            setChanged();
-            notifyObservers();
+        if (fits(piece.getType(), piece.getRotation(), piece.getX() + 1, piece.getY())) {
+            myCurrentPiece = piece.withPosition(piece.getX() + 1, piece.getY());
+            fireMove(BoardAction.MOVE_RIGHT, piece);
         }
     }
 
@@ -254,13 +837,22 @@ public final class Board extends Observable {
      * Attempts to move the current piece down.
      */
     public void moveDown() {
+        moveDown(BoardAction.MOVE_DOWN);
+    }
+
+    /**
+     * Moves the current piece down, or freezes it if it cannot move.
+     * 
+     * @param theAction the operation reported to listeners
+     */
+    private void moveDown(final BoardAction theAction) {
+        final PieceState from = myCurrentPiece;
 
         if (isMoveDownLegal()) {
-            myCurrentPiece.moveDown();
-            setChanged();
-            notifyObservers();
+            myCurrentPiece = from.withPosition(from.getX(), from.getY() - 1);
+            fireMove(theAction, from);
         } else {
-            freeze(); // this will notify observers
+            freeze(theAction, from); // this will notify observers
         }
     }
     
@@ -270,63 +862,168 @@ public final class Board extends Observable {
      * @return true if it possible to move this piece down; false otherwise
      */
     private boolean isMoveDownLegal() {
-        boolean canPass = true;
-        final int[][] blocks = ((AbstractPiece) myCurrentPiece).getBoardCoordinates();
-        
-        // perform bounds checking on each block
-        for (int i = 0; i < blocks.length; i++) {
-            // Is this block at the bottom, or is there a piece below it?
-            if (blocks[i][1] == 0 || // block is at the bottom
-                blockAt(blocks[i][0], blocks[i][1] - 1) != Block.EMPTY) {
-                // block below is occupied
-                canPass = false;
-                break; // can't move, no need to keep checking
-            }
-        }
-        
-        return canPass;
+        final PieceState piece = myCurrentPiece;
+        return fits(piece.getType(), piece.getRotation(), piece.getX(), piece.getY() - 1);
     }
 
     /**
      * Drops the current Piece all the way down.
      */
     public void drop() {
-        while (isMoveDownLegal()) {
-            myCurrentPiece.moveDown();
+        final PieceState from = myCurrentPiece;
+
+        moveCurrentPieceDown(dropDistance());
+        freeze(BoardAction.DROP, from); // this will notify observers
+    }
+
+    /**
+     * Returns how many rows the current piece can move down before it lands.
+     * 
+     * @return the number of rows, 0 if the piece cannot move down
+     */
+    public int dropDistance() {
+        final PieceState piece = myCurrentPiece;
+        return myGrid.dropDistance(piece.getShape(), piece.getRotation(),
+                                   piece.getX(), piece.getY());
+    }
+
+    /**
+     * Returns how many rows a piece that fits at the given position can move
+     * down before it lands. Each column of the piece only needs the highest
+     * frozen block below its lowest cell, so this takes constant time for
+     * boards up to 64 rows high and does not allocate.
+     * 
+     * @param theType the type of the piece
+     * @param theRotation the rotation index of the piece
+     * @param theX the x-coordinate of the piece
+     * @param theY the y-coordinate of the piece
+     * @return the number of rows, 0 if the piece cannot move down
+     */
+    public int dropDistance(final Block theType, final int theRotation,
+                            final int theX, final int theY) {
+        return myGrid.dropDistance(PieceShape.of(theType), theRotation, theX, theY);
+    }
+
+    /**
+     * Returns the height of the stack in a column, the number of rows from
+     * the floor up to and including its highest frozen block.
+     * 
+     * @param theX the x-coordinate of the column, 0 to width - 1
+     * @return the height of the column, 0 if it is empty
+     */
+    public int getColumnHeight(final int theX) {
+        if (theX < 0 || theX >= myWidth) {
+            throw new IndexOutOfBoundsException(String.valueOf(theX));
         }
-        freeze(); // this will notify observers
+        return myGrid.getColumnHeight(theX);
     }
 
     /**
      * Attempts to rotate the current piece clockwise.
      */
     public void rotate() {
-        myCurrentPiece.rotate();
-        final int[][] blocks = ((AbstractPiece) myCurrentPiece).getBoardCoordinates();
-        boolean canPass = true;
-
-        for (final int[] dimension : blocks) {
-            if (dimension[0] >= myWidth
-                    || blockAt(dimension[0], dimension[1]) != Block.EMPTY) {
+        final PieceState piece = myCurrentPiece;
+        final int rotation = piece.getShape().nextRotation(piece.getRotation());
 
-                for (int i = 1; i < ROTATIONS; i++) {
-                    myCurrentPiece.rotate();
-                }
-                canPass = false;
-                break;
-            }
+        if (fits(piece.getType(), rotation, piece.getX(), piece.getY())) {
+            myCurrentPiece = piece.rotated();
+            fireMove(BoardAction.ROTATE, piece);
         }
-        if (canPass) {
-            setChanged();
-            notifyObservers();
+    }
+
+    /**
+     * Tests whether a piece would fit on this board: inside the side walls,
+     * on or above the floor, and not overlapping any frozen block. Positions
+     * above the top of the board are allowed. This method does not allocate.
+     * 
+     * @param theType the type of the piece
+     * @param theRotation the rotation index of the piece
+     * @param theX the x-coordinate of the piece
+     * @param theY the y-coordinate of the piece
+     * @return true if the piece fits at the given position; false otherwise
+     */
+    public boolean fits(final Block theType, final int theRotation,
+                        final int theX, final int theY) {
+        final PieceShape shape = PieceShape.of(theType);
+        boolean result = theX + shape.getMinX(theRotation) >= 0
+                         && theX + shape.getMaxX(theRotation) < myWidth
+                         && theY + shape.getMinY(theRotation) >= 0;
+
+        for (int row = shape.getMinY(theRotation);
+                        result && row <= shape.getMaxY(theRotation); row++) {
+            result = !myGrid.intersects(theY + row, shape.getRowMask(theRotation, row), theX);
         }
+        return result;
     }
 
     /**
      * Updates the game by one step.
      */
     public void step() {
-        moveDown();
+        moveDown(BoardAction.STEP);
+    }
+
+    /**
+     * Advances the game by one tick of gravity. Whenever gravity has built up
+     * one or more whole rows, the current piece falls by that many rows at
+     * once, and a piece that cannot fall any further freezes, just as if
+     * step() had been called once per row. Rows left over after the piece
+     * freezes are not carried over to the next piece. Reported as FALL.
+     */
+    public void tick() {
+        myTicks++;
+        if (!myGameOver) {
+            myGravityProgress += myGravityRows;
+            final int rows = myGravityProgress / myGravityTicks;
+            if (rows > 0) {
+                myGravityProgress -= rows * myGravityTicks;
+                fall(rows);
+            }
+        }
+    }
+
+    /**
+     * Advances the game by a number of ticks, exactly as calling tick() that
+     * many times would, but in time proportional to the number of falls
+     * rather than the number of ticks: ticks in which gravity only builds
+     * up are counted together, and so are the ticks after the game is over.
+     * 
+     * @param theTicks the number of ticks, 0 or greater
+     */
+    public void advance(final long theTicks) {
+        long left = theTicks;
+        while (left > 0 && !myGameOver && myGravityRows > 0) {
+            final long idle = (myGravityTicks - myGravityProgress - 1) / myGravityRows;
+            if (idle >= left) {
+                myGravityProgress += (int) (left * myGravityRows);
+                myTicks += left;
+                return;
+            }
+            myGravityProgress += (int) (idle * myGravityRows);
+            myTicks += idle;
+            tick();
+            left -= idle + 1;
+        }
+        myTicks += Math.max(0, left);
+    }
+
+    /**
+     * Moves the current piece down by up to the given number of rows and
+     * freezes it if it lands before using them all.
+     * 
+     * @param theRows the number of rows, 1 or greater
+     */
+    private void fall(final int theRows) {
+        final PieceState from = myCurrentPiece;
+        final int distance = dropDistance();
+        if (theRows <= distance) {
+            moveCurrentPieceDown(theRows);
+            fireMove(BoardAction.FALL, from);
+        } else {
+            moveCurrentPieceDown(distance);
+            myGravityProgress = 0;
+            freeze(BoardAction.FALL, from);
+        }
     }
     
     /**
@@ -378,12 +1075,10 @@ public final class Board extends Observable {
         if (myPieces == null || myPieces.isEmpty()) {
             myNextPiece = randomPiece(myWidth / 2 - 2, myHeight);
         } else {
-            myNextPiece = myPieces.removeFirst();
-            try {
-                myPieces.addLast(((AbstractPiece) myNextPiece).clone());
-            } catch (final CloneNotSupportedException e) {
-                e.printStackTrace();
-            }
+            // the piece itself is never moved, so it can go back unchanged
+            final Piece piece = myPieces.removeFirst();
+            myPieces.addLast(piece);
+            myNextPiece = PieceState.of((AbstractPiece) piece);
         }
     }
 
@@ -396,64 +1091,116 @@ public final class Board extends Observable {
      * 
      * @return A randomly chosen piece
      */
-    private Piece randomPiece(final int theX, final int theY) {
-        final Block[] blocks = Block.values();
-        Piece result;
-
-        switch (blocks[RANDOM.nextInt(blocks.length)]) {
-            case I:
-                result = new IPiece(theX, theY);
-                break;
-
-            case J:
-                result = new JPiece(theX, theY);
-                break;
-
-            case L:
-                result = new LPiece(theX, theY);
-                break;
-
-            case O:
-                result = new OPiece(theX, theY);
-                break;
+    private PieceState randomPiece(final int theX, final int theY) {
+        myDraws++;
+        return PieceState.valueOf(myGenerator.next(), 0, theX, theY);
+    }
 
-            case S:
-                result = new SPiece(theX, theY);
-                break;
+    /**
+     * Moves the current piece down by several rows at once.
+     * 
+     * @param theRows the number of rows to move down
+     */
+    private void moveCurrentPieceDown(final int theRows) {
+        if (theRows != 0) {
+            myCurrentPiece = myCurrentPiece.withPosition(myCurrentPiece.getX(),
+                                                         myCurrentPiece.getY() - theRows);
+        }
+    }
 
-            case T:
-                result = new TPiece(theX, theY);
-                break;
+    /**
+     * Writes a piece for saveState.
+     * 
+     * @param theBuffer the buffer to write to
+     * @param thePiece the piece, or null
+     */
+    private static void savePiece(final ByteBuffer theBuffer, final PieceState thePiece) {
+        if (thePiece == NO_PIECE) {
+            theBuffer.put((byte) Block.EMPTY.ordinal());
+            theBuffer.put((byte) 0);
+            theBuffer.putInt(0);
+            theBuffer.putInt(0);
+        } else {
+            theBuffer.put((byte) thePiece.getType().ordinal());
+            theBuffer.put((byte) thePiece.getRotation());
+            theBuffer.putInt(thePiece.getX());
+            theBuffer.putInt(thePiece.getY());
+        }
+    }
 
-            case Z:
-                result = new ZPiece(theX, theY);
-                break;
+    /**
+     * Reads a piece written by savePiece.
+     * 
+     * @param theBuffer the buffer to read from
+     * @return the piece, or null
+     * @throws IllegalArgumentException if the piece is malformed
+     */
+    private static PieceState restorePiece(final ByteBuffer theBuffer) {
+        final int type = theBuffer.get();
+        final int rotation = theBuffer.get();
+        final int x = theBuffer.getInt();
+        final int y = theBuffer.getInt();
+        PieceState result = NO_PIECE;
+        if (type != Block.EMPTY.ordinal()) {
+            if (type < 0 || type >= Block.values().length) {
+                throw new IllegalArgumentException("Bad piece: " + type);
+            }
+            result = PieceState.valueOf(Block.values()[type], rotation, x, y);
+        }
+        return result;
+    }
 
-            default: // If EMPTY, recursively try again
-                result = randomPiece(theX, theY);
-                break;
+    /**
+     * Tests whether a restored piece lies where a piece of this board can:
+     * inside the side walls, on or above the floor, and no higher than where
+     * pieces start, since they never move up.
+     * 
+     * @param thePiece the piece, or null
+     * @return true if the piece is not null and lies inside the board
+     */
+    private boolean isInside(final PieceState thePiece) {
+        boolean result = thePiece != NO_PIECE;
+        if (result) {
+            final PieceShape shape = thePiece.getShape();
+            final int rotation = thePiece.getRotation();
+            result = thePiece.getX() + shape.getMinX(rotation) >= 0
+                     && thePiece.getX() + shape.getMaxX(rotation) < myWidth
+                     && thePiece.getY() + shape.getMinY(rotation) >= 0
+                     && thePiece.getY() <= myHeight;
         }
         return result;
     }
 
     /**
-     * Retrieves the block at the specified coordinates.
+     * Adds a piece to a checksum.
      * 
-     * @param theX The x-coordinate
-     * @param theY The y-coordinate
+     * @param theHash the checksum so far
+     * @param thePiece the piece, or null
+     * @return the new checksum
+     */
+    private static long hash(final long theHash, final PieceState thePiece) {
+        long result = theHash;
+        if (thePiece == NO_PIECE) {
+            result = BitGrid.hash(result, -1);
+        } else {
+            result = BitGrid.hash(result, thePiece.getType().ordinal());
+            result = BitGrid.hash(result, thePiece.getRotation());
+            result = BitGrid.hash(result, thePiece.getX());
+            result = BitGrid.hash(result, thePiece.getY());
+        }
+        return result;
+    }
+
+    /**
+     * Creates a mutable copy of a piece for the Piece based accessors.
      * 
-     * @return The block at the specified coordinates, EMPTY if there is no
-     *         block at the specified coordinates, null if the specified
-     *         coordinates are outside of the board
-     */
-    private Block blockAt(final int theX, final int theY) {
-        Block result = null; // outside the board coordinates
-        if (theX < myWidth && theX >= 0 && theY >= 0) {
-            // inside the board
-            result = Block.EMPTY; // blocks above the board are empty
-            if (theY < myFrozenBlocks.size()) {
-                result = myFrozenBlocks.get(theY)[theX];
-            }
+     * @param theState the piece, or null
+     * @return a new piece in the same state, or null
+     */
+    private static Piece toPiece(final PieceState theState) {
+        Piece result = null;
+        if (theState != NO_PIECE) {
+            result = AbstractPiece.of(theState);
         }
         return result;
     }
@@ -466,74 +1213,324 @@ public final class Board extends Observable {
      * @return true if the current piece occupies the position, false otherwise
      */
     private boolean currentPieceAt(final int theX, final int theY) {
-        boolean result = false;
-        final int[][] blocks = ((AbstractPiece) myCurrentPiece).getBoardCoordinates();
+        final PieceState piece = myCurrentPiece;
+        final int row = theY - piece.getY();
+        final int column = theX - piece.getX();
+
+        return row >= 0 && row < PieceShape.BOX_SIZE
+               && column >= 0 && column < PieceShape.BOX_SIZE
+               && (piece.getShape().getRowMask(piece.getRotation(), row)
+                   & (1L << column)) != 0;
+    }
 
-        for (int block = 0; block < blocks.length; block++) {
-            if (blocks[block][1] == theY && blocks[block][0] == theX) {
-                result = true;
-            }
-        }
-        return result;
+    /**
+     * Tests whether anyone is listening to this board, so that events are
+     * only built when they will be delivered.
+     * 
+     * @return true if there are listeners or observers
+     */
+    private boolean isObserved() {
+        return !myListeners.isEmpty() || countObservers() > 0;
     }
 
     /**
-     * The current piece cannot move down so add its blocks to the board.
+     * Reports a move of the current piece that froze nothing.
+     * 
+     * @param theAction the operation that moved the piece
+     * @param theFrom the state of the piece before the move
      */
-    private void freeze() {
-        final int[][] coordinates = ((AbstractPiece) myCurrentPiece).getBoardCoordinates();
+    private void fireMove(final BoardAction theAction, final PieceState theFrom) {
+        if (isObserved()) {
+            fire(new BoardEvent(this, theAction, theFrom, myCurrentPiece, null,
+                                NO_ROWS, null, false));
+        }
+    }
 
-        for (int block = 0; block < coordinates.length; block++) {
-            final int x = coordinates[block][0];
-            final int y = coordinates[block][1];
+    /**
+     * Delivers an event to the listeners and then to the observers.
+     * 
+     * @param theEvent the event to deliver
+     */
+    private void fire(final BoardEvent theEvent) {
+        for (final BoardListener listener : myListeners) {
+            listener.boardChanged(theEvent);
+        }
+        if (countObservers() > 0) {
+            setChanged();
+            notifyObservers(theEvent);
+        }
+    }
 
-            // Add rows until this block can fit in one.
-            while (y >= myFrozenBlocks.size()) {
-                final Block[] newRow = new Block[myWidth];
-                for (int i = 0; i < myWidth; i++) {
-                    newRow[i] = Block.EMPTY;
-                }
-                myFrozenBlocks.add(newRow);
-            }
-            final Block[] row = myFrozenBlocks.get(y);
-            row[x] = ((AbstractPiece) myCurrentPiece).getBlock();
+    /**
+     * The current piece cannot move down so add its blocks to the board.
+     * 
+     * @param theAction the operation that froze the piece
+     * @param theFrom the state of the piece before the operation, for the event
+     */
+    private void freeze(final BoardAction theAction, final PieceState theFrom) {
+        final PieceState piece = myCurrentPiece;
+        final PieceShape shape = piece.getShape();
+        final int rotation = piece.getRotation();
+        final int left = piece.getX() + shape.getMinX(rotation);
+        final int right = piece.getX() + shape.getMaxX(rotation);
+
+        final int stackHeight = myGrid.getStackHeight();
+        countColumns(left, right, -1);
+        for (int block = 0; block < PieceShape.CELLS; block++) {
+            final int x = piece.getCellX(block);
+            final int y = piece.getCellY(block);
+            countCell(x, y);
+            myGrid.set(x, y, piece.getType());
+            hashCell(x, y);
         }
+        myCells += PieceShape.CELLS;
+        countColumns(left, right, 1);
+        // the rows the stack grew by were counted as empty rows by countCell
+        myRowTransitions += 2 * (myGrid.getStackHeight() - stackHeight);
+        myFeatures = null;
+        myPiecesPlaced++;
         
-        setChanged();
-        notifyObservers();
+        clearLines(piece.getY() + shape.getMinY(rotation),
+                   piece.getY() + shape.getMaxY(rotation));
         
-        clearLines(); // this may also notify observers
-        
-        if (myFrozenBlocks.size() > myHeight) {
+        if (myGrid.getStackHeight() > myHeight) {
             myGameOver = true;
         } else {
             assignCurrentPiece();
         }
         
-        setChanged();
-        notifyObservers();
+        if (isObserved()) {
+            final int[] cleared = new int[myClearedRowCount];
+            for (int i = 0; i < myClearedRowCount; i++) {
+                cleared[i] = myClearedRows[myClearedRowCount - 1 - i];
+            }
+            PieceState current = null;
+            PieceState next = null;
+            if (!myGameOver) {
+                current = myCurrentPiece;
+                next = myNextPiece;
+            }
+            fire(new BoardEvent(this, theAction, theFrom, current, piece,
+                                cleared, next, myGameOver));
+        }
     }
 
     /**
      * Checks if there are any lines that need to be cleared
-     * and removes them from the board.
+     * and removes them from the board. Only the rows of the piece that
+     * was just frozen can have become full, so only those are checked.
+     * 
+     * @param theBottom the lowest row of the frozen piece
+     * @param theTop the highest row of the frozen piece
+     */
+    private void clearLines(final int theBottom, final int theTop) {
+        myClearedRowCount = 0;
+        for (int i = theTop; i >= theBottom; i--) {
+            if (myGrid.isRowFull(i)) {
+                myClearedRows[myClearedRowCount++] = i;
+            }
+        }
+        if (myClearedRowCount > 0) {
+            hashRemovedRows(myGrid.getStackHeight());
+            countClearedColumns();
+            myGrid.removeRows(myClearedRows, myClearedRowCount);
+            myLinesCleared += myClearedRowCount;
+            // full rows have no row transitions, and the others keep theirs
+            myCells -= myClearedRowCount * myWidth;
+            recountHeights();
+        }
+    }
+
+    /**
+     * Adds the shares of the columns of a piece to the features that
+     * depend on the column heights, or takes them out: the heights of its
+     * columns, the wells of those and their neighbours and the bumpiness
+     * between them.
+     * 
+     * @param theLeft the leftmost column of the piece
+     * @param theRight the rightmost column of the piece
+     * @param theSign 1 to add the shares, -1 to take them out
+     */
+    private void countColumns(final int theLeft, final int theRight, final int theSign) {
+        int height = 0;
+        for (int x = theLeft; x <= theRight; x++) {
+            height += myGrid.getColumnHeight(x);
+        }
+        final int first = Math.max(0, theLeft - 1);
+        final int last = Math.min(myWidth - 1, theRight + 1);
+        int bumpiness = 0;
+        for (int x = first; x < last; x++) {
+            bumpiness += Math.abs(myGrid.getColumnHeight(x) - myGrid.getColumnHeight(x + 1));
+        }
+        int wells = 0;
+        for (int x = first; x <= last; x++) {
+            wells += well(x);
+        }
+        myAggregateHeight += theSign * height;
+        myBumpiness += theSign * bumpiness;
+        myWells += theSign * wells;
+    }
+
+    /**
+     * Updates the transitions for an empty cell about to be occupied. Each
+     * of its neighbours along the row and up the column that is occupied
+     * stops being a transition, and each that is empty becomes one. Rows
+     * above the stack are taken to have been counted as empty rows.
+     * 
+     * @param theX the column of the cell
+     * @param theY the row of the cell
      */
-    private void clearLines() {
-        for (int i = myFrozenBlocks.size() - 1; i >= 0; i--) {
-            boolean clear = true;
-            final Block[] blocks = myFrozenBlocks.get(i);
+    private void countCell(final int theX, final int theY) {
+        myRowTransitions += change(theX == 0 || myGrid.isOccupied(theX - 1, theY))
+                            + change(theX == myWidth - 1 || myGrid.isOccupied(theX + 1, theY));
+        myColumnTransitions += change(theY == 0 || myGrid.isOccupied(theX, theY - 1))
+                               + change(myGrid.isOccupied(theX, theY + 1));
+    }
+
+    /**
+     * @param theOccupied whether a neighbour of a newly occupied cell is occupied
+     * @return the change in the transitions between the two
+     */
+    private static int change(final boolean theOccupied) {
+        int result = 1;
+        if (theOccupied) {
+            result = -1;
+        }
+        return result;
+    }
 
-            for (final Block block : blocks) {
-                if (block == Block.EMPTY) {
-                    clear = false;
-                    break;
+    /**
+     * Takes the full rows about to be removed out of the column transitions.
+     * A run of full rows is a run of occupied cells in every column, so
+     * removing it joins the cells below and above it: two transitions go
+     * when both are empty, the floor counting as occupied, and none
+     * otherwise.
+     */
+    private void countClearedColumns() {
+        // the cleared rows are in descending order
+        int end = 0;
+        while (end < myClearedRowCount) {
+            final int top = myClearedRows[end];
+            int bottom = top;
+            end++;
+            while (end < myClearedRowCount && myClearedRows[end] == bottom - 1) {
+                bottom--;
+                end++;
+            }
+            if (bottom > 0) {
+                for (int x = 0; x < myWidth; x++) {
+                    if (!myGrid.isOccupied(x, bottom - 1) && !myGrid.isOccupied(x, top + 1)) {
+                        myColumnTransitions -= 2;
+                    }
                 }
             }
-            if (clear) {
-                myFrozenBlocks.remove(i);
-                setChanged();
-                notifyObservers();
+        }
+    }
+
+    /**
+     * Returns the depth of a column lower than both of its neighbours. The
+     * board is at least MIN_SIZE wide, so a column has a neighbour that is
+     * not a wall.
+     * 
+     * @param theX the column
+     * @return the depth below the lower neighbour, 0 if the column is not
+     *         lower than both
+     */
+    private int well(final int theX) {
+        int sides = Integer.MAX_VALUE;
+        if (theX > 0) {
+            sides = myGrid.getColumnHeight(theX - 1);
+        }
+        if (theX + 1 < myWidth) {
+            sides = Math.min(sides, myGrid.getColumnHeight(theX + 1));
+        }
+        return Math.max(0, sides - myGrid.getColumnHeight(theX));
+    }
+
+    /**
+     * Recomputes the features that depend on the column heights, after rows
+     * were removed. The grid keeps the heights, so this is one pass over
+     * the columns, fewer than the cells of the cleared rows.
+     */
+    private void recountHeights() {
+        myAggregateHeight = 0;
+        myBumpiness = 0;
+        myWells = 0;
+        countColumns(0, myWidth - 1, 1);
+    }
+
+    /**
+     * Recomputes all the features from the frozen blocks, after the whole
+     * grid has changed.
+     */
+    private void recount() {
+        myFeatures = BoardFeatures.of(myGrid);
+        myAggregateHeight = myFeatures.getAggregateHeight();
+        myCells = myAggregateHeight - myFeatures.getHoles();
+        myBumpiness = myFeatures.getBumpiness();
+        myWells = myFeatures.getWells();
+        myRowTransitions = myFeatures.getRowTransitions();
+        myColumnTransitions = myFeatures.getColumnTransitions();
+    }
+
+    /**
+     * Adds a newly frozen cell to the Zobrist hash.
+     * 
+     * @param theX the column of the cell
+     * @param theY the row of the cell
+     */
+    private void hashCell(final int theX, final int theY) {
+        if (theY >= myRowHashes.length) {
+            myRowHashes = Arrays.copyOf(myRowHashes, Math.max(2 * myRowHashes.length,
+                                                              theY + 1));
+        }
+        final long cells = myRowHashes[theY];
+        myRowHashes[theY] = cells ^ Zobrist.column(theX);
+        myZobristHash ^= Zobrist.row(cells, theY) ^ Zobrist.row(myRowHashes[theY], theY);
+    }
+
+    /**
+     * Updates the Zobrist hash for the removal of the rows in myClearedRows:
+     * the rows above the lowest of them move down, so their shares of the
+     * hash are taken out and put back at their new rows.
+     * 
+     * @param theStackHeight the height of the stack before the removal
+     */
+    private void hashRemovedRows(final int theStackHeight) {
+        // the cleared rows are listed from the top down
+        int next = myClearedRowCount - 1;
+        int to = myClearedRows[next];
+        for (int from = to; from < theStackHeight; from++) {
+            final long cells = myRowHashes[from];
+            myZobristHash ^= Zobrist.row(cells, from);
+            if (next >= 0 && from == myClearedRows[next]) {
+                next--;
+            } else {
+                myRowHashes[to] = cells;
+                myZobristHash ^= Zobrist.row(cells, to);
+                to++;
+            }
+        }
+        Arrays.fill(myRowHashes, to, theStackHeight, 0L);
+    }
+
+    /**
+     * Recomputes the Zobrist hash from the frozen blocks, after the whole
+     * grid has changed.
+     */
+    private void rehash() {
+        final int rows = myGrid.getStackHeight();
+        myRowHashes = new long[Math.max(rows, myHeight + EXTRA_ROWS)];
+        myZobristHash = 0;
+        for (int y = 0; y < rows; y++) {
+            long cells = 0;
+            for (int x = 0; x < myWidth; x++) {
+                if (myGrid.isOccupied(x, y)) {
+                    cells ^= Zobrist.column(x);
+                }
             }
+            myRowHashes[y] = cells;
+            myZobristHash ^= Zobrist.row(cells, y);
         }
     }
 
@@ -546,27 +1543,34 @@ public final class Board extends Observable {
     private String getRowString(final int theRow) {
         final StringBuilder sb = new StringBuilder();
 
-        if (myFrozenBlocks.size() - 1 < theRow) {
-            for (int column = 0; column < myWidth; column++) {
-                if (currentPieceAt(column, theRow)) {
-                    sb.append(CURRENT_PIECE);
-                } else {
-                    sb.append(EMPTY);
-                }
-            }
-        } else {
-            final Block[] rowOfBlocks = myFrozenBlocks.get(theRow);
-
-            for (int column = 0; column < myWidth; column++) {
-                if (currentPieceAt(column, theRow)) {
-                    sb.append(CURRENT_PIECE);
-                } else if (rowOfBlocks[column] == Block.EMPTY) {
-                    sb.append(EMPTY);
-                } else {
-                    sb.append(FROZEN);
-                }
+        for (int column = 0; column < myWidth; column++) {
+            if (currentPieceAt(column, theRow)) {
+                sb.append(CURRENT_PIECE);
+            } else if (myGrid.isOccupied(column, theRow)) {
+                sb.append(FROZEN);
+            } else {
+                sb.append(EMPTY);
             }
         }
         return sb.toString();
     }
+
+    /**
+     * A read-only view of the frozen blocks as a list of rows.
+     */
+    private final class FrozenBlocksView extends AbstractList<Block[]> {
+
+        @Override
+        public Block[] get(final int theIndex) {
+            if (theIndex < 0 || theIndex >= size()) {
+                throw new IndexOutOfBoundsException(String.valueOf(theIndex));
+            }
+            return myGrid.copyRow(theIndex);
+        }
+
+        @Override
+        public int size() {
+            return myGrid.getStackHeight();
+        }
+    }
 }
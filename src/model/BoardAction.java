@@ -0,0 +1,37 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+/**
+ * The operations that can change the state of a Board.
+ * 
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public enum BoardAction {
+
+    /** A new game was started. */
+    NEW_GAME,
+    /** The current piece was moved one column to the left. */
+    MOVE_LEFT,
+    /** The current piece was moved one column to the right. */
+    MOVE_RIGHT,
+    /** The current piece was moved down one row, or frozen if it could not move. */
+    MOVE_DOWN,
+    /** The current piece was rotated a quarter turn clockwise. */
+    ROTATE,
+    /** The current piece was dropped all the way down and frozen. */
+    DROP,
+    /** The game was advanced by one step. */
+    STEP,
+    /**
+     * The current piece fell by gravity during a tick, or was frozen if it
+     * could not fall any further.
+     */
+    FALL,
+    /** The gravity was changed; the pieces did not move. */
+    GRAVITY;
+
+}
@@ -0,0 +1,149 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+import java.util.Arrays;
+
+/**
+ * An immutable description of one change of a Board: the operation that
+ * caused it and what it changed.
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public final class BoardEvent {
+
+    /** The board that changed. */
+    private final Board mySource;
+
+    /** The operation that changed the board. */
+    private final BoardAction myAction;
+
+    /** The current piece before the change, null if there was none. */
+    private final PieceState myPreviousPiece;
+
+    /** The current piece after the change, null if there is none. */
+    private final PieceState myCurrentPiece;
+
+    /** The piece frozen into the board by the change, null if none was. */
+    private final PieceState myFrozenPiece;
+
+    /** The rows cleared by the change, in ascending order of their index before the clear. */
+    private final int[] myClearedRows;
+
+    /** The next piece after the change, null if it did not change. */
+    private final PieceState myNextPiece;
+
+    /** Whether the change ended the game. */
+    private final boolean myGameOver;
+
+    /**
+     * Creates an event.
+     *
+     * @param theSource the board that changed
+     * @param theAction the operation that changed the board
+     * @param thePreviousPiece the current piece before the change, or null
+     * @param theCurrentPiece the current piece after the change, or null
+     * @param theFrozenPiece the piece frozen by the change, or null
+     * @param theClearedRows the rows cleared by the change; the array is not copied
+     * @param theNextPiece the next piece if it changed, or null
+     * @param theGameOver whether the change ended the game
+     */
+    BoardEvent(final Board theSource, final BoardAction theAction,
+               final PieceState thePreviousPiece, final PieceState theCurrentPiece,
+               final PieceState theFrozenPiece, final int[] theClearedRows,
+               final PieceState theNextPiece, final boolean theGameOver) {
+        mySource = theSource;
+        myAction = theAction;
+        myPreviousPiece = thePreviousPiece;
+        myCurrentPiece = theCurrentPiece;
+        myFrozenPiece = theFrozenPiece;
+        myClearedRows = theClearedRows;
+        myNextPiece = theNextPiece;
+        myGameOver = theGameOver;
+    }
+
+    /**
+     * @return the board that changed
+     */
+    public Board getSource() {
+        return mySource;
+    }
+
+    /**
+     * @return the operation that changed the board
+     */
+    public BoardAction getAction() {
+        return myAction;
+    }
+
+    /**
+     * @return the current piece before the change, null if there was none
+     */
+    public PieceState getPreviousPiece() {
+        return myPreviousPiece;
+    }
+
+    /**
+     * @return the current piece after the change, null if there is none
+     */
+    public PieceState getCurrentPiece() {
+        return myCurrentPiece;
+    }
+
+    /**
+     * @return the piece frozen into the board by the change, null if none was
+     */
+    public PieceState getFrozenPiece() {
+        return myFrozenPiece;
+    }
+
+    /**
+     * @return the number of rows cleared by the change
+     */
+    public int getClearedRowCount() {
+        return myClearedRows.length;
+    }
+
+    /**
+     * Returns the index of a cleared row, counted before the rows were removed.
+     * Cleared rows are reported in ascending order.
+     *
+     * @param theIndex the index into the cleared rows, 0 to getClearedRowCount() - 1
+     * @return the row index
+     */
+    public int getClearedRow(final int theIndex) {
+        return myClearedRows[theIndex];
+    }
+
+    /**
+     * @return whether the next piece changed
+     */
+    public boolean isNextPieceChanged() {
+        return myNextPiece != null;
+    }
+
+    /**
+     * @return the next piece if it changed, null otherwise
+     */
+    public PieceState getNextPiece() {
+        return myNextPiece;
+    }
+
+    /**
+     * @return whether the change ended the game
+     */
+    public boolean isGameOver() {
+        return myGameOver;
+    }
+
+    @Override
+    public String toString() {
+        return "BoardEvent[" + myAction + ", from=" + myPreviousPiece
+               + ", to=" + myCurrentPiece + ", frozen=" + myFrozenPiece
+               + ", cleared=" + Arrays.toString(myClearedRows)
+               + ", next=" + myNextPiece + ", gameOver=" + myGameOver + "]";
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+/**
+ * The features of the frozen blocks of a board that heuristic players
+ * score positions by. The board keeps them up to date as pieces freeze and
+ * lines clear, so reading them costs nothing:
+ * <ul>
+ * <li>aggregate height: the sum of the heights of the columns;</li>
+ * <li>holes: the empty cells with an occupied cell above them in their
+ * column;</li>
+ * <li>bumpiness: the sum of the height differences of neighbouring
+ * columns;</li>
+ * <li>wells: the sum of the depths of the columns lower than both of their
+ * neighbours, the walls counting as infinitely high;</li>
+ * <li>row transitions: the changes between occupied and empty cells along
+ * each row of the stack, the walls counting as occupied;</li>
+ * <li>column transitions: the changes between occupied and empty cells up
+ * each column, from the floor, which counts as occupied, to the empty cell
+ * above its highest cell.</li>
+ * </ul>
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public final class BoardFeatures {
+
+    /** The multiplier combining the fields in hashCode. */
+    private static final int HASH_PRIME = 31;
+
+    /** The sum of the column heights. */
+    private final int myAggregateHeight;
+
+    /** The number of holes. */
+    private final int myHoles;
+
+    /** The bumpiness. */
+    private final int myBumpiness;
+
+    /** The sum of the well depths. */
+    private final int myWells;
+
+    /** The number of row transitions. */
+    private final int myRowTransitions;
+
+    /** The number of column transitions. */
+    private final int myColumnTransitions;
+
+    /**
+     * Creates the features of a board.
+     *
+     * @param theAggregateHeight the sum of the column heights
+     * @param theHoles the number of holes
+     * @param theBumpiness the bumpiness
+     * @param theWells the sum of the well depths
+     * @param theRowTransitions the number of row transitions
+     * @param theColumnTransitions the number of column transitions
+     */
+    BoardFeatures(final int theAggregateHeight, final int theHoles, final int theBumpiness,
+                  final int theWells, final int theRowTransitions,
+                  final int theColumnTransitions) {
+        myAggregateHeight = theAggregateHeight;
+        myHoles = theHoles;
+        myBumpiness = theBumpiness;
+        myWells = theWells;
+        myRowTransitions = theRowTransitions;
+        myColumnTransitions = theColumnTransitions;
+    }
+
+    /**
+     * Counts the features of the frozen blocks of a grid, for a board whose
+     * whole grid has changed.
+     *
+     * @param theGrid the frozen blocks
+     * @return the features
+     */
+    static BoardFeatures of(final BitGrid theGrid) {
+        final int width = theGrid.getWidth();
+        int aggregateHeight = 0;
+        int bumpiness = 0;
+        int wells = 0;
+        int columnTransitions = 0;
+        for (int x = 0; x < width; x++) {
+            final int height = theGrid.getColumnHeight(x);
+            aggregateHeight += height;
+            columnTransitions += theGrid.columnTransitions(x);
+            int sides = Integer.MAX_VALUE;
+            if (x > 0) {
+                sides = theGrid.getColumnHeight(x - 1);
+            }
+            if (x + 1 < width) {
+                sides = Math.min(sides, theGrid.getColumnHeight(x + 1));
+                bumpiness += Math.abs(height - theGrid.getColumnHeight(x + 1));
+            }
+            wells += Math.max(0, sides - height);
+        }
+        int rowTransitions = 0;
+        for (int y = 0; y < theGrid.getStackHeight(); y++) {
+            rowTransitions += theGrid.rowTransitions(y);
+        }
+        return new BoardFeatures(aggregateHeight, aggregateHeight - theGrid.getCellCount(),
+                                 bumpiness, wells, rowTransitions, columnTransitions);
+    }
+
+    /**
+     * @return the sum of the heights of the columns
+     */
+    public int getAggregateHeight() {
+        return myAggregateHeight;
+    }
+
+    /**
+     * @return the number of empty cells with an occupied cell above them
+     */
+    public int getHoles() {
+        return myHoles;
+    }
+
+    /**
+     * @return the sum of the height differences of neighbouring columns
+     */
+    public int getBumpiness() {
+        return myBumpiness;
+    }
+
+    /**
+     * @return the sum of the depths of the columns lower than both neighbours
+     */
+    public int getWells() {
+        return myWells;
+    }
+
+    /**
+     * @return the number of changes between occupied and empty cells along the rows
+     */
+    public int getRowTransitions() {
+        return myRowTransitions;
+    }
+
+    /**
+     * @return the number of changes between occupied and empty cells up the columns
+     */
+    public int getColumnTransitions() {
+        return myColumnTransitions;
+    }
+
+    @Override
+    public boolean equals(final Object theOther) {
+        boolean result = this == theOther;
+        if (!result && theOther instanceof BoardFeatures) {
+            final BoardFeatures other = (BoardFeatures) theOther;
+            result = myAggregateHeight == other.myAggregateHeight
+                     && myHoles == other.myHoles && myBumpiness == other.myBumpiness
+                     && myWells == other.myWells
+                     && myRowTransitions == other.myRowTransitions
+                     && myColumnTransitions == other.myColumnTransitions;
+        }
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = myAggregateHeight;
+        result = HASH_PRIME * result + myHoles;
+        result = HASH_PRIME * result + myBumpiness;
+        result = HASH_PRIME * result + myWells;
+        result = HASH_PRIME * result + myRowTransitions;
+        return HASH_PRIME * result + myColumnTransitions;
+    }
+
+    @Override
+    public String toString() {
+        return "BoardFeatures[height " + myAggregateHeight + ", holes " + myHoles
+               + ", bumpiness " + myBumpiness + ", wells " + myWells + ", row transitions "
+               + myRowTransitions + ", column transitions " + myColumnTransitions + "]";
+    }
+}
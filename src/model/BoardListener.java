@@ -0,0 +1,23 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+/**
+ * Receives the changes of a Board. A board calls its listeners exactly once
+ * for every operation that changes its state, on the thread that performed
+ * the operation.
+ * 
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public interface BoardListener {
+
+    /**
+     * Called after the state of the board has changed.
+     * 
+     * @param theEvent the description of the change
+     */
+    void boardChanged(BoardEvent theEvent);
+}
@@ -0,0 +1,177 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+/**
+ * An immutable copy of the state of a Board at one moment, safe to read from
+ * any thread while the board itself keeps changing.
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public final class BoardSnapshot {
+
+    /** The width of the board. */
+    private final int myWidth;
+
+    /** The height of the board. */
+    private final int myHeight;
+
+    /** A private copy of the frozen cells of the board. */
+    private final BitGrid myGrid;
+
+    /** The current piece, null if there is none. */
+    private final PieceState myCurrentPiece;
+
+    /** The next piece, null if there is none. */
+    private final PieceState myNextPiece;
+
+    /** Whether the game is over. */
+    private final boolean myGameOver;
+
+    /** The number of pieces frozen in the game. */
+    private final int myPiecesPlaced;
+
+    /** The number of lines cleared in the game. */
+    private final int myLinesCleared;
+
+    /** The Zobrist hash of the frozen cells. */
+    private final long myZobristHash;
+
+    /** The features of the frozen cells. */
+    private final BoardFeatures myFeatures;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param theWidth the width of the board
+     * @param theHeight the height of the board
+     * @param theGrid a copy of the frozen cells that nothing else refers to
+     * @param theCurrentPiece the current piece, or null
+     * @param theNextPiece the next piece, or null
+     * @param theGameOver whether the game is over
+     * @param thePiecesPlaced the number of pieces frozen in the game
+     * @param theLinesCleared the number of lines cleared in the game
+     * @param theZobristHash the Zobrist hash of the frozen cells
+     * @param theFeatures the features of the frozen cells
+     */
+    BoardSnapshot(final int theWidth, final int theHeight, final BitGrid theGrid,
+                  final PieceState theCurrentPiece, final PieceState theNextPiece,
+                  final boolean theGameOver, final int thePiecesPlaced,
+                  final int theLinesCleared, final long theZobristHash,
+                  final BoardFeatures theFeatures) {
+        myWidth = theWidth;
+        myHeight = theHeight;
+        myGrid = theGrid;
+        myCurrentPiece = theCurrentPiece;
+        myNextPiece = theNextPiece;
+        myGameOver = theGameOver;
+        myPiecesPlaced = thePiecesPlaced;
+        myLinesCleared = theLinesCleared;
+        myZobristHash = theZobristHash;
+        myFeatures = theFeatures;
+    }
+
+    /**
+     * @return the width of the board
+     */
+    public int getWidth() {
+        return myWidth;
+    }
+
+    /**
+     * @return the height of the board
+     */
+    public int getHeight() {
+        return myHeight;
+    }
+
+    /**
+     * Returns the number of rows from the bottom of the board up to and
+     * including the highest row containing a frozen block.
+     *
+     * @return the height of the stack of frozen blocks
+     */
+    public int getStackHeight() {
+        return myGrid.getStackHeight();
+    }
+
+    /**
+     * Returns the frozen block at the specified position.
+     *
+     * @param theX the x-coordinate, 0 to width - 1
+     * @param theY the y-coordinate, 0 or greater
+     * @return the frozen block at the position, EMPTY if there is none
+     */
+    public Block getFrozenBlock(final int theX, final int theY) {
+        if (theX < 0 || theX >= myWidth || theY < 0) {
+            throw new IndexOutOfBoundsException("(" + theX + ", " + theY + ")");
+        }
+        return myGrid.getBlock(theX, theY);
+    }
+
+    /**
+     * @return the current piece, null if there is none
+     */
+    public PieceState getCurrentPiece() {
+        return myCurrentPiece;
+    }
+
+    /**
+     * Returns how many rows the current piece can move down before it lands.
+     *
+     * @return the number of rows, 0 if there is no current piece
+     */
+    public int dropDistance() {
+        int result = 0;
+        if (myCurrentPiece != null) {
+            result = myGrid.dropDistance(myCurrentPiece.getShape(), myCurrentPiece.getRotation(),
+                                         myCurrentPiece.getX(), myCurrentPiece.getY());
+        }
+        return result;
+    }
+
+    /**
+     * @return the next piece, null if there is none
+     */
+    public PieceState getNextPiece() {
+        return myNextPiece;
+    }
+
+    /**
+     * @return whether the game is over
+     */
+    public boolean isGameOver() {
+        return myGameOver;
+    }
+
+    /**
+     * @return the number of pieces frozen in the game
+     */
+    public int getPiecesPlaced() {
+        return myPiecesPlaced;
+    }
+
+    /**
+     * @return the number of lines cleared in the game
+     */
+    public int getLinesCleared() {
+        return myLinesCleared;
+    }
+
+    /**
+     * @return the Zobrist hash of the frozen cells, as Board.getZobristHash()
+     */
+    public long getZobristHash() {
+        return myZobristHash;
+    }
+
+    /**
+     * @return the features of the frozen cells, as Board.getFeatures()
+     */
+    public BoardFeatures getFeatures() {
+        return myFeatures;
+    }
+}
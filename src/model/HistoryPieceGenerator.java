@@ -0,0 +1,131 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Chooses pieces at random but avoids the most recent pieces: a piece that is
+ * among the last four is drawn again, up to a number of rolls, and the last
+ * roll is kept whatever it is. The history starts out full of Z pieces and the
+ * first piece is never an S, Z or O piece, so a game never starts with an
+ * overhang.
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public final class HistoryPieceGenerator implements PieceGenerator {
+
+    /** The number of recent pieces remembered. */
+    private static final int HISTORY_SIZE = 4;
+
+    /** The default number of rolls. */
+    private static final int DEFAULT_ROLLS = 4;
+
+    /** The types the first piece is drawn from. */
+    private static final Block[] FIRST_PIECES = {Block.I, Block.J, Block.L, Block.T};
+
+    /** The source of randomness. */
+    private SplittableRandom myRandom;
+
+    /** The number of times a piece in the history is drawn again. */
+    private final int myRolls;
+
+    /** The recent pieces, used as a ring buffer. */
+    private final Block[] myHistory;
+
+    /** The number of times each block type, by ordinal, appears in myHistory. */
+    private final int[] myCounts;
+
+    /** The index in myHistory of the oldest piece. */
+    private int myOldest;
+
+    /** Whether the first piece has been drawn. */
+    private boolean myStarted;
+
+    /**
+     * Creates a generator with an unpredictable seed and four rolls.
+     */
+    public HistoryPieceGenerator() {
+        this(new SplittableRandom(), DEFAULT_ROLLS);
+    }
+
+    /**
+     * Creates a generator with the given seed and four rolls.
+     *
+     * @param theSeed the seed
+     */
+    public HistoryPieceGenerator(final long theSeed) {
+        this(new SplittableRandom(theSeed), DEFAULT_ROLLS);
+    }
+
+    /**
+     * Creates a generator with the given seed and number of rolls.
+     *
+     * @param theSeed the seed
+     * @param theRolls the number of draws per piece, 1 or more; 1 gives
+     *        uniformly random pieces after the first
+     */
+    public HistoryPieceGenerator(final long theSeed, final int theRolls) {
+        this(new SplittableRandom(theSeed), theRolls);
+    }
+
+    /**
+     * Creates a generator drawing from a source of randomness.
+     *
+     * @param theRandom the source of randomness
+     * @param theRolls the number of draws per piece
+     */
+    private HistoryPieceGenerator(final SplittableRandom theRandom, final int theRolls) {
+        if (theRolls < 1) {
+            throw new IllegalArgumentException("Bad number of rolls: " + theRolls);
+        }
+        myRandom = theRandom;
+        myRolls = theRolls;
+        myHistory = new Block[HISTORY_SIZE];
+        myCounts = new int[Block.values().length];
+        clearHistory();
+    }
+
+    @Override
+    public Block next() {
+        Block result;
+        if (myStarted) {
+            int roll = 0;
+            do {
+                result = Block.PIECES[myRandom.nextInt(Block.PIECES.length)];
+                roll++;
+            } while (roll < myRolls && myCounts[result.ordinal()] > 0);
+        } else {
+            result = FIRST_PIECES[myRandom.nextInt(FIRST_PIECES.length)];
+            myStarted = true;
+        }
+        myCounts[myHistory[myOldest].ordinal()]--;
+        myCounts[result.ordinal()]++;
+        myHistory[myOldest] = result;
+        myOldest = (myOldest + 1) % HISTORY_SIZE;
+        return result;
+    }
+
+    @Override
+    public void reset(final long theSeed) {
+        myRandom = new SplittableRandom(theSeed);
+        clearHistory();
+    }
+
+    /**
+     * Fills the history with Z pieces and forgets that a piece was drawn.
+     */
+    private void clearHistory() {
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            myHistory[i] = Block.Z;
+        }
+        Arrays.fill(myCounts, 0);
+        myCounts[Block.Z.ordinal()] = HISTORY_SIZE;
+        myOldest = 0;
+        myStarted = false;
+    }
+}
@@ -15,8 +15,9 @@ public final class OPiece extends AbstractPiece {
     /**
      * The x and y-coordinates for all rotations of an OPiece.
      * The x coordinate is listed first, then the y coordinate.
+     * These are compiled once into the shared {@link PieceShape} tables.
      */
-    private static final int[][][] MY_ROTATIONS = {{{1, 2}, {2, 2}, {1, 1}, {2, 1}}};
+    static final int[][][] MY_ROTATIONS = {{{1, 2}, {2, 2}, {1, 1}, {2, 1}}};
 
     /**
      * Creates a new O piece at the given coordinates.
@@ -25,6 +26,6 @@ public final class OPiece extends AbstractPiece {
      * @param theY The y coordinate of the piece
      */
     protected OPiece(final int theX, final int theY) {
-        super(MY_ROTATIONS, theX, theY, Block.O);
+        super(theX, theY, Block.O);
     }
 }
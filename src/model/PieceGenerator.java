@@ -0,0 +1,35 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+/**
+ * A strategy choosing the types of the pieces of a game.
+ *
+ * <p>Each Board owns its own generator, so boards running on different
+ * threads never share random state. Generators are not thread safe and must
+ * only be used by the thread running their board. Drawing a piece does not
+ * allocate.</p>
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public interface PieceGenerator {
+
+    /**
+     * Chooses the type of the next piece.
+     *
+     * @return the type of the next piece, never EMPTY
+     */
+    Block next();
+
+    /**
+     * Restarts the sequence of pieces. Generators that draw random pieces
+     * restart from the given seed, so the same seed always gives the same
+     * sequence; generators that do not use randomness ignore it.
+     *
+     * @param theSeed the seed of the new sequence
+     */
+    void reset(long theSeed);
+}
@@ -0,0 +1,253 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+/**
+ * The precompiled, immutable geometry of one type of Tetris piece.
+ *
+ * <p>Every rotation of every piece type is compiled once into flat tables:
+ * the cell offsets, one occupancy bit mask per row of the piece's 4x4
+ * bounding box, the minimum and maximum cell offsets, and the lowest cell of
+ * each column. The tables are shared by every piece of that type, so asking
+ * a piece or a board about its geometry never allocates.</p>
+ *
+ * <p>Offsets are relative to the piece position; x grows to the right and
+ * y grows upward. Bit i of a row mask is set when the piece has a cell at
+ * x offset i in that row.</p>
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public final class PieceShape {
+
+    /** The number of cells in a piece. */
+    public static final int CELLS = 4;
+
+    /** The size of the square box bounding every rotation of every piece. */
+    public static final int BOX_SIZE = 4;
+
+    /** The value reported for a column of the bounding box with no cells. */
+    public static final int NO_CELL = -1;
+
+    /** The shapes of all piece types, indexed by Block ordinal. */
+    private static final PieceShape[] SHAPES = new PieceShape[Block.values().length];
+
+    static {
+        SHAPES[Block.I.ordinal()] = new PieceShape(Block.I, IPiece.MY_ROTATIONS);
+        SHAPES[Block.J.ordinal()] = new PieceShape(Block.J, JPiece.MY_ROTATIONS);
+        SHAPES[Block.L.ordinal()] = new PieceShape(Block.L, LPiece.MY_ROTATIONS);
+        SHAPES[Block.O.ordinal()] = new PieceShape(Block.O, OPiece.MY_ROTATIONS);
+        SHAPES[Block.S.ordinal()] = new PieceShape(Block.S, SPiece.MY_ROTATIONS);
+        SHAPES[Block.T.ordinal()] = new PieceShape(Block.T, TPiece.MY_ROTATIONS);
+        SHAPES[Block.Z.ordinal()] = new PieceShape(Block.Z, ZPiece.MY_ROTATIONS);
+    }
+
+    /** The block type of this shape. */
+    private final Block myType;
+
+    /** The number of distinct rotations of this shape. */
+    private final int myRotationCount;
+
+    /** The x offset of each cell, CELLS entries per rotation. */
+    private final int[] myCellX;
+
+    /** The y offset of each cell, CELLS entries per rotation. */
+    private final int[] myCellY;
+
+    /** The occupancy mask of each row of the bounding box, BOX_SIZE entries per rotation. */
+    private final long[] myRowMasks;
+
+    /** The lowest cell in each column of the bounding box, BOX_SIZE entries per rotation. */
+    private final int[] myColumnBottoms;
+
+    /** The highest cell in each column of the bounding box, BOX_SIZE entries per rotation. */
+    private final int[] myColumnTops;
+
+    /** The smallest x offset of each rotation. */
+    private final int[] myMinX;
+
+    /** The largest x offset of each rotation. */
+    private final int[] myMaxX;
+
+    /** The smallest y offset of each rotation. */
+    private final int[] myMinY;
+
+    /** The largest y offset of each rotation. */
+    private final int[] myMaxY;
+
+    /**
+     * Compiles the rotation table of a piece type.
+     *
+     * @param theType the block type of the piece
+     * @param theRotations the cell offsets of each rotation, x first then y
+     */
+    private PieceShape(final Block theType, final int[][][] theRotations) {
+        myType = theType;
+        myRotationCount = theRotations.length;
+        myCellX = new int[myRotationCount * CELLS];
+        myCellY = new int[myRotationCount * CELLS];
+        myRowMasks = new long[myRotationCount * BOX_SIZE];
+        myColumnBottoms = new int[myRotationCount * BOX_SIZE];
+        myColumnTops = new int[myRotationCount * BOX_SIZE];
+        myMinX = new int[myRotationCount];
+        myMaxX = new int[myRotationCount];
+        myMinY = new int[myRotationCount];
+        myMaxY = new int[myRotationCount];
+
+        for (int rotation = 0; rotation < myRotationCount; rotation++) {
+            myMinX[rotation] = BOX_SIZE;
+            myMinY[rotation] = BOX_SIZE;
+            myMaxX[rotation] = NO_CELL;
+            myMaxY[rotation] = NO_CELL;
+            for (int column = 0; column < BOX_SIZE; column++) {
+                myColumnBottoms[rotation * BOX_SIZE + column] = NO_CELL;
+                myColumnTops[rotation * BOX_SIZE + column] = NO_CELL;
+            }
+            for (int cell = 0; cell < CELLS; cell++) {
+                final int x = theRotations[rotation][cell][0];
+                final int y = theRotations[rotation][cell][1];
+                myCellX[rotation * CELLS + cell] = x;
+                myCellY[rotation * CELLS + cell] = y;
+                myRowMasks[rotation * BOX_SIZE + y] |= 1L << x;
+                myMinX[rotation] = Math.min(myMinX[rotation], x);
+                myMaxX[rotation] = Math.max(myMaxX[rotation], x);
+                myMinY[rotation] = Math.min(myMinY[rotation], y);
+                myMaxY[rotation] = Math.max(myMaxY[rotation], y);
+                final int column = rotation * BOX_SIZE + x;
+                if (myColumnBottoms[column] == NO_CELL || y < myColumnBottoms[column]) {
+                    myColumnBottoms[column] = y;
+                }
+                if (y > myColumnTops[column]) {
+                    myColumnTops[column] = y;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the shape of a piece type.
+     *
+     * @param theType the block type of the piece; EMPTY is not allowed
+     * @return the shared shape of that piece type
+     */
+    public static PieceShape of(final Block theType) {
+        final PieceShape result = SHAPES[theType.ordinal()];
+        if (result == null) {
+            throw new IllegalArgumentException(theType.toString());
+        }
+        return result;
+    }
+
+    /**
+     * @return the block type of this shape
+     */
+    public Block getType() {
+        return myType;
+    }
+
+    /**
+     * @return the number of distinct rotations of this shape
+     */
+    public int getRotationCount() {
+        return myRotationCount;
+    }
+
+    /**
+     * Returns the x offset of a cell.
+     *
+     * @param theRotation the rotation index
+     * @param theCell the cell index, 0 to CELLS - 1
+     * @return the x offset of the cell
+     */
+    public int getCellX(final int theRotation, final int theCell) {
+        return myCellX[theRotation * CELLS + theCell];
+    }
+
+    /**
+     * Returns the y offset of a cell.
+     *
+     * @param theRotation the rotation index
+     * @param theCell the cell index, 0 to CELLS - 1
+     * @return the y offset of the cell
+     */
+    public int getCellY(final int theRotation, final int theCell) {
+        return myCellY[theRotation * CELLS + theCell];
+    }
+
+    /**
+     * Returns the occupancy mask of one row of the bounding box.
+     *
+     * @param theRotation the rotation index
+     * @param theRow the y offset of the row, 0 to BOX_SIZE - 1
+     * @return the mask of the row, bit i set for a cell at x offset i
+     */
+    public long getRowMask(final int theRotation, final int theRow) {
+        return myRowMasks[theRotation * BOX_SIZE + theRow];
+    }
+
+    /**
+     * Returns the lowest cell of one column of the bounding box.
+     *
+     * @param theRotation the rotation index
+     * @param theColumn the x offset of the column, 0 to BOX_SIZE - 1
+     * @return the y offset of the lowest cell, NO_CELL if the column is empty
+     */
+    public int getColumnBottom(final int theRotation, final int theColumn) {
+        return myColumnBottoms[theRotation * BOX_SIZE + theColumn];
+    }
+
+    /**
+     * Returns the highest cell of one column of the bounding box.
+     *
+     * @param theRotation the rotation index
+     * @param theColumn the x offset of the column, 0 to BOX_SIZE - 1
+     * @return the y offset of the highest cell, NO_CELL if the column is empty
+     */
+    public int getColumnTop(final int theRotation, final int theColumn) {
+        return myColumnTops[theRotation * BOX_SIZE + theColumn];
+    }
+
+    /**
+     * @param theRotation the rotation index
+     * @return the smallest x offset of the rotation
+     */
+    public int getMinX(final int theRotation) {
+        return myMinX[theRotation];
+    }
+
+    /**
+     * @param theRotation the rotation index
+     * @return the largest x offset of the rotation
+     */
+    public int getMaxX(final int theRotation) {
+        return myMaxX[theRotation];
+    }
+
+    /**
+     * @param theRotation the rotation index
+     * @return the smallest y offset of the rotation
+     */
+    public int getMinY(final int theRotation) {
+        return myMinY[theRotation];
+    }
+
+    /**
+     * @param theRotation the rotation index
+     * @return the largest y offset of the rotation
+     */
+    public int getMaxY(final int theRotation) {
+        return myMaxY[theRotation];
+    }
+
+    /**
+     * Returns the rotation reached by turning a quarter turn clockwise.
+     *
+     * @param theRotation the rotation index
+     * @return the next rotation index
+     */
+    public int nextRotation(final int theRotation) {
+        return (theRotation + 1) % myRotationCount;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+/**
+ * An immutable snapshot of a piece: its type, rotation and position. The
+ * geometry is read from the shared {@link PieceShape} of the type, so a
+ * state is only a few words and moving a piece never copies its rotations.
+ *
+ * <p>States near the board, within 64 cells of the lower
+ * left corner, are shared: {@link #valueOf}, {@link #withPosition} and
+ * {@link #rotated} return the same instance for the same state, so moving a
+ * piece around an ordinary board does not allocate once every position has
+ * been visited. Other states are created on demand.</p>
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public final class PieceState {
+
+    /** The prime used to combine hash codes. */
+    private static final int HASH_PRIME = 31;
+
+    /** The number of shared x and y coordinates. */
+    private static final int CACHE_SIZE = 64;
+
+    /** The lowest shared x and y coordinate; pieces can stick out left of and below their position. */
+    private static final int CACHE_MIN = -PieceShape.BOX_SIZE;
+
+    /** The most rotations of any shape. */
+    private static final int MAX_ROTATIONS = 4;
+
+    /**
+     * The shared states, one lazily created plane of CACHE_SIZE * CACHE_SIZE
+     * states per type and rotation. Races only ever create duplicate states,
+     * which are equal and immutable, so no locking is needed.
+     */
+    private static final PieceState[][] CACHE =
+                    new PieceState[Block.values().length * MAX_ROTATIONS][];
+
+    /** The shape of the piece. */
+    private final PieceShape myShape;
+
+    /** The rotation index of the piece. */
+    private final int myRotation;
+
+    /** The x coordinate of the piece. */
+    private final int myX;
+
+    /** The y coordinate of the piece. */
+    private final int myY;
+
+    /**
+     * Creates a piece state.
+     *
+     * @param theType the type of the piece; EMPTY is not allowed
+     * @param theRotation the rotation index of the piece
+     * @param theX the x coordinate of the piece
+     * @param theY the y coordinate of the piece
+     */
+    public PieceState(final Block theType, final int theRotation,
+                      final int theX, final int theY) {
+        myShape = PieceShape.of(theType);
+        if (theRotation < 0 || theRotation >= myShape.getRotationCount()) {
+            throw new IllegalArgumentException("Bad rotation: " + theRotation);
+        }
+        myRotation = theRotation;
+        myX = theX;
+        myY = theY;
+    }
+
+    /**
+     * Creates a piece state from a shape the caller has already checked.
+     *
+     * @param theShape the shape of the piece
+     * @param theRotation a valid rotation index of the shape
+     * @param theX the x coordinate of the piece
+     * @param theY the y coordinate of the piece
+     */
+    private PieceState(final PieceShape theShape, final int theRotation,
+                       final int theX, final int theY) {
+        myShape = theShape;
+        myRotation = theRotation;
+        myX = theX;
+        myY = theY;
+    }
+
+    /**
+     * Returns a piece state, shared if it is near the board.
+     *
+     * @param theType the type of the piece; EMPTY is not allowed
+     * @param theRotation the rotation index of the piece
+     * @param theX the x coordinate of the piece
+     * @param theY the y coordinate of the piece
+     * @return the piece state
+     */
+    public static PieceState valueOf(final Block theType, final int theRotation,
+                                     final int theX, final int theY) {
+        final PieceShape shape = PieceShape.of(theType);
+        if (theRotation < 0 || theRotation >= shape.getRotationCount()) {
+            throw new IllegalArgumentException("Bad rotation: " + theRotation);
+        }
+        return valueOf(shape, theRotation, theX, theY);
+    }
+
+    /**
+     * Captures the current state of a piece.
+     *
+     * @param thePiece the piece
+     * @return the state of the piece
+     */
+    public static PieceState of(final AbstractPiece thePiece) {
+        return valueOf(thePiece.getShape(), thePiece.getRotationIndex(),
+                       thePiece.getX(), thePiece.getY());
+    }
+
+    /**
+     * Returns a piece state of a shape the caller has already checked,
+     * shared if it is near the board.
+     *
+     * @param theShape the shape of the piece
+     * @param theRotation a valid rotation index of the shape
+     * @param theX the x coordinate of the piece
+     * @param theY the y coordinate of the piece
+     * @return the piece state
+     */
+    private static PieceState valueOf(final PieceShape theShape, final int theRotation,
+                                      final int theX, final int theY) {
+        final int x = theX - CACHE_MIN;
+        final int y = theY - CACHE_MIN;
+        PieceState result;
+        if (x >= 0 && x < CACHE_SIZE && y >= 0 && y < CACHE_SIZE) {
+            final int index = theShape.getType().ordinal() * MAX_ROTATIONS + theRotation;
+            PieceState[] plane = CACHE[index];
+            if (plane == null) {
+                plane = new PieceState[CACHE_SIZE * CACHE_SIZE];
+                CACHE[index] = plane;
+            }
+            result = plane[y * CACHE_SIZE + x];
+            if (result == null) {
+                result = new PieceState(theShape, theRotation, theX, theY);
+                plane[y * CACHE_SIZE + x] = result;
+            }
+        } else {
+            result = new PieceState(theShape, theRotation, theX, theY);
+        }
+        return result;
+    }
+
+    /**
+     * @return the type of the piece
+     */
+    public Block getType() {
+        return myShape.getType();
+    }
+
+    /**
+     * @return the shared shape of the piece
+     */
+    public PieceShape getShape() {
+        return myShape;
+    }
+
+    /**
+     * @return the rotation index of the piece
+     */
+    public int getRotation() {
+        return myRotation;
+    }
+
+    /**
+     * @return the x coordinate of the piece
+     */
+    public int getX() {
+        return myX;
+    }
+
+    /**
+     * @return the y coordinate of the piece
+     */
+    public int getY() {
+        return myY;
+    }
+
+    /**
+     * Returns this piece moved to another position.
+     *
+     * @param theX the new x coordinate
+     * @param theY the new y coordinate
+     * @return the moved piece
+     */
+    public PieceState withPosition(final int theX, final int theY) {
+        return valueOf(myShape, myRotation, theX, theY);
+    }
+
+    /**
+     * Returns this piece turned a quarter turn clockwise in place.
+     *
+     * @return the rotated piece
+     */
+    public PieceState rotated() {
+        return valueOf(myShape, myShape.nextRotation(myRotation), myX, myY);
+    }
+
+    /**
+     * Returns the board x coordinate of one of the piece's cells.
+     *
+     * @param theCell the cell index, 0 to PieceShape.CELLS - 1
+     * @return the x coordinate of the cell
+     */
+    public int getCellX(final int theCell) {
+        return myX + myShape.getCellX(myRotation, theCell);
+    }
+
+    /**
+     * Returns the board y coordinate of one of the piece's cells.
+     *
+     * @param theCell the cell index, 0 to PieceShape.CELLS - 1
+     * @return the y coordinate of the cell
+     */
+    public int getCellY(final int theCell) {
+        return myY + myShape.getCellY(myRotation, theCell);
+    }
+
+    @Override
+    public boolean equals(final Object theOther) {
+        boolean result = this == theOther;
+        if (!result && theOther instanceof PieceState) {
+            final PieceState other = (PieceState) theOther;
+            result = myShape == other.myShape && myRotation == other.myRotation
+                     && myX == other.myX && myY == other.myY;
+        }
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = myShape.getType().ordinal();
+        result = HASH_PRIME * result + myRotation;
+        result = HASH_PRIME * result + myX;
+        return HASH_PRIME * result + myY;
+    }
+
+    @Override
+    public String toString() {
+        return getType() + "[rotation=" + myRotation + ", x=" + myX + ", y=" + myY + "]";
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+import java.util.SplittableRandom;
+
+/**
+ * Chooses every piece uniformly at random, independently of the pieces
+ * before it.
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public final class RandomPieceGenerator implements PieceGenerator {
+
+    /** The source of randomness. */
+    private SplittableRandom myRandom;
+
+    /**
+     * Creates a generator with an unpredictable seed.
+     */
+    public RandomPieceGenerator() {
+        myRandom = new SplittableRandom();
+    }
+
+    /**
+     * Creates a generator with the given seed.
+     *
+     * @param theSeed the seed
+     */
+    public RandomPieceGenerator(final long theSeed) {
+        myRandom = new SplittableRandom(theSeed);
+    }
+
+    @Override
+    public Block next() {
+        return Block.PIECES[myRandom.nextInt(Block.PIECES.length)];
+    }
+
+    @Override
+    public void reset(final long theSeed) {
+        myRandom = new SplittableRandom(theSeed);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Replays a fixed sequence of piece types, for example one recorded from an
+ * earlier game, starting over from the beginning when it runs out.
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public final class ReplayPieceGenerator implements PieceGenerator {
+
+    /** The sequence of piece types. */
+    private final Block[] mySequence;
+
+    /** The index of the next piece in the sequence. */
+    private int myIndex;
+
+    /**
+     * Creates a generator replaying a sequence of piece types.
+     *
+     * @param theSequence the piece types, at least one and none EMPTY;
+     *        the sequence is copied
+     */
+    public ReplayPieceGenerator(final Block... theSequence) {
+        if (theSequence.length == 0) {
+            throw new IllegalArgumentException("Empty sequence");
+        }
+        mySequence = Arrays.copyOf(theSequence, theSequence.length);
+        for (final Block type : mySequence) {
+            if (type == null || type == Block.EMPTY) {
+                throw new IllegalArgumentException("Not a piece: " + type);
+            }
+        }
+    }
+
+    @Override
+    public Block next() {
+        final Block result = mySequence[myIndex];
+        myIndex = (myIndex + 1) % mySequence.length;
+        return result;
+    }
+
+    /**
+     * Restarts the sequence from its first piece. The seed is ignored.
+     *
+     * @param theSeed ignored
+     */
+    @Override
+    public void reset(final long theSeed) {
+        myIndex = 0;
+    }
+}
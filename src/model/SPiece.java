@@ -15,11 +15,12 @@ public final class SPiece extends AbstractPiece {
     /**
      * The x and y-coordinates for all rotations of a SPiece.
      * The x coordinate is listed first, then the y coordinate.
+     * These are compiled once into the shared {@link PieceShape} tables.
      */
-    private static final int[][][] MY_ROTATIONS = {{{1, 2}, {2, 2}, {0, 1}, {1, 1}},
-                                                   {{1, 2}, {1, 1}, {2, 1}, {2, 0}},
-                                                   {{1, 1}, {2, 1}, {0, 0}, {1, 0}},
-                                                   {{0, 2}, {0, 1}, {1, 1}, {1, 0}}};
+    static final int[][][] MY_ROTATIONS = {{{1, 2}, {2, 2}, {0, 1}, {1, 1}},
+                                           {{1, 2}, {1, 1}, {2, 1}, {2, 0}},
+                                           {{1, 1}, {2, 1}, {0, 0}, {1, 0}},
+                                           {{0, 2}, {0, 1}, {1, 1}, {1, 0}}};
 
     /**
      * Creates a new S piece at the given coordinates.
@@ -28,6 +29,6 @@ public final class SPiece extends AbstractPiece {
      * @param theY The y coordinate of the piece
      */
     protected SPiece(final int theX, final int theY) {
-        super(MY_ROTATIONS, theX, theY, Block.S);
+        super(theX, theY, Block.S);
     }
 }
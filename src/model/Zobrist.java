@@ -0,0 +1,171 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package model;
+
+/**
+ * The keys of the Zobrist hash of the frozen cells of a board.
+ *
+ * <p>Every column has a random 64-bit key, and the cells of a row hash to
+ * the exclusive or of the keys of their columns. A row's hash is then
+ * multiplied by a random odd key of the row, and the products of all rows
+ * are combined by exclusive or. Freezing a cell changes one row, so the
+ * hash is updated by taking that row's product out and putting the new one
+ * in; clearing lines moves the rows above down, and only their products
+ * are recomputed. An empty row contributes nothing, so the hash does not
+ * depend on how many rows a grid stores. Only occupancy is hashed, not the
+ * block types, so two boards hash alike when their pieces fit the same.</p>
+ *
+ * <p>The keys are generated from fixed seeds, so hashes are the same in
+ * every run and can be saved.</p>
+ *
+ * @author Alan Fowler
+ * @version Autumn 2015
+ */
+public final class Zobrist {
+
+    /** The number of column and row keys kept in tables; others are computed. */
+    private static final int TABLE_SIZE = 256;
+
+    /** The number of values of a byte. */
+    private static final int BYTE_VALUES = 1 << Byte.SIZE;
+
+    /** The number of bytes of a 64-column row mask. */
+    private static final int MASK_BYTES = Long.BYTES;
+
+    /** The increment of the SplitMix64 generator, the golden ratio in 64 bits. */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /** The seed of the column keys. */
+    private static final long COLUMN_SEED = 0x3C6EF372FE94F82BL;
+
+    /** The seed of the row keys. */
+    private static final long ROW_SEED = 0xA54FF53A5F1D36F1L;
+
+    /** The seed of the piece keys. */
+    private static final long PIECE_SEED = 0x510E527FADE682D1L;
+
+    /** The first multiplier of the SplitMix64 finalizer. */
+    private static final long MIX_1 = 0xBF58476D1CE4E5B9L;
+
+    /** The second multiplier of the SplitMix64 finalizer. */
+    private static final long MIX_2 = 0x94D049BB133111EBL;
+
+    /** The first shift of the SplitMix64 finalizer. */
+    private static final int SHIFT_1 = 30;
+
+    /** The second shift of the SplitMix64 finalizer. */
+    private static final int SHIFT_2 = 27;
+
+    /** The third shift of the SplitMix64 finalizer. */
+    private static final int SHIFT_3 = 31;
+
+    /** The keys of the first TABLE_SIZE columns. */
+    private static final long[] COLUMNS = new long[TABLE_SIZE];
+
+    /** The keys of the first TABLE_SIZE rows, all odd. */
+    private static final long[] ROWS = new long[TABLE_SIZE];
+
+    /**
+     * The hash of the cells of each byte of a row mask of the first 64
+     * columns: BYTE_VALUES entries per byte, lowest byte first.
+     */
+    private static final long[] MASK_BYTE_CELLS = new long[MASK_BYTES * BYTE_VALUES];
+
+    static {
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            COLUMNS[i] = key(COLUMN_SEED, i);
+            ROWS[i] = key(ROW_SEED, i) | 1;
+        }
+        for (int index = 0; index < MASK_BYTES; index++) {
+            for (int value = 1; value < BYTE_VALUES; value++) {
+                final int bit = Integer.numberOfTrailingZeros(value);
+                MASK_BYTE_CELLS[index * BYTE_VALUES + value] =
+                    MASK_BYTE_CELLS[index * BYTE_VALUES + (value & value - 1)]
+                    ^ COLUMNS[index * Byte.SIZE + bit];
+            }
+        }
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private Zobrist() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Returns the key of a column.
+     *
+     * @param theX the column
+     * @return its key
+     */
+    public static long column(final int theX) {
+        final long result;
+        if (theX < TABLE_SIZE) {
+            result = COLUMNS[theX];
+        } else {
+            result = key(COLUMN_SEED, theX);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the hash of the cells of a row of the first 64 columns.
+     *
+     * @param theMask the occupancy of the row, bit x for column x
+     * @return the exclusive or of the keys of the occupied columns
+     */
+    public static long cells(final long theMask) {
+        long result = 0;
+        long mask = theMask;
+        for (int index = 0; mask != 0; index += BYTE_VALUES) {
+            result ^= MASK_BYTE_CELLS[index + (int) (mask & (BYTE_VALUES - 1))];
+            mask >>>= Byte.SIZE;
+        }
+        return result;
+    }
+
+    /**
+     * Returns what a row adds to the hash of a grid.
+     *
+     * @param theCells the hash of the cells of the row
+     * @param theY the row
+     * @return the row's share of the hash, 0 for an empty row
+     */
+    public static long row(final long theCells, final int theY) {
+        final long key;
+        if (theY < TABLE_SIZE) {
+            key = ROWS[theY];
+        } else {
+            key = key(ROW_SEED, theY) | 1;
+        }
+        return theCells * key;
+    }
+
+    /**
+     * Returns the key of a piece type, for hashing a grid together with the
+     * piece to be placed on it.
+     *
+     * @param theType the piece type
+     * @return its key
+     */
+    public static long piece(final Block theType) {
+        return key(PIECE_SEED, theType.ordinal());
+    }
+
+    /**
+     * Returns the key at a position of a sequence, by the SplitMix64 finalizer.
+     *
+     * @param theSeed the seed of the sequence
+     * @param theIndex the position
+     * @return the key
+     */
+    private static long key(final long theSeed, final int theIndex) {
+        long result = theSeed + (theIndex + 1) * GOLDEN_GAMMA;
+        result = (result ^ result >>> SHIFT_1) * MIX_1;
+        result = (result ^ result >>> SHIFT_2) * MIX_2;
+        return result ^ result >>> SHIFT_3;
+    }
+}
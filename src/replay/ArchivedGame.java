@@ -0,0 +1,345 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package replay;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import model.Block;
+import model.BoardAction;
+import model.PieceGenerator;
+
+/**
+ * One game read from a replay archive. The totals, seed and checksum are
+ * read with the game; the pieces and inputs stay encoded in the columns of
+ * their chunk until they are asked for.
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class ArchivedGame {
+
+    /** The piece types, in the order of their ordinals. */
+    private static final Block[] BLOCKS = Block.values();
+
+    /** The mask of a piece type in the PIECES column. */
+    private static final int PIECE_MASK = (1 << ReplayArchiveWriter.PIECE_BITS) - 1;
+
+    /** The seed of the game. */
+    private final long mySeed;
+
+    /** The width, height and gravity rows and ticks of the board. */
+    private final int[] myHeader;
+
+    /** Whether the game was recorded to its end. */
+    private final boolean myFinished;
+
+    /** The number of pieces placed. */
+    private final int myPieces;
+
+    /** The number of lines cleared. */
+    private final int myLines;
+
+    /** The score. */
+    private final long myScore;
+
+    /** The number of ticks played. */
+    private final long myTicks;
+
+    /** The checksum of the board at the end. */
+    private final long myChecksum;
+
+    /** The number of inputs. */
+    private final int myInputCount;
+
+    /** The number of pieces dealt. */
+    private final int myPieceCount;
+
+    /** The piece types of the game, two to a byte. */
+    private final ByteBuffer myPieceTypes;
+
+    /** The run-length encoded input codes of the game. */
+    private final ByteBuffer myCodes;
+
+    /** The ticks before the inputs of the game. */
+    private final ByteBuffer myDeltas;
+
+    /** The arguments of the GRAVITY inputs of the game. */
+    private final ByteBuffer myArgs;
+
+    /**
+     * Creates a game read from an archive.
+     *
+     * @param theSeed the seed of the game
+     * @param theHeader the width, height and gravity rows and ticks of the board
+     * @param theFinished whether the game was recorded to its end
+     * @param theTotals the pieces placed, lines cleared, score and ticks
+     * @param theChecksum the checksum of the board at the end
+     * @param theInputCount the number of inputs
+     * @param thePieceCount the number of pieces dealt
+     * @param theColumns the game's part of the PIECES, CODES, DELTAS and ARGS
+     *        columns, owned by this game from now on
+     */
+    ArchivedGame(final long theSeed, final int[] theHeader, final boolean theFinished,
+                 final long[] theTotals, final long theChecksum, final int theInputCount,
+                 final int thePieceCount, final ByteBuffer[] theColumns) {
+        mySeed = theSeed;
+        myHeader = theHeader;
+        myFinished = theFinished;
+        myPieces = (int) theTotals[0];
+        myLines = (int) theTotals[1];
+        myScore = theTotals[2];
+        myTicks = theTotals[3];
+        myChecksum = theChecksum;
+        myInputCount = theInputCount;
+        myPieceCount = thePieceCount;
+        myPieceTypes = theColumns[0];
+        myCodes = theColumns[1];
+        myDeltas = theColumns[2];
+        myArgs = theColumns[3];
+    }
+
+    /**
+     * @return the seed of the game
+     */
+    public long getSeed() {
+        return mySeed;
+    }
+
+    /**
+     * @return the width of the board
+     */
+    public int getWidth() {
+        return myHeader[0];
+    }
+
+    /**
+     * @return the height of the board
+     */
+    public int getHeight() {
+        return myHeader[1];
+    }
+
+    /**
+     * @return the gravity rows the game started with
+     */
+    public int getGravityRows() {
+        return myHeader[2];
+    }
+
+    /**
+     * @return the gravity ticks the game started with
+     */
+    public int getGravityTicks() {
+        return myHeader[3];
+    }
+
+    /**
+     * @return whether the game was recorded to its end, rather than abandoned
+     */
+    public boolean isFinished() {
+        return myFinished;
+    }
+
+    /**
+     * @return the number of pieces placed
+     */
+    public int getPiecesPlaced() {
+        return myPieces;
+    }
+
+    /**
+     * @return the number of lines cleared
+     */
+    public int getLinesCleared() {
+        return myLines;
+    }
+
+    /**
+     * @return the score
+     */
+    public long getScore() {
+        return myScore;
+    }
+
+    /**
+     * @return the number of ticks played
+     */
+    public long getTicks() {
+        return myTicks;
+    }
+
+    /**
+     * @return the checksum of the board at the end of the game
+     */
+    public long getChecksum() {
+        return myChecksum;
+    }
+
+    /**
+     * @return the number of inputs
+     */
+    public int getInputCount() {
+        return myInputCount;
+    }
+
+    /**
+     * @return the number of pieces dealt, including the current and next
+     *         piece at the end
+     */
+    public int getPieceCount() {
+        return myPieceCount;
+    }
+
+    /**
+     * Returns a piece dealt in the game.
+     *
+     * @param theIndex the index of the piece, 0 to getPieceCount() - 1
+     * @return the type of the piece
+     * @throws IndexOutOfBoundsException if there is no such piece
+     */
+    public Block getPiece(final int theIndex) {
+        if (theIndex < 0 || theIndex >= myPieceCount) {
+            throw new IndexOutOfBoundsException(String.valueOf(theIndex));
+        }
+        final int pair = myPieceTypes.get(theIndex / 2);
+        return BLOCKS[pair >> (theIndex % 2) * ReplayArchiveWriter.PIECE_BITS & PIECE_MASK];
+    }
+
+    /**
+     * Decodes the inputs of the game.
+     *
+     * @return the actions, in the order they were made
+     * @throws IllegalArgumentException if the archive is malformed
+     */
+    public List<BoardAction> getInputs() {
+        final List<BoardAction> result = new ArrayList<>(myInputCount);
+        final ByteBuffer codes = myCodes.duplicate();
+        while (codes.hasRemaining()) {
+            final long run = ReplayFormat.getVarLong(codes);
+            final BoardAction action = action((int) (run & ReplayFormat.CODE_MASK));
+            for (long i = run >>> ReplayFormat.CODE_BITS; i >= 0; i--) {
+                if (result.size() == myInputCount) {
+                    throw new IllegalArgumentException("Inputs do not match their count");
+                }
+                result.add(action);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decodes the ticks of the inputs of the game.
+     *
+     * @return the tick of every input, in the order of getInputs
+     * @throws IllegalArgumentException if the archive is malformed
+     */
+    public long[] getInputTicks() {
+        final long[] result = new long[myInputCount];
+        final ByteBuffer deltas = myDeltas.duplicate();
+        long tick = 0;
+        try {
+            for (int i = 0; i < result.length; i++) {
+                tick += ReplayFormat.getVarLong(deltas);
+                result[i] = tick;
+            }
+        } catch (final BufferUnderflowException e) {
+            throw new IllegalArgumentException("Inputs do not match their count", e);
+        }
+        return result;
+    }
+
+    /**
+     * Plays the game back headlessly, as ReplayPlayer plays a recorded game.
+     *
+     * @param theGenerator the strategy that chose the pieces of the game
+     * @return the outcome of the game
+     * @throws IllegalArgumentException if the archive is malformed
+     */
+    public ReplayResult play(final PieceGenerator theGenerator) {
+        return new ReplayPlayer(toReplay(), theGenerator).playNextGame();
+    }
+
+    /**
+     * Encodes the game as a replay holding only this game, without keyframes
+     * or an index.
+     *
+     * @return the replay, from offset 0 to its limit
+     * @throws IllegalArgumentException if the archive is malformed
+     */
+    public ByteBuffer toReplay() {
+        try {
+            return encode();
+        } catch (final BufferOverflowException | BufferUnderflowException e) {
+            throw new IllegalArgumentException("Inputs do not match their count", e);
+        }
+    }
+
+    /**
+     * Encodes the game as a replay.
+     *
+     * @return the replay, from offset 0 to its limit
+     */
+    private ByteBuffer encode() {
+        final ByteBuffer codes = myCodes.duplicate();
+        final ByteBuffer deltas = myDeltas.duplicate();
+        final ByteBuffer args = myArgs.duplicate();
+        final ByteBuffer result = ByteBuffer.allocate(
+                        (myInputCount + 2) * ReplayFormat.MAX_ENTRY_SIZE + args.remaining());
+        result.putInt(ReplayFormat.MAGIC);
+        result.put(ReplayFormat.VERSION);
+        result.putLong(mySeed);
+        for (final int value : myHeader) {
+            ReplayFormat.putVarLong(result, value);
+        }
+        long tick = 0;
+        while (codes.hasRemaining()) {
+            final long run = ReplayFormat.getVarLong(codes);
+            final int code = (int) (run & ReplayFormat.CODE_MASK);
+            action(code);
+            for (long i = run >>> ReplayFormat.CODE_BITS; i >= 0; i--) {
+                final long delta = ReplayFormat.getVarLong(deltas);
+                tick += delta;
+                ReplayFormat.putVarLong(result, delta << ReplayFormat.CODE_BITS | code);
+                if (code == ReplayFormat.GRAVITY) {
+                    ReplayFormat.putVarLong(result, ReplayFormat.getVarLong(args));
+                    ReplayFormat.putVarLong(result, ReplayFormat.getVarLong(args));
+                }
+            }
+        }
+        if (tick > myTicks) {
+            throw new IllegalArgumentException("Inputs after the last tick");
+        }
+        ReplayFormat.putVarLong(result, myTicks - tick << ReplayFormat.CODE_BITS
+                                        | ReplayFormat.CONTROL);
+        if (myFinished) {
+            result.put(ReplayFormat.FINISHED);
+            ReplayFormat.putVarLong(result, myPieces);
+            ReplayFormat.putVarLong(result, myLines);
+            ReplayFormat.putVarLong(result, myScore);
+            result.putLong(myChecksum);
+        } else {
+            result.put(ReplayFormat.ABANDONED);
+        }
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Returns the action of an input code read from the archive.
+     *
+     * @param theCode the code
+     * @return the action
+     * @throws IllegalArgumentException if the code is not an input
+     */
+    private static BoardAction action(final int theCode) {
+        if (theCode == ReplayFormat.CONTROL) {
+            throw new IllegalArgumentException("Bad input code: " + theCode);
+        }
+        return ReplayFormat.actionOf(theCode);
+    }
+}
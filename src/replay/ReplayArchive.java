@@ -0,0 +1,380 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A replay archive written by ReplayArchiveWriter, read through a memory
+ * map of each chunk. Only the directory of the chunks is read when the
+ * archive is opened; a chunk is mapped and its games are read when a
+ * stream reaches it, and the pieces and inputs of a game are decoded only
+ * when they are asked for.
+ *
+ * <p>An archive is untrusted input: anything that does not follow the
+ * layout described by ReplayArchiveWriter is reported as an
+ * IllegalArgumentException.</p>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class ReplayArchive implements Closeable {
+
+    /** The number of values of a game in the GAMES column. */
+    private static final int GAME_VALUES = 10;
+
+    /** The file read from. */
+    private final FileChannel myChannel;
+
+    /** The offset of each chunk. */
+    private final long[] myChunkOffsets;
+
+    /** The length of each chunk. */
+    private final long[] myChunkLengths;
+
+    /** The number of games before each chunk, and of all games at the end. */
+    private final long[] myFirstGames;
+
+    /**
+     * Opens an archive and reads its directory.
+     *
+     * @param theFile the archive
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a replay archive
+     */
+    public ReplayArchive(final Path theFile) throws IOException {
+        myChannel = FileChannel.open(theFile, StandardOpenOption.READ);
+        boolean opened = false;
+        try {
+            final ByteBuffer directory = readDirectory();
+            final int chunks = (int) getValue(directory, Integer.MAX_VALUE);
+            myChunkOffsets = new long[chunks];
+            myChunkLengths = new long[chunks];
+            myFirstGames = new long[chunks + 1];
+            final long end = myChannel.size() - ReplayFormat.TRAILER_SIZE;
+            for (int i = 0; i < chunks; i++) {
+                myChunkOffsets[i] = getValue(directory, end);
+                myChunkLengths[i] = getValue(directory, Integer.MAX_VALUE);
+                if (myChunkLengths[i] > end - myChunkOffsets[i]) {
+                    throw new IllegalArgumentException("Chunk out of the archive");
+                }
+                myFirstGames[i + 1] = myFirstGames[i]
+                                      + getValue(directory, ReplayArchiveWriter.GAMES_PER_CHUNK);
+            }
+            opened = true;
+        } catch (final BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated archive directory", e);
+        } finally {
+            if (!opened) {
+                myChannel.close();
+            }
+        }
+    }
+
+    /**
+     * @return the number of games in the archive
+     */
+    public long getGameCount() {
+        return myFirstGames[myFirstGames.length - 1];
+    }
+
+    /**
+     * @return the number of chunks in the archive
+     */
+    public int getChunkCount() {
+        return myChunkOffsets.length;
+    }
+
+    /**
+     * Returns a parallel stream of the games of the archive, in the order
+     * they were added. The stream splits at chunk boundaries, so every chunk
+     * is mapped and read by one thread. It must not be used after the
+     * archive is closed.
+     *
+     * @return the games
+     * @throws UncheckedIOException if a chunk cannot be mapped
+     * @throws IllegalArgumentException if a chunk is malformed
+     */
+    public Stream<ArchivedGame> games() {
+        return StreamSupport.stream(new ChunkSpliterator(0, myChunkOffsets.length), true);
+    }
+
+    /**
+     * Closes the file. Games already read stay readable.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        myChannel.close();
+    }
+
+    /**
+     * Reads the trailer and the directory of the chunks it locates.
+     *
+     * @return the directory, from the number of chunks to the trailer
+     * @throws IOException if the file cannot be read
+     */
+    private ByteBuffer readDirectory() throws IOException {
+        final long size = myChannel.size();
+        final int header = Integer.BYTES + 1;
+        if (size < header + ReplayFormat.TRAILER_SIZE) {
+            throw new IllegalArgumentException("Not a replay archive");
+        }
+        final ByteBuffer start = read(0, header);
+        final ByteBuffer trailer = read(size - ReplayFormat.TRAILER_SIZE,
+                                        ReplayFormat.TRAILER_SIZE);
+        if (start.getInt() != ReplayFormat.MAGIC
+            || trailer.getInt(Long.BYTES) != ReplayFormat.ARCHIVE_MAGIC) {
+            throw new IllegalArgumentException("Not a replay archive");
+        }
+        final int version = start.get();
+        if (version != ReplayFormat.ARCHIVE_VERSION) {
+            throw new IllegalArgumentException("Unknown archive version " + version);
+        }
+        final long offset = trailer.getLong(0);
+        final long end = size - ReplayFormat.TRAILER_SIZE;
+        if (offset < header || offset > end || end - offset > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad archive directory offset " + offset);
+        }
+        return read(offset, (int) (end - offset));
+    }
+
+    /**
+     * Reads bytes of the file.
+     *
+     * @param theOffset the offset of the first byte
+     * @param theLength the number of bytes
+     * @return the bytes, from offset 0 to their limit
+     * @throws IOException if the file cannot be read
+     */
+    private ByteBuffer read(final long theOffset, final int theLength) throws IOException {
+        final ByteBuffer result = ByteBuffer.allocate(theLength);
+        while (result.hasRemaining()) {
+            if (myChannel.read(result, theOffset + result.position()) < 0) {
+                throw new IllegalArgumentException("Truncated archive");
+            }
+        }
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Maps a chunk and reads its games.
+     *
+     * @param theChunk the chunk
+     * @return the games of the chunk
+     */
+    private ArchivedGame[] readChunk(final int theChunk) {
+        final ByteBuffer chunk;
+        try {
+            chunk = myChannel.map(FileChannel.MapMode.READ_ONLY, myChunkOffsets[theChunk],
+                                  myChunkLengths[theChunk]);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            return readGames(chunk, (int) (myFirstGames[theChunk + 1]
+                                           - myFirstGames[theChunk]));
+        } catch (final BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated chunk " + theChunk, e);
+        }
+    }
+
+    /**
+     * Reads the games of a chunk.
+     *
+     * @param theChunk the chunk, from its header to its limit
+     * @param theGames the number of games of the chunk in the directory
+     * @return the games
+     */
+    private static ArchivedGame[] readGames(final ByteBuffer theChunk, final int theGames) {
+        if (getValue(theChunk, theGames) != theGames) {
+            throw new IllegalArgumentException("Chunk does not match the directory");
+        }
+        final ByteBuffer[] columns = new ByteBuffer[ReplayArchiveWriter.COLUMNS];
+        final int[] lengths = new int[columns.length];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = (int) getValue(theChunk, Integer.MAX_VALUE);
+        }
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = slice(theChunk, lengths[i]);
+        }
+        final ByteBuffer rows = columns[ReplayArchiveWriter.GAMES];
+        final int[] header = new int[ReplayFormat.GAME_HEADER_VARINTS];
+        final long[] values = new long[GAME_VALUES];
+        final ArchivedGame[] result = new ArchivedGame[theGames];
+        for (int game = 0; game < theGames; game++) {
+            final int[] gameHeader = new int[header.length];
+            for (int i = 0; i < header.length; i++) {
+                header[i] += (int) ReplayFormat.getZigZag(rows);
+                gameHeader[i] = header[i];
+            }
+            if (header[0] < 0 || header[0] > ReplayFormat.MAX_SIZE
+                || header[1] < 0 || header[1] > ReplayFormat.MAX_SIZE
+                || header[2] < 0 || header[3] < 0) {
+                throw new IllegalArgumentException("Bad board in game " + game);
+            }
+            for (int i = 0; i < values.length; i++) {
+                values[i] = ReplayFormat.getVarLong(rows);
+            }
+            final long kind = values[0];
+            if (kind != ReplayFormat.FINISHED && kind != ReplayFormat.ABANDONED
+                || values[1] > Integer.MAX_VALUE || values[2] > Integer.MAX_VALUE
+                || values[5] > Integer.MAX_VALUE || values[6] > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Bad totals in game " + game);
+            }
+            final int pieces = (int) values[6];
+            final ByteBuffer[] gameColumns = {
+                slice(columns[ReplayArchiveWriter.PIECES], (pieces + 1) / 2),
+                slice(columns[ReplayArchiveWriter.CODES], checkLength(values[7])),
+                slice(columns[ReplayArchiveWriter.DELTAS], checkLength(values[8])),
+                slice(columns[ReplayArchiveWriter.ARGS], checkLength(values[9])),
+            };
+            result[game] = new ArchivedGame(columns[ReplayArchiveWriter.SEEDS].getLong(),
+                                            gameHeader, kind == ReplayFormat.FINISHED,
+                                            new long[] {values[1], values[2], values[3],
+                                                        values[4]},
+                                            columns[ReplayArchiveWriter.CHECKSUMS].getLong(),
+                                            (int) values[5], pieces, gameColumns);
+        }
+        return result;
+    }
+
+    /**
+     * Checks a length read from the archive.
+     *
+     * @param theLength the length
+     * @return the length as an int
+     */
+    private static int checkLength(final long theLength) {
+        if (theLength < 0 || theLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad length " + theLength);
+        }
+        return (int) theLength;
+    }
+
+    /**
+     * Cuts the next bytes off a buffer.
+     *
+     * @param theBuffer the buffer; its position is moved past the bytes
+     * @param theLength the number of bytes
+     * @return the bytes, from offset 0 to their limit
+     * @throws BufferUnderflowException if the buffer is too short
+     */
+    private static ByteBuffer slice(final ByteBuffer theBuffer, final int theLength) {
+        if (theLength > theBuffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final ByteBuffer result = theBuffer.slice();
+        result.limit(theLength);
+        theBuffer.position(theBuffer.position() + theLength);
+        return result;
+    }
+
+    /**
+     * Reads a varint that must not be larger than a value.
+     *
+     * @param theBuffer the buffer to read from
+     * @param theMax the largest value allowed
+     * @return the value
+     */
+    private static long getValue(final ByteBuffer theBuffer, final long theMax) {
+        final long result = ReplayFormat.getVarLong(theBuffer);
+        if (result < 0 || result > theMax) {
+            throw new IllegalArgumentException("Value out of range: " + result);
+        }
+        return result;
+    }
+
+    /**
+     * Splits the games of a range of chunks at chunk boundaries.
+     */
+    private final class ChunkSpliterator implements Spliterator<ArchivedGame> {
+
+        /** The characteristics of every spliterator of the games. */
+        private static final int CHARACTERISTICS =
+                        ORDERED | NONNULL | IMMUTABLE | SIZED | SUBSIZED;
+
+        /** The chunk read next. */
+        private int myChunk;
+
+        /** The chunk after the last one of the range. */
+        private final int myEnd;
+
+        /** The games of the chunk being read, null between chunks. */
+        private ArchivedGame[] myGames;
+
+        /** The next game of the chunk being read. */
+        private int myNext;
+
+        /**
+         * Creates a spliterator of a range of chunks.
+         *
+         * @param theStart the first chunk
+         * @param theEnd the chunk after the last one
+         */
+        ChunkSpliterator(final int theStart, final int theEnd) {
+            myChunk = theStart;
+            myEnd = theEnd;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super ArchivedGame> theAction) {
+            while (myGames == null || myNext == myGames.length) {
+                if (myChunk == myEnd) {
+                    return false;
+                }
+                myGames = readChunk(myChunk);
+                myChunk++;
+                myNext = 0;
+            }
+            theAction.accept(myGames[myNext]);
+            myNext++;
+            return true;
+        }
+
+        @Override
+        public Spliterator<ArchivedGame> trySplit() {
+            ChunkSpliterator result = null;
+            if (myEnd - myChunk >= 2) {
+                final int middle = (myChunk + myEnd) >>> 1;
+                result = new ChunkSpliterator(myChunk, middle);
+                if (myGames != null) {
+                    result.myGames = myGames;
+                    result.myNext = myNext;
+                    myGames = null;
+                }
+                myChunk = middle;
+            }
+            return result;
+        }
+
+        @Override
+        public long estimateSize() {
+            long result = myFirstGames[myEnd] - myFirstGames[myChunk];
+            if (myGames != null) {
+                result += myGames.length - myNext;
+            }
+            return result;
+        }
+
+        @Override
+        public int characteristics() {
+            return CHARACTERISTICS;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import model.PieceGenerator;
+
+/**
+ * Packs the games of many replays into a replay archive, read by
+ * ReplayArchive. Every game is played back while it is added, and only
+ * games that play back consistently are kept, so the archive holds the
+ * played totals and the pieces each game was dealt.
+ *
+ * <p>The games are stored in chunks of up to GAMES_PER_CHUNK games. Within
+ * a chunk every kind of value is stored in its own column, so that a
+ * reader only decodes the columns it needs:</p>
+ * <ul>
+ * <li>GAMES: a row of varints per game: the width, the height and the
+ * gravity as zigzag deltas from the previous game, the kind of its end
+ * (ReplayFormat.FINISHED or ABANDONED), the pieces placed, lines cleared,
+ * score and ticks, the number of inputs and of pieces dealt, and the
+ * lengths of the game in the CODES, DELTAS and ARGS columns;</li>
+ * <li>SEEDS and CHECKSUMS: 8 bytes per game;</li>
+ * <li>PIECES: the type of every piece dealt, two to a byte, low half
+ * first, each game starting on a byte;</li>
+ * <li>CODES: the input codes run-length encoded, a varint holding the run
+ * length minus one shifted left by ReplayFormat.CODE_BITS and the code;</li>
+ * <li>DELTAS: the ticks before every input as varints;</li>
+ * <li>ARGS: the rows and ticks of every GRAVITY input as varints.</li>
+ * </ul>
+ * <p>A chunk starts with the number of its games and the lengths of its
+ * columns as varints. The file starts with ReplayFormat.MAGIC and
+ * ARCHIVE_VERSION and ends with a directory of the chunks: their number
+ * and the offset, length and number of games of each as varints, then the
+ * offset of the directory as 8 bytes and ReplayFormat.ARCHIVE_MAGIC.</p>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class ReplayArchiveWriter implements Closeable {
+
+    /** The largest number of games in a chunk. */
+    public static final int GAMES_PER_CHUNK = 4096;
+
+    /** The columns of a chunk, in the order they are written. */
+    static final int GAMES = 0;
+
+    /** The column of the seeds. */
+    static final int SEEDS = 1;
+
+    /** The column of the checksums. */
+    static final int CHECKSUMS = 2;
+
+    /** The column of the piece types. */
+    static final int PIECES = 3;
+
+    /** The column of the input codes. */
+    static final int CODES = 4;
+
+    /** The column of the ticks before the inputs. */
+    static final int DELTAS = 5;
+
+    /** The column of the arguments of GRAVITY inputs. */
+    static final int ARGS = 6;
+
+    /** The number of columns. */
+    static final int COLUMNS = 7;
+
+    /** The number of bits of a piece type in the PIECES column. */
+    static final int PIECE_BITS = 4;
+
+    /** The initial capacity of a column. */
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    /** The largest number of bytes of a varint. */
+    private static final int MAX_VARLONG_SIZE = 10;
+
+    /** The largest size of a row of the GAMES column. */
+    private static final int MAX_ROW_SIZE = 14 * MAX_VARLONG_SIZE;
+
+    /** The file written to. */
+    private final FileChannel myChannel;
+
+    /** Creates the piece generator of every replay added. */
+    private final Supplier<PieceGenerator> myGenerators;
+
+    /** Replays the games again to read the pieces they were dealt. */
+    private final PieceGenerator myDealer;
+
+    /** The columns of the chunk being built. */
+    private final ByteBuffer[] myColumns;
+
+    /** The directory of the chunks written: offset, length and games of each. */
+    private ByteBuffer myDirectory;
+
+    /** The number of chunks written. */
+    private int myChunkCount;
+
+    /** The number of games in the chunk being built. */
+    private int myGameCount;
+
+    /** The previous game of the chunk: width, height, gravity rows and ticks. */
+    private final long[] myPrevious;
+
+    /** The offset of the next byte written to the file. */
+    private long myOffset;
+
+    /**
+     * Creates an archive writer. The file is created, or emptied if it exists.
+     *
+     * @param theFile the archive to write
+     * @param theGenerators creates the piece generator the recorded games
+     *        were played with
+     * @throws IOException if the file cannot be opened
+     */
+    public ReplayArchiveWriter(final Path theFile, final Supplier<PieceGenerator> theGenerators)
+                    throws IOException {
+        myChannel = FileChannel.open(theFile, StandardOpenOption.CREATE,
+                                     StandardOpenOption.WRITE,
+                                     StandardOpenOption.TRUNCATE_EXISTING);
+        myGenerators = theGenerators;
+        myDealer = theGenerators.get();
+        myColumns = new ByteBuffer[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++) {
+            myColumns[i] = ByteBuffer.allocate(INITIAL_CAPACITY);
+        }
+        myDirectory = ByteBuffer.allocate(INITIAL_CAPACITY);
+        myPrevious = new long[ReplayFormat.GAME_HEADER_VARINTS];
+        final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + 1);
+        header.putInt(ReplayFormat.MAGIC);
+        header.put(ReplayFormat.ARCHIVE_VERSION);
+        header.flip();
+        write(header);
+    }
+
+    /**
+     * Adds the games of a replay. Games that do not play back to their
+     * recorded totals are left out.
+     *
+     * @param theReplay the replay, from offset 0 to its limit; not changed
+     * @return the number of games added
+     * @throws IllegalArgumentException if the replay is malformed
+     * @throws IOException if a chunk cannot be written
+     */
+    public int add(final ByteBuffer theReplay) throws IOException {
+        final ByteBuffer replay = theReplay.duplicate();
+        final ReplayPlayer player = new ReplayPlayer(theReplay.duplicate(), myGenerators.get());
+        final int version;
+        try {
+            replay.getInt();
+            version = replay.get();
+        } catch (final BufferUnderflowException e) {
+            throw new IllegalArgumentException("Not a replay", e);
+        }
+        int result = 0;
+        while (player.hasNextGame()) {
+            final ReplayResult game = player.playNextGame();
+            if (!game.isFinished() || game.isValid()) {
+                try {
+                    addGame(replay, version, game);
+                } catch (final BufferUnderflowException e) {
+                    throw new IllegalArgumentException("Truncated replay", e);
+                }
+                result++;
+            } else {
+                ReplayIndex.skipRecords(skipHeader(replay), version, null);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the chunk being built, the directory and the trailer, and
+     * closes the file.
+     *
+     * @throws IOException if the file cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writeChunk();
+            final long directory = myOffset;
+            final ByteBuffer trailer = ByteBuffer.allocate(
+                            MAX_VARLONG_SIZE + myDirectory.position()
+                            + ReplayFormat.TRAILER_SIZE);
+            ReplayFormat.putVarLong(trailer, myChunkCount);
+            myDirectory.flip();
+            trailer.put(myDirectory);
+            trailer.putLong(directory);
+            trailer.putInt(ReplayFormat.ARCHIVE_MAGIC);
+            trailer.flip();
+            write(trailer);
+        } finally {
+            myChannel.close();
+        }
+    }
+
+    /**
+     * Skips the header of a game.
+     *
+     * @param theReplay the replay, positioned at the game
+     * @return the replay, positioned at the first record
+     */
+    private static ByteBuffer skipHeader(final ByteBuffer theReplay) {
+        theReplay.getLong();
+        for (int i = 0; i < ReplayFormat.GAME_HEADER_VARINTS; i++) {
+            ReplayFormat.getVarLong(theReplay);
+        }
+        return theReplay;
+    }
+
+    /**
+     * Adds a game to the chunk being built, writing the chunk first if it is full.
+     *
+     * @param theReplay the replay, positioned at the game; moved after it
+     * @param theVersion the version of the replay's layout
+     * @param theGame the result of playing the game back
+     * @throws IOException if a chunk cannot be written
+     */
+    private void addGame(final ByteBuffer theReplay, final int theVersion,
+                         final ReplayResult theGame) throws IOException {
+        if (myGameCount == GAMES_PER_CHUNK) {
+            writeChunk();
+        }
+        final long seed = theReplay.getLong();
+        final long[] header = new long[ReplayFormat.GAME_HEADER_VARINTS];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = ReplayFormat.getVarLong(theReplay);
+        }
+
+        final int codesStart = myColumns[CODES].position();
+        final int deltasStart = myColumns[DELTAS].position();
+        final int argsStart = myColumns[ARGS].position();
+        int inputs = 0;
+        long delta = 0;
+        int runCode = -1;
+        int runLength = 0;
+        boolean ended = false;
+        while (!ended) {
+            final long record = ReplayFormat.getVarLong(theReplay);
+            final int code = (int) (record & ReplayFormat.CODE_MASK);
+            delta += record >>> ReplayFormat.CODE_BITS;
+            if (code == ReplayFormat.CONTROL) {
+                final byte kind = theReplay.get();
+                if (kind == ReplayFormat.KEYFRAME) {
+                    ReplayFormat.skipKeyframe(theReplay);
+                } else {
+                    ReplayFormat.skipEnd(theReplay, kind, theVersion);
+                    ended = true;
+                }
+            } else {
+                if (code == runCode) {
+                    runLength++;
+                } else {
+                    putRun(runCode, runLength);
+                    runCode = code;
+                    runLength = 1;
+                }
+                ReplayFormat.putVarLong(column(DELTAS, ReplayFormat.MAX_ENTRY_SIZE), delta);
+                delta = 0;
+                if (code == ReplayFormat.GRAVITY) {
+                    final ByteBuffer args = column(ARGS, ReplayFormat.MAX_ENTRY_SIZE);
+                    ReplayFormat.putVarLong(args, ReplayFormat.getVarLong(theReplay));
+                    ReplayFormat.putVarLong(args, ReplayFormat.getVarLong(theReplay));
+                }
+                inputs++;
+            }
+        }
+        putRun(runCode, runLength);
+
+        final int dealt = theGame.getPiecesDrawn();
+        final ByteBuffer pieces = column(PIECES, (dealt + 1) / 2);
+        myDealer.reset(seed);
+        for (int i = 0; i < dealt; i += 2) {
+            int pair = myDealer.next().ordinal();
+            if (i + 1 < dealt) {
+                pair |= myDealer.next().ordinal() << PIECE_BITS;
+            }
+            pieces.put((byte) pair);
+        }
+
+        final ByteBuffer row = column(GAMES, MAX_ROW_SIZE);
+        for (int i = 0; i < header.length; i++) {
+            ReplayFormat.putZigZag(row, header[i] - myPrevious[i]);
+            myPrevious[i] = header[i];
+        }
+        ReplayFormat.putVarLong(row, theGame.isFinished() ? ReplayFormat.FINISHED
+                                                         : ReplayFormat.ABANDONED);
+        ReplayFormat.putVarLong(row, theGame.getPiecesPlaced());
+        ReplayFormat.putVarLong(row, theGame.getLinesCleared());
+        ReplayFormat.putVarLong(row, theGame.getScore());
+        ReplayFormat.putVarLong(row, theGame.getTicks());
+        ReplayFormat.putVarLong(row, inputs);
+        ReplayFormat.putVarLong(row, dealt);
+        ReplayFormat.putVarLong(row, myColumns[CODES].position() - codesStart);
+        ReplayFormat.putVarLong(row, myColumns[DELTAS].position() - deltasStart);
+        ReplayFormat.putVarLong(row, myColumns[ARGS].position() - argsStart);
+        column(SEEDS, Long.BYTES).putLong(seed);
+        column(CHECKSUMS, Long.BYTES).putLong(theGame.getChecksum());
+        myGameCount++;
+    }
+
+    /**
+     * Adds a run of equal input codes to the CODES column.
+     *
+     * @param theCode the code, or -1 for no run
+     * @param theLength the number of inputs in the run
+     */
+    private void putRun(final int theCode, final int theLength) {
+        if (theCode >= 0) {
+            ReplayFormat.putVarLong(column(CODES, ReplayFormat.MAX_ENTRY_SIZE),
+                                    (long) (theLength - 1) << ReplayFormat.CODE_BITS | theCode);
+        }
+    }
+
+    /**
+     * Returns a column of the chunk being built with room for more bytes.
+     *
+     * @param theColumn the column
+     * @param theBytes the number of bytes needed
+     * @return the column
+     */
+    private ByteBuffer column(final int theColumn, final int theBytes) {
+        final ByteBuffer result = ensureRemaining(myColumns[theColumn], theBytes);
+        myColumns[theColumn] = result;
+        return result;
+    }
+
+    /**
+     * Returns a buffer with room for more bytes: the buffer itself, or a
+     * larger copy of it.
+     *
+     * @param theBuffer the buffer, holding bytes up to its position
+     * @param theBytes the number of bytes needed
+     * @return the buffer or its copy
+     */
+    private static ByteBuffer ensureRemaining(final ByteBuffer theBuffer, final int theBytes) {
+        ByteBuffer result = theBuffer;
+        if (result.remaining() < theBytes) {
+            result = ByteBuffer.allocate(Math.max(theBuffer.capacity() * 2,
+                                                  theBuffer.position() + theBytes));
+            theBuffer.flip();
+            result.put(theBuffer);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the chunk being built, if it holds any games, and starts a new one.
+     *
+     * @throws IOException if the chunk cannot be written
+     */
+    private void writeChunk() throws IOException {
+        if (myGameCount > 0) {
+            final long start = myOffset;
+            final ByteBuffer header = ByteBuffer.allocate(
+                            (COLUMNS + 1) * MAX_VARLONG_SIZE);
+            ReplayFormat.putVarLong(header, myGameCount);
+            for (final ByteBuffer column : myColumns) {
+                ReplayFormat.putVarLong(header, column.position());
+            }
+            header.flip();
+            write(header);
+            for (final ByteBuffer column : myColumns) {
+                column.flip();
+                write(column);
+                column.clear();
+            }
+            final ByteBuffer entry = ByteBuffer.allocate(3 * MAX_VARLONG_SIZE);
+            ReplayFormat.putVarLong(entry, start);
+            ReplayFormat.putVarLong(entry, myOffset - start);
+            ReplayFormat.putVarLong(entry, myGameCount);
+            entry.flip();
+            myDirectory = ensureRemaining(myDirectory, entry.remaining());
+            myDirectory.put(entry);
+            myChunkCount++;
+            myGameCount = 0;
+            Arrays.fill(myPrevious, 0);
+        }
+    }
+
+    /**
+     * Writes bytes to the file.
+     *
+     * @param theBytes the bytes, from their position to their limit
+     * @throws IOException if the bytes cannot be written
+     */
+    private void write(final ByteBuffer theBytes) throws IOException {
+        myOffset += theBytes.remaining();
+        while (theBytes.hasRemaining()) {
+            myChannel.write(theBytes);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package replay;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import model.BoardAction;
+
+/**
+ * The binary layout of a replay file, shared by the classes that write and
+ * read it.
+ *
+ * <p>A file starts with MAGIC and VERSION and holds any number of games.
+ * A game starts with its seed as 8 bytes followed by the width, the height
+ * and the gravity rows and ticks of the board as varints. Then come its
+ * records, each a varint holding the ticks since the previous record,
+ * shifted left by CODE_BITS, and the code of the record in the low bits.
+ * GRAVITY is followed by the new gravity rows and ticks as varints.
+ * CONTROL is followed by a byte telling its kind. FINISHED ends a game that
+ * ended and is followed by the pieces placed, lines cleared and score as
+ * varints and the checksum of the board as 8 bytes. ABANDONED ends a game
+ * that was left when a new game was started or the recording was closed.
+ * KEYFRAME is followed by the length of a board state as a varint and the
+ * state written by Board.saveState at that point of the game, from which
+ * the rest of the game can be played back without playing what came
+ * before. Version 1 did not record the score; version 2 had no keyframes.</p>
+ *
+ * <p>A complete file ends with an index of its games and keyframes, written
+ * when the recording is closed: INDEX_MAGIC, the number of games, and for
+ * every game the offset of its first byte in the file and the number of
+ * its keyframes followed by the tick and the offset of the state of each,
+ * all as varints. The last TRAILER_SIZE bytes of the file are the offset
+ * of the index as 8 bytes and INDEX_MAGIC again. A file without the
+ * trailer, such as one whose recording was cut short, can still be read
+ * from the start.</p>
+ *
+ * <p>Varints are unsigned LEB128: 7 bits per byte, low bits first, with the
+ * high bit set on every byte but the last. Fixed size values are big
+ * endian.</p>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+final class ReplayFormat {
+
+    /** The first 4 bytes of a replay file: "TRPL". */
+    static final int MAGIC = 0x5452504C;
+
+    /** The version of the layout. */
+    static final byte VERSION = 3;
+
+    /** The first version that records the score of a finished game. */
+    static final byte SCORE_VERSION = 2;
+
+    /** The first and last 4 bytes of the index: "TIDX". */
+    static final int INDEX_MAGIC = 0x54494458;
+
+    /** The size of the trailer locating the index. */
+    static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    /** The last 4 bytes of a replay archive: "TARC". */
+    static final int ARCHIVE_MAGIC = 0x54415243;
+
+    /** The version of the layout of replay archives. */
+    static final byte ARCHIVE_VERSION = 1;
+
+    /** The largest width or height of a board in a replay. */
+    static final int MAX_SIZE = 1 << 10;
+
+    /** The number of varints after the seed in the header of a game. */
+    static final int GAME_HEADER_VARINTS = 4;
+
+    /** The number of low bits of a record holding its code. */
+    static final int CODE_BITS = 3;
+
+    /** The mask of the code in a record. */
+    static final int CODE_MASK = (1 << CODE_BITS) - 1;
+
+    /** The code of BoardAction.MOVE_LEFT. */
+    static final int MOVE_LEFT = 0;
+
+    /** The code of BoardAction.MOVE_RIGHT. */
+    static final int MOVE_RIGHT = 1;
+
+    /** The code of BoardAction.MOVE_DOWN. */
+    static final int MOVE_DOWN = 2;
+
+    /** The code of BoardAction.ROTATE. */
+    static final int ROTATE = 3;
+
+    /** The code of BoardAction.DROP. */
+    static final int DROP = 4;
+
+    /** The code of BoardAction.STEP. */
+    static final int STEP = 5;
+
+    /** The code of BoardAction.GRAVITY, followed by the rows and ticks. */
+    static final int GRAVITY = 6;
+
+    /** The code of a control record, followed by its kind. */
+    static final int CONTROL = 7;
+
+    /** The kind of control record ending a game that was left before it ended. */
+    static final byte ABANDONED = 0;
+
+    /** The kind of control record ending a game that ended, followed by its totals. */
+    static final byte FINISHED = 1;
+
+    /** The kind of control record holding a board state. */
+    static final byte KEYFRAME = 2;
+
+    /** The largest number of bytes of a game header or record. */
+    static final int MAX_ENTRY_SIZE = 64;
+
+    /** The board actions of the input codes, in the order of the codes. */
+    private static final BoardAction[] ACTIONS = {
+        BoardAction.MOVE_LEFT, BoardAction.MOVE_RIGHT, BoardAction.MOVE_DOWN,
+        BoardAction.ROTATE, BoardAction.DROP, BoardAction.STEP, BoardAction.GRAVITY,
+    };
+
+    /** The number of payload bits in a varint byte. */
+    private static final int VARINT_BITS = 7;
+
+    /** The payload of a varint byte. */
+    private static final int VARINT_PAYLOAD = 0x7F;
+
+    /** The bit marking a varint byte that is followed by another. */
+    private static final int VARINT_MORE = 0x80;
+
+    /**
+     * Not instantiable.
+     */
+    private ReplayFormat() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Returns the record code of a board action.
+     *
+     * @param theAction the action
+     * @return the code, or -1 if the action is not recorded
+     */
+    static int codeOf(final BoardAction theAction) {
+        switch (theAction) {
+            case MOVE_LEFT:
+                return MOVE_LEFT;
+            case MOVE_RIGHT:
+                return MOVE_RIGHT;
+            case MOVE_DOWN:
+                return MOVE_DOWN;
+            case ROTATE:
+                return ROTATE;
+            case DROP:
+                return DROP;
+            case STEP:
+                return STEP;
+            case GRAVITY:
+                return GRAVITY;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the board action of a record code.
+     *
+     * @param theCode the code of an input, MOVE_LEFT to GRAVITY
+     * @return the action
+     */
+    static BoardAction actionOf(final int theCode) {
+        return ACTIONS[theCode];
+    }
+
+    /**
+     * Skips the board state of a keyframe.
+     *
+     * @param theBuffer the buffer, positioned after the kind of the record
+     * @return the offset of the board state
+     * @throws BufferUnderflowException if the state is cut short
+     */
+    static int skipKeyframe(final ByteBuffer theBuffer) {
+        final long length = getVarLong(theBuffer);
+        if (length < 0 || length > theBuffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final int result = theBuffer.position();
+        theBuffer.position(result + (int) length);
+        return result;
+    }
+
+    /**
+     * Skips what follows a control record ending a game.
+     *
+     * @param theBuffer the buffer, positioned after the kind of the record
+     * @param theKind the kind of the record
+     * @param theVersion the version of the replay's layout
+     * @throws IllegalArgumentException if the kind does not end a game
+     */
+    static void skipEnd(final ByteBuffer theBuffer, final byte theKind, final int theVersion) {
+        if (theKind == FINISHED) {
+            getVarLong(theBuffer);
+            getVarLong(theBuffer);
+            if (theVersion >= SCORE_VERSION) {
+                getVarLong(theBuffer);
+            }
+            theBuffer.getLong();
+        } else if (theKind != ABANDONED) {
+            throw new IllegalArgumentException("Bad control record: " + theKind);
+        }
+    }
+
+    /**
+     * Writes an unsigned varint.
+     *
+     * @param theBuffer the buffer to write to
+     * @param theValue the value, read as unsigned
+     */
+    static void putVarLong(final ByteBuffer theBuffer, final long theValue) {
+        long value = theValue;
+        while ((value & ~VARINT_PAYLOAD) != 0) {
+            theBuffer.put((byte) (value & VARINT_PAYLOAD | VARINT_MORE));
+            value >>>= VARINT_BITS;
+        }
+        theBuffer.put((byte) value);
+    }
+
+    /**
+     * Writes a signed value as a zigzag varint, so that values near zero
+     * of either sign take one byte.
+     *
+     * @param theBuffer the buffer to write to
+     * @param theValue the value
+     */
+    static void putZigZag(final ByteBuffer theBuffer, final long theValue) {
+        putVarLong(theBuffer, theValue << 1 ^ theValue >> (Long.SIZE - 1));
+    }
+
+    /**
+     * Reads a signed value written by putZigZag.
+     *
+     * @param theBuffer the buffer to read from
+     * @return the value
+     */
+    static long getZigZag(final ByteBuffer theBuffer) {
+        final long value = getVarLong(theBuffer);
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    /**
+     * Reads an unsigned varint.
+     *
+     * @param theBuffer the buffer to read from
+     * @return the value
+     * @throws IllegalArgumentException if the varint is longer than 64 bits
+     */
+    static long getVarLong(final ByteBuffer theBuffer) {
+        long result = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += VARINT_BITS) {
+            final int b = theBuffer.get();
+            result |= (long) (b & VARINT_PAYLOAD) << shift;
+            if ((b & VARINT_MORE) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package replay;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The index of the games and keyframes of a replay file: where each game
+ * starts and, for each keyframe, its tick and where its board state
+ * starts. The keyframes of a game are kept in tick order, so the keyframe
+ * to start a playback from is found by a binary search.
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+final class ReplayIndex {
+
+    /** The initial capacity of the arrays. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The largest number of bytes of the encoding of a game or keyframe. */
+    private static final int MAX_ENTRY_SIZE = 2 * Long.BYTES + 4;
+
+    /** The offset of the first byte of each game. */
+    private long[] myGameOffsets;
+
+    /** The index of the first keyframe of each game. */
+    private int[] myFirstKeyframes;
+
+    /** The number of games. */
+    private int myGameCount;
+
+    /** The tick of each keyframe. */
+    private long[] myKeyframeTicks;
+
+    /** The offset of the board state of each keyframe. */
+    private long[] myKeyframeOffsets;
+
+    /** The number of keyframes of all games. */
+    private int myKeyframeCount;
+
+    /**
+     * Creates an empty index.
+     */
+    ReplayIndex() {
+        myGameOffsets = new long[INITIAL_CAPACITY];
+        myFirstKeyframes = new int[INITIAL_CAPACITY];
+        myKeyframeTicks = new long[INITIAL_CAPACITY];
+        myKeyframeOffsets = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds a game after the last one.
+     *
+     * @param theOffset the offset of the first byte of the game
+     */
+    void addGame(final long theOffset) {
+        if (myGameCount == myGameOffsets.length) {
+            myGameOffsets = Arrays.copyOf(myGameOffsets, myGameCount * 2);
+            myFirstKeyframes = Arrays.copyOf(myFirstKeyframes, myGameCount * 2);
+        }
+        myGameOffsets[myGameCount] = theOffset;
+        myFirstKeyframes[myGameCount] = myKeyframeCount;
+        myGameCount++;
+    }
+
+    /**
+     * Adds a keyframe after the last one of the last game.
+     *
+     * @param theTick the tick of the keyframe, not before the last keyframe of the game
+     * @param theOffset the offset of the board state of the keyframe
+     */
+    void addKeyframe(final long theTick, final long theOffset) {
+        if (myKeyframeCount == myKeyframeTicks.length) {
+            myKeyframeTicks = Arrays.copyOf(myKeyframeTicks, myKeyframeCount * 2);
+            myKeyframeOffsets = Arrays.copyOf(myKeyframeOffsets, myKeyframeCount * 2);
+        }
+        myKeyframeTicks[myKeyframeCount] = theTick;
+        myKeyframeOffsets[myKeyframeCount] = theOffset;
+        myKeyframeCount++;
+    }
+
+    /**
+     * @return the number of games
+     */
+    int getGameCount() {
+        return myGameCount;
+    }
+
+    /**
+     * Returns where a game starts.
+     *
+     * @param theGame the game, 0 to getGameCount() - 1
+     * @return the offset of the first byte of the game
+     */
+    long getGameOffset(final int theGame) {
+        return myGameOffsets[theGame];
+    }
+
+    /**
+     * Returns the last keyframe of a game at or before a tick.
+     *
+     * @param theGame the game, 0 to getGameCount() - 1
+     * @param theTick the tick
+     * @return the keyframe, -1 if there is none
+     */
+    int findKeyframe(final int theGame, final long theTick) {
+        int low = myFirstKeyframes[theGame];
+        int high = theGame + 1 < myGameCount ? myFirstKeyframes[theGame + 1] : myKeyframeCount;
+        final int first = low;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (myKeyframeTicks[middle] <= theTick) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int result = -1;
+        if (low > first) {
+            result = low - 1;
+        }
+        return result;
+    }
+
+    /**
+     * @param theKeyframe a keyframe found by findKeyframe
+     * @return the tick of the keyframe
+     */
+    long getKeyframeTick(final int theKeyframe) {
+        return myKeyframeTicks[theKeyframe];
+    }
+
+    /**
+     * @param theKeyframe a keyframe found by findKeyframe
+     * @return the offset of the board state of the keyframe
+     */
+    long getKeyframeOffset(final int theKeyframe) {
+        return myKeyframeOffsets[theKeyframe];
+    }
+
+    /**
+     * Encodes the index in the layout described by ReplayFormat, without
+     * the trailer.
+     *
+     * @return a buffer holding the encoding from its position to its limit
+     */
+    ByteBuffer encode() {
+        final ByteBuffer result = ByteBuffer.allocate(
+                        Integer.BYTES + (myGameCount + myKeyframeCount + 1) * MAX_ENTRY_SIZE);
+        result.putInt(ReplayFormat.INDEX_MAGIC);
+        ReplayFormat.putVarLong(result, myGameCount);
+        for (int game = 0; game < myGameCount; game++) {
+            final int last = game + 1 < myGameCount ? myFirstKeyframes[game + 1]
+                                                    : myKeyframeCount;
+            ReplayFormat.putVarLong(result, myGameOffsets[game]);
+            ReplayFormat.putVarLong(result, last - myFirstKeyframes[game]);
+            for (int keyframe = myFirstKeyframes[game]; keyframe < last; keyframe++) {
+                ReplayFormat.putVarLong(result, myKeyframeTicks[keyframe]);
+                ReplayFormat.putVarLong(result, myKeyframeOffsets[keyframe]);
+            }
+        }
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Decodes an index encoded by encode.
+     *
+     * @param theIndex the encoding, from its position; the position is moved
+     * @return the index
+     * @throws IllegalArgumentException if the encoding is malformed
+     * @throws java.nio.BufferUnderflowException if the encoding is truncated
+     */
+    static ReplayIndex decode(final ByteBuffer theIndex) {
+        if (theIndex.getInt() != ReplayFormat.INDEX_MAGIC) {
+            throw new IllegalArgumentException("Not a replay index");
+        }
+        final ReplayIndex result = new ReplayIndex();
+        final long games = ReplayFormat.getVarLong(theIndex);
+        for (long game = 0; game < games; game++) {
+            result.addGame(ReplayFormat.getVarLong(theIndex));
+            final long keyframes = ReplayFormat.getVarLong(theIndex);
+            for (long keyframe = 0; keyframe < keyframes; keyframe++) {
+                result.addKeyframe(ReplayFormat.getVarLong(theIndex),
+                                   ReplayFormat.getVarLong(theIndex));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds the index of a replay without one by reading its records. No
+     * game is played back, so this is much faster than playing the replay.
+     * A replay cut short is indexed up to where it was cut.
+     *
+     * @param theReplay the games of the replay, from its position to its
+     *        limit; the position is moved
+     * @param theVersion the version of the replay's layout
+     * @return the index
+     * @throws IllegalArgumentException if the replay is malformed
+     */
+    static ReplayIndex scan(final ByteBuffer theReplay, final int theVersion) {
+        final ReplayIndex result = new ReplayIndex();
+        try {
+            scanGames(theReplay, theVersion, result);
+        } catch (final BufferUnderflowException e) {
+            // the recording was cut short; what was read is still valid
+        }
+        return result;
+    }
+
+    /**
+     * Adds the games and keyframes of a replay to an index.
+     *
+     * @param theReplay the games of the replay, from its position to its limit
+     * @param theVersion the version of the replay's layout
+     * @param theIndex the index to add to
+     */
+    private static void scanGames(final ByteBuffer theReplay, final int theVersion,
+                                  final ReplayIndex theIndex) {
+        while (theReplay.hasRemaining()) {
+            theIndex.addGame(theReplay.position());
+            theReplay.getLong();
+            for (int i = 0; i < ReplayFormat.GAME_HEADER_VARINTS; i++) {
+                ReplayFormat.getVarLong(theReplay);
+            }
+            skipRecords(theReplay, theVersion, theIndex);
+        }
+    }
+
+    /**
+     * Reads the records of a game up to and including the control record
+     * that ends it, without playing them back.
+     *
+     * @param theReplay the replay, positioned at a record of the game
+     * @param theVersion the version of the replay's layout
+     * @param theIndex the index to add the keyframes of the game to, with
+     *        their ticks counted from the position, or null
+     * @throws IllegalArgumentException if the replay is malformed
+     * @throws BufferUnderflowException if the replay is truncated
+     */
+    static void skipRecords(final ByteBuffer theReplay, final int theVersion,
+                            final ReplayIndex theIndex) {
+        long tick = 0;
+        boolean ended = false;
+        while (!ended) {
+            final long record = ReplayFormat.getVarLong(theReplay);
+            tick += record >>> ReplayFormat.CODE_BITS;
+            final int code = (int) (record & ReplayFormat.CODE_MASK);
+            if (code == ReplayFormat.GRAVITY) {
+                ReplayFormat.getVarLong(theReplay);
+                ReplayFormat.getVarLong(theReplay);
+            } else if (code == ReplayFormat.CONTROL) {
+                final byte kind = theReplay.get();
+                if (kind == ReplayFormat.KEYFRAME) {
+                    final int state = ReplayFormat.skipKeyframe(theReplay);
+                    if (theIndex != null) {
+                        theIndex.addKeyframe(tick, state);
+                    }
+                } else {
+                    ReplayFormat.skipEnd(theReplay, kind, theVersion);
+                    ended = true;
+                }
+            }
+        }
+    }
+}
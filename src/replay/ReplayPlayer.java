@@ -0,0 +1,361 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package replay;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+import model.Board;
+import model.PieceGenerator;
+
+/**
+ * Plays the games of a replay back on a Board without any user interface,
+ * as fast as the board allows. The board has no listeners, so no events
+ * are built, and the ticks between two inputs are run by Board.advance in
+ * time proportional to the falls rather than the ticks.
+ *
+ * <p>A game can also be entered at any tick: seek restores the board from
+ * the nearest keyframe before that tick and plays back only the inputs
+ * after it. The keyframes are found through the index at the end of the
+ * file, or, for a file without one, through an index built by reading the
+ * records once.</p>
+ *
+ * <p>A replay is untrusted input: anything that does not follow
+ * ReplayFormat, including an input after the end of a game, is reported
+ * as an IllegalArgumentException.</p>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class ReplayPlayer {
+
+    /** The replay, positioned at the next game or record. */
+    private final ByteBuffer myReplay;
+
+    /** The offset of the first game. */
+    private final int myGamesStart;
+
+    /** The offset after the last game. */
+    private final int myGamesEnd;
+
+    /** The version of the replay's layout. */
+    private final int myVersion;
+
+    /** The strategy choosing the pieces; the board seeds it for every game. */
+    private final PieceGenerator myGenerator;
+
+    /** The board the games are played on, null until the first game. */
+    private Board myBoard;
+
+    /** The index of the games and keyframes, null until it is needed. */
+    private ReplayIndex myIndex;
+
+    /** The number of inputs played back in the current game. */
+    private int myInputs;
+
+    /**
+     * Creates a player of a replay.
+     *
+     * @param theReplay the replay, from offset 0 to its limit; the player
+     *        moves its position
+     * @param theGenerator the strategy that chose the pieces of the recorded
+     *        games, owned by this player from now on
+     * @throws IllegalArgumentException if the data is not a replay
+     */
+    public ReplayPlayer(final ByteBuffer theReplay, final PieceGenerator theGenerator) {
+        myReplay = theReplay;
+        myGenerator = theGenerator;
+        try {
+            if (theReplay.getInt() != ReplayFormat.MAGIC) {
+                throw new IllegalArgumentException("Not a replay");
+            }
+            myVersion = theReplay.get();
+        } catch (final BufferUnderflowException e) {
+            throw new IllegalArgumentException("Not a replay", e);
+        }
+        if (myVersion < 1 || myVersion > ReplayFormat.VERSION) {
+            throw new IllegalArgumentException("Unknown replay version " + myVersion);
+        }
+        myGamesStart = theReplay.position();
+        myGamesEnd = findIndex();
+    }
+
+    /**
+     * Reads the index at the end of the replay if it has one.
+     *
+     * @return the offset of the index, or the limit of the replay if there is none
+     */
+    private int findIndex() {
+        final int trailer = myReplay.limit() - ReplayFormat.TRAILER_SIZE;
+        int result = myReplay.limit();
+        if (trailer >= myGamesStart
+            && myReplay.getInt(trailer + Long.BYTES) == ReplayFormat.INDEX_MAGIC) {
+            final long offset = myReplay.getLong(trailer);
+            if (offset >= myGamesStart && offset <= trailer - Integer.BYTES
+                && myReplay.getInt((int) offset) == ReplayFormat.INDEX_MAGIC) {
+                result = (int) offset;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the replay, reading or building it the first time.
+     *
+     * @return the index
+     */
+    private ReplayIndex getIndex() {
+        if (myIndex == null) {
+            final ByteBuffer replay = myReplay.duplicate();
+            if (myGamesEnd < replay.limit()) {
+                replay.position(myGamesEnd);
+                try {
+                    myIndex = ReplayIndex.decode(replay);
+                } catch (final BufferUnderflowException e) {
+                    throw new IllegalArgumentException("Truncated replay index", e);
+                }
+            } else {
+                replay.position(myGamesStart);
+                myIndex = ReplayIndex.scan(replay, myVersion);
+            }
+        }
+        return myIndex;
+    }
+
+    /**
+     * @return the number of games in the replay
+     * @throws IllegalArgumentException if the index of the replay is malformed
+     */
+    public int getGameCount() {
+        return getIndex().getGameCount();
+    }
+
+    /**
+     * Plays back a game up to a tick: restores the board from the last
+     * keyframe at or before the tick, or starts the game if there is none,
+     * then runs the ticks and applies the inputs up to and including those
+     * of the tick. A game that ended before the tick is left at its end.
+     * Playing the next game with playNextGame afterwards continues after
+     * the game.
+     *
+     * @param theGame the game, 0 to getGameCount() - 1
+     * @param theTick the tick, 0 or greater
+     * @return the board, owned by this player and changed by its next call
+     * @throws IllegalArgumentException if the game is malformed
+     */
+    public Board seek(final int theGame, final long theTick) {
+        final ReplayIndex index = getIndex();
+        final int keyframe = index.findKeyframe(theGame, theTick);
+        try {
+            final long start = index.getGameOffset(theGame);
+            myReplay.position((int) start);
+            startGame();
+            if (keyframe >= 0) {
+                restoreKeyframe(start, index.getKeyframeTick(keyframe),
+                                index.getKeyframeOffset(keyframe));
+            }
+            final int end = play(theTick);
+            if (end >= 0) {
+                ReplayFormat.skipEnd(myReplay, (byte) end, myVersion);
+            } else {
+                ReplayIndex.skipRecords(myReplay, myVersion, null);
+            }
+        } catch (final BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated replay", e);
+        }
+        return myBoard;
+    }
+
+    /**
+     * Restores the board of the game just started from a keyframe. Every
+     * piece is placed either by an input, which takes at least a byte of
+     * the records before the keyframe, or by gravity, at most once a tick,
+     * which bounds the pieces the keyframe can claim were placed.
+     *
+     * @param theStart the offset of the game
+     * @param theTick the tick of the keyframe
+     * @param theOffset the offset of the board state of the keyframe
+     */
+    private void restoreKeyframe(final long theStart, final long theTick,
+                                 final long theOffset) {
+        if (theOffset < theStart || theOffset > myGamesEnd) {
+            throw new IllegalArgumentException("Keyframe outside its game: " + theOffset);
+        }
+        final long pieces = Math.min(theTick, Integer.MAX_VALUE) + theOffset - theStart;
+        myReplay.position((int) theOffset);
+        myBoard.restoreState(myReplay, (int) Math.min(pieces, Integer.MAX_VALUE));
+        if (myBoard.getTicks() != theTick) {
+            throw new IllegalArgumentException("Keyframe of tick " + myBoard.getTicks()
+                                               + " indexed at tick " + theTick);
+        }
+    }
+
+    /**
+     * @return whether the replay holds another game
+     */
+    public boolean hasNextGame() {
+        return myReplay.position() < myGamesEnd;
+    }
+
+    /**
+     * Plays back the next game of the replay.
+     *
+     * @return the outcome of the game
+     * @throws IllegalArgumentException if the game is malformed
+     * @throws NoSuchElementException if there are no more games
+     */
+    public ReplayResult playNextGame() {
+        if (!hasNextGame()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return playGame();
+        } catch (final BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated replay", e);
+        }
+    }
+
+    /**
+     * Plays back the game at the position of the replay.
+     *
+     * @return the outcome of the game
+     */
+    private ReplayResult playGame() {
+        final long seed = startGame();
+        final Board board = myBoard;
+        final boolean finished = play(Long.MAX_VALUE) == ReplayFormat.FINISHED;
+        int pieces = -1;
+        int lines = -1;
+        long score = -1;
+        long checksum = 0;
+        if (finished) {
+            pieces = getInt(Integer.MAX_VALUE);
+            lines = getInt(Integer.MAX_VALUE);
+            if (myVersion >= ReplayFormat.SCORE_VERSION) {
+                score = ReplayFormat.getVarLong(myReplay);
+            } else {
+                score = Board.score(pieces, lines);
+            }
+            checksum = myReplay.getLong();
+        }
+        return new ReplayResult(seed, myInputs, board.getTicks(), finished, pieces, lines,
+                                score, checksum, board.isGameOver(),
+                                board.getPiecesPlaced(), board.getPiecesDrawn(),
+                                board.getLinesCleared(),
+                                board.getScore(), board.checksum());
+    }
+
+    /**
+     * Reads the header of the game at the position of the replay and starts
+     * the game on the board.
+     *
+     * @return the seed of the game
+     */
+    private long startGame() {
+        final long seed = myReplay.getLong();
+        final int width = getInt(ReplayFormat.MAX_SIZE);
+        final int height = getInt(ReplayFormat.MAX_SIZE);
+        final int rows = getInt(Integer.MAX_VALUE);
+        final int ticks = getInt(Integer.MAX_VALUE);
+        if (myBoard == null) {
+            myBoard = new Board(width, height, myGenerator, seed);
+        } else {
+            myBoard.newGame(width, height, seed);
+        }
+        myBoard.setGravity(rows, ticks);
+        myInputs = 0;
+        return seed;
+    }
+
+    /**
+     * Plays back the records of the game at the position of the replay
+     * until the end of the game or the last record of a tick. Keyframes
+     * are skipped.
+     *
+     * @param theTick the last tick to play
+     * @return the kind of the control record that ended the game, positioned
+     *         after it, or -1 if the next record is after the tick,
+     *         positioned before it
+     */
+    private int play(final long theTick) {
+        final Board board = myBoard;
+        int result = -1;
+        while (result < 0) {
+            final int start = myReplay.position();
+            final long record = ReplayFormat.getVarLong(myReplay);
+            final int code = (int) (record & ReplayFormat.CODE_MASK);
+            final long delta = record >>> ReplayFormat.CODE_BITS;
+            if (delta > theTick - board.getTicks()) {
+                board.advance(theTick - board.getTicks());
+                myReplay.position(start);
+                break;
+            }
+            board.advance(delta);
+            if (code == ReplayFormat.CONTROL) {
+                final byte kind = myReplay.get();
+                if (kind == ReplayFormat.KEYFRAME) {
+                    ReplayFormat.skipKeyframe(myReplay);
+                } else if (kind == ReplayFormat.FINISHED || kind == ReplayFormat.ABANDONED) {
+                    result = kind;
+                } else {
+                    throw new IllegalArgumentException("Bad control record: " + kind);
+                }
+            } else if (board.isGameOver()) {
+                throw new IllegalArgumentException("Input after the end of the game");
+            } else {
+                apply(board, code);
+                myInputs++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Applies a recorded input to the board.
+     *
+     * @param theBoard the board
+     * @param theCode the code of the input
+     */
+    private void apply(final Board theBoard, final int theCode) {
+        switch (theCode) {
+            case ReplayFormat.MOVE_LEFT:
+                theBoard.moveLeft();
+                break;
+            case ReplayFormat.MOVE_RIGHT:
+                theBoard.moveRight();
+                break;
+            case ReplayFormat.MOVE_DOWN:
+                theBoard.moveDown();
+                break;
+            case ReplayFormat.ROTATE:
+                theBoard.rotate();
+                break;
+            case ReplayFormat.DROP:
+                theBoard.drop();
+                break;
+            case ReplayFormat.STEP:
+                theBoard.step();
+                break;
+            default:
+                theBoard.setGravity(getInt(Integer.MAX_VALUE), getInt(Integer.MAX_VALUE));
+                break;
+        }
+    }
+
+    /**
+     * Reads a varint that must fit in an int.
+     *
+     * @param theMax the largest value allowed
+     * @return the value
+     * @throws IllegalArgumentException if the value is larger
+     */
+    private int getInt(final int theMax) {
+        final long result = ReplayFormat.getVarLong(myReplay);
+        if (result < 0 || result > theMax) {
+            throw new IllegalArgumentException("Value out of range: " + result);
+        }
+        return (int) result;
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import model.Board;
+import model.BoardEvent;
+import model.BoardListener;
+
+/**
+ * Records the games played on a Board into a replay file, in the layout
+ * described by ReplayFormat. Only the inputs are recorded, with the tick
+ * each was applied on; the falls by gravity are not, since playing the
+ * inputs back on a board with the same seed repeats them. A game with a
+ * predetermined queue of pieces is recorded like any other but can only be
+ * played back with the same queue.
+ *
+ * <p>Every so many pieces or ticks the recorder also writes a keyframe, the
+ * complete state of the board, and when it is closed it ends the file with
+ * an index of the games and keyframes. A player can then start from the
+ * keyframe nearest to any point of a game instead of from its beginning.</p>
+ *
+ * <p>The records are collected in large direct buffers on the thread that
+ * owns the board. Full buffers are written to the file by a shared writer
+ * thread, so the board's thread never waits for the disk. A write that
+ * fails stops the recording, and the failure is thrown by close().</p>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class ReplayRecorder implements BoardListener, Closeable {
+
+    /** The default number of pieces between two keyframes. */
+    public static final int DEFAULT_KEYFRAME_PIECES = 100;
+
+    /** The default number of ticks between two keyframes: a minute at 60 ticks a second. */
+    public static final long DEFAULT_KEYFRAME_TICKS = 3600;
+
+    /** The size of a buffer: 64 KiB. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Writes the buffers of every recorder, one at a time and in order. */
+    private static final ExecutorService WRITER =
+                    Executors.newSingleThreadExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable theTask) {
+                            final Thread thread = new Thread(theTask, "Replay writer");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+
+    /** The board being recorded. */
+    private final Board myBoard;
+
+    /** The file written to. */
+    private final FileChannel myChannel;
+
+    /** Empty buffers handed back by the writer. */
+    private final Queue<ByteBuffer> myFreeBuffers;
+
+    /** The buffer collecting records. */
+    private ByteBuffer myBuffer;
+
+    /** The number of pieces between two keyframes, 0 for none. */
+    private final int myKeyframePieces;
+
+    /** The number of ticks between two keyframes, 0 for none. */
+    private final long myKeyframeTicks;
+
+    /** The index of the games and keyframes recorded so far. */
+    private final ReplayIndex myIndex;
+
+    /** Holds the board state of a keyframe while it is copied to the buffers. */
+    private ByteBuffer myState;
+
+    /** The number of bytes handed to the writer so far. */
+    private long mySubmitted;
+
+    /** The pieces placed at the last keyframe of the game. */
+    private int myLastKeyframePieces;
+
+    /** The tick of the last keyframe of the game. */
+    private long myLastKeyframeTick;
+
+    /** The write of the last buffer handed to the writer, null if none was. */
+    private Future<?> myLastWrite;
+
+    /** The tick of the last record of the game. */
+    private long myLastTick;
+
+    /** Whether a game is being recorded. */
+    private boolean myRecording;
+
+    /** Whether the recorder was closed. */
+    private boolean myClosed;
+
+    /** The first failure of the writer, null if there was none. */
+    private volatile IOException myFailure;
+
+    /**
+     * Creates a recorder writing a keyframe every DEFAULT_KEYFRAME_PIECES
+     * pieces or DEFAULT_KEYFRAME_TICKS ticks. See the other constructor.
+     *
+     * @param theBoard the board to record
+     * @param theFile the file to write
+     * @throws IOException if the file cannot be opened
+     */
+    public ReplayRecorder(final Board theBoard, final Path theFile) throws IOException {
+        this(theBoard, theFile, DEFAULT_KEYFRAME_PIECES, DEFAULT_KEYFRAME_TICKS);
+    }
+
+    /**
+     * Creates a recorder writing to a file and attaches it to a board. The
+     * file is created, or emptied if it exists. The current game is
+     * recorded if it has not started yet, otherwise recording starts with
+     * the next game that starts from the beginning. Must be called on the
+     * thread that owns the board, or before that thread is started.
+     *
+     * @param theBoard the board to record
+     * @param theFile the file to write
+     * @param theKeyframePieces the number of pieces between two keyframes, 0 for none
+     * @param theKeyframeTicks the number of ticks between two keyframes, 0 for none
+     * @throws IOException if the file cannot be opened
+     */
+    public ReplayRecorder(final Board theBoard, final Path theFile,
+                          final int theKeyframePieces, final long theKeyframeTicks)
+                    throws IOException {
+        myBoard = theBoard;
+        myKeyframePieces = theKeyframePieces;
+        myKeyframeTicks = theKeyframeTicks;
+        myIndex = new ReplayIndex();
+        myState = ByteBuffer.allocate(0);
+        myChannel = FileChannel.open(theFile, StandardOpenOption.CREATE,
+                                     StandardOpenOption.WRITE,
+                                     StandardOpenOption.TRUNCATE_EXISTING);
+        myFreeBuffers = new ConcurrentLinkedQueue<>();
+        myBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        myBuffer.putInt(ReplayFormat.MAGIC);
+        myBuffer.put(ReplayFormat.VERSION);
+        startGame();
+        theBoard.addBoardListener(this);
+    }
+
+    /**
+     * Records a change of the board.
+     *
+     * @param theEvent the change
+     */
+    @Override
+    public synchronized void boardChanged(final BoardEvent theEvent) {
+        if (myClosed) {
+            return;
+        }
+        switch (theEvent.getAction()) {
+            case NEW_GAME:
+                endGame();
+                startGame();
+                break;
+            case FALL:
+                break;
+            default:
+                if (myRecording) {
+                    record(theEvent);
+                }
+                break;
+        }
+        if (myRecording) {
+            if (theEvent.isGameOver()) {
+                endGame();
+            } else if (isKeyframeDue()) {
+                writeKeyframe();
+            }
+        }
+    }
+
+    /**
+     * Hands the records collected so far to the writer without waiting for
+     * them to be written.
+     */
+    public synchronized void flush() {
+        if (!myClosed && myBuffer.position() > 0) {
+            submit();
+        }
+    }
+
+    /**
+     * Detaches the recorder from the board, ends the game being recorded as
+     * abandoned, writes everything recorded followed by the index and
+     * closes the file. Waits for the writer. May be called on any thread.
+     *
+     * @throws IOException if a write failed or the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        myBoard.removeBoardListener(this);
+        final Future<?> last;
+        synchronized (this) {
+            if (myClosed) {
+                return;
+            }
+            if (myRecording) {
+                reserve();
+                ReplayFormat.putVarLong(myBuffer, record(myLastTick, ReplayFormat.CONTROL));
+                myBuffer.put(ReplayFormat.ABANDONED);
+                myRecording = false;
+            }
+            final long index = getOffset();
+            put(myIndex.encode());
+            reserve();
+            myBuffer.putLong(index);
+            myBuffer.putInt(ReplayFormat.INDEX_MAGIC);
+            if (myBuffer.position() > 0) {
+                submit();
+            }
+            myClosed = true;
+            last = myLastWrite;
+        }
+        try {
+            if (last != null) {
+                last.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the replay", e);
+        } catch (final ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            myChannel.close();
+        }
+        if (myFailure != null) {
+            throw myFailure;
+        }
+    }
+
+    /**
+     * Writes the header of the game that has just started, unless the board
+     * holds a game already under way, such as a restored one.
+     */
+    private void startGame() {
+        if (myBoard.getTicks() != 0 || myBoard.getPiecesPlaced() != 0
+                        || myBoard.isGameOver()) {
+            return;
+        }
+        reserve();
+        myIndex.addGame(getOffset());
+        myBuffer.putLong(myBoard.getSeed());
+        ReplayFormat.putVarLong(myBuffer, myBoard.getWidth());
+        ReplayFormat.putVarLong(myBuffer, myBoard.getHeight());
+        ReplayFormat.putVarLong(myBuffer, myBoard.getGravityRows());
+        ReplayFormat.putVarLong(myBuffer, myBoard.getGravityTicks());
+        myLastTick = 0;
+        myLastKeyframePieces = 0;
+        myLastKeyframeTick = 0;
+        myRecording = true;
+    }
+
+    /**
+     * Records an input applied to the board.
+     *
+     * @param theEvent the change caused by the input
+     */
+    private void record(final BoardEvent theEvent) {
+        final int code = ReplayFormat.codeOf(theEvent.getAction());
+        if (code >= 0) {
+            reserve();
+            ReplayFormat.putVarLong(myBuffer, record(myBoard.getTicks(), code));
+            if (code == ReplayFormat.GRAVITY) {
+                ReplayFormat.putVarLong(myBuffer, myBoard.getGravityRows());
+                ReplayFormat.putVarLong(myBuffer, myBoard.getGravityTicks());
+            }
+        }
+    }
+
+    /**
+     * Ends the game being recorded, if any. A game that is not over was
+     * abandoned.
+     */
+    private void endGame() {
+        if (myRecording) {
+            reserve();
+            ReplayFormat.putVarLong(myBuffer,
+                                    record(myBoard.getTicks(), ReplayFormat.CONTROL));
+            if (myBoard.isGameOver()) {
+                myBuffer.put(ReplayFormat.FINISHED);
+                ReplayFormat.putVarLong(myBuffer, myBoard.getPiecesPlaced());
+                ReplayFormat.putVarLong(myBuffer, myBoard.getLinesCleared());
+                ReplayFormat.putVarLong(myBuffer, myBoard.getScore());
+                myBuffer.putLong(myBoard.checksum());
+            } else {
+                myBuffer.put(ReplayFormat.ABANDONED);
+            }
+            myRecording = false;
+        }
+    }
+
+    /**
+     * Tests whether enough pieces have been placed or enough ticks have gone
+     * by since the last keyframe of the game.
+     *
+     * @return true if a keyframe should be written
+     */
+    private boolean isKeyframeDue() {
+        return myKeyframePieces > 0
+               && myBoard.getPiecesPlaced() - myLastKeyframePieces >= myKeyframePieces
+               || myKeyframeTicks > 0 && myBoard.getTicks() - myLastKeyframeTick >= myKeyframeTicks;
+    }
+
+    /**
+     * Writes the state of the board as a keyframe of the game.
+     */
+    private void writeKeyframe() {
+        final int size = myBoard.getStateSize();
+        if (myState.capacity() < size) {
+            myState = ByteBuffer.allocate(size);
+        }
+        myState.clear();
+        myBoard.saveState(myState);
+        myState.flip();
+        reserve();
+        ReplayFormat.putVarLong(myBuffer, record(myBoard.getTicks(), ReplayFormat.CONTROL));
+        myBuffer.put(ReplayFormat.KEYFRAME);
+        ReplayFormat.putVarLong(myBuffer, size);
+        myIndex.addKeyframe(myBoard.getTicks(), getOffset());
+        put(myState);
+        myLastKeyframePieces = myBoard.getPiecesPlaced();
+        myLastKeyframeTick = myBoard.getTicks();
+    }
+
+    /**
+     * Returns a record and moves the tick of the last record. The end of a
+     * game abandoned for a new one is read after the new game has reset
+     * the ticks, so a tick before the last record counts as no ticks.
+     *
+     * @param theTick the tick of the record
+     * @param theCode the code of the record
+     * @return the record
+     */
+    private long record(final long theTick, final int theCode) {
+        final long delta = Math.max(0, theTick - myLastTick);
+        myLastTick = theTick;
+        return delta << ReplayFormat.CODE_BITS | theCode;
+    }
+
+    /**
+     * Copies bytes of any length to the buffers.
+     *
+     * @param theBytes the bytes, from their position to their limit
+     */
+    private void put(final ByteBuffer theBytes) {
+        while (theBytes.hasRemaining()) {
+            if (!myBuffer.hasRemaining()) {
+                submit();
+            }
+            final int length = Math.min(theBytes.remaining(), myBuffer.remaining());
+            final ByteBuffer part = theBytes.duplicate();
+            part.limit(part.position() + length);
+            myBuffer.put(part);
+            theBytes.position(theBytes.position() + length);
+        }
+    }
+
+    /**
+     * Returns the offset in the file of the next byte recorded.
+     *
+     * @return the offset
+     */
+    private long getOffset() {
+        return mySubmitted + myBuffer.position();
+    }
+
+    /**
+     * Makes room in the buffer for a game header or record, handing the
+     * buffer to the writer if it is nearly full.
+     */
+    private void reserve() {
+        if (myBuffer.remaining() < ReplayFormat.MAX_ENTRY_SIZE) {
+            submit();
+        }
+    }
+
+    /**
+     * Hands the buffer to the writer and takes an empty one.
+     */
+    private void submit() {
+        final ByteBuffer full = myBuffer;
+        full.flip();
+        mySubmitted += full.limit();
+        myLastWrite = WRITER.submit(new Runnable() {
+            @Override
+            public void run() {
+                write(full);
+            }
+        });
+        final ByteBuffer free = myFreeBuffers.poll();
+        if (free == null) {
+            myBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        } else {
+            myBuffer = free;
+        }
+    }
+
+    /**
+     * Writes a buffer to the file and hands it back empty. Runs on the writer.
+     *
+     * @param theBuffer the buffer to write
+     */
+    private void write(final ByteBuffer theBuffer) {
+        if (myFailure == null) {
+            try {
+                while (theBuffer.hasRemaining()) {
+                    myChannel.write(theBuffer);
+                }
+            } catch (final IOException e) {
+                myFailure = e;
+            }
+        }
+        theBuffer.clear();
+        myFreeBuffers.add(theBuffer);
+    }
+}
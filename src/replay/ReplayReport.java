@@ -0,0 +1,78 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package replay;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of verifying one replay file: the result of every game it
+ * holds, up to the first error if the file could not be read or played.
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class ReplayReport {
+
+    /** The replay file. */
+    private final Path myFile;
+
+    /** The results of the games played back, in the order of the file. */
+    private final List<ReplayResult> myResults;
+
+    /** Why the file could not be read or played to its end, null if it could. */
+    private final String myError;
+
+    /**
+     * Creates a report.
+     *
+     * @param theFile the replay file
+     * @param theResults the results of the games played back; not copied
+     * @param theError why the file could not be played to its end, or null
+     */
+    ReplayReport(final Path theFile, final List<ReplayResult> theResults,
+                 final String theError) {
+        myFile = theFile;
+        myResults = Collections.unmodifiableList(theResults);
+        myError = theError;
+    }
+
+    /**
+     * @return the replay file
+     */
+    public Path getFile() {
+        return myFile;
+    }
+
+    /**
+     * @return the results of the games played back, in the order of the file
+     */
+    public List<ReplayResult> getResults() {
+        return myResults;
+    }
+
+    /**
+     * @return why the file could not be read or played to its end, null if it could
+     */
+    public String getError() {
+        return myError;
+    }
+
+    /**
+     * Tests whether the file was played to its end and every finished game
+     * in it is valid. Abandoned games prove nothing but do not make the
+     * file invalid.
+     *
+     * @return true if nothing in the file failed verification
+     */
+    public boolean isValid() {
+        boolean result = myError == null;
+        for (final ReplayResult game : myResults) {
+            result &= !game.isFinished() || game.isValid();
+        }
+        return result;
+    }
+}
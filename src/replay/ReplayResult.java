@@ -0,0 +1,201 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package replay;
+
+import java.util.Locale;
+
+/**
+ * The outcome of playing back one recorded game: the totals recorded when
+ * the game was played and the totals the playback reached.
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class ReplayResult {
+
+    /** The seed of the game. */
+    private final long mySeed;
+
+    /** The number of inputs played back. */
+    private final int myInputs;
+
+    /** The number of ticks played back. */
+    private final long myTicks;
+
+    /** Whether the game was recorded to its end. */
+    private final boolean myFinished;
+
+    /** The recorded number of pieces placed, or -1 if the game was abandoned. */
+    private final int myRecordedPieces;
+
+    /** The recorded number of lines cleared, or -1 if the game was abandoned. */
+    private final int myRecordedLines;
+
+    /** The recorded score, or -1 if the game was abandoned. */
+    private final long myRecordedScore;
+
+    /** The recorded checksum of the board, or 0 if the game was abandoned. */
+    private final long myRecordedChecksum;
+
+    /** Whether the playback ended the game. */
+    private final boolean myGameOver;
+
+    /** The number of pieces placed by the playback. */
+    private final int myPieces;
+
+    /** The number of pieces drawn from the piece generator by the playback. */
+    private final int myDrawn;
+
+    /** The number of lines cleared by the playback. */
+    private final int myLines;
+
+    /** The score of the playback. */
+    private final long myScore;
+
+    /** The checksum of the board after the playback. */
+    private final long myChecksum;
+
+    /**
+     * Creates a result.
+     *
+     * @param theSeed the seed of the game
+     * @param theInputs the number of inputs played back
+     * @param theTicks the number of ticks played back
+     * @param theFinished whether the game was recorded to its end
+     * @param theRecordedPieces the recorded number of pieces placed, or -1
+     * @param theRecordedLines the recorded number of lines cleared, or -1
+     * @param theRecordedScore the recorded score, or -1
+     * @param theRecordedChecksum the recorded checksum, or 0
+     * @param theGameOver whether the playback ended the game
+     * @param thePieces the number of pieces placed by the playback
+     * @param theDrawn the number of pieces drawn by the playback
+     * @param theLines the number of lines cleared by the playback
+     * @param theScore the score of the playback
+     * @param theChecksum the checksum of the board after the playback
+     */
+    ReplayResult(final long theSeed, final int theInputs, final long theTicks,
+                 final boolean theFinished, final int theRecordedPieces,
+                 final int theRecordedLines, final long theRecordedScore,
+                 final long theRecordedChecksum, final boolean theGameOver,
+                 final int thePieces, final int theDrawn, final int theLines,
+                 final long theScore, final long theChecksum) {
+        mySeed = theSeed;
+        myInputs = theInputs;
+        myTicks = theTicks;
+        myFinished = theFinished;
+        myRecordedPieces = theRecordedPieces;
+        myRecordedLines = theRecordedLines;
+        myRecordedScore = theRecordedScore;
+        myRecordedChecksum = theRecordedChecksum;
+        myGameOver = theGameOver;
+        myPieces = thePieces;
+        myDrawn = theDrawn;
+        myLines = theLines;
+        myScore = theScore;
+        myChecksum = theChecksum;
+    }
+
+    /**
+     * @return the seed of the game
+     */
+    public long getSeed() {
+        return mySeed;
+    }
+
+    /**
+     * @return the number of inputs played back
+     */
+    public int getInputs() {
+        return myInputs;
+    }
+
+    /**
+     * @return the number of ticks played back
+     */
+    public long getTicks() {
+        return myTicks;
+    }
+
+    /**
+     * @return whether the game was recorded to its end, rather than abandoned
+     */
+    public boolean isFinished() {
+        return myFinished;
+    }
+
+    /**
+     * @return whether the playback ended the game
+     */
+    public boolean isGameOver() {
+        return myGameOver;
+    }
+
+    /**
+     * @return the number of pieces placed by the playback
+     */
+    public int getPiecesPlaced() {
+        return myPieces;
+    }
+
+    /**
+     * @return the number of pieces drawn from the piece generator by the playback
+     */
+    public int getPiecesDrawn() {
+        return myDrawn;
+    }
+
+    /**
+     * @return the number of lines cleared by the playback
+     */
+    public int getLinesCleared() {
+        return myLines;
+    }
+
+    /**
+     * @return the score of the playback
+     */
+    public long getScore() {
+        return myScore;
+    }
+
+    /**
+     * @return the checksum of the board after the playback
+     */
+    public long getChecksum() {
+        return myChecksum;
+    }
+
+    /**
+     * Tests whether the game was recorded to its end and the playback ended
+     * it too, with the recorded pieces, lines, score and board. Only a valid
+     * game proves its score.
+     *
+     * @return true if the recorded totals were reproduced
+     */
+    public boolean isValid() {
+        return myFinished && myGameOver && myPieces == myRecordedPieces
+               && myLines == myRecordedLines && myScore == myRecordedScore
+               && myChecksum == myRecordedChecksum;
+    }
+
+    @Override
+    public String toString() {
+        final String result;
+        if (!myFinished) {
+            result = String.format(Locale.ROOT, "seed %d: abandoned after %d inputs",
+                                   mySeed, myInputs);
+        } else {
+            result = String.format(Locale.ROOT,
+                                   "seed %d: %s, recorded %d pieces, %d lines, score %d, "
+                                   + "board %016x; played %d pieces, %d lines, score %d, "
+                                   + "board %016x%s",
+                                   mySeed, isValid() ? "valid" : "INVALID",
+                                   myRecordedPieces, myRecordedLines, myRecordedScore,
+                                   myRecordedChecksum, myPieces, myLines, myScore,
+                                   myChecksum, myGameOver ? "" : ", not over");
+        }
+        return result;
+    }
+}
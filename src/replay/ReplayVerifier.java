@@ -0,0 +1,126 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+import model.PieceGenerator;
+
+/**
+ * Verifies replay files by playing every game in them back headlessly and
+ * comparing the pieces, lines, score and board checksum each game reached
+ * with the ones recorded. Batches of files are spread over a fork-join pool.
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class ReplayVerifier {
+
+    /** The number of files a fork-join task verifies without splitting further. */
+    private static final int FILES_PER_TASK = 4;
+
+    /** Creates the piece generator the recorded games were played with. */
+    private final Supplier<PieceGenerator> myGenerators;
+
+    /**
+     * Creates a verifier.
+     *
+     * @param theGenerators creates the piece generator the recorded games
+     *        were played with; one is created for every file
+     */
+    public ReplayVerifier(final Supplier<PieceGenerator> theGenerators) {
+        myGenerators = theGenerators;
+    }
+
+    /**
+     * Verifies a number of files in parallel.
+     *
+     * @param theFiles the replay files
+     * @param thePool the pool verifying the files
+     * @return the reports, in the order of the files
+     */
+    public List<ReplayReport> verify(final List<Path> theFiles, final ForkJoinPool thePool) {
+        return thePool.invoke(new FilesTask(theFiles, 0, theFiles.size()));
+    }
+
+    /**
+     * Verifies one file.
+     *
+     * @param theFile the replay file
+     * @return the report
+     */
+    public ReplayReport verify(final Path theFile) {
+        final List<ReplayResult> results = new ArrayList<>();
+        String error = null;
+        try {
+            final ReplayPlayer player = new ReplayPlayer(
+                            ByteBuffer.wrap(Files.readAllBytes(theFile)), myGenerators.get());
+            while (player.hasNextGame()) {
+                results.add(player.playNextGame());
+            }
+        } catch (final IOException | IllegalArgumentException e) {
+            error = e.toString();
+        }
+        return new ReplayReport(theFile, results, error);
+    }
+
+    /**
+     * A fork-join task verifying a contiguous range of files.
+     */
+    private final class FilesTask extends RecursiveTask<List<ReplayReport>> {
+
+        /** The auto-generated serial ID. */
+        private static final long serialVersionUID = 4135873925719026851L;
+
+        /** All the files. */
+        private final transient List<Path> myFiles;
+
+        /** The index of the first file of this task. */
+        private final int myFirst;
+
+        /** The index after the last file of this task. */
+        private final int myLast;
+
+        /**
+         * Creates a task.
+         *
+         * @param theFiles all the files
+         * @param theFirst the index of the first file
+         * @param theLast the index after the last file
+         */
+        FilesTask(final List<Path> theFiles, final int theFirst, final int theLast) {
+            super();
+            myFiles = theFiles;
+            myFirst = theFirst;
+            myLast = theLast;
+        }
+
+        @Override
+        protected List<ReplayReport> compute() {
+            final List<ReplayReport> result;
+            if (myLast - myFirst <= FILES_PER_TASK) {
+                result = new ArrayList<>(myLast - myFirst);
+                for (int file = myFirst; file < myLast; file++) {
+                    result.add(verify(myFiles.get(file)));
+                }
+            } else {
+                final int middle = (myFirst + myLast) >>> 1;
+                final FilesTask left = new FilesTask(myFiles, myFirst, middle);
+                left.fork();
+                final List<ReplayReport> right = new FilesTask(myFiles, middle, myLast).compute();
+                result = left.join();
+                result.addAll(right);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package simulation;
+
+import model.Board;
+
+/**
+ * A move policy that drops every piece where it spawns. Games played with
+ * this policy are short and make a useful worst-case baseline.
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class DropPolicy implements MovePolicy {
+
+    @Override
+    public void playPiece(final Board theBoard) {
+        theBoard.drop();
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package simulation;
+
+import model.Board;
+
+/**
+ * A strategy that decides how the current piece of a Board is played.
+ *
+ * <p>Policies drive the board only through its public move methods and are
+ * used by headless simulations, so they must never touch AWT or Swing. A
+ * policy instance is used by a single game at a time and need not be
+ * thread-safe.</p>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public interface MovePolicy {
+
+    /**
+     * Plays the current piece of the board. The policy should normally end by
+     * freezing the piece, for example with {@link Board#drop()}; if it does
+     * not, the caller steps the board until the piece freezes.
+     *
+     * @param theBoard the board whose current piece is to be played
+     */
+    void playPiece(Board theBoard);
+}
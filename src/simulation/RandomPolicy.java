@@ -0,0 +1,50 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package simulation;
+
+import java.util.SplittableRandom;
+import model.Board;
+
+/**
+ * A move policy that rotates and shifts each piece by a random amount and
+ * then drops it.
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class RandomPolicy implements MovePolicy {
+
+    /** The largest number of quarter turns applied to a piece. */
+    private static final int MAX_ROTATIONS = 3;
+
+    /** The random number generator of this policy. */
+    private final SplittableRandom myRandom;
+
+    /**
+     * Creates a random policy.
+     *
+     * @param theSeed the seed of the policy's random number generator
+     */
+    public RandomPolicy(final long theSeed) {
+        myRandom = new SplittableRandom(theSeed);
+    }
+
+    @Override
+    public void playPiece(final Board theBoard) {
+        final int rotations = myRandom.nextInt(MAX_ROTATIONS + 1);
+        for (int i = 0; i < rotations; i++) {
+            theBoard.rotate();
+        }
+
+        final int shift = myRandom.nextInt(theBoard.getWidth()) - theBoard.getWidth() / 2;
+        for (int i = 0; i < shift; i++) {
+            theBoard.moveRight();
+        }
+        for (int i = 0; i > shift; i--) {
+            theBoard.moveLeft();
+        }
+        theBoard.drop();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package simulation;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+import model.Board;
+import model.PieceGenerator;
+
+/**
+ * Plays complete games of Tetris without any user interface, spreading the
+ * games over a fork-join pool.
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class SimulationRunner {
+
+    /** The number of games a fork-join task plays without splitting further. */
+    private static final int GAMES_PER_TASK = 16;
+
+    /**
+     * Mixed into the seed of a game for its pieces, so that the pieces and a
+     * random policy seeded with the same number do not share a sequence.
+     */
+    private static final long PIECE_SEED_MIX = 0x9E3779B97F4A7C15L;
+
+    /** The width of the simulated boards. */
+    private final int myWidth;
+
+    /** The height of the simulated boards. */
+    private final int myHeight;
+
+    /** Creates the move policy of a game from the game's seed. */
+    private final LongFunction<MovePolicy> myPolicies;
+
+    /** Creates the piece generator of a game; the board seeds it. */
+    private final Supplier<PieceGenerator> myGenerators;
+
+    /** The largest number of pieces played in one game; 0 for no limit. */
+    private final int myMaxPieces;
+
+    /**
+     * Creates a simulation runner.
+     *
+     * @param theWidth the width of the simulated boards
+     * @param theHeight the height of the simulated boards
+     * @param thePolicies creates the move policy of a game from the game's seed
+     * @param theGenerators creates the piece generator of a game; the board
+     *        seeds it from the game's seed
+     * @param theMaxPieces the largest number of pieces played in one game;
+     *        0 for no limit
+     */
+    public SimulationRunner(final int theWidth, final int theHeight,
+                            final LongFunction<MovePolicy> thePolicies,
+                            final Supplier<PieceGenerator> theGenerators,
+                            final int theMaxPieces) {
+        myWidth = theWidth;
+        myHeight = theHeight;
+        myPolicies = thePolicies;
+        myGenerators = theGenerators;
+        myMaxPieces = theMaxPieces;
+    }
+
+    /**
+     * Plays a number of games in parallel.
+     *
+     * @param theGames the number of games to play
+     * @param theSeed the seed of the first game; game i uses theSeed + i
+     * @param thePool the pool running the games
+     * @return the statistics of all games
+     */
+    public SimulationStats run(final int theGames, final long theSeed,
+                               final ForkJoinPool thePool) {
+        return thePool.invoke(new GamesTask(0, theGames, theSeed));
+    }
+
+    /**
+     * Plays one complete game and records it.
+     *
+     * @param theSeed the seed of the game
+     * @param theStats the statistics to record the game in
+     */
+    public void playGame(final long theSeed, final SimulationStats theStats) {
+        final Board board = new Board(myWidth, myHeight, myGenerators.get(),
+                                      theSeed ^ PIECE_SEED_MIX);
+        final MovePolicy policy = myPolicies.apply(theSeed);
+
+        while (!board.isGameOver()
+               && (myMaxPieces == 0 || board.getPiecesPlaced() < myMaxPieces)) {
+            final int pieces = board.getPiecesPlaced();
+            final int lines = board.getLinesCleared();
+            policy.playPiece(board);
+            while (!board.isGameOver() && board.getPiecesPlaced() == pieces) {
+                board.step();
+            }
+            theStats.recordPiece(board.getLinesCleared() - lines);
+        }
+        theStats.recordGame(board.getPiecesPlaced(), board.getLinesCleared());
+    }
+
+    /**
+     * A fork-join task playing a contiguous range of games.
+     */
+    private final class GamesTask extends RecursiveTask<SimulationStats> {
+
+        /** The auto-generated serial ID. */
+        private static final long serialVersionUID = -2358715209573166470L;
+
+        /** The index of the first game of this task. */
+        private final int myFirst;
+
+        /** The index after the last game of this task. */
+        private final int myLast;
+
+        /** The seed of game 0. */
+        private final long mySeed;
+
+        /**
+         * Creates a task.
+         *
+         * @param theFirst the index of the first game
+         * @param theLast the index after the last game
+         * @param theSeed the seed of game 0
+         */
+        GamesTask(final int theFirst, final int theLast, final long theSeed) {
+            super();
+            myFirst = theFirst;
+            myLast = theLast;
+            mySeed = theSeed;
+        }
+
+        @Override
+        protected SimulationStats compute() {
+            final SimulationStats result;
+            if (myLast - myFirst <= GAMES_PER_TASK) {
+                result = new SimulationStats();
+                for (int game = myFirst; game < myLast; game++) {
+                    playGame(mySeed + game, result);
+                }
+            } else {
+                final int middle = (myFirst + myLast) >>> 1;
+                final GamesTask left = new GamesTask(myFirst, middle, mySeed);
+                left.fork();
+                result = new GamesTask(middle, myLast, mySeed).compute();
+                result.merge(left.join());
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * TCSS 305 - Project Tetris
+ */
+
+package simulation;
+
+import java.util.Locale;
+
+/**
+ * Statistics gathered from a batch of simulated games. Instances are not
+ * thread-safe; each worker fills its own and the results are merged.
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ */
+public final class SimulationStats {
+
+    /** The largest number of lines a single piece can clear. */
+    private static final int MAX_CLEAR = 4;
+
+    /** The number of nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** The number of games played. */
+    private long myGames;
+
+    /** The number of pieces placed over all games. */
+    private long myPieces;
+
+    /** The number of lines cleared over all games. */
+    private long myLines;
+
+    /** The number of pieces that cleared 1, 2, 3 and 4 lines, indexed by line count. */
+    private final long[] myClears = new long[MAX_CLEAR + 1];
+
+    /** The most lines cleared in a single game. */
+    private int myMaxLines;
+
+    /** The most pieces placed in a single game. */
+    private int myMaxPieces;
+
+    /**
+     * Records one piece placement.
+     *
+     * @param theLines the number of lines the piece cleared
+     */
+    public void recordPiece(final int theLines) {
+        myPieces++;
+        myLines += theLines;
+        myClears[Math.min(theLines, MAX_CLEAR)]++;
+    }
+
+    /**
+     * Records the end of one game.
+     *
+     * @param thePieces the number of pieces placed in the game
+     * @param theLines the number of lines cleared in the game
+     */
+    public void recordGame(final int thePieces, final int theLines) {
+        myGames++;
+        myMaxPieces = Math.max(myMaxPieces, thePieces);
+        myMaxLines = Math.max(myMaxLines, theLines);
+    }
+
+    /**
+     * Adds the statistics of another batch to this one.
+     *
+     * @param theOther the statistics to add
+     */
+    public void merge(final SimulationStats theOther) {
+        myGames += theOther.myGames;
+        myPieces += theOther.myPieces;
+        myLines += theOther.myLines;
+        for (int i = 0; i < myClears.length; i++) {
+            myClears[i] += theOther.myClears[i];
+        }
+        myMaxLines = Math.max(myMaxLines, theOther.myMaxLines);
+        myMaxPieces = Math.max(myMaxPieces, theOther.myMaxPieces);
+    }
+
+    /**
+     * @return the number of games played
+     */
+    public long getGames() {
+        return myGames;
+    }
+
+    /**
+     * @return the number of pieces placed over all games
+     */
+    public long getPieces() {
+        return myPieces;
+    }
+
+    /**
+     * @return the number of lines cleared over all games
+     */
+    public long getLines() {
+        return myLines;
+    }
+
+    /**
+     * Returns the number of pieces that cleared exactly the given number of lines.
+     *
+     * @param theLines the number of lines, 0 to 4
+     * @return the number of such pieces
+     */
+    public long getClears(final int theLines) {
+        return myClears[theLines];
+    }
+
+    /**
+     * Formats a report of these statistics.
+     *
+     * @param theElapsedNanos the wall-clock time the games took
+     * @return a multi-line human readable report
+     */
+    public String report(final long theElapsedNanos) {
+        final double seconds = theElapsedNanos / NANOS_PER_SECOND;
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "games:       %d in %.3f s%n", myGames, seconds));
+        sb.append(String.format(Locale.ROOT, "games/sec:   %.1f%n", myGames / seconds));
+        sb.append(String.format(Locale.ROOT, "pieces/sec:  %.1f%n", myPieces / seconds));
+        sb.append(String.format(Locale.ROOT, "pieces:      %d (max %d per game)%n",
+                                myPieces, myMaxPieces));
+        sb.append(String.format(Locale.ROOT, "lines:       %d (%.3f per game, max %d)%n",
+                                myLines, myGames == 0 ? 0.0 : (double) myLines / myGames,
+                                myMaxLines));
+        sb.append(String.format(Locale.ROOT, "clears:      single %d, double %d, "
+                                + "triple %d, tetris %d",
+                                myClears[1], myClears[2], myClears[3], myClears[MAX_CLEAR]));
+        return sb.toString();
+    }
+}
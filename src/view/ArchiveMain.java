@@ -0,0 +1,207 @@
+/*
+ * <pre>
+ * Class: <b>ArchiveMain</b>
+ * File: ArchiveMain.java
+ * Course: TCSS 305 - Autumn 2015
+ * Assignment 6 - Tetris
+ * Copyright 2015 Benjamin Abdipour
+ * </pre>
+ */
+
+package view;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import model.PieceGenerator;
+import replay.ArchivedGame;
+import replay.ReplayArchive;
+import replay.ReplayArchiveWriter;
+import replay.ReplayResult;
+
+/**
+ * <pre>
+ * This class packs replay files into a replay archive and verifies
+ * archives. Packing plays every game back and keeps the games that are
+ * consistent; verifying plays every game of the archive back on all
+ * available cores and compares it with its archived totals. The exit
+ * status is 1 if anything failed.
+ *
+ * Usage: ArchiveMain pack archive [random|bag|history] file-or-directory...
+ *        ArchiveMain verify archive [random|bag|history]
+ * </pre>
+ *
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ * @since November 20, 2015
+ */
+public final class ArchiveMain {
+
+    /** The number of nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Constructor to prevent illegal instantiation.
+     */
+    private ArchiveMain() {
+    }
+
+    /**
+     * Main method for packing and verifying archives.
+     *
+     * @param theArgs The argument array
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(final String[] theArgs) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        if (theArgs.length < 2 || !"pack".equals(theArgs[0]) && !"verify".equals(theArgs[0])) {
+            System.out.println("Usage: ArchiveMain pack archive [random|bag|history] "
+                               + "file-or-directory...");
+            System.out.println("       ArchiveMain verify archive [random|bag|history]");
+            System.exit(1);
+        }
+
+        int first = 2;
+        String generator = "random";
+        if (theArgs.length > first && ReplayMain.GENERATORS.contains(theArgs[first])) {
+            generator = theArgs[first];
+            first++;
+        }
+        final Path archive = Paths.get(theArgs[1]);
+        final Supplier<PieceGenerator> generators = SimulationMain.generatorFactory(generator);
+        final boolean valid;
+        if ("pack".equals(theArgs[0])) {
+            final List<Path> files = new ArrayList<>();
+            for (int i = first; i < theArgs.length; i++) {
+                ReplayMain.addFiles(Paths.get(theArgs[i]), files);
+            }
+            valid = pack(archive, files, generators);
+        } else {
+            valid = verify(archive, generators);
+        }
+        if (!valid) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Packs replay files into an archive.
+     *
+     * @param theArchive the archive to write
+     * @param theFiles the replay files
+     * @param theGenerators creates the piece generator of the games
+     * @return whether every file could be read
+     * @throws IOException if the archive cannot be written
+     */
+    private static boolean pack(final Path theArchive, final List<Path> theFiles,
+                                final Supplier<PieceGenerator> theGenerators)
+                    throws IOException {
+        final long start = System.nanoTime();
+        long replayBytes = 0;
+        int games = 0;
+        int failed = 0;
+        try (ReplayArchiveWriter writer = new ReplayArchiveWriter(theArchive, theGenerators)) {
+            for (final Path file : theFiles) {
+                try {
+                    final byte[] replay = Files.readAllBytes(file);
+                    replayBytes += replay.length;
+                    games += writer.add(ByteBuffer.wrap(replay));
+                } catch (final IOException | IllegalArgumentException e) {
+                    System.out.println(file + ": " + e);
+                    failed++;
+                }
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long archiveBytes = Files.size(theArchive);
+        System.out.println(String.format(Locale.ROOT,
+                                         "%d files (%d failed), %d games: %d bytes packed "
+                                         + "into %d bytes (%.1f%%) in %.3f s",
+                                         theFiles.size(), failed, games, replayBytes,
+                                         archiveBytes,
+                                         100.0 * archiveBytes / Math.max(1, replayBytes),
+                                         elapsed / NANOS_PER_SECOND));
+        return failed == 0;
+    }
+
+    /**
+     * Plays back every game of an archive in parallel.
+     *
+     * @param theArchive the archive
+     * @param theGenerators creates the piece generator of the games
+     * @return whether every game reproduced its archived totals
+     * @throws IOException if the archive cannot be read
+     */
+    private static boolean verify(final Path theArchive,
+                                  final Supplier<PieceGenerator> theGenerators)
+                    throws IOException {
+        final LongAdder games = new LongAdder();
+        final LongAdder inputs = new LongAdder();
+        final LongAdder invalid = new LongAdder();
+        final ThreadLocal<PieceGenerator> generators = ThreadLocal.withInitial(theGenerators);
+        final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        final long start = System.nanoTime();
+        try (ReplayArchive archive = new ReplayArchive(theArchive)) {
+            pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    archive.games().forEach(new Consumer<ArchivedGame>() {
+                        @Override
+                        public void accept(final ArchivedGame theGame) {
+                            final ReplayResult result = theGame.play(generators.get());
+                            games.increment();
+                            inputs.add(result.getInputs());
+                            if (!matches(theGame, result)) {
+                                invalid.increment();
+                                System.out.println(theArchive + ": " + result);
+                            }
+                        }
+                    });
+                }
+            }).get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            System.out.println(theArchive + ": " + e.getCause());
+            invalid.increment();
+        } finally {
+            pool.shutdown();
+        }
+        final long elapsed = System.nanoTime() - start;
+        System.out.println(String.format(Locale.ROOT,
+                                         "%d games, %d inputs: %d invalid in %.3f s, "
+                                         + "%.0f games/s on %d threads",
+                                         games.sum(), inputs.sum(), invalid.sum(),
+                                         elapsed / NANOS_PER_SECOND,
+                                         games.sum() * NANOS_PER_SECOND / Math.max(1, elapsed),
+                                         pool.getParallelism()));
+        return invalid.sum() == 0;
+    }
+
+    /**
+     * Tests whether the playback of an archived game reproduced it.
+     *
+     * @param theGame the archived game
+     * @param theResult the playback
+     * @return true if the playback matches the archived totals
+     */
+    private static boolean matches(final ArchivedGame theGame, final ReplayResult theResult) {
+        return theResult.getPiecesPlaced() == theGame.getPiecesPlaced()
+               && theResult.getLinesCleared() == theGame.getLinesCleared()
+               && theResult.getScore() == theGame.getScore()
+               && theResult.getTicks() == theGame.getTicks()
+               && theResult.getChecksum() == theGame.getChecksum()
+               && (!theGame.isFinished() || theResult.isValid());
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * <pre> 
+ * Class: <b>ReplayMain</b> 
+ * File: ReplayMain.java 
+ * Course: TCSS 305 - Autumn 2015
+ * Assignment 6 - Tetris
+ * Copyright 2015 Benjamin Abdipour
+ * </pre>
+ */
+
+package view;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import replay.ReplayReport;
+import replay.ReplayResult;
+import replay.ReplayVerifier;
+
+/**
+ * <pre>
+ * This class is the headless verifier of recorded games. It plays back every
+ * game of the given replay files, or of the .replay files in the given
+ * directories, on all available cores, prints the games whose recorded
+ * pieces, lines, score or board do not match the playback, and prints the
+ * totals and the throughput. The exit status is 1 if anything failed.
+ * 
+ * Usage: ReplayMain [random|bag|history] file-or-directory...
+ * </pre>
+ * 
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ * @since November 20, 2015
+ */
+public final class ReplayMain {
+
+    /** The names of the piece generators. */
+    static final List<String> GENERATORS = Arrays.asList("random", "bag", "history");
+
+    /** The file name extension of replay files. */
+    private static final String EXTENSION = ".replay";
+
+    /** The number of nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Constructor to prevent illegal instantiation.
+     */
+    private ReplayMain() {
+    }
+
+    /**
+     * Main method for verifying replays.
+     * 
+     * @param theArgs The argument array
+     * @throws IOException if a directory cannot be listed
+     */
+    public static void main(final String[] theArgs) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        int first = 0;
+        String generator = "random";
+        if (theArgs.length > 0 && GENERATORS.contains(theArgs[0])) {
+            generator = theArgs[0];
+            first = 1;
+        }
+        final List<Path> files = new ArrayList<>();
+        for (int i = first; i < theArgs.length; i++) {
+            addFiles(Paths.get(theArgs[i]), files);
+        }
+
+        final ReplayVerifier verifier =
+                        new ReplayVerifier(SimulationMain.generatorFactory(generator));
+        final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        final long start = System.nanoTime();
+        final List<ReplayReport> reports = verifier.verify(files, pool);
+        final long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        int games = 0;
+        int valid = 0;
+        int abandoned = 0;
+        int failed = 0;
+        for (final ReplayReport report : reports) {
+            for (final ReplayResult game : report.getResults()) {
+                games++;
+                if (!game.isFinished()) {
+                    abandoned++;
+                } else if (game.isValid()) {
+                    valid++;
+                } else {
+                    System.out.println(report.getFile() + ": " + game);
+                }
+            }
+            if (report.getError() != null) {
+                System.out.println(report.getFile() + ": " + report.getError());
+            }
+            if (!report.isValid()) {
+                failed++;
+            }
+        }
+        System.out.println(String.format(Locale.ROOT,
+                                         "%d files (%d failed), %d games: %d valid, "
+                                         + "%d abandoned, %d invalid in %.3f s, "
+                                         + "%.0f games/s on %d threads",
+                                         files.size(), failed, games, valid, abandoned,
+                                         games - valid - abandoned, elapsed / NANOS_PER_SECOND,
+                                         games * NANOS_PER_SECOND / Math.max(1, elapsed),
+                                         pool.getParallelism()));
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Adds a replay file, or the replay files of a directory, to a list.
+     * 
+     * @param thePath the file or directory
+     * @param theFiles the list to add to
+     * @throws IOException if the directory cannot be listed
+     */
+    static void addFiles(final Path thePath, final List<Path> theFiles)
+                    throws IOException {
+        if (Files.isDirectory(thePath)) {
+            try (DirectoryStream<Path> stream =
+                            Files.newDirectoryStream(thePath, "*" + EXTENSION)) {
+                for (final Path file : stream) {
+                    theFiles.add(file);
+                }
+            }
+        } else {
+            theFiles.add(thePath);
+        }
+    }
+}
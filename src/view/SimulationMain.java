@@ -0,0 +1,205 @@
+/*
+ * <pre> 
+ * Class: <b>SimulationMain</b> 
+ * File: SimulationMain.java 
+ * Course: TCSS 305 - Autumn 2015
+ * Assignment 6 - Tetris
+ * Copyright 2015 Benjamin Abdipour
+ * </pre>
+ */
+
+package view;
+
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+import ai.Heuristic;
+import ai.PlacementBot;
+import ai.SurfaceCache;
+import ai.TranspositionTable;
+import model.BagPieceGenerator;
+import model.HistoryPieceGenerator;
+import model.PieceGenerator;
+import model.RandomPieceGenerator;
+import simulation.DropPolicy;
+import simulation.MovePolicy;
+import simulation.RandomPolicy;
+import simulation.SimulationRunner;
+import simulation.SimulationStats;
+
+/**
+ * <pre>
+ * This class is the headless starting point of the program. It plays a number
+ * of complete games on all available cores without opening any window and
+ * prints throughput and line-clear statistics. The bots of all games share
+ * one transposition table.
+ * 
+ * Usage: SimulationMain [games] [width] [height] [random|drop|bot] [maxPieces] [seed]
+ *                       [random|bag|history]
+ * </pre>
+ * 
+ * @author Benjamin Abdipour
+ * @version 12/11/2015
+ * @since November 20, 2015
+ */
+public final class SimulationMain {
+
+    /** The default number of games. */
+    private static final int DEFAULT_GAMES = 10000;
+
+    /** The default board width. */
+    private static final int DEFAULT_WIDTH = 10;
+
+    /** The default board height. */
+    private static final int DEFAULT_HEIGHT = 20;
+
+    /** The index of the policy argument. */
+    private static final int POLICY_ARG = 3;
+
+    /** The index of the piece limit argument. */
+    private static final int MAX_PIECES_ARG = 4;
+
+    /** The index of the seed argument. */
+    private static final int SEED_ARG = 5;
+
+    /** The index of the piece generator argument. */
+    private static final int GENERATOR_ARG = 6;
+
+    /** The number of entries of the transposition table the bots share. */
+    private static final int TABLE_ENTRIES = 1 << 20;
+
+    /** The number of surfaces of the surface cache the bots share. */
+    private static final int CACHE_SURFACES = 1 << 16;
+
+    /**
+     * Constructor to prevent illegal instantiation.
+     */
+    private SimulationMain() {
+    }
+
+    /**
+     * Main method for running the simulation.
+     * 
+     * @param theArgs The argument array
+     */
+    public static void main(final String[] theArgs) {
+        System.setProperty("java.awt.headless", "true");
+
+        final int games = intArg(theArgs, 0, DEFAULT_GAMES);
+        final int width = intArg(theArgs, 1, DEFAULT_WIDTH);
+        final int height = intArg(theArgs, 2, DEFAULT_HEIGHT);
+        final String policy = theArgs.length > POLICY_ARG ? theArgs[POLICY_ARG] : "random";
+        final int maxPieces = intArg(theArgs, MAX_PIECES_ARG, 0);
+        final long seed = theArgs.length > SEED_ARG ? Long.parseLong(theArgs[SEED_ARG])
+                                                    : System.nanoTime();
+        final String generator = theArgs.length > GENERATOR_ARG ? theArgs[GENERATOR_ARG]
+                                                                : "random";
+
+        final SimulationRunner runner = new SimulationRunner(width, height,
+                                                             policyFactory(policy),
+                                                             generatorFactory(generator),
+                                                             maxPieces);
+        final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+        System.out.println(String.format(Locale.ROOT,
+                                         "%d games of %s with %s pieces on %dx%d, %d threads",
+                                         games, policy, generator, width, height,
+                                         pool.getParallelism()));
+        final long start = System.nanoTime();
+        final SimulationStats stats = runner.run(games, seed, pool);
+        final long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        System.out.println(stats.report(elapsed));
+    }
+
+    /**
+     * Returns the factory of the named move policy.
+     * 
+     * @param theName the policy name
+     * @return a function creating the policy from a seed
+     */
+    private static LongFunction<MovePolicy> policyFactory(final String theName) {
+        final LongFunction<MovePolicy> result;
+        if ("drop".equals(theName)) {
+            result = new LongFunction<MovePolicy>() {
+                @Override
+                public MovePolicy apply(final long theSeed) {
+                    return new DropPolicy();
+                }
+            };
+        } else if ("random".equals(theName)) {
+            result = new LongFunction<MovePolicy>() {
+                @Override
+                public MovePolicy apply(final long theSeed) {
+                    return new RandomPolicy(theSeed);
+                }
+            };
+        } else if ("bot".equals(theName)) {
+            final TranspositionTable table = new TranspositionTable(TABLE_ENTRIES);
+            final SurfaceCache cache = new SurfaceCache(CACHE_SURFACES);
+            result = new LongFunction<MovePolicy>() {
+                @Override
+                public MovePolicy apply(final long theSeed) {
+                    return new PlacementBot(Heuristic.DEFAULT, true, true,
+                                            ForkJoinPool.commonPool(), table, cache);
+                }
+            };
+        } else {
+            throw new IllegalArgumentException("Unknown policy: " + theName);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the factory of the named piece generator.
+     * 
+     * @param theName the generator name
+     * @return a function creating the generator
+     */
+    static Supplier<PieceGenerator> generatorFactory(final String theName) {
+        final Supplier<PieceGenerator> result;
+        if ("random".equals(theName)) {
+            result = new Supplier<PieceGenerator>() {
+                @Override
+                public PieceGenerator get() {
+                    return new RandomPieceGenerator();
+                }
+            };
+        } else if ("bag".equals(theName)) {
+            result = new Supplier<PieceGenerator>() {
+                @Override
+                public PieceGenerator get() {
+                    return new BagPieceGenerator();
+                }
+            };
+        } else if ("history".equals(theName)) {
+            result = new Supplier<PieceGenerator>() {
+                @Override
+                public PieceGenerator get() {
+                    return new HistoryPieceGenerator();
+                }
+            };
+        } else {
+            throw new IllegalArgumentException("Unknown piece generator: " + theName);
+        }
+        return result;
+    }
+
+    /**
+     * Parses an optional integer argument.
+     * 
+     * @param theArgs the argument array
+     * @param theIndex the index of the argument
+     * @param theDefault the value used when the argument is missing
+     * @return the argument value
+     */
+    private static int intArg(final String[] theArgs, final int theIndex,
+                              final int theDefault) {
+        int result = theDefault;
+        if (theArgs.length > theIndex) {
+            result = Integer.parseInt(theArgs[theIndex]);
+        }
+        return result;
+    }
+}
@@ -98,7 +98,7 @@ public class TetrisGUI extends Observable implements Observer {
         myInfoPanel = new InfoPanel(myBoardPanel);
         addObserver(myBoardPanel);
         addObserver(myInfoPanel);
-        myBoardPanel.addBoardObserver(myInfoPanel);
+        myBoardPanel.addBoardListener(myInfoPanel);
         initMainFrame();
     }
 